@@ -25,6 +25,7 @@ import android.os.UserHandle;
 import com.kairos.launcher.compat.UserManagerCompat;
 import com.kairos.launcher.util.ComponentKey;
 import com.kairos.launcher.util.PackageManagerHelper;
+import com.kairos.launcher.util.TitleSortKeys;
 
 /**
  * Represents an app in AllAppsView.
@@ -43,6 +44,12 @@ public class AppInfo extends ItemInfoWithIcon {
      */
     public int isDisabled = ShortcutInfo.DEFAULT;
 
+    /**
+     * Sort key and section of the title, {@see TitleSortKeys#getSortKey(AppInfo)}. May be null or
+     * stale, in which case the title is compared instead.
+     */
+    public TitleSortKeys.SortKey sortKey;
+
     public AppInfo() {
         itemType = LauncherSettings.Favorites.ITEM_TYPE_APPLICATION;
     }
@@ -79,6 +86,7 @@ public class AppInfo extends ItemInfoWithIcon {
         title = Utilities.trim(info.title);
         intent = new Intent(info.intent);
         isDisabled = info.isDisabled;
+        sortKey = info.sortKey;
     }
 
     @Override
@@ -43,27 +43,38 @@ import android.os.Process;
 import android.os.SystemClock;
 import android.os.UserHandle;
 import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
 import android.text.TextUtils;
 import android.util.Log;
 
 import com.kairos.launcher.compat.LauncherAppsCompat;
 import com.kairos.launcher.compat.UserManagerCompat;
 import com.kairos.launcher.config.FeatureFlags;
+import com.kairos.launcher.graphics.IconBlobCodec;
 import com.kairos.launcher.graphics.LauncherIcons;
 import com.kairos.launcher.model.PackageItemInfo;
 import com.kairos.launcher.util.ComponentKey;
+import com.kairos.launcher.util.ParallelRunner;
 import com.kairos.launcher.util.Preconditions;
 import com.kairos.launcher.util.Provider;
 import com.kairos.launcher.util.SQLiteCacheHelper;
+import com.kairos.launcher.util.TitleSortKeys;
 import com.kairos.launcher.util.Themes;
 import com.kairos.launcher.util.Thunk;
 
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Set;
 import java.util.Stack;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 
 /**--------------------------------------------------------------
  * TEAM KAIROS :: DEV CARLOS :: CLASS SYNOPSIS
@@ -80,8 +91,6 @@ public class IconCache {
 
     private static final String TAG = "Launcher.IconCache";
 
-    private static final int INITIAL_ICON_CACHE_CAPACITY = 50;
-
     // Empty class name is used for storing package default entry.
     private static final String EMPTY_CLASS_NAME = ".";
 
@@ -90,6 +99,24 @@ public class IconCache {
 
     private static final int LOW_RES_SCALE_FACTOR = 5;
 
+    // Max number of components looked up by a single prefetch query. This is kept well below
+    // the SQLite limit on the number of bound arguments.
+    private static final int PREFETCH_BATCH_SIZE = 200;
+
+    // Min number of icons decoded by each thread during a prefetch.
+    private static final int PREFETCH_MIN_DECODES_PER_THREAD = 16;
+
+    // Max number of changed packages validated incrementally, above which all the icons of the
+    // user are validated.
+    private static final int MAX_INCREMENTAL_PACKAGES = 100;
+
+    // Number of background threads used to render missing icons, in addition to the caller.
+    private static final int RENDER_THREADS = Math.min(3, ParallelRunner.getCpuBoundParallelism());
+    // Max number of threads rendering icons at the same time.
+    public static final int RENDER_PARALLELISM = RENDER_THREADS + 1;
+    // Min number of icons rendered by each thread.
+    private static final int RENDER_MIN_ICONS_PER_THREAD = 4;
+
     @Thunk static final Object ICON_UPDATE_TOKEN = new Object();
 
     public static class CacheEntry {
@@ -97,6 +124,11 @@ public class IconCache {
         public CharSequence title = "";
         public CharSequence contentDescription = "";
         public boolean isLowResIcon;
+        // Sort key of the title, only used for activities. May be null or stale.
+        public TitleSortKeys.SortKey sortKey;
+
+        // Number of bytes accounted to the in-memory cache for this entry.
+        int accountedBytes;
     }
 
     private final HashMap<UserHandle, Bitmap> mDefaultIcons = new HashMap<>();
@@ -107,8 +139,7 @@ public class IconCache {
     private IconProvider mIconProvider;
     @Thunk final UserManagerCompat mUserManager;
     private final LauncherAppsCompat mLauncherApps;
-    private final HashMap<ComponentKey, CacheEntry> mCache =
-            new HashMap<ComponentKey, CacheEntry>(INITIAL_ICON_CACHE_CAPACITY);
+    private final IconMemoryCache mCache;
     private final int mIconDpi;
     @Thunk final IconDB mIconDb;
 
@@ -126,6 +157,20 @@ public class IconCache {
     private Canvas mLowResCanvas;
     private Paint mLowResPaint;
 
+    private int mPrefetchQueryCount;
+    private int mPrefetchRowCount;
+    private int mRenderedIconCount;
+
+    private final IconChangeJournal mChangeJournal;
+    // Icon update tasks scheduled by the last validation, which are not complete yet.
+    private final ArrayList<SerializedIconUpdateTask> mPendingIconUpdates = new ArrayList<>();
+    private int mFullValidationCount;
+    private int mIncrementalValidationCount;
+    private long mValidationRowsScanned;
+    private long mValidationRowsUpdated;
+
+    private final ThreadPoolExecutor mRenderExecutor;
+
     public IconCache(Context context, InvariantDeviceProfile inv) {
         mContext = context;
         mPackageManager = context.getPackageManager();
@@ -147,6 +192,15 @@ public class IconCache {
         // Always prefer RGB_565 config for low res. If the bitmap has transparency, it will
         // automatically be loaded as ALPHA_8888.
         mLowResOptions.inPreferredConfig = Bitmap.Config.RGB_565;
+
+        mCache = new IconMemoryCache(new MemoryCachePolicy());
+        mChangeJournal = new IconChangeJournal(context,
+                mUserManager.getSerialNumberForUser(Process.myUserHandle()));
+
+        mRenderExecutor = new ThreadPoolExecutor(RENDER_THREADS, RENDER_THREADS,
+                1, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>());
+        // Rendering only happens during loads, don't keep the threads around after that.
+        mRenderExecutor.allowCoreThreadTimeOut(true);
     }
 
     private Drawable getFullResDefaultActivityIcon() {
@@ -217,16 +271,7 @@ public class IconCache {
      * Remove any records for the supplied package name from memory.
      */
     private void removeFromMemCacheLocked(String packageName, UserHandle user) {
-        HashSet<ComponentKey> forDeletion = new HashSet<ComponentKey>();
-        for (ComponentKey key: mCache.keySet()) {
-            if (key.componentName.getPackageName().equals(packageName)
-                    && key.user.equals(user)) {
-                forDeletion.add(key);
-            }
-        }
-        for (ComponentKey condemned: forDeletion) {
-            mCache.remove(condemned);
-        }
+        mCache.removePackage(packageName, user);
     }
 
     /**
@@ -258,39 +303,113 @@ public class IconCache {
                 new String[]{packageName + "/%", Long.toString(userSerial)});
     }
 
-    public void updateDbIcons(Set<String> ignorePackagesForMainUser) {
-        // Remove all active icon update tasks.
-        mWorkerHandler.removeCallbacksAndMessages(ICON_UPDATE_TOKEN);
+    /**
+     * Validates the persistent DB against the installed apps and schedules the required icon
+     * updates on the worker thread. Only the packages which changed since the last validation
+     * are checked, unless the {@link IconChangeJournal} does not cover a user.
+     * Must be called on the worker thread, which does all the other writes to the DB.
+     * @return The number of DB rows which were checked.
+     */
+    public int updateDbIcons(Set<String> ignorePackagesForMainUser) {
+        int rowsScanned = 0;
+        // Remove all active icon update tasks. As their updates are lost, all the icons of their
+        // users need to be validated.
+        synchronized (mPendingIconUpdates) {
+            mWorkerHandler.removeCallbacksAndMessages(ICON_UPDATE_TOKEN);
+            for (SerializedIconUpdateTask task : mPendingIconUpdates) {
+                mChangeJournal.invalidate(task.mUserSerial);
+            }
+            mPendingIconUpdates.clear();
+        }
 
         mIconProvider.updateSystemStateString();
+        String systemState = mIconProvider.getIconSystemState(mContext.getPackageName());
         for (UserHandle user : mUserManager.getUserProfiles()) {
-            // Query for the set of apps
-            final List<LauncherActivityInfo> apps = mLauncherApps.getActivityList(null, user);
-            // Fail if we don't have any apps
-            // TODO: Fix this. Only fail for the current user.
-            if (apps == null || apps.isEmpty()) {
-                return;
+            long userSerial = mUserManager.getSerialNumberForUser(user);
+            Set<String> changedPackages = mChangeJournal.startValidation(userSerial, systemState);
+            if (changedPackages != null && changedPackages.size() > MAX_INCREMENTAL_PACKAGES) {
+                changedPackages = null;
             }
+            Set<String> ignorePackages = Process.myUserHandle().equals(user)
+                    ? ignorePackagesForMainUser : Collections.<String>emptySet();
+
+            boolean validated = false;
+            try {
+                if (changedPackages == null) {
+                    // Query for the set of apps
+                    final List<LauncherActivityInfo> apps =
+                            mLauncherApps.getActivityList(null, user);
+                    // Fail if we don't have any apps
+                    // TODO: Fix this. Only fail for the current user.
+                    if (apps == null || apps.isEmpty()) {
+                        return rowsScanned;
+                    }
 
-            // Update icon cache. This happens in segments and {@link #onPackageIconsUpdated}
-            // is called by the icon cache when the job is complete.
-            updateDBIcons(user, apps, Process.myUserHandle().equals(user)
-                    ? ignorePackagesForMainUser : Collections.<String>emptySet());
+                    // Update icon cache. This happens in segments and
+                    // {@link #onPackageIconsUpdated} is called by the icon cache when the job is
+                    // complete.
+                    rowsScanned += updateDBIcons(user, apps, ignorePackages, null);
+                    synchronized (this) {
+                        mFullValidationCount++;
+                    }
+                } else if (!changedPackages.isEmpty()) {
+                    List<LauncherActivityInfo> apps = new ArrayList<>();
+                    for (String pkg : changedPackages) {
+                        apps.addAll(mLauncherApps.getActivityList(pkg, user));
+                    }
+                    rowsScanned += updateDBIcons(user, apps, ignorePackages, changedPackages);
+                    synchronized (this) {
+                        mIncrementalValidationCount++;
+                    }
+                } else {
+                    // Nothing changed, the icons of the user are already up to date.
+                    mChangeJournal.finishValidation(userSerial);
+                }
+                validated = true;
+            } finally {
+                if (!validated) {
+                    mChangeJournal.invalidate(userSerial);
+                }
+            }
         }
+        mIconDb.removeUnusedBlobs();
+        return rowsScanned;
+    }
+
+    /**
+     * Records that the packages {@param packages} changed, so that their icons are validated
+     * by the next call to {@link #updateDbIcons}.
+     */
+    public void onPackagesChanged(String[] packages, UserHandle user) {
+        mChangeJournal.onPackagesChanged(packages, mUserManager.getSerialNumberForUser(user));
     }
 
     /**
      * Updates the persistent DB, such that only entries corresponding to {@param apps} remain in
-     * the DB and are updated.
-     * @return The set of packages for which icons have updated.
+     * the DB and are updated. The validation of the user is finished in the journal once the
+     * DB is up to date, which can be after the icon updates scheduled on the worker thread.
+     * @param onlyPackages if not null, only the entries of these packages are checked.
+     * @return The number of DB rows which were checked.
      */
-    private void updateDBIcons(UserHandle user, List<LauncherActivityInfo> apps,
-            Set<String> ignorePackages) {
+    private int updateDBIcons(UserHandle user, List<LauncherActivityInfo> apps,
+            Set<String> ignorePackages, @Nullable Set<String> onlyPackages) {
         long userSerial = mUserManager.getSerialNumberForUser(user);
         PackageManager pm = mContext.getPackageManager();
         HashMap<String, PackageInfo> pkgInfoMap = new HashMap<String, PackageInfo>();
-        for (PackageInfo info : pm.getInstalledPackages(PackageManager.GET_UNINSTALLED_PACKAGES)) {
-            pkgInfoMap.put(info.packageName, info);
+        if (onlyPackages == null) {
+            for (PackageInfo info :
+                    pm.getInstalledPackages(PackageManager.GET_UNINSTALLED_PACKAGES)) {
+                pkgInfoMap.put(info.packageName, info);
+            }
+        } else {
+            for (String pkg : onlyPackages) {
+                try {
+                    pkgInfoMap.put(pkg,
+                            pm.getPackageInfo(pkg, PackageManager.GET_UNINSTALLED_PACKAGES));
+                } catch (NameNotFoundException e) {
+                    // Package was removed, its entries are removed below.
+                }
+            }
         }
 
         HashMap<ComponentName, LauncherActivityInfo> componentMap = new HashMap<>();
@@ -301,14 +420,27 @@ public class IconCache {
         HashSet<Integer> itemsToRemove = new HashSet<Integer>();
         Stack<LauncherActivityInfo> appsToUpdate = new Stack<>();
 
+        int rowsScanned = 0;
         Cursor c = null;
         try {
+            String selection = IconDB.COLUMN_USER + " = ? ";
+            ArrayList<String> selectionArgs = new ArrayList<>();
+            selectionArgs.add(Long.toString(userSerial));
+            if (onlyPackages != null) {
+                StringBuilder packageSelection = new StringBuilder();
+                for (String pkg : onlyPackages) {
+                    packageSelection.append(packageSelection.length() == 0 ? "" : " OR ")
+                            .append(IconDB.COLUMN_COMPONENT).append(" LIKE ?");
+                    selectionArgs.add(pkg + "/%");
+                }
+                selection += "AND (" + packageSelection + ")";
+            }
             c = mIconDb.query(
                     new String[]{IconDB.COLUMN_ROWID, IconDB.COLUMN_COMPONENT,
                             IconDB.COLUMN_LAST_UPDATED, IconDB.COLUMN_VERSION,
                             IconDB.COLUMN_SYSTEM_STATE},
-                    IconDB.COLUMN_USER + " = ? ",
-                    new String[]{Long.toString(userSerial)});
+                    selection,
+                    selectionArgs.toArray(new String[selectionArgs.size()]));
 
             final int indexComponent = c.getColumnIndex(IconDB.COLUMN_COMPONENT);
             final int indexLastUpdate = c.getColumnIndex(IconDB.COLUMN_LAST_UPDATED);
@@ -317,8 +449,13 @@ public class IconCache {
             final int systemStateIndex = c.getColumnIndex(IconDB.COLUMN_SYSTEM_STATE);
 
             while (c.moveToNext()) {
+                rowsScanned++;
                 String cn = c.getString(indexComponent);
                 ComponentName component = ComponentName.unflattenFromString(cn);
+                if (onlyPackages != null && !onlyPackages.contains(component.getPackageName())) {
+                    // '_' in the package name matches any character in the LIKE clause.
+                    continue;
+                }
                 PackageInfo info = pkgInfoMap.get(component.getPackageName());
                 if (info == null) {
                     if (!ignorePackages.contains(component.getPackageName())) {
@@ -360,13 +497,26 @@ public class IconCache {
                     Utilities.createDbSelectionQuery(IconDB.COLUMN_ROWID, itemsToRemove), null);
         }
 
+        synchronized (this) {
+            mValidationRowsScanned += rowsScanned;
+            mValidationRowsUpdated +=
+                    itemsToRemove.size() + appsToUpdate.size() + componentMap.size();
+        }
+
         // Insert remaining apps.
         if (!componentMap.isEmpty() || !appsToUpdate.isEmpty()) {
             Stack<LauncherActivityInfo> appsToAdd = new Stack<>();
             appsToAdd.addAll(componentMap.values());
-            new SerializedIconUpdateTask(userSerial, pkgInfoMap,
-                    appsToAdd, appsToUpdate).scheduleNext();
+            SerializedIconUpdateTask task = new SerializedIconUpdateTask(userSerial, pkgInfoMap,
+                    appsToAdd, appsToUpdate);
+            synchronized (mPendingIconUpdates) {
+                mPendingIconUpdates.add(task);
+                task.scheduleNext();
+            }
+        } else {
+            mChangeJournal.finishValidation(userSerial);
         }
+        return rowsScanned;
     }
 
     /**
@@ -395,23 +545,27 @@ public class IconCache {
         entry.contentDescription = mUserManager.getBadgedLabelForUser(entry.title, app.getUser());
         mCache.put(key, entry);
 
+        entry.sortKey = TitleSortKeys.getInstance(mContext).getSortKey(entry.title);
+
         Bitmap lowResIcon = generateLowResIcon(entry.icon, mActivityBgColor);
-        ContentValues values = newContentValues(entry.icon, lowResIcon, entry.title.toString(),
+        ContentValues values = newContentValues(entry.title.toString(), entry.sortKey,
                 app.getApplicationInfo().packageName);
-        addIconToDB(values, app.getComponentName(), info, userSerial);
+        addIconToDB(values, entry.icon, lowResIcon, app.getComponentName(), info, userSerial);
     }
 
     /**
-     * Updates {@param values} to contain versioning information and adds it to the DB.
-     * @param values {@link ContentValues} containing icon & title
+     * Updates {@param values} to contain versioning information and adds it to the DB, along
+     * with the encoded icons.
+     * @param values {@link ContentValues} containing the title
      */
-    private void addIconToDB(ContentValues values, ComponentName key,
-            PackageInfo info, long userSerial) {
+    private void addIconToDB(ContentValues values, Bitmap icon, Bitmap lowResIcon,
+            ComponentName key, PackageInfo info, long userSerial) {
         values.put(IconDB.COLUMN_COMPONENT, key.flattenToString());
         values.put(IconDB.COLUMN_USER, userSerial);
         values.put(IconDB.COLUMN_LAST_UPDATED, info.lastUpdateTime);
         values.put(IconDB.COLUMN_VERSION, info.versionCode);
-        mIconDb.insertOrReplace(values);
+        mIconDb.insertOrReplace(values, IconBlobCodec.encode(icon),
+                IconBlobCodec.encode(lowResIcon));
     }
 
     /**
@@ -508,6 +662,12 @@ public class IconCache {
         info.contentDescription = entry.contentDescription;
         info.iconBitmap = entry.icon == null ? getDefaultIcon(info.user) : entry.icon;
         info.usingLowResIcon = entry.isLowResIcon;
+        if (info instanceof AppInfo) {
+            // Reuse the key of the entry, unless it was computed for another title or locale
+            AppInfo appInfo = (AppInfo) info;
+            appInfo.sortKey = entry.sortKey;
+            entry.sortKey = TitleSortKeys.getInstance(mContext).getSortKey(appInfo);
+        }
     }
 
     public synchronized Bitmap getDefaultIcon(UserHandle user) {
@@ -578,6 +738,7 @@ public class IconCache {
                     entry.contentDescription = mUserManager.getBadgedLabelForUser(entry.title, user);
                 }
             }
+            mCache.onEntryUpdated(cacheKey, entry);
         }
         return entry;
     }
@@ -609,6 +770,7 @@ public class IconCache {
         if (icon != null) {
             entry.icon = LauncherIcons.createIconBitmap(icon, mContext);
         }
+        mCache.onEntryUpdated(cacheKey, entry);
     }
 
     private static ComponentKey getPackageKey(String packageName, UserHandle user) {
@@ -616,6 +778,36 @@ public class IconCache {
         return new ComponentKey(cn, user);
     }
 
+    private static boolean isPackageKey(ComponentKey key) {
+        return key.componentName.getClassName().endsWith(EMPTY_CLASS_NAME);
+    }
+
+    /**
+     * Releases in-memory icons in response to {@link Launcher#onTrimMemory(int)}. Evicted
+     * entries are reloaded from the DB the next time they are requested.
+     */
+    public void onTrimMemory(final int level) {
+        mWorkerHandler.post(new Runnable() {
+            @Override
+            public void run() {
+                synchronized (IconCache.this) {
+                    mCache.onTrimMemory(level);
+                }
+            }
+        });
+    }
+
+    public synchronized void dump(String prefix, PrintWriter writer) {
+        mCache.dump(prefix, writer);
+        writer.println(prefix + "  prefetch: queries=" + mPrefetchQueryCount
+                + " rows=" + mPrefetchRowCount
+                + " rendered=" + mRenderedIconCount);
+        writer.println(prefix + "  validation: full=" + mFullValidationCount
+                + " incremental=" + mIncrementalValidationCount
+                + " rowsScanned=" + mValidationRowsScanned
+                + " rowsUpdated=" + mValidationRowsUpdated);
+    }
+
     /**
      * Gets an entry for the package, which can be used as a fallback entry for various components.
      * This method is not thread safe, it must be called from a synchronized method.
@@ -653,9 +845,9 @@ public class IconCache {
 
                     // Add the icon in the DB here, since these do not get written during
                     // package updates.
-                    ContentValues values =
-                            newContentValues(icon, lowResIcon, entry.title.toString(), packageName);
-                    addIconToDB(values, cacheKey.componentName, info,
+                    ContentValues values = newContentValues(entry.title.toString(),
+                            null /* sortKey */, packageName);
+                    addIconToDB(values, icon, lowResIcon, cacheKey.componentName, info,
                             mUserManager.getSerialNumberForUser(user));
 
                 } catch (NameNotFoundException e) {
@@ -675,22 +867,27 @@ public class IconCache {
     private boolean getEntryFromDB(ComponentKey cacheKey, CacheEntry entry, boolean lowRes) {
         Cursor c = null;
         try {
-            c = mIconDb.query(
-                new String[]{lowRes ? IconDB.COLUMN_ICON_LOW_RES : IconDB.COLUMN_ICON,
-                        IconDB.COLUMN_LABEL},
+            c = mIconDb.queryWithIcon(new String[]{IconDB.COLUMN_LABEL, IconDB.COLUMN_SORT_KEY,
+                    IconDB.COLUMN_SORT_LOCALE, IconDB.COLUMN_SECTION}, lowRes,
                 IconDB.COLUMN_COMPONENT + " = ? AND " + IconDB.COLUMN_USER + " = ?",
                 new String[]{cacheKey.componentName.flattenToString(),
                         Long.toString(mUserManager.getSerialNumberForUser(cacheKey.user))});
             if (c.moveToNext()) {
-                entry.icon = loadIconNoResize(c, 0, lowRes ? mLowResOptions : null);
+                entry.icon = loadIconNoResize(c, 4, lowRes ? mLowResOptions : null);
+                if (entry.icon == null) {
+                    // Missing or corrupt blob, recreate the entry.
+                    return false;
+                }
                 entry.isLowResIcon = lowRes;
-                entry.title = c.getString(1);
+                entry.title = c.getString(0);
                 if (entry.title == null) {
                     entry.title = "";
                     entry.contentDescription = "";
                 } else {
                     entry.contentDescription = mUserManager.getBadgedLabelForUser(
                             entry.title, cacheKey.user);
+                    entry.sortKey = TitleSortKeys.SortKey.restore(c.getString(0), c.getString(2),
+                            c.getBlob(1), c.getString(3));
                 }
                 return true;
             }
@@ -704,6 +901,194 @@ public class IconCache {
         return false;
     }
 
+    /**
+     * Loads the DB entries for {@param components} in a handful of batched queries and adds them
+     * to the in-memory cache, so that the subsequent lookups for these components do not need
+     * one query each. The icon blobs are decoded in parallel.
+     * Components already present in memory, or missing from the DB, are left untouched and go
+     * through the regular lookup.
+     */
+    public void prefetchEntries(Collection<ComponentName> components, UserHandle user,
+            boolean useLowResIcon) {
+        Preconditions.assertWorkerThread();
+        ArrayList<String> pending = new ArrayList<>(components.size());
+        synchronized (this) {
+            for (ComponentName cn : components) {
+                CacheEntry entry = mCache.get(new ComponentKey(cn, user));
+                if (entry == null || (entry.isLowResIcon && !useLowResIcon)) {
+                    pending.add(cn.flattenToString());
+                }
+            }
+        }
+        if (pending.isEmpty()) {
+            return;
+        }
+
+        String userSerial = Long.toString(mUserManager.getSerialNumberForUser(user));
+        ArrayList<String> names = new ArrayList<>(pending.size());
+        ArrayList<String> labels = new ArrayList<>(pending.size());
+        ArrayList<TitleSortKeys.SortKey> sortKeys = new ArrayList<>(pending.size());
+        ArrayList<byte[]> blobs = new ArrayList<>(pending.size());
+        int queryCount = 0;
+        for (int start = 0; start < pending.size(); start += PREFETCH_BATCH_SIZE) {
+            List<String> batch = pending.subList(start,
+                    Math.min(start + PREFETCH_BATCH_SIZE, pending.size()));
+            String[] args = new String[batch.size() + 1];
+            StringBuilder selection = new StringBuilder(IconDB.COLUMN_USER)
+                    .append(" = ? AND ").append(IconDB.COLUMN_COMPONENT).append(" IN (");
+            args[0] = userSerial;
+            for (int i = 0; i < batch.size(); i++) {
+                selection.append(i == 0 ? "?" : ", ?");
+                args[i + 1] = batch.get(i);
+            }
+            selection.append(')');
+
+            Cursor c = null;
+            try {
+                c = mIconDb.queryWithIcon(
+                        new String[]{IconDB.COLUMN_COMPONENT, IconDB.COLUMN_LABEL,
+                                IconDB.COLUMN_SORT_KEY, IconDB.COLUMN_SORT_LOCALE,
+                                IconDB.COLUMN_SECTION},
+                        useLowResIcon, selection.toString(), args);
+                queryCount++;
+                while (c.moveToNext()) {
+                    String label = c.getString(1);
+                    byte[] blob = c.getBlob(5);
+                    if (label == null || blob == null) {
+                        // Let the regular lookup fill the missing info.
+                        continue;
+                    }
+                    names.add(c.getString(0));
+                    blobs.add(blob);
+                    labels.add(label);
+                    sortKeys.add(TitleSortKeys.SortKey.restore(label, c.getString(3),
+                            c.getBlob(2), c.getString(4)));
+                }
+            } catch (SQLiteException e) {
+                Log.d(TAG, "Error prefetching icon cache", e);
+            } finally {
+                if (c != null) {
+                    c.close();
+                }
+            }
+        }
+
+        Bitmap[] icons = decodeInParallel(blobs, useLowResIcon);
+        synchronized (this) {
+            mPrefetchQueryCount += queryCount;
+            mPrefetchRowCount += names.size();
+            for (int i = 0; i < icons.length; i++) {
+                if (icons[i] == null) {
+                    continue;
+                }
+                ComponentKey key = new ComponentKey(
+                        ComponentName.unflattenFromString(names.get(i)), user);
+                CacheEntry entry = new CacheEntry();
+                entry.icon = icons[i];
+                entry.isLowResIcon = useLowResIcon;
+                entry.title = labels.get(i);
+                entry.sortKey = sortKeys.get(i);
+                entry.contentDescription = mUserManager.getBadgedLabelForUser(entry.title, user);
+                mCache.put(key, entry);
+            }
+        }
+    }
+
+    /**
+     * Decodes {@param blobs} by splitting them across {@link Utilities#THREAD_POOL_EXECUTOR} and
+     * the calling thread. Entries which fail to decode are null in the result.
+     */
+    private Bitmap[] decodeInParallel(final List<byte[]> blobs, final boolean lowRes) {
+        final Bitmap[] result = new Bitmap[blobs.size()];
+        try {
+            ParallelRunner.run(Utilities.THREAD_POOL_EXECUTOR, blobs.size(),
+                    PREFETCH_MIN_DECODES_PER_THREAD, Runtime.getRuntime().availableProcessors(),
+                    new ParallelRunner.RangeTask() {
+                        @Override
+                        public void run(int start, int end) {
+                            // Options are mutated by the decoder, so they can't be shared.
+                            BitmapFactory.Options options = null;
+                            if (lowRes) {
+                                options = new BitmapFactory.Options();
+                                options.inPreferredConfig = mLowResOptions.inPreferredConfig;
+                            }
+                            for (int i = start; i < end; i++) {
+                                result[i] = decodeIcon(blobs.get(i), options);
+                            }
+                        }
+                    });
+        } catch (InterruptedException e) {
+            Log.w(TAG, "Interrupted while decoding prefetched icons", e);
+            // Drop whatever may not be decoded yet, these go through the regular lookup.
+            Arrays.fill(result, null);
+        }
+        return result;
+    }
+
+    /**
+     * Renders the icons of {@param apps} which are not already in memory, on a bounded pool of
+     * threads, and adds them to the in-memory cache. This is meant to be called after
+     * {@link #prefetchEntries}, so that only the icons missing from the DB are rendered.
+     * The entries are the same as the ones created by {@link #cacheLocked} on a DB miss: they
+     * are not persisted here, {@link #updateDbIcons} takes care of writing them.
+     */
+    public void renderMissingIcons(List<LauncherActivityInfo> apps, final UserHandle user) {
+        Preconditions.assertWorkerThread();
+        final ArrayList<LauncherActivityInfo> missing = new ArrayList<>();
+        synchronized (this) {
+            for (LauncherActivityInfo app : apps) {
+                if (mCache.get(new ComponentKey(app.getComponentName(), user)) == null) {
+                    missing.add(app);
+                }
+            }
+        }
+        if (missing.isEmpty()) {
+            return;
+        }
+
+        final CacheEntry[] entries = new CacheEntry[missing.size()];
+        try {
+            ParallelRunner.run(mRenderExecutor, missing.size(), RENDER_MIN_ICONS_PER_THREAD,
+                    RENDER_THREADS + 1, new ParallelRunner.RangeTask() {
+                        @Override
+                        public void run(int start, int end) {
+                            LauncherIcons li = LauncherIcons.obtain(mContext);
+                            try {
+                                for (int i = start; i < end; i++) {
+                                    LauncherActivityInfo app = missing.get(i);
+                                    CacheEntry entry = new CacheEntry();
+                                    entry.icon = li.createBadgedIconBitmap(getFullResIcon(app),
+                                            user, app.getApplicationInfo().targetSdkVersion);
+                                    entry.title = app.getLabel();
+                                    entry.contentDescription =
+                                            mUserManager.getBadgedLabelForUser(entry.title, user);
+                                    entries[i] = entry;
+                                }
+                            } finally {
+                                li.recycle();
+                            }
+                        }
+                    });
+        } catch (InterruptedException e) {
+            Log.w(TAG, "Interrupted while rendering icons", e);
+            // Whatever was rendered is still valid, the rest goes through the regular lookup.
+        }
+
+        synchronized (this) {
+            for (int i = 0; i < entries.length; i++) {
+                if (entries[i] == null) {
+                    continue;
+                }
+                mRenderedIconCount++;
+                ComponentKey key = new ComponentKey(missing.get(i).getComponentName(), user);
+                // Don't override an entry which may have been added in the meantime.
+                if (mCache.get(key) == null) {
+                    mCache.put(key, entries[i]);
+                }
+            }
+        }
+    }
+
     public static class IconLoadRequest {
         private final Runnable mRunnable;
         private final Handler mHandler;
@@ -769,6 +1154,17 @@ public class IconCache {
                     scheduleNext();
                 }
             }
+            if (mAppsToUpdate.isEmpty() && mAppsToAdd.isEmpty()) {
+                boolean finished;
+                synchronized (mPendingIconUpdates) {
+                    finished = mPendingIconUpdates.remove(this);
+                }
+                if (finished) {
+                    // All the icons are written, the journal doesn't need to replay the changes
+                    // validated by this task anymore.
+                    mChangeJournal.finishValidation(mUserSerial);
+                }
+            }
         }
 
         public void scheduleNext() {
@@ -777,10 +1173,19 @@ public class IconCache {
     }
 
     private static final class IconDB extends SQLiteCacheHelper {
-        private final static int DB_VERSION = 13;
+        private final static int DB_VERSION = 16;
+        // Last version without the sort key columns, which are added to the existing table.
+        private final static int NO_SORT_KEY_DB_VERSION = 15;
+        // Last version storing PNG blobs in the component table. It is migrated instead of
+        // being dropped, so that the icons don't need to be rendered again.
+        private final static int PNG_COLUMNS_DB_VERSION = 13;
 
         private final static int RELEASE_VERSION = DB_VERSION +
                 (FeatureFlags.LAUNCHER3_DISABLE_ICON_NORMALIZATION ? 0 : 1);
+        private final static int PNG_COLUMNS_RELEASE_VERSION = PNG_COLUMNS_DB_VERSION +
+                (FeatureFlags.LAUNCHER3_DISABLE_ICON_NORMALIZATION ? 0 : 1);
+        private final static int NO_SORT_KEY_RELEASE_VERSION = NO_SORT_KEY_DB_VERSION +
+                (FeatureFlags.LAUNCHER3_DISABLE_ICON_NORMALIZATION ? 0 : 1);
 
         private final static String TABLE_NAME = "icons";
         private final static String COLUMN_ROWID = "rowid";
@@ -788,40 +1193,230 @@ public class IconCache {
         private final static String COLUMN_USER = "profileId";
         private final static String COLUMN_LAST_UPDATED = "lastUpdated";
         private final static String COLUMN_VERSION = "version";
+        // Key of the icon in the blob table.
         private final static String COLUMN_ICON = "icon";
+        // Key of the low-res icon in the blob table.
         private final static String COLUMN_ICON_LOW_RES = "icon_low_res";
         private final static String COLUMN_LABEL = "label";
         private final static String COLUMN_SYSTEM_STATE = "system_state";
+        // Collation key and section of the label, in the locale stored along with them.
+        private final static String COLUMN_SORT_KEY = "sort_key";
+        private final static String COLUMN_SORT_LOCALE = "sort_locale";
+        private final static String COLUMN_SECTION = "section";
+
+        // Encoded icons, keyed on the hash of their content, so that identical icons are only
+        // stored once. An icon whose hash is taken by a different icon gets the next free key.
+        private final static String BLOB_TABLE_NAME = "icon_blobs";
+        private final static String COLUMN_HASH = "hash";
+        private final static String COLUMN_DATA = "data";
+
+        private final static String MIGRATION_TABLE_NAME = "icons_migration";
+
+        private final int mIconPixelSize;
 
         public IconDB(Context context, int iconPixelSize) {
             super(context, LauncherFiles.APP_ICONS_DB,
                     (RELEASE_VERSION << 16) + iconPixelSize,
-                    TABLE_NAME);
+                    TABLE_NAME, BLOB_TABLE_NAME);
+            mIconPixelSize = iconPixelSize;
         }
 
         @Override
         protected void onCreateTable(SQLiteDatabase db) {
-            db.execSQL("CREATE TABLE IF NOT EXISTS " + TABLE_NAME + " (" +
+            createComponentTable(db, TABLE_NAME);
+            db.execSQL("CREATE TABLE IF NOT EXISTS " + BLOB_TABLE_NAME + " (" +
+                    COLUMN_HASH + " INTEGER PRIMARY KEY, " +
+                    COLUMN_DATA + " BLOB NOT NULL" +
+                    ");");
+        }
+
+        private static void createComponentTable(SQLiteDatabase db, String tableName) {
+            db.execSQL("CREATE TABLE IF NOT EXISTS " + tableName + " (" +
                     COLUMN_COMPONENT + " TEXT NOT NULL, " +
                     COLUMN_USER + " INTEGER NOT NULL, " +
                     COLUMN_LAST_UPDATED + " INTEGER NOT NULL DEFAULT 0, " +
                     COLUMN_VERSION + " INTEGER NOT NULL DEFAULT 0, " +
-                    COLUMN_ICON + " BLOB, " +
-                    COLUMN_ICON_LOW_RES + " BLOB, " +
+                    COLUMN_ICON + " INTEGER, " +
+                    COLUMN_ICON_LOW_RES + " INTEGER, " +
                     COLUMN_LABEL + " TEXT, " +
                     COLUMN_SYSTEM_STATE + " TEXT, " +
+                    COLUMN_SORT_KEY + " BLOB, " +
+                    COLUMN_SORT_LOCALE + " TEXT, " +
+                    COLUMN_SECTION + " TEXT, " +
                     "PRIMARY KEY (" + COLUMN_COMPONENT + ", " + COLUMN_USER + ") " +
                     ");");
         }
+
+        /**
+         * Queries the component table, along with the encoded icon of each row as the last
+         * column. The icon is null if missing from the blob table.
+         */
+        public Cursor queryWithIcon(String[] columns, boolean lowRes, String selection,
+                String[] selectionArgs) {
+            return rawQuery("SELECT " + TextUtils.join(", ", columns) + ", " + COLUMN_DATA
+                    + " FROM " + TABLE_NAME + " LEFT JOIN " + BLOB_TABLE_NAME
+                    + " ON " + COLUMN_HASH + " = " + (lowRes ? COLUMN_ICON_LOW_RES : COLUMN_ICON)
+                    + " WHERE " + selection, selectionArgs);
+        }
+
+        /**
+         * Adds or replaces the component row {@param values}, along with its encoded icons. This
+         * is done in one transaction, so that {@link #removeUnusedBlobs} can't remove the icons
+         * before the row referencing them is written.
+         */
+        public void insertOrReplace(final ContentValues values, final byte[] iconData,
+                final byte[] lowResData) {
+            runInTransaction(new Transaction() {
+                @Override
+                public void run(SQLiteDatabase db) {
+                    values.put(COLUMN_ICON, addBlob(db, iconData));
+                    values.put(COLUMN_ICON_LOW_RES, addBlob(db, lowResData));
+                    db.insertWithOnConflict(TABLE_NAME, null, values,
+                            SQLiteDatabase.CONFLICT_REPLACE);
+                }
+            });
+        }
+
+        /**
+         * Adds the encoded icon {@param data} to the blob table, unless it is already present.
+         * Its key is the hash of the data, or the next free key if a different icon has the same
+         * hash, so that two icons never share a key.
+         * @return the key referencing the icon from the component table, or null for null data.
+         */
+        private static Long addBlob(SQLiteDatabase db, byte[] data) {
+            if (data == null) {
+                return null;
+            }
+            long key = IconBlobCodec.hash(data);
+            while (true) {
+                Cursor c = db.query(BLOB_TABLE_NAME, new String[]{COLUMN_DATA},
+                        COLUMN_HASH + " = ?", new String[]{Long.toString(key)}, null, null, null);
+                try {
+                    if (!c.moveToNext()) {
+                        break;
+                    }
+                    if (Arrays.equals(data, c.getBlob(0))) {
+                        return key;
+                    }
+                } finally {
+                    c.close();
+                }
+                key++;
+            }
+            ContentValues values = new ContentValues();
+            values.put(COLUMN_HASH, key);
+            values.put(COLUMN_DATA, data);
+            db.insertOrThrow(BLOB_TABLE_NAME, null, values);
+            return key;
+        }
+
+        /**
+         * Removes the blobs which are not referenced by any component anymore. This is a single
+         * statement, it never runs in the middle of {@link #insertOrReplace}.
+         */
+        public void removeUnusedBlobs() {
+            delete(BLOB_TABLE_NAME, COLUMN_HASH + " NOT IN ("
+                    + "SELECT " + COLUMN_ICON + " FROM " + TABLE_NAME
+                    + " WHERE " + COLUMN_ICON + " IS NOT NULL UNION "
+                    + "SELECT " + COLUMN_ICON_LOW_RES + " FROM " + TABLE_NAME
+                    + " WHERE " + COLUMN_ICON_LOW_RES + " IS NOT NULL)", null);
+        }
+
+        @Override
+        protected boolean onUpgradeTable(SQLiteDatabase db, int oldVersion, int newVersion) {
+            if (oldVersion == (NO_SORT_KEY_RELEASE_VERSION << 16) + mIconPixelSize) {
+                try {
+                    // The keys are computed again when the entries are next loaded.
+                    db.execSQL("ALTER TABLE " + TABLE_NAME
+                            + " ADD COLUMN " + COLUMN_SORT_KEY + " BLOB");
+                    db.execSQL("ALTER TABLE " + TABLE_NAME
+                            + " ADD COLUMN " + COLUMN_SORT_LOCALE + " TEXT");
+                    db.execSQL("ALTER TABLE " + TABLE_NAME
+                            + " ADD COLUMN " + COLUMN_SECTION + " TEXT");
+                    return true;
+                } catch (SQLiteException e) {
+                    Log.e(TAG, "Error adding the sort key columns", e);
+                    return false;
+                }
+            }
+            if (oldVersion != (PNG_COLUMNS_RELEASE_VERSION << 16) + mIconPixelSize) {
+                return false;
+            }
+            try {
+                migrateFromPngColumns(db);
+                return true;
+            } catch (SQLiteException e) {
+                Log.e(TAG, "Error migrating icon cache", e);
+                db.execSQL("DROP TABLE IF EXISTS " + MIGRATION_TABLE_NAME);
+                return false;
+            }
+        }
+
+        /**
+         * Moves the PNG icons of the component table to the blob table, re-encoding them with
+         * {@link IconBlobCodec}.
+         */
+        private void migrateFromPngColumns(SQLiteDatabase db) {
+            db.execSQL("DROP TABLE IF EXISTS " + MIGRATION_TABLE_NAME);
+            createComponentTable(db, MIGRATION_TABLE_NAME);
+            db.execSQL("CREATE TABLE IF NOT EXISTS " + BLOB_TABLE_NAME + " (" +
+                    COLUMN_HASH + " INTEGER PRIMARY KEY, " +
+                    COLUMN_DATA + " BLOB NOT NULL" +
+                    ");");
+
+            BitmapFactory.Options lowResOptions = new BitmapFactory.Options();
+            lowResOptions.inPreferredConfig = Bitmap.Config.RGB_565;
+            Cursor c = db.query(TABLE_NAME, new String[]{COLUMN_COMPONENT, COLUMN_USER,
+                    COLUMN_LAST_UPDATED, COLUMN_VERSION, COLUMN_ICON, COLUMN_ICON_LOW_RES,
+                    COLUMN_LABEL, COLUMN_SYSTEM_STATE}, null, null, null, null, null);
+            try {
+                while (c.moveToNext()) {
+                    ContentValues values = new ContentValues();
+                    values.put(COLUMN_COMPONENT, c.getString(0));
+                    values.put(COLUMN_USER, c.getLong(1));
+                    values.put(COLUMN_LAST_UPDATED, c.getLong(2));
+                    values.put(COLUMN_VERSION, c.getInt(3));
+                    values.put(COLUMN_ICON, migrateBlob(db, c.getBlob(4), null));
+                    values.put(COLUMN_ICON_LOW_RES, migrateBlob(db, c.getBlob(5), lowResOptions));
+                    values.put(COLUMN_LABEL, c.getString(6));
+                    values.put(COLUMN_SYSTEM_STATE, c.getString(7));
+                    db.insertOrThrow(MIGRATION_TABLE_NAME, null, values);
+                }
+            } finally {
+                c.close();
+            }
+
+            db.execSQL("DROP TABLE " + TABLE_NAME);
+            db.execSQL("ALTER TABLE " + MIGRATION_TABLE_NAME + " RENAME TO " + TABLE_NAME);
+        }
+
+        /**
+         * Adds the PNG {@param png} to the blob table.
+         * @return the key of the blob, or null if the PNG could not be decoded.
+         */
+        private static Long migrateBlob(SQLiteDatabase db, byte[] png,
+                BitmapFactory.Options options) {
+            if (png == null) {
+                return null;
+            }
+            Bitmap icon = BitmapFactory.decodeByteArray(png, 0, png.length, options);
+            return addBlob(db, IconBlobCodec.encode(icon));
+        }
     }
 
-    private ContentValues newContentValues(Bitmap icon, Bitmap lowResIcon, String label,
+    private ContentValues newContentValues(String label, TitleSortKeys.SortKey sortKey,
             String packageName) {
         ContentValues values = new ContentValues();
-        values.put(IconDB.COLUMN_ICON, Utilities.flattenBitmap(icon));
-        values.put(IconDB.COLUMN_ICON_LOW_RES, Utilities.flattenBitmap(lowResIcon));
-
         values.put(IconDB.COLUMN_LABEL, label);
+        if (sortKey != null) {
+            values.put(IconDB.COLUMN_SORT_KEY, sortKey.collationKey);
+            values.put(IconDB.COLUMN_SORT_LOCALE, sortKey.locale);
+            values.put(IconDB.COLUMN_SECTION, sortKey.sectionName);
+        } else {
+            values.putNull(IconDB.COLUMN_SORT_KEY);
+            values.putNull(IconDB.COLUMN_SORT_LOCALE);
+            values.putNull(IconDB.COLUMN_SECTION);
+        }
         values.put(IconDB.COLUMN_SYSTEM_STATE, mIconProvider.getIconSystemState(packageName));
 
         return values;
@@ -850,15 +1445,42 @@ public class IconCache {
         }
     }
 
-    private static Bitmap loadIconNoResize(Cursor c, int iconIndex, BitmapFactory.Options options) {
-        byte[] data = c.getBlob(iconIndex);
-        try {
-            return BitmapFactory.decodeByteArray(data, 0, data.length, options);
-        } catch (Exception e) {
-            return null;
+    /**
+     * Measures entries by the bitmap memory they pin, and demotes them using the same low-res
+     * format as the one stored in the DB.
+     */
+    private class MemoryCachePolicy implements IconMemoryCache.EntryPolicy {
+
+        @Override
+        public int sizeOf(ComponentKey key, CacheEntry entry) {
+            if (entry.icon == null || entry.icon.isRecycled()
+                    || isDefaultIcon(entry.icon, key.user)) {
+                return 0;
+            }
+            return entry.icon.getAllocationByteCount();
+        }
+
+        @Override
+        public boolean demote(ComponentKey key, CacheEntry entry) {
+            if (entry.icon == null || entry.icon.getWidth() < LOW_RES_SCALE_FACTOR
+                    || entry.icon.getHeight() < LOW_RES_SCALE_FACTOR) {
+                return false;
+            }
+            entry.icon = generateLowResIcon(entry.icon,
+                    isPackageKey(key) ? mPackageBgColor : mActivityBgColor);
+            entry.isLowResIcon = true;
+            return true;
         }
     }
 
+    private static Bitmap loadIconNoResize(Cursor c, int iconIndex, BitmapFactory.Options options) {
+        return decodeIcon(c.getBlob(iconIndex), options);
+    }
+
+    private static Bitmap decodeIcon(byte[] data, BitmapFactory.Options options) {
+        return IconBlobCodec.decode(data, options);
+    }
+
     private class ActivityInfoProvider extends Provider<LauncherActivityInfo> {
 
         private final Intent mIntent;
@@ -0,0 +1,142 @@
+/*
+ * Copyright (C) 2017 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.kairos.launcher;
+
+import android.annotation.TargetApi;
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.content.pm.ChangedPackages;
+import android.os.Build;
+import android.provider.Settings;
+import android.text.TextUtils;
+import android.util.LongSparseArray;
+
+import java.util.HashSet;
+import java.util.Set;
+
+/**--------------------------------------------------------------
+ * TEAM KAIROS :: DEV CARLOS :: CLASS SYNOPSIS
+ * Copyright (c) 2017 KAIROS
+ *
+ * Journal of the packages which changed since the icon DB was last validated, per user serial.
+ * The {@link IconCache} uses it to only validate the rows of these packages. A user which is
+ * not tracked by the journal needs a full validation.
+ *
+ * Changes are recorded while the process is alive. On O and above, the changes which happened
+ * to the packages of the primary user while the process was dead are recovered from the
+ * package manager, as long as the device did not reboot.
+ ----------------------------------------------------------------*/
+class IconChangeJournal {
+
+    private static final String PREF_BOOT_COUNT = "icon_journal_boot_count";
+    private static final String PREF_SEQUENCE = "icon_journal_sequence";
+    private static final String PREF_SYSTEM_STATE = "icon_journal_system_state";
+
+    private final Context mContext;
+    private final long mMainUserSerial;
+
+    // Packages changed since the last validation, keyed on user serial.
+    private final LongSparseArray<HashSet<String>> mChanges = new LongSparseArray<>();
+    // System state used for the last validation.
+    private String mSystemState;
+    // Package manager sequence number at the start of the last validation of the main user.
+    private int mSequence;
+
+    IconChangeJournal(Context context, long mainUserSerial) {
+        mContext = context;
+        mMainUserSerial = mainUserSerial;
+
+        if (Utilities.isAtLeastO()) {
+            SharedPreferences prefs = Utilities.getPrefs(context);
+            int bootCount = prefs.getInt(PREF_BOOT_COUNT, -1);
+            if (bootCount != -1 && bootCount == getBootCount()) {
+                // Sequence numbers are only valid until the next reboot.
+                mSequence = prefs.getInt(PREF_SEQUENCE, 0);
+                mSystemState = prefs.getString(PREF_SYSTEM_STATE, null);
+                mChanges.put(mainUserSerial, new HashSet<String>());
+            }
+        }
+    }
+
+    public synchronized void onPackagesChanged(String[] packages, long userSerial) {
+        HashSet<String> changes = mChanges.get(userSerial);
+        if (changes != null) {
+            for (String pkg : packages) {
+                changes.add(pkg);
+            }
+        }
+    }
+
+    /**
+     * Starts a validation of the icons of the user {@param userSerial} and starts recording
+     * the next changes.
+     * @return the packages which changed since the last validation, or null if all the icons of
+     * the user should be validated.
+     */
+    public synchronized Set<String> startValidation(long userSerial, String systemState) {
+        if (!TextUtils.equals(systemState, mSystemState)) {
+            // All the icons need to be recreated.
+            mChanges.clear();
+            mSystemState = systemState;
+        }
+        HashSet<String> changes = mChanges.get(userSerial);
+        if (userSerial == mMainUserSerial && Utilities.isAtLeastO()) {
+            // Also picks the changes which were not reported to the process.
+            addChangedPackagesLocked(changes != null ? changes : new HashSet<String>());
+        }
+        mChanges.put(userSerial, new HashSet<String>());
+        return changes;
+    }
+
+    /**
+     * Called once the validation started with {@link #startValidation} is complete, that is once
+     * the resulting icon updates are written to the DB. Until then, the state saved for the next
+     * process is the one of the previous validation, so that an update interrupted by the death
+     * of the process is validated again.
+     */
+    public synchronized void finishValidation(long userSerial) {
+        if (userSerial == mMainUserSerial && Utilities.isAtLeastO()) {
+            Utilities.getPrefs(mContext).edit()
+                    .putInt(PREF_BOOT_COUNT, getBootCount())
+                    .putInt(PREF_SEQUENCE, mSequence)
+                    .putString(PREF_SYSTEM_STATE, mSystemState)
+                    .apply();
+        }
+    }
+
+    /**
+     * Forces the next validation of the user {@param userSerial} to check all the icons.
+     */
+    public synchronized void invalidate(long userSerial) {
+        mChanges.remove(userSerial);
+    }
+
+    @TargetApi(Build.VERSION_CODES.O)
+    private void addChangedPackagesLocked(HashSet<String> out) {
+        ChangedPackages changed = mContext.getPackageManager().getChangedPackages(mSequence);
+        if (changed != null) {
+            out.addAll(changed.getPackageNames());
+            mSequence = changed.getSequenceNumber();
+        }
+    }
+
+    @TargetApi(Build.VERSION_CODES.N)
+    private int getBootCount() {
+        return Settings.Global.getInt(mContext.getContentResolver(),
+                Settings.Global.BOOT_COUNT, -1);
+    }
+}
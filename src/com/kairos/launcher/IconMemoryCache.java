@@ -0,0 +1,238 @@
+/*
+ * Copyright (C) 2017 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.kairos.launcher;
+
+import android.content.ComponentCallbacks2;
+import android.os.UserHandle;
+
+import com.kairos.launcher.IconCache.CacheEntry;
+import com.kairos.launcher.util.ComponentKey;
+
+import java.io.PrintWriter;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**--------------------------------------------------------------
+ * TEAM KAIROS :: DEV CARLOS :: CLASS SYNOPSIS
+ * Copyright (c) 2017 KAIROS
+ *
+ * In-memory tier of the {@link IconCache}. Entries are kept in access order and the total
+ * size of the bitmaps they hold is bounded. When the budget is exceeded, the least recently
+ * used full-res entries are first demoted to their low-res form, and low-res entries are
+ * dropped entirely (they can always be reloaded from the icon DB).
+ ----------------------------------------------------------------*/
+class IconMemoryCache {
+
+    /**
+     * Policy used by the cache to measure and shrink entries.
+     */
+    interface EntryPolicy {
+
+        /**
+         * Returns the number of bytes held by {@param entry} which are accounted to the cache.
+         * Bitmaps shared with other owners (e.g. default icons) should not be counted.
+         */
+        int sizeOf(ComponentKey key, CacheEntry entry);
+
+        /**
+         * Replaces the icon of {@param entry} by its low-res form.
+         * @return false if the entry cannot be demoted and should be evicted instead.
+         */
+        boolean demote(ComponentKey key, CacheEntry entry);
+    }
+
+    // Fraction of the heap which can be used by the cached icons.
+    private static final int HEAP_FRACTION = 8;
+
+    private static final int INITIAL_CAPACITY = 50;
+
+    private final LinkedHashMap<ComponentKey, CacheEntry> mEntries =
+            new LinkedHashMap<>(INITIAL_CAPACITY, 0.75f, true /* accessOrder */);
+    private final EntryPolicy mPolicy;
+    private final long mMaxSizeBytes;
+
+    private long mSizeBytes;
+
+    private int mHitCount;
+    private int mMissCount;
+    private int mDemotionCount;
+    private int mEvictionCount;
+    private int mTrimCount;
+
+    IconMemoryCache(EntryPolicy policy) {
+        this(policy, Runtime.getRuntime().maxMemory() / HEAP_FRACTION);
+    }
+
+    IconMemoryCache(EntryPolicy policy, long maxSizeBytes) {
+        mPolicy = policy;
+        mMaxSizeBytes = maxSizeBytes;
+    }
+
+    public CacheEntry get(ComponentKey key) {
+        CacheEntry entry = mEntries.get(key);
+        if (entry != null) {
+            mHitCount++;
+        } else {
+            mMissCount++;
+        }
+        return entry;
+    }
+
+    /**
+     * Adds {@param entry} to the cache and evicts older entries if required.
+     */
+    public void put(ComponentKey key, CacheEntry entry) {
+        CacheEntry previous = mEntries.put(key, entry);
+        if (previous != null && previous != entry) {
+            mSizeBytes -= previous.accountedBytes;
+            previous.accountedBytes = 0;
+        }
+        account(key, entry);
+        trimToSize(mMaxSizeBytes);
+    }
+
+    /**
+     * Re-measures an entry which was modified after being added to the cache.
+     */
+    public void onEntryUpdated(ComponentKey key, CacheEntry entry) {
+        if (mEntries.get(key) == entry) {
+            account(key, entry);
+            trimToSize(mMaxSizeBytes);
+        }
+    }
+
+    public CacheEntry remove(ComponentKey key) {
+        CacheEntry entry = mEntries.remove(key);
+        if (entry != null) {
+            mSizeBytes -= entry.accountedBytes;
+            entry.accountedBytes = 0;
+        }
+        return entry;
+    }
+
+    /**
+     * Removes all the entries for the provided package and user.
+     */
+    public void removePackage(String packageName, UserHandle user) {
+        Iterator<Map.Entry<ComponentKey, CacheEntry>> itr = mEntries.entrySet().iterator();
+        while (itr.hasNext()) {
+            Map.Entry<ComponentKey, CacheEntry> e = itr.next();
+            ComponentKey key = e.getKey();
+            if (key.componentName.getPackageName().equals(packageName)
+                    && key.user.equals(user)) {
+                mSizeBytes -= e.getValue().accountedBytes;
+                e.getValue().accountedBytes = 0;
+                itr.remove();
+            }
+        }
+    }
+
+    public void evictAll() {
+        mEvictionCount += mEntries.size();
+        for (CacheEntry entry : mEntries.values()) {
+            entry.accountedBytes = 0;
+        }
+        mEntries.clear();
+        mSizeBytes = 0;
+    }
+
+    /**
+     * Shrinks the cache in response to {@link ComponentCallbacks2#onTrimMemory(int)}.
+     */
+    public void onTrimMemory(int level) {
+        mTrimCount++;
+        if (level >= ComponentCallbacks2.TRIM_MEMORY_MODERATE) {
+            // The process is likely to be killed soon, keep nothing around.
+            evictAll();
+        } else if (level >= ComponentCallbacks2.TRIM_MEMORY_BACKGROUND
+                || level == ComponentCallbacks2.TRIM_MEMORY_RUNNING_CRITICAL) {
+            trimToSize(mMaxSizeBytes / 4);
+        } else if (level >= ComponentCallbacks2.TRIM_MEMORY_UI_HIDDEN
+                || level == ComponentCallbacks2.TRIM_MEMORY_RUNNING_LOW) {
+            trimToSize(mMaxSizeBytes / 2);
+        }
+    }
+
+    /**
+     * Demotes or evicts the least recently used entries until the cache fits in
+     * {@param maxSizeBytes}. The most recently used entry is always kept, as its the one the
+     * caller is currently working with.
+     */
+    private void trimToSize(long maxSizeBytes) {
+        if (mSizeBytes <= maxSizeBytes) {
+            return;
+        }
+
+        // First pass: demote full-res entries, starting from the least recently used.
+        Iterator<Map.Entry<ComponentKey, CacheEntry>> itr = mEntries.entrySet().iterator();
+        int remaining = mEntries.size();
+        while (mSizeBytes > maxSizeBytes && remaining > 1 && itr.hasNext()) {
+            Map.Entry<ComponentKey, CacheEntry> e = itr.next();
+            remaining--;
+            CacheEntry entry = e.getValue();
+            if (entry.isLowResIcon || entry.accountedBytes == 0) {
+                continue;
+            }
+            if (mPolicy.demote(e.getKey(), entry)) {
+                mDemotionCount++;
+                account(e.getKey(), entry);
+            } else {
+                evict(itr, entry);
+            }
+        }
+
+        // Second pass: drop entries altogether.
+        itr = mEntries.entrySet().iterator();
+        remaining = mEntries.size();
+        while (mSizeBytes > maxSizeBytes && remaining > 1 && itr.hasNext()) {
+            Map.Entry<ComponentKey, CacheEntry> e = itr.next();
+            remaining--;
+            evict(itr, e.getValue());
+        }
+    }
+
+    private void evict(Iterator<Map.Entry<ComponentKey, CacheEntry>> itr, CacheEntry entry) {
+        mSizeBytes -= entry.accountedBytes;
+        entry.accountedBytes = 0;
+        itr.remove();
+        mEvictionCount++;
+    }
+
+    private void account(ComponentKey key, CacheEntry entry) {
+        int size = mPolicy.sizeOf(key, entry);
+        mSizeBytes += size - entry.accountedBytes;
+        entry.accountedBytes = size;
+    }
+
+    public int size() {
+        return mEntries.size();
+    }
+
+    public void dump(String prefix, PrintWriter writer) {
+        int lookups = mHitCount + mMissCount;
+        writer.println(prefix + "IconCache memory:"
+                + " entries=" + mEntries.size()
+                + " size=" + mSizeBytes + "/" + mMaxSizeBytes + " bytes");
+        writer.println(prefix + "  hits=" + mHitCount
+                + " misses=" + mMissCount
+                + " hitRate=" + (lookups == 0 ? 0 : (100 * mHitCount / lookups)) + "%"
+                + " demotions=" + mDemotionCount
+                + " evictions=" + mEvictionCount
+                + " trims=" + mTrimCount);
+    }
+}
@@ -98,6 +98,7 @@ import com.kairos.launcher.dragndrop.PinItemDragListener;
 import com.kairos.launcher.dynamicui.ExtractedColors;
 import com.kairos.launcher.folder.Folder;
 import com.kairos.launcher.folder.FolderIcon;
+import com.kairos.launcher.graphics.LauncherIcons;
 import com.kairos.launcher.keyboard.CustomActionsPopup;
 import com.kairos.launcher.keyboard.ViewGroupFocusHelper;
 import com.kairos.launcher.logging.FileLog;
@@ -940,12 +941,14 @@ public class Launcher extends BaseActivity
         }
 
         NotificationListener.removeNotificationsChangedListener();
+        LauncherAppState.getInstance(this).getWidgetCache().setLauncherVisible(false);
     }
 
     @Override
     protected void onStart() {
         super.onStart();
         FirstFrameAnimatorHelper.setIsVisible(true);
+        LauncherAppState.getInstance(this).getWidgetCache().setLauncherVisible(true);
 
         if (mLauncherCallbacks != null) {
             mLauncherCallbacks.onStart();
@@ -2481,6 +2484,12 @@ public class Launcher extends BaseActivity
         }
         boolean success = startActivitySafely(v, intent, item);
         getUserEventDispatcher().logAppLaunch(v, intent); // TODO for discovered apps b/35802115
+        if (success && item.itemType == LauncherSettings.Favorites.ITEM_TYPE_APPLICATION
+                && item.getTargetComponent() != null) {
+            LauncherAppState app = LauncherAppState.getInstance(this);
+            app.getLaunchCounts().onAppLaunched(item.getTargetComponent(), item.user);
+            app.getPredictionEngine().onAppLaunched(item.getTargetComponent(), item.user);
+        }
 
         if (success && v instanceof BubbleTextView) {
             mWaitingForResume = (BubbleTextView) v;
@@ -2874,10 +2883,10 @@ public class Launcher extends BaseActivity
             // The widget preview db can result in holding onto over
             // 3MB of memory for caching which isn't necessary.
             SQLiteDatabase.releaseMemory();
-
-            // This clears all widget bitmaps from the widget tray
-            // TODO(hyunyoungs)
         }
+        mIconCache.onTrimMemory(level);
+        LauncherIcons.onTrimMemory(level);
+        LauncherAppState.getInstance(this).getWidgetCache().onTrimMemory(level);
         if (mLauncherCallbacks != null) {
             mLauncherCallbacks.onTrimMemory(level);
         }
@@ -2983,6 +2992,7 @@ public class Launcher extends BaseActivity
         if (resetPageToZero) {
             mWidgetsView.scrollToTop();
         }
+        mWidgetsView.onTrayShown();
         showAppsOrWidgets(State.WIDGETS, animated, false);
 
         mWidgetsView.post(new Runnable() {
@@ -3105,12 +3115,16 @@ public class Launcher extends BaseActivity
      * resumed.
      */
     public void tryAndUpdatePredictedApps() {
+        List<ComponentKey> apps = null;
         if (mLauncherCallbacks != null) {
-            List<ComponentKey> apps = mLauncherCallbacks.getPredictedApps();
-            if (apps != null) {
-                mAppsView.setPredictedApps(apps);
-                getUserEventDispatcher().setPredictedApps(apps);
-            }
+            apps = mLauncherCallbacks.getPredictedApps();
+        }
+        if (apps == null && FeatureFlags.LAUNCHER3_APP_PREDICTIONS) {
+            apps = LauncherAppState.getInstance(this).getPredictionEngine().getPredictedApps();
+        }
+        if (apps != null) {
+            mAppsView.setPredictedApps(apps);
+            getUserEventDispatcher().setPredictedApps(apps);
         }
     }
 
@@ -4044,6 +4058,10 @@ public class Launcher extends BaseActivity
         writer.print(prefix + "\tmWorkspaceLoading=" + mWorkspaceLoading);
         writer.print(" mPendingRequestArgs=" + mPendingRequestArgs);
         writer.println(" mPendingActivityResult=" + mPendingActivityResult);
+        if (mAppsView != null) {
+            mAppsView.dump(prefix + "\t", writer);
+        }
+        LauncherAppState.getInstance(this).getPredictionEngine().dump(prefix + "\t", writer);
 
         mModel.dumpState(prefix, fd, writer, args);
 
@@ -23,6 +23,8 @@ import android.content.IntentFilter;
 import android.os.Looper;
 import android.util.Log;
 
+import com.kairos.launcher.allapps.AppLaunchCounts;
+import com.kairos.launcher.allapps.AppPredictionEngine;
 import com.kairos.launcher.compat.LauncherAppsCompat;
 import com.kairos.launcher.compat.PackageInstallerCompat;
 import com.kairos.launcher.compat.UserManagerCompat;
@@ -53,6 +55,8 @@ public class LauncherAppState {
     private final LauncherModel mModel;
     private final IconCache mIconCache;
     private final WidgetPreviewLoader mWidgetCache;
+    private final AppLaunchCounts mLaunchCounts;
+    private final AppPredictionEngine mPredictionEngine;
     private final InvariantDeviceProfile mInvariantDeviceProfile;
 
 
@@ -100,6 +104,9 @@ public class LauncherAppState {
         mInvariantDeviceProfile = new InvariantDeviceProfile(mContext);
         mIconCache = new IconCache(mContext, mInvariantDeviceProfile);
         mWidgetCache = new WidgetPreviewLoader(mContext, mIconCache);
+        mLaunchCounts = new AppLaunchCounts(mContext);
+        mPredictionEngine = new AppPredictionEngine(mContext);
+        mPredictionEngine.preload();
 
         mModel = new LauncherModel(this, mIconCache,
                 Utilities.getOverrideObject(AppFilter.class, mContext, R.string.app_filter_class));
@@ -156,6 +163,14 @@ public class LauncherAppState {
         return mWidgetCache;
     }
 
+    public AppLaunchCounts getLaunchCounts() {
+        return mLaunchCounts;
+    }
+
+    public AppPredictionEngine getPredictionEngine() {
+        return mPredictionEngine;
+    }
+
     public InvariantDeviceProfile getInvariantDeviceProfile() {
         return mInvariantDeviceProfile;
     }
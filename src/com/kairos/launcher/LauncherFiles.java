@@ -29,6 +29,8 @@ public class LauncherFiles {
     public static final String MANAGED_USER_PREFERENCES_KEY = "com.android.launcher3.managedusers.prefs";
     // This preference file is not backed up to cloud.
     public static final String DEVICE_PREFERENCES_KEY = "com.android.launcher3.device.prefs";
+    public static final String APP_LAUNCH_COUNTS_PREFERENCES_KEY =
+            "com.android.launcher3.launchcounts.prefs";
 
     public static final String WIDGET_PREVIEWS_DB = "widgetpreviews.db";
     public static final String APP_ICONS_DB = "app_icons.db";
@@ -39,5 +41,6 @@ public class LauncherFiles {
             WIDGET_PREVIEWS_DB,
             MANAGED_USER_PREFERENCES_KEY + XML,
             DEVICE_PREFERENCES_KEY + XML,
+            APP_LAUNCH_COUNTS_PREFERENCES_KEY + XML,
             APP_ICONS_DB));
 }
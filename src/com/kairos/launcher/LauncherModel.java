@@ -57,6 +57,7 @@ import com.kairos.launcher.model.CacheDataUpdatedTask;
 import com.kairos.launcher.model.ExtendedModelTask;
 import com.kairos.launcher.model.GridSizeMigrationTask;
 import com.kairos.launcher.model.LoaderCursor;
+import com.kairos.launcher.model.LoaderPhaseLog;
 import com.kairos.launcher.model.ModelWriter;
 import com.kairos.launcher.model.PackageInstallStateChangedTask;
 import com.kairos.launcher.model.PackageItemInfo;
@@ -93,8 +94,11 @@ import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.Callable;
 import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.Executor;
+import java.util.concurrent.FutureTask;
 
 /**--------------------------------------------------------------
  * TEAM KAIROS :: DEV CARLOS :: CLASS SYNOPSIS
@@ -183,6 +187,9 @@ public class LauncherModel extends BroadcastReceiver
 
     private final IconCache mIconCache;
 
+    // Timings of the recent loader runs
+    @Thunk final LoaderPhaseLog mLoaderPhaseLog = new LoaderPhaseLog();
+
     private final LauncherAppsCompat mLauncherApps;
     private final UserManagerCompat mUserManager;
 
@@ -596,6 +603,34 @@ public class LauncherModel extends BroadcastReceiver
                 screensUri, null, null, null, LauncherSettings.WorkspaceScreens.SCREEN_RANK));
     }
 
+    /**
+     * Work done by a phase of the {@link LoaderTask} on a background thread.
+     */
+    private interface PhaseCallable<T> {
+        T call(LoaderPhaseLog.Phase phase);
+    }
+
+    /**
+     * Runs a task on the main thread the second time it is run: once by the end of the bind of
+     * the workspace snapshot, and once by the loader when the snapshot is reconciled with the
+     * loaded workspace, in any order. Only used on the main thread.
+     */
+    private static class FinishBindingGate implements Runnable {
+        private final Runnable mTask;
+        private int mPendingCount = 2;
+
+        FinishBindingGate(Runnable task) {
+            mTask = task;
+        }
+
+        @Override
+        public void run() {
+            if (--mPendingCount == 0) {
+                mTask.run();
+            }
+        }
+    }
+
     /**
      * Runnable for the thread that loads the contents of the launcher:
      *   - workspace icons
@@ -611,6 +646,13 @@ public class LauncherModel extends BroadcastReceiver
         private boolean mStopped;
         @Thunk boolean mLoadAndBindStepFinished;
 
+        @Thunk int mRunId;
+        // Phases running on background threads, cancelled when the loader is stopped.
+        private final ArrayList<FutureTask<?>> mBackgroundPhases = new ArrayList<>();
+        // Finishes the bind of the workspace snapshot, once it is reconciled with the loaded
+        // workspace.
+        private FinishBindingGate mFinishBindingGate;
+
         LoaderTask(Context context, int pageToBindFirst) {
             mContext = context;
             mPageToBindFirst = pageToBindFirst;
@@ -682,7 +724,7 @@ public class LauncherModel extends BroadcastReceiver
 
             // Divide the set of loaded items into those that we are binding synchronously, and
             // everything else that is to be bound normally (asynchronously).
-            bindWorkspace(synchronousBindPage);
+            bindWorkspace(synchronousBindPage, false /* waitForReconcile */);
             // XXX: For now, continue posting the binding of AllApps as there are other issues that
             //      arise from that.
             onlyBindAllApps();
@@ -705,52 +747,168 @@ public class LauncherModel extends BroadcastReceiver
                 }
                 mIsLoaderTaskRunning = true;
             }
+            mRunId = mLoaderPhaseLog.startRun();
 
+            LoaderPhaseLog.Phase phase = null;
             try {
-                if (DEBUG_LOADERS) Log.d(TAG, "step 1.1: loading workspace");
                 // Set to false in bindWorkspace()
                 mIsLoadingAndBindingWorkspace = true;
+
+                if (DEBUG_LOADERS) Log.d(TAG, "step 1.0: restoring workspace snapshot");
+                phase = mLoaderPhaseLog.begin(mRunId, "restore snapshot");
+                WorkspaceSnapshot snapshot = WorkspaceSnapshot.restore(mContext, sBgDataModel);
+                phase.setItemCount(snapshot == null ? 0 : snapshot.getItemCount());
+                phase.done();
+                long firstScreenId = INVALID_SCREEN_ID;
+                if (snapshot != null) {
+                    // Bind the snapshot while the workspace is being loaded. The workspace stays
+                    // locked until the loaded items are reconciled with the snapshot below, so
+                    // that the user can't edit the items which are being replaced.
+                    firstScreenId = bindWorkspace(mPageToBindFirst, true /* waitForReconcile */);
+                }
+
+                verifyNotStopped();
+                if (DEBUG_LOADERS) Log.d(TAG, "step 1.1: loading workspace");
+                phase = mLoaderPhaseLog.begin(mRunId, "load workspace");
                 loadWorkspace();
+                phase.setItemCount(sBgDataModel.itemsIdMap.size());
+                phase.done();
 
                 verifyNotStopped();
-                if (DEBUG_LOADERS) Log.d(TAG, "step 1.2: bind workspace workspace");
-                bindWorkspace(mPageToBindFirst);
+                final Context context = mContext;
+                final WorkspaceSnapshot loaded = WorkspaceSnapshot.capture(context, sBgDataModel);
+                // Snapshot whose icon atlas needs to be written, once the workspace is bound.
+                final WorkspaceSnapshot atlasSnapshot;
+                FutureTask<Void> snapshotWrite = null;
+                if (snapshot != null && snapshot.hasSameItems(loaded)) {
+                    if (DEBUG_LOADERS) Log.d(TAG, "step 1.2: workspace snapshot is up to date");
+                    phase = mLoaderPhaseLog.begin(mRunId, "bind workspace (snapshot)");
+                    // Keep the instances which are already bound.
+                    snapshot.adoptItems(sBgDataModel);
+                    atlasSnapshot = snapshot.getAtlasScreenId() != firstScreenId ? snapshot : null;
+                    if (mFinishBindingGate != null) {
+                        runOnMainThread(mFinishBindingGate);
+                    }
+                } else {
+                    // The bind of the snapshot is never finished, it is replaced by this one.
+                    if (DEBUG_LOADERS) Log.d(TAG, "step 1.2: bind workspace workspace");
+                    phase = mLoaderPhaseLog.begin(mRunId, "bind workspace");
+                    firstScreenId = bindWorkspace(mPageToBindFirst, false /* waitForReconcile */);
+                    atlasSnapshot = loaded;
+
+                    snapshotWrite = startBackgroundPhase("write snapshot",
+                            new PhaseCallable<Void>() {
+                                @Override
+                                public Void call(LoaderPhaseLog.Phase phase) {
+                                    if (loaded != null) {
+                                        loaded.write(context);
+                                        phase.setItemCount(loaded.getItemCount());
+                                    } else {
+                                        WorkspaceSnapshot.delete(context);
+                                    }
+                                    return null;
+                                }
+                            });
+                }
 
                 // Take a break
                 if (DEBUG_LOADERS) Log.d(TAG, "step 1 completed, wait for idle");
                 waitForIdle();
+                phase.done();
                 verifyNotStopped();
 
+                FutureTask<Void> atlasWrite = null;
+                if (atlasSnapshot != null) {
+                    // Regenerate the icons of the page which was bound first, now that the
+                    // binding is complete.
+                    final long atlasScreenId = firstScreenId;
+                    atlasWrite = startBackgroundPhase("write icon atlas",
+                            new PhaseCallable<Void>() {
+                                @Override
+                                public Void call(LoaderPhaseLog.Phase phase) {
+                                    atlasSnapshot.writeIconAtlas(context, atlasScreenId);
+                                    return null;
+                                }
+                            });
+                }
+
+                // The deep shortcuts and widgets only depend on the system state, query them
+                // while the apps are being loaded. They are applied to the model in their step.
+                FutureTask<HashMap<UserHandle, List<ShortcutInfoCompat>>> shortcutsQuery =
+                        startBackgroundPhase("query deep shortcuts",
+                                new PhaseCallable<HashMap<UserHandle, List<ShortcutInfoCompat>>>() {
+                                    @Override
+                                    public HashMap<UserHandle, List<ShortcutInfoCompat>> call(
+                                            LoaderPhaseLog.Phase phase) {
+                                        return queryDeepShortcuts(context, phase);
+                                    }
+                                });
+                FutureTask<WidgetsModel.QueryResult> widgetsQuery =
+                        startBackgroundPhase("query widgets",
+                                new PhaseCallable<WidgetsModel.QueryResult>() {
+                                    @Override
+                                    public WidgetsModel.QueryResult call(
+                                            LoaderPhaseLog.Phase phase) {
+                                        WidgetsModel.QueryResult result = WidgetsModel
+                                                .queryWidgetsAndShortcuts(context, null);
+                                        phase.setItemCount(result.items.size());
+                                        return result;
+                                    }
+                                });
+
                 // second step
                 if (DEBUG_LOADERS) Log.d(TAG, "step 2.1: loading all apps");
+                phase = mLoaderPhaseLog.begin(mRunId, "load all apps");
                 loadAllApps();
+                phase.setItemCount(mBgAllAppsList.data.size());
+                phase.done();
 
                 verifyNotStopped();
                 if (DEBUG_LOADERS) Log.d(TAG, "step 2.2: Update icon cache");
-                updateIconCache();
+                phase = mLoaderPhaseLog.begin(mRunId, "validate icon db");
+                phase.setItemCount(updateIconCache());
+                phase.done();
 
                 // Take a break
                 if (DEBUG_LOADERS) Log.d(TAG, "step 2 completed, wait for idle");
+                phase = mLoaderPhaseLog.begin(mRunId, "bind all apps");
                 waitForIdle();
+                phase.done();
                 verifyNotStopped();
 
                 // third step
                 if (DEBUG_LOADERS) Log.d(TAG, "step 3.1: loading deep shortcuts");
-                loadDeepShortcuts();
+                loadDeepShortcuts(awaitBackgroundPhase(shortcutsQuery));
 
                 verifyNotStopped();
                 if (DEBUG_LOADERS) Log.d(TAG, "step 3.2: bind deep shortcuts");
+                phase = mLoaderPhaseLog.begin(mRunId, "bind deep shortcuts");
                 bindDeepShortcuts();
 
                 // Take a break
                 if (DEBUG_LOADERS) Log.d(TAG, "step 3 completed, wait for idle");
                 waitForIdle();
+                phase.done();
                 verifyNotStopped();
 
                 // fourth step
                 if (DEBUG_LOADERS) Log.d(TAG, "step 4.1: loading widgets");
-                refreshAndBindWidgetsAndShortcuts(getCallback(), false /* bindFirst */,
-                        null /* packageUser */);
+                WidgetsModel.QueryResult widgets = awaitBackgroundPhase(widgetsQuery);
+                phase = mLoaderPhaseLog.begin(mRunId, "bind widgets");
+                ArrayList<WidgetItem> widgetItems = mBgWidgetsModel.update(
+                        mApp.getContext(), null /* packageUser */, widgets);
+                bindWidgetsModel(getCallback());
+                // update the Widget entries inside DB on the worker thread.
+                mApp.getWidgetCache().removeObsoletePreviews(widgetItems, null /* packageUser */);
+                mApp.getWidgetCache().schedulePreviewGeneration(widgetItems);
+                phase.done();
+
+                if (snapshotWrite != null) {
+                    awaitBackgroundPhase(snapshotWrite);
+                }
+                if (atlasWrite != null) {
+                    awaitBackgroundPhase(atlasWrite);
+                }
 
                 synchronized (mLock) {
                     // Everything loaded bind the data.
@@ -758,8 +916,16 @@ public class LauncherModel extends BroadcastReceiver
                     mHasLoaderCompletedOnce = true;
                 }
             } catch (CancellationException e) {
-              // Loader stopped, ignore
+                // Loader stopped, ignore
+                if (phase != null) {
+                    phase.cancel();
+                }
             } finally {
+                if (phase != null) {
+                    phase.end();
+                }
+                cancelBackgroundPhases();
+
                 // Clear out this reference, otherwise we end up holding it until all of the
                 // callback runnables are done.
                 mContext = null;
@@ -774,11 +940,75 @@ public class LauncherModel extends BroadcastReceiver
             }
         }
 
+        /**
+         * Runs {@param callable} on a background thread, as a phase of this loader run. It must
+         * not modify the model, its result is expected to be applied on the loader thread
+         * using {@link #awaitBackgroundPhase}.
+         */
+        private <T> FutureTask<T> startBackgroundPhase(final String name,
+                final PhaseCallable<T> callable) {
+            FutureTask<T> task = new FutureTask<>(new Callable<T>() {
+                @Override
+                public T call() throws Exception {
+                    LoaderPhaseLog.Phase phase = mLoaderPhaseLog.begin(mRunId, name);
+                    try {
+                        verifyNotStopped();
+                        T result = callable.call(phase);
+                        phase.done();
+                        return result;
+                    } catch (CancellationException e) {
+                        phase.cancel();
+                        throw e;
+                    } finally {
+                        phase.end();
+                    }
+                }
+            });
+            synchronized (LoaderTask.this) {
+                if (mStopped) {
+                    task.cancel(false);
+                } else {
+                    mBackgroundPhases.add(task);
+                }
+            }
+            Utilities.THREAD_POOL_EXECUTOR.execute(task);
+            return task;
+        }
+
+        /**
+         * Waits for a phase started with {@link #startBackgroundPhase} and returns its result.
+         * @throws CancellationException if the loader was stopped in the meantime.
+         */
+        private <T> T awaitBackgroundPhase(FutureTask<T> task) throws CancellationException {
+            try {
+                return task.get();
+            } catch (InterruptedException e) {
+                throw new CancellationException("Loader interrupted");
+            } catch (ExecutionException e) {
+                Throwable cause = e.getCause();
+                if (cause instanceof RuntimeException) {
+                    throw (RuntimeException) cause;
+                }
+                throw new RuntimeException(cause);
+            }
+        }
+
+        private void cancelBackgroundPhases() {
+            synchronized (LoaderTask.this) {
+                for (FutureTask<?> task : mBackgroundPhases) {
+                    // Phases check for the loader being stopped, no need to interrupt them.
+                    task.cancel(false);
+                }
+                mBackgroundPhases.clear();
+            }
+        }
+
         public void stopLocked() {
             synchronized (LoaderTask.this) {
                 mStopped = true;
                 this.notify();
             }
+            cancelBackgroundPhases();
         }
 
         /**
@@ -1492,8 +1722,11 @@ public class LauncherModel extends BroadcastReceiver
 
         /**
          * Binds all loaded data to actual views on the main thread.
+         * @param waitForReconcile if true, the bind is only finished, and the workspace unlocked,
+         *                         once {@link #mFinishBindingGate} is also run by the loader.
+         * @return the id of the screen bound first, or {@link #INVALID_SCREEN_ID}.
          */
-        private void bindWorkspace(int synchronizeBindPage) {
+        private long bindWorkspace(int synchronizeBindPage, boolean waitForReconcile) {
             final long t = SystemClock.uptimeMillis();
             Runnable r;
 
@@ -1503,7 +1736,7 @@ public class LauncherModel extends BroadcastReceiver
             if (oldCallbacks == null) {
                 // This launcher has exited and nobody bothered to tell us.  Just bail.
                 Log.w(TAG, "LoaderTask running with no launcher");
-                return;
+                return INVALID_SCREEN_ID;
             }
 
             // Save a copy of all the bg-thread collections
@@ -1611,7 +1844,13 @@ public class LauncherModel extends BroadcastReceiver
 
                 }
             };
-            deferredExecutor.execute(r);
+            if (waitForReconcile) {
+                mFinishBindingGate = new FinishBindingGate(r);
+                deferredExecutor.execute(mFinishBindingGate);
+            } else {
+                mFinishBindingGate = null;
+                deferredExecutor.execute(r);
+            }
 
             if (validFirstPage) {
                 r = new Runnable() {
@@ -1630,9 +1869,15 @@ public class LauncherModel extends BroadcastReceiver
                 };
                 runOnMainThread(r);
             }
+            return currentScreenId;
         }
 
-        private void updateIconCache() {
+        /**
+         * Validates the icon DB. This runs on the worker thread, like the other icon DB and
+         * icon cache updates, which it must not race with.
+         * @return The number of DB rows which were checked.
+         */
+        private int updateIconCache() {
             // Ignore packages which have a promise icon.
             HashSet<String> packagesToIgnore = new HashSet<>();
             synchronized (sBgDataModel) {
@@ -1650,7 +1895,7 @@ public class LauncherModel extends BroadcastReceiver
                     }
                 }
             }
-            mIconCache.updateDbIcons(packagesToIgnore);
+            return mIconCache.updateDbIcons(packagesToIgnore);
         }
 
         private void onlyBindAllApps() {
@@ -1751,6 +1996,18 @@ public class LauncherModel extends BroadcastReceiver
                     return;
                 }
                 boolean quietMode = mUserManager.isQuietModeEnabled(user);
+
+                // Read the cached icons for all the apps of this user in a few batched queries,
+                // instead of one query per app below.
+                ArrayList<ComponentName> components = new ArrayList<>(apps.size());
+                for (int i = 0; i < apps.size(); i++) {
+                    components.add(apps.get(i).getComponentName());
+                }
+                mIconCache.prefetchEntries(components, user, true /* useLowResIcon */);
+                // Icons missing from the DB (first boot, locale change) are rendered concurrently,
+                // the AllAppsList itself is still only updated on this thread.
+                mIconCache.renderMissingIcons(apps, user);
+
                 // Create the ApplicationInfos
                 for (int i = 0; i < apps.size(); i++) {
                     LauncherActivityInfo app = apps.get(i);
@@ -1791,17 +2048,39 @@ public class LauncherModel extends BroadcastReceiver
             }
         }
 
-        private void loadDeepShortcuts() {
+        /**
+         * Returns the deep shortcuts of all the unlocked users, or null if the launcher does not
+         * have the permission to access them. Can be called on any thread.
+         */
+        private HashMap<UserHandle, List<ShortcutInfoCompat>> queryDeepShortcuts(
+                Context context, LoaderPhaseLog.Phase phase) {
+            DeepShortcutManager shortcutManager = DeepShortcutManager.getInstance(context);
+            if (!shortcutManager.hasHostPermission()) {
+                return null;
+            }
+            HashMap<UserHandle, List<ShortcutInfoCompat>> result = new HashMap<>();
+            int count = 0;
+            for (UserHandle user : mUserManager.getUserProfiles()) {
+                verifyNotStopped();
+                if (mUserManager.isUserUnlocked(user)) {
+                    List<ShortcutInfoCompat> shortcuts =
+                            shortcutManager.queryForAllShortcuts(user);
+                    result.put(user, shortcuts);
+                    count += shortcuts.size();
+                }
+            }
+            phase.setItemCount(count);
+            return result;
+        }
+
+        private void loadDeepShortcuts(
+                @Nullable HashMap<UserHandle, List<ShortcutInfoCompat>> shortcuts) {
             sBgDataModel.deepShortcutMap.clear();
-            DeepShortcutManager shortcutManager = DeepShortcutManager.getInstance(mContext);
-            mHasShortcutHostPermission = shortcutManager.hasHostPermission();
+            mHasShortcutHostPermission = shortcuts != null;
             if (mHasShortcutHostPermission) {
-                for (UserHandle user : mUserManager.getUserProfiles()) {
-                    if (mUserManager.isUserUnlocked(user)) {
-                        List<ShortcutInfoCompat> shortcuts =
-                                shortcutManager.queryForAllShortcuts(user);
-                        sBgDataModel.updateDeepShortcutMap(null, user, shortcuts);
-                    }
+                for (Map.Entry<UserHandle, List<ShortcutInfoCompat>> entry
+                        : shortcuts.entrySet()) {
+                    sBgDataModel.updateDeepShortcutMap(null, entry.getKey(), entry.getValue());
                 }
             }
         }
@@ -1968,6 +2247,7 @@ public class LauncherModel extends BroadcastReceiver
 
                 // update the Widget entries inside DB on the worker thread.
                 mApp.getWidgetCache().removeObsoletePreviews(widgets, packageUser);
+                mApp.getWidgetCache().schedulePreviewGeneration(widgets);
             }
         });
     }
@@ -1986,6 +2266,13 @@ public class LauncherModel extends BroadcastReceiver
             }
         }
         sBgDataModel.dump(prefix, fd, writer, args);
+        if (args.length > 0 && TextUtils.equals(args[0], "--proto")) {
+            // Proto output is written directly to the fd, don't mix text with it.
+            return;
+        }
+        mIconCache.dump(prefix, writer);
+        mApp.getWidgetCache().dump(prefix, writer);
+        mLoaderPhaseLog.dump(prefix, writer);
     }
 
     public Callbacks getCallback() {
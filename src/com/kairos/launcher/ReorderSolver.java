@@ -0,0 +1,961 @@
+/*
+ * Copyright (C) 2017 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.kairos.launcher;
+
+import android.graphics.Rect;
+
+import com.kairos.launcher.util.CellAndSpan;
+import com.kairos.launcher.util.GridOccupancy;
+
+import java.util.Arrays;
+
+/**--------------------------------------------------------------
+ * TEAM KAIROS :: DEV CARLOS :: CLASS SYNOPSIS
+ * Copyright (c) 2017 KAIROS
+ *
+ * Finds how the items of a {@link CellLayout} can be moved out of the way of a dragged item.
+ * Items are referred to by their index among the children of the layout, and their positions
+ * are kept in int arrays of an {@link ItemConfiguration}.
+ *
+ * The solver runs on every drag over, so all its state is allocated once per grid size and
+ * reused: once the arrays have grown to the number of items, solving does not allocate.
+ *
+ * Consecutive drag overs mostly target the same cells, so the last rearrangements are kept and
+ * reused as long as the occupancy they were computed from has the same generation and the items
+ * are at the same positions.
+ ----------------------------------------------------------------*/
+class ReorderSolver {
+
+    static final int LEFT = 1 << 0;
+    static final int TOP = 1 << 1;
+    static final int RIGHT = 1 << 2;
+    static final int BOTTOM = 1 << 3;
+
+    // Number of rearrangements kept, a few more than the spans tried for a couple of cells
+    private static final int CACHE_SIZE = 16;
+
+    private final int mCountX;
+    private final int mCountY;
+
+    // Occupancy of the cells while a solution is being searched.
+    private final GridOccupancy mTmpOccupied;
+    // Occupancy of a block of items relative to its top left cell, only its top left part is used.
+    private final GridOccupancy mBlockOccupied;
+
+    private final Rect mOccupiedRect = new Rect();
+    private final Rect mBoundingRect = new Rect();
+    private final int[] mTempLocation = new int[2];
+    private final int[] mTmpPoint = new int[2];
+
+    // Items intersecting the drop location
+    private int[] mIntersectingItems = new int[0];
+    private int mIntersectingCount;
+
+    // The cluster of items being pushed, see pushItemsToTempLocation.
+    private boolean[] mInCluster = new boolean[0];
+    private int[] mClusterItems = new int[0];
+    private int mClusterCount;
+    private final Rect mClusterRect = new Rect();
+    private final int[] mLeftEdge;
+    private final int[] mRightEdge;
+    private final int[] mTopEdge;
+    private final int[] mBottomEdge;
+    private int mDirtyEdges;
+
+    // The last rearrangements, replaced in a round robin
+    private final CachedRearrangement[] mCache = new CachedRearrangement[CACHE_SIZE];
+    private int mCacheSize;
+    private int mNextCacheEntry;
+    private GridOccupancy mCachedOccupied;
+    private int mCachedGeneration;
+    private int mCacheHitCount;
+    private int mCacheMissCount;
+    // Whether the last solve set the intersecting items of the solution
+    private boolean mIntersectingItemsSet;
+
+    ReorderSolver(int countX, int countY) {
+        mCountX = countX;
+        mCountY = countY;
+        mTmpOccupied = new GridOccupancy(countX, countY);
+        mBlockOccupied = new GridOccupancy(countX, countY);
+        mLeftEdge = new int[countY];
+        mRightEdge = new int[countY];
+        mTopEdge = new int[countX];
+        mBottomEdge = new int[countX];
+    }
+
+    /**
+     * Sets the occupancy from which the next solution is searched.
+     */
+    void setOccupied(GridOccupancy occupied) {
+        occupied.copyTo(mTmpOccupied);
+        if (occupied != mCachedOccupied || occupied.getGeneration() != mCachedGeneration) {
+            clearCache();
+            mCachedOccupied = occupied;
+            mCachedGeneration = occupied.getGeneration();
+        }
+    }
+
+    /**
+     * Forgets the cached rearrangements, typically at the end of a drag.
+     */
+    void clearCache() {
+        mCacheSize = 0;
+        mNextCacheEntry = 0;
+        mCachedOccupied = null;
+    }
+
+    int getCacheHitCount() {
+        return mCacheHitCount;
+    }
+
+    int getCacheMissCount() {
+        return mCacheMissCount;
+    }
+
+    /**
+     * Tries to move the items of {@param solution} out of the way of the region
+     * (cellX, cellY, spanX, spanY), favoring the given direction. The items are moved in place.
+     *
+     * @param dragItem The index of the dragged item, which is moved to the region, or -1.
+     * @return whether a rearrangement was found.
+     */
+    boolean rearrangementExists(int cellX, int cellY, int spanX, int spanY, int[] direction,
+            int dragItem, ItemConfiguration solution) {
+        // Return early if get invalid cell positions
+        if (cellX < 0 || cellY < 0) return false;
+
+        if (mCachedOccupied == null) {
+            return solve(cellX, cellY, spanX, spanY, direction, dragItem, solution);
+        }
+        for (int i = 0; i < mCacheSize; i++) {
+            CachedRearrangement cached = mCache[i];
+            if (cached.matches(cellX, cellY, spanX, spanY, direction, dragItem, solution)) {
+                mCacheHitCount++;
+                return cached.restore(direction, solution);
+            }
+        }
+        mCacheMissCount++;
+
+        CachedRearrangement entry = mCache[mNextCacheEntry];
+        if (entry == null) {
+            entry = mCache[mNextCacheEntry] = new CachedRearrangement();
+        }
+        mNextCacheEntry = (mNextCacheEntry + 1) % CACHE_SIZE;
+        if (mCacheSize < CACHE_SIZE) {
+            mCacheSize++;
+        }
+
+        entry.saveInput(cellX, cellY, spanX, spanY, direction, dragItem, solution);
+        mIntersectingItemsSet = false;
+        boolean result = solve(cellX, cellY, spanX, spanY, direction, dragItem, solution);
+        entry.saveOutput(result, direction, mIntersectingItemsSet, solution);
+        return result;
+    }
+
+    private boolean solve(int cellX, int cellY, int spanX, int spanY, int[] direction,
+            int dragItem, ItemConfiguration solution) {
+        ensureCapacity(solution.count);
+        mIntersectingCount = 0;
+        mOccupiedRect.set(cellX, cellY, cellX + spanX, cellY + spanY);
+
+        // Mark the desired location of the view currently being dragged.
+        if (dragItem >= 0 && dragItem < solution.count) {
+            solution.itemX[dragItem] = cellX;
+            solution.itemY[dragItem] = cellY;
+        }
+        for (int i = 0; i < solution.count; i++) {
+            if (i == dragItem) continue;
+            if (intersects(solution, i, mOccupiedRect)) {
+                if (!solution.canReorder[i]) {
+                    return false;
+                }
+                mIntersectingItems[mIntersectingCount++] = i;
+            }
+        }
+
+        solution.setIntersectingItems(mIntersectingItems, mIntersectingCount);
+        mIntersectingItemsSet = true;
+
+        // First we try to find a solution which respects the push mechanic. That is,
+        // we try to find a solution such that no displaced item travels through another item
+        // without also displacing that item.
+        if (attemptPushInDirection(direction, dragItem, solution)) {
+            return true;
+        }
+
+        // Next we try moving the views as a block, but without requiring the push mechanic.
+        if (addItemsToTempLocation(direction, solution)) {
+            return true;
+        }
+
+        // Ok, they couldn't move as a block, let's move them individually
+        for (int i = 0; i < mIntersectingCount; i++) {
+            if (!addItemToTempLocation(mIntersectingItems[i], direction, solution)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // This method tries to find a reordering solution which satisfies the push mechanic by trying
+    // to push items in each of the cardinal directions, in an order based on the direction vector
+    // passed.
+    private boolean attemptPushInDirection(int[] direction, int dragItem,
+            ItemConfiguration solution) {
+        if ((Math.abs(direction[0]) + Math.abs(direction[1])) > 1) {
+            // If the direction vector has two non-zero components, we try pushing
+            // separately in each of the components.
+            int temp = direction[1];
+            direction[1] = 0;
+
+            if (pushItemsToTempLocation(direction, dragItem, solution)) {
+                return true;
+            }
+            direction[1] = temp;
+            temp = direction[0];
+            direction[0] = 0;
+
+            if (pushItemsToTempLocation(direction, dragItem, solution)) {
+                return true;
+            }
+            // Revert the direction
+            direction[0] = temp;
+
+            // Now we try pushing in each component of the opposite direction
+            direction[0] *= -1;
+            direction[1] *= -1;
+            temp = direction[1];
+            direction[1] = 0;
+            if (pushItemsToTempLocation(direction, dragItem, solution)) {
+                return true;
+            }
+
+            direction[1] = temp;
+            temp = direction[0];
+            direction[0] = 0;
+            if (pushItemsToTempLocation(direction, dragItem, solution)) {
+                return true;
+            }
+            // revert the direction
+            direction[0] = temp;
+            direction[0] *= -1;
+            direction[1] *= -1;
+
+        } else {
+            // If the direction vector has a single non-zero component, we push first in the
+            // direction of the vector
+            if (pushItemsToTempLocation(direction, dragItem, solution)) {
+                return true;
+            }
+            // Then we try the opposite direction
+            direction[0] *= -1;
+            direction[1] *= -1;
+            if (pushItemsToTempLocation(direction, dragItem, solution)) {
+                return true;
+            }
+            // Switch the direction back
+            direction[0] *= -1;
+            direction[1] *= -1;
+
+            // If we have failed to find a push solution with the above, then we try
+            // to find a solution by pushing along the perpendicular axis.
+
+            // Swap the components
+            int temp = direction[1];
+            direction[1] = direction[0];
+            direction[0] = temp;
+            if (pushItemsToTempLocation(direction, dragItem, solution)) {
+                return true;
+            }
+
+            // Then we try the opposite direction
+            direction[0] *= -1;
+            direction[1] *= -1;
+            if (pushItemsToTempLocation(direction, dragItem, solution)) {
+                return true;
+            }
+            // Switch the direction back
+            direction[0] *= -1;
+            direction[1] *= -1;
+
+            // Swap the components back
+            temp = direction[1];
+            direction[1] = direction[0];
+            direction[0] = temp;
+        }
+        return false;
+    }
+
+    /**
+     * Pushes the items intersecting the drop location, along with the items they run into, in
+     * the given direction until they are out of the way. The pushed items form a cluster whose
+     * edges define a fine-grained boundary around them -- like a more precise version of a
+     * bounding box.
+     */
+    private boolean pushItemsToTempLocation(int[] direction, int dragItem,
+            ItemConfiguration currentState) {
+        startCluster();
+        Rect clusterRect = getClusterBoundingRect(currentState);
+        Rect rectOccupiedByPotentialDrop = mOccupiedRect;
+        int whichEdge;
+        int pushDistance;
+        boolean fail = false;
+
+        // Determine the edge of the cluster that will be leading the push and how far
+        // the cluster must be shifted.
+        if (direction[0] < 0) {
+            whichEdge = LEFT;
+            pushDistance = clusterRect.right - rectOccupiedByPotentialDrop.left;
+        } else if (direction[0] > 0) {
+            whichEdge = RIGHT;
+            pushDistance = rectOccupiedByPotentialDrop.right - clusterRect.left;
+        } else if (direction[1] < 0) {
+            whichEdge = TOP;
+            pushDistance = clusterRect.bottom - rectOccupiedByPotentialDrop.top;
+        } else {
+            whichEdge = BOTTOM;
+            pushDistance = rectOccupiedByPotentialDrop.bottom - clusterRect.top;
+        }
+
+        // Break early for invalid push distance.
+        if (pushDistance <= 0) {
+            return false;
+        }
+
+        // Mark the occupied state as false for the group of views we want to move.
+        for (int i = 0; i < mIntersectingCount; i++) {
+            markItem(currentState, mIntersectingItems[i], false);
+        }
+
+        // We save the current configuration -- if we fail to find a solution we will revert
+        // to the initial state. The process of finding a solution modifies the configuration
+        // in place, hence the need for revert in the failure case.
+        currentState.save();
+
+        // The pushing algorithm is simplified by considering the views in the order in which
+        // they would be pushed by the cluster. For example, if the cluster is leading with its
+        // left edge, we consider sort the views by their right edge, from right to left.
+        sortForEdgePush(currentState, whichEdge);
+
+        while (pushDistance > 0 && !fail) {
+            for (int i = 0; i < currentState.count; i++) {
+                int item = currentState.sortedItems[i];
+                // For each view that isn't in the cluster, we see if the leading edge of the
+                // cluster is contacting the edge of that view. If so, we add that view to the
+                // cluster.
+                if (!mInCluster[item] && item != dragItem) {
+                    if (isItemTouchingEdge(currentState, item, whichEdge)) {
+                        if (!currentState.canReorder[item]) {
+                            // The push solution includes the all apps button, this is not viable.
+                            fail = true;
+                            break;
+                        }
+                        addToCluster(item);
+
+                        // Adding view to cluster, mark it as not occupied.
+                        markItem(currentState, item, false);
+                    }
+                }
+            }
+            pushDistance--;
+
+            // The cluster has been completed, now we move the whole thing over in the appropriate
+            // direction.
+            shiftCluster(currentState, whichEdge, 1);
+        }
+
+        boolean foundSolution = false;
+        clusterRect = getClusterBoundingRect(currentState);
+
+        // Due to the nature of the algorithm, the only check required to verify a valid solution
+        // is to ensure that completed shifted cluster lies completely within the cell layout.
+        if (!fail && clusterRect.left >= 0 && clusterRect.right <= mCountX && clusterRect.top >= 0
+                && clusterRect.bottom <= mCountY) {
+            foundSolution = true;
+        } else {
+            currentState.restore();
+        }
+
+        // In either case, we set the occupied array as marked for the location of the views
+        for (int i = 0; i < mClusterCount; i++) {
+            markItem(currentState, mClusterItems[i], true);
+        }
+
+        return foundSolution;
+    }
+
+    private boolean addItemsToTempLocation(int[] direction, ItemConfiguration currentState) {
+        if (mIntersectingCount == 0) return true;
+
+        boolean success = false;
+        Rect boundingRect = mBoundingRect;
+        // We construct a rect which represents the entire group of views passed in
+        currentState.getBoundingRect(mIntersectingItems, mIntersectingCount, boundingRect);
+
+        // Mark the occupied state as false for the group of views we want to move.
+        for (int i = 0; i < mIntersectingCount; i++) {
+            markItem(currentState, mIntersectingItems[i], false);
+        }
+
+        GridOccupancy blockOccupied = mBlockOccupied;
+        blockOccupied.clear();
+        int top = boundingRect.top;
+        int left = boundingRect.left;
+        // We mark more precisely which parts of the bounding rect are truly occupied, allowing
+        // for interlocking.
+        for (int i = 0; i < mIntersectingCount; i++) {
+            int item = mIntersectingItems[i];
+            blockOccupied.markCells(currentState.itemX[item] - left,
+                    currentState.itemY[item] - top, currentState.itemSpanX[item],
+                    currentState.itemSpanY[item], true);
+        }
+
+        mTmpOccupied.markCells(mOccupiedRect, true);
+
+        findNearestArea(boundingRect.left, boundingRect.top, boundingRect.width(),
+                boundingRect.height(), direction, mTmpOccupied, blockOccupied, mTempLocation);
+
+        // If we successfuly found a location by pushing the block of views, we commit it
+        if (mTempLocation[0] >= 0 && mTempLocation[1] >= 0) {
+            int deltaX = mTempLocation[0] - boundingRect.left;
+            int deltaY = mTempLocation[1] - boundingRect.top;
+            for (int i = 0; i < mIntersectingCount; i++) {
+                int item = mIntersectingItems[i];
+                currentState.itemX[item] += deltaX;
+                currentState.itemY[item] += deltaY;
+            }
+            success = true;
+        }
+
+        // In either case, we set the occupied array as marked for the location of the views
+        for (int i = 0; i < mIntersectingCount; i++) {
+            markItem(currentState, mIntersectingItems[i], true);
+        }
+        return success;
+    }
+
+    private boolean addItemToTempLocation(int item, int[] direction,
+            ItemConfiguration currentState) {
+        boolean success = false;
+        markItem(currentState, item, false);
+        mTmpOccupied.markCells(mOccupiedRect, true);
+
+        findNearestArea(currentState.itemX[item], currentState.itemY[item],
+                currentState.itemSpanX[item], currentState.itemSpanY[item], direction,
+                mTmpOccupied, null, mTempLocation);
+
+        if (mTempLocation[0] >= 0 && mTempLocation[1] >= 0) {
+            currentState.itemX[item] = mTempLocation[0];
+            currentState.itemY[item] = mTempLocation[1];
+            success = true;
+        }
+        markItem(currentState, item, true);
+        return success;
+    }
+
+    /**
+     * Find a vacant area that will fit the given bounds nearest the requested
+     * cell location, and will also weigh in a suggested direction vector of the
+     * desired location. This method computers distance based on unit grid distances,
+     * not pixel distances.
+     *
+     * @param cellX The X cell nearest to which you want to search for a vacant area.
+     * @param cellY The Y cell nearest which you want to search for a vacant area.
+     * @param spanX Horizontal span of the object.
+     * @param spanY Vertical span of the object.
+     * @param direction The favored direction in which the views should move from x, y
+     * @param occupied The occupancy of the cells in the CellLayout
+     * @param blockOccupied The occupancy of the cells in the specified block (cellX, cellY, spanX,
+     *        spanY) relative to its top left cell, or null. This is used when try to move a
+     *        group of views.
+     * @param result Array in which to place the result
+     */
+    void findNearestArea(int cellX, int cellY, int spanX, int spanY, int[] direction,
+            GridOccupancy occupied, GridOccupancy blockOccupied, int[] result) {
+        // Keep track of best-scoring drop area
+        float bestDistance = Float.MAX_VALUE;
+        int bestDirectionScore = Integer.MIN_VALUE;
+
+        final int countX = mCountX;
+        final int countY = mCountY;
+
+        for (int y = 0; y < countY - (spanY - 1); y++) {
+            for (int x = 0; x < countX - (spanX - 1); x++) {
+                // First, let's see if this thing fits anywhere
+                if (blockOccupied == null) {
+                    x = occupied.nextVacantCell(x, y, spanX, spanY);
+                    if (x < 0) {
+                        break;
+                    }
+                } else if (!occupied.isRegionVacant(x, y, blockOccupied, spanX, spanY)) {
+                    continue;
+                }
+
+                float distance = (float) Math.hypot(x - cellX, y - cellY);
+                int[] curDirection = mTmpPoint;
+                computeDirectionVector(x - cellX, y - cellY, curDirection);
+                // The direction score is just the dot product of the two candidate direction
+                // and that passed in.
+                int curDirectionScore = direction[0] * curDirection[0] +
+                        direction[1] * curDirection[1];
+                if (Float.compare(distance,  bestDistance) < 0 ||
+                        (Float.compare(distance, bestDistance) == 0
+                                && curDirectionScore > bestDirectionScore)) {
+                    bestDistance = distance;
+                    bestDirectionScore = curDirectionScore;
+                    result[0] = x;
+                    result[1] = y;
+                }
+            }
+        }
+
+        // Return -1, -1 if no suitable location found
+        if (bestDistance == Float.MAX_VALUE) {
+            result[0] = -1;
+            result[1] = -1;
+        }
+    }
+
+    /*
+     * Returns a pair (x, y), where x,y are in {-1, 0, 1} corresponding to vector between
+     * the provided point and the provided cell
+     */
+    static void computeDirectionVector(float deltaX, float deltaY, int[] result) {
+        double angle = Math.atan(deltaY / deltaX);
+
+        result[0] = 0;
+        result[1] = 0;
+        if (Math.abs(Math.cos(angle)) > 0.5f) {
+            result[0] = (int) Math.signum(deltaX);
+        }
+        if (Math.abs(Math.sin(angle)) > 0.5f) {
+            result[1] = (int) Math.signum(deltaY);
+        }
+    }
+
+    private void ensureCapacity(int count) {
+        if (mIntersectingItems.length < count) {
+            mIntersectingItems = new int[count];
+            mInCluster = new boolean[count];
+            mClusterItems = new int[count];
+            mClusterCount = 0;
+        }
+    }
+
+    private void markItem(ItemConfiguration config, int item, boolean value) {
+        mTmpOccupied.markCells(config.itemX[item], config.itemY[item], config.itemSpanX[item],
+                config.itemSpanY[item], value);
+    }
+
+    private static boolean intersects(ItemConfiguration config, int item, Rect r) {
+        // Same as Rect.intersects
+        int x = config.itemX[item];
+        int y = config.itemY[item];
+        return r.left < x + config.itemSpanX[item] && x < r.right
+                && r.top < y + config.itemSpanY[item] && y < r.bottom;
+    }
+
+    /**
+     * Starts a new cluster made of the items intersecting the drop location.
+     */
+    private void startCluster() {
+        for (int i = 0; i < mClusterCount; i++) {
+            mInCluster[mClusterItems[i]] = false;
+        }
+        mClusterCount = 0;
+        for (int i = 0; i < mIntersectingCount; i++) {
+            addToCluster(mIntersectingItems[i]);
+        }
+        resetEdges();
+    }
+
+    private void addToCluster(int item) {
+        mInCluster[item] = true;
+        mClusterItems[mClusterCount++] = item;
+        resetEdges();
+    }
+
+    private void resetEdges() {
+        Arrays.fill(mTopEdge, -1);
+        Arrays.fill(mBottomEdge, -1);
+        Arrays.fill(mLeftEdge, -1);
+        Arrays.fill(mRightEdge, -1);
+        mDirtyEdges = LEFT | TOP | RIGHT | BOTTOM;
+    }
+
+    private Rect getClusterBoundingRect(ItemConfiguration config) {
+        config.getBoundingRect(mClusterItems, mClusterCount, mClusterRect);
+        return mClusterRect;
+    }
+
+    private void computeEdge(ItemConfiguration config, int which) {
+        for (int i = 0; i < mClusterCount; i++) {
+            int item = mClusterItems[i];
+            int cellX = config.itemX[item];
+            int cellY = config.itemY[item];
+            int spanX = config.itemSpanX[item];
+            int spanY = config.itemSpanY[item];
+            switch (which) {
+                case LEFT:
+                    for (int j = cellY; j < cellY + spanY; j++) {
+                        if (cellX < mLeftEdge[j] || mLeftEdge[j] < 0) {
+                            mLeftEdge[j] = cellX;
+                        }
+                    }
+                    break;
+                case RIGHT:
+                    int right = cellX + spanX;
+                    for (int j = cellY; j < cellY + spanY; j++) {
+                        if (right > mRightEdge[j]) {
+                            mRightEdge[j] = right;
+                        }
+                    }
+                    break;
+                case TOP:
+                    for (int j = cellX; j < cellX + spanX; j++) {
+                        if (cellY < mTopEdge[j] || mTopEdge[j] < 0) {
+                            mTopEdge[j] = cellY;
+                        }
+                    }
+                    break;
+                case BOTTOM:
+                    int bottom = cellY + spanY;
+                    for (int j = cellX; j < cellX + spanX; j++) {
+                        if (bottom > mBottomEdge[j]) {
+                            mBottomEdge[j] = bottom;
+                        }
+                    }
+                    break;
+            }
+        }
+    }
+
+    private boolean isItemTouchingEdge(ItemConfiguration config, int item, int whichEdge) {
+        if ((mDirtyEdges & whichEdge) == whichEdge) {
+            computeEdge(config, whichEdge);
+            mDirtyEdges &= ~whichEdge;
+        }
+
+        int cellX = config.itemX[item];
+        int cellY = config.itemY[item];
+        int spanX = config.itemSpanX[item];
+        int spanY = config.itemSpanY[item];
+        switch (whichEdge) {
+            case LEFT:
+                for (int i = cellY; i < cellY + spanY; i++) {
+                    if (mLeftEdge[i] == cellX + spanX) {
+                        return true;
+                    }
+                }
+                break;
+            case RIGHT:
+                for (int i = cellY; i < cellY + spanY; i++) {
+                    if (mRightEdge[i] == cellX) {
+                        return true;
+                    }
+                }
+                break;
+            case TOP:
+                for (int i = cellX; i < cellX + spanX; i++) {
+                    if (mTopEdge[i] == cellY + spanY) {
+                        return true;
+                    }
+                }
+                break;
+            case BOTTOM:
+                for (int i = cellX; i < cellX + spanX; i++) {
+                    if (mBottomEdge[i] == cellY) {
+                        return true;
+                    }
+                }
+                break;
+        }
+        return false;
+    }
+
+    private void shiftCluster(ItemConfiguration config, int whichEdge, int delta) {
+        for (int i = 0; i < mClusterCount; i++) {
+            int item = mClusterItems[i];
+            switch (whichEdge) {
+                case LEFT:
+                    config.itemX[item] -= delta;
+                    break;
+                case RIGHT:
+                    config.itemX[item] += delta;
+                    break;
+                case TOP:
+                    config.itemY[item] -= delta;
+                    break;
+                case BOTTOM:
+                default:
+                    config.itemY[item] += delta;
+                    break;
+            }
+        }
+        resetEdges();
+    }
+
+    /**
+     * Sorts the items in the order in which they are reached by the given edge of the cluster.
+     * This is an insertion sort: it is stable, like the sort of the previous pushes it refines,
+     * and doesn't allocate.
+     */
+    private static void sortForEdgePush(ItemConfiguration config, int edge) {
+        int[] items = config.sortedItems;
+        for (int i = 1; i < config.count; i++) {
+            int item = items[i];
+            int key = getEdgePushKey(config, item, edge);
+            int j = i - 1;
+            while (j >= 0 && getEdgePushKey(config, items[j], edge) > key) {
+                items[j + 1] = items[j];
+                j--;
+            }
+            items[j + 1] = item;
+        }
+    }
+
+    private static int getEdgePushKey(ItemConfiguration config, int item, int edge) {
+        switch (edge) {
+            case LEFT:
+                return -(config.itemX[item] + config.itemSpanX[item]);
+            case RIGHT:
+                return config.itemX[item];
+            case TOP:
+                return -(config.itemY[item] + config.itemSpanY[item]);
+            case BOTTOM:
+            default:
+                return config.itemY[item];
+        }
+    }
+
+    /**
+     * A rearrangement along with the configuration it was computed from, which is restored when
+     * the same rearrangement is searched from the same configuration.
+     */
+    private static class CachedRearrangement {
+        int cellX;
+        int cellY;
+        int spanX;
+        int spanY;
+        int directionX;
+        int directionY;
+        int dragItem;
+
+        // Configuration the rearrangement was computed from
+        int count;
+        int[] itemX = new int[0];
+        int[] itemY = new int[0];
+        int[] itemSpanX = new int[0];
+        int[] itemSpanY = new int[0];
+        int[] sortedItems = new int[0];
+        boolean[] canReorder = new boolean[0];
+
+        // The rearrangement
+        boolean result;
+        int resultDirectionX;
+        int resultDirectionY;
+        int[] resultX = new int[0];
+        int[] resultY = new int[0];
+        int[] resultSortedItems = new int[0];
+        boolean intersectingItemsSet;
+        boolean[] intersecting = new boolean[0];
+
+        boolean matches(int cellX, int cellY, int spanX, int spanY, int[] direction,
+                int dragItem, ItemConfiguration config) {
+            if (this.cellX != cellX || this.cellY != cellY || this.spanX != spanX
+                    || this.spanY != spanY || directionX != direction[0]
+                    || directionY != direction[1] || this.dragItem != dragItem
+                    || count != config.count) {
+                return false;
+            }
+            for (int i = 0; i < count; i++) {
+                if (itemX[i] != config.itemX[i] || itemY[i] != config.itemY[i]
+                        || itemSpanX[i] != config.itemSpanX[i]
+                        || itemSpanY[i] != config.itemSpanY[i]
+                        || canReorder[i] != config.canReorder[i]
+                        || sortedItems[i] != config.sortedItems[i]) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        void saveInput(int cellX, int cellY, int spanX, int spanY, int[] direction,
+                int dragItem, ItemConfiguration config) {
+            this.cellX = cellX;
+            this.cellY = cellY;
+            this.spanX = spanX;
+            this.spanY = spanY;
+            directionX = direction[0];
+            directionY = direction[1];
+            this.dragItem = dragItem;
+
+            count = config.count;
+            if (itemX.length < count) {
+                itemX = new int[count];
+                itemY = new int[count];
+                itemSpanX = new int[count];
+                itemSpanY = new int[count];
+                sortedItems = new int[count];
+                canReorder = new boolean[count];
+                resultX = new int[count];
+                resultY = new int[count];
+                resultSortedItems = new int[count];
+                intersecting = new boolean[count];
+            }
+            System.arraycopy(config.itemX, 0, itemX, 0, count);
+            System.arraycopy(config.itemY, 0, itemY, 0, count);
+            System.arraycopy(config.itemSpanX, 0, itemSpanX, 0, count);
+            System.arraycopy(config.itemSpanY, 0, itemSpanY, 0, count);
+            System.arraycopy(config.sortedItems, 0, sortedItems, 0, count);
+            System.arraycopy(config.canReorder, 0, canReorder, 0, count);
+        }
+
+        void saveOutput(boolean result, int[] direction, boolean intersectingItemsSet,
+                ItemConfiguration config) {
+            this.result = result;
+            resultDirectionX = direction[0];
+            resultDirectionY = direction[1];
+            System.arraycopy(config.itemX, 0, resultX, 0, count);
+            System.arraycopy(config.itemY, 0, resultY, 0, count);
+            System.arraycopy(config.sortedItems, 0, resultSortedItems, 0, count);
+            this.intersectingItemsSet = intersectingItemsSet;
+            if (intersectingItemsSet) {
+                System.arraycopy(config.mIntersecting, 0, intersecting, 0, count);
+            }
+        }
+
+        /**
+         * Applies the rearrangement to {@param config}, which {@link #matches} it.
+         */
+        boolean restore(int[] direction, ItemConfiguration config) {
+            direction[0] = resultDirectionX;
+            direction[1] = resultDirectionY;
+            System.arraycopy(resultX, 0, config.itemX, 0, count);
+            System.arraycopy(resultY, 0, config.itemY, 0, count);
+            System.arraycopy(resultSortedItems, 0, config.sortedItems, 0, count);
+            if (intersectingItemsSet) {
+                System.arraycopy(intersecting, 0, config.mIntersecting, 0, count);
+                config.mHasIntersectingItems = true;
+            }
+            return result;
+        }
+    }
+
+    /**
+     * The positions of the items of a CellLayout, indexed like its children, along with the
+     * position of the dragged item. Instances are reused across drags, their arrays only grow.
+     */
+    static class ItemConfiguration extends CellAndSpan {
+        int count;
+        int[] itemX = new int[0];
+        int[] itemY = new int[0];
+        int[] itemSpanX = new int[0];
+        int[] itemSpanY = new int[0];
+        boolean[] canReorder = new boolean[0];
+        // All the items, in the order in which the last push considered them
+        int[] sortedItems = new int[0];
+        boolean isSolution = false;
+
+        private int[] mSavedX = new int[0];
+        private int[] mSavedY = new int[0];
+        private boolean[] mIntersecting = new boolean[0];
+        private boolean mHasIntersectingItems;
+
+        /**
+         * Clears the configuration, to be filled with {@param count} items.
+         */
+        void reset(int count) {
+            if (itemX.length < count) {
+                itemX = new int[count];
+                itemY = new int[count];
+                itemSpanX = new int[count];
+                itemSpanY = new int[count];
+                canReorder = new boolean[count];
+                sortedItems = new int[count];
+                mSavedX = new int[count];
+                mSavedY = new int[count];
+                mIntersecting = new boolean[count];
+            }
+            this.count = count;
+            for (int i = 0; i < count; i++) {
+                sortedItems[i] = i;
+            }
+            Arrays.fill(mIntersecting, false);
+            mHasIntersectingItems = false;
+            isSolution = false;
+            cellX = cellY = -1;
+            spanX = spanY = 1;
+        }
+
+        void setItem(int item, int cellX, int cellY, int spanX, int spanY, boolean canReorder) {
+            itemX[item] = cellX;
+            itemY[item] = cellY;
+            itemSpanX[item] = spanX;
+            itemSpanY[item] = spanY;
+            this.canReorder[item] = canReorder;
+        }
+
+        void save() {
+            System.arraycopy(itemX, 0, mSavedX, 0, count);
+            System.arraycopy(itemY, 0, mSavedY, 0, count);
+        }
+
+        void restore() {
+            System.arraycopy(mSavedX, 0, itemX, 0, count);
+            System.arraycopy(mSavedY, 0, itemY, 0, count);
+        }
+
+        void setIntersectingItems(int[] items, int itemCount) {
+            Arrays.fill(mIntersecting, false);
+            for (int i = 0; i < itemCount; i++) {
+                mIntersecting[items[i]] = true;
+            }
+            mHasIntersectingItems = true;
+        }
+
+        /**
+         * Returns whether the items intersecting the drop location were computed.
+         */
+        boolean hasIntersectingItems() {
+            return mHasIntersectingItems;
+        }
+
+        boolean isIntersecting(int item) {
+            return mIntersecting[item];
+        }
+
+        int area() {
+            return spanX * spanY;
+        }
+
+        void getBoundingRect(int[] items, int itemCount, Rect outRect) {
+            outRect.setEmpty();
+            for (int i = 0; i < itemCount; i++) {
+                int item = items[i];
+                int left = itemX[item];
+                int top = itemY[item];
+                if (i == 0) {
+                    outRect.set(left, top, left + itemSpanX[item], top + itemSpanY[item]);
+                } else {
+                    outRect.union(left, top, left + itemSpanX[item], top + itemSpanY[item]);
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,213 @@
+/*
+ * Copyright (C) 2017 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.kairos.launcher;
+
+import android.content.ComponentCallbacks2;
+import android.graphics.Bitmap;
+import android.os.UserHandle;
+
+import com.kairos.launcher.WidgetPreviewLoader.WidgetCacheKey;
+import com.kairos.launcher.util.BitmapPool;
+
+import java.io.PrintWriter;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+
+/**--------------------------------------------------------------
+ * TEAM KAIROS :: DEV CARLOS :: CLASS SYNOPSIS
+ * Copyright (c) 2017 KAIROS
+ *
+ * In-memory tier of the {@link WidgetPreviewLoader}. Decoded previews are kept in access
+ * order and their total size is bounded. A preview can be shown by several cells while it is
+ * cached, so entries are reference counted: a preview only goes back to the
+ * {@link BitmapPool} once it has been evicted and is not shown anymore.
+ *
+ * This class is thread safe.
+ ----------------------------------------------------------------*/
+class WidgetPreviewCache {
+
+    /**
+     * A cached preview, along with the number of requests currently using it.
+     */
+    static final class Entry {
+        final WidgetCacheKey key;
+        final Bitmap bitmap;
+        final int byteCount;
+
+        int refCount;
+        boolean cached;
+
+        Entry(WidgetCacheKey key, Bitmap bitmap) {
+            this.key = key;
+            this.bitmap = bitmap;
+            this.byteCount = bitmap.getAllocationByteCount();
+        }
+    }
+
+    // Fraction of the heap which can be used by the cached previews.
+    private static final int HEAP_FRACTION = 16;
+
+    private static final int INITIAL_CAPACITY = 32;
+
+    private final LinkedHashMap<WidgetCacheKey, Entry> mEntries =
+            new LinkedHashMap<>(INITIAL_CAPACITY, 0.75f, true /* accessOrder */);
+    private final BitmapPool mPool;
+    private final long mMaxSizeBytes;
+
+    private long mSizeBytes;
+
+    private int mHitCount;
+    private int mMissCount;
+    private int mEvictionCount;
+    private int mTrimCount;
+
+    WidgetPreviewCache(BitmapPool pool) {
+        this(pool, Runtime.getRuntime().maxMemory() / HEAP_FRACTION);
+    }
+
+    WidgetPreviewCache(BitmapPool pool, long maxSizeBytes) {
+        mPool = pool;
+        mMaxSizeBytes = maxSizeBytes;
+    }
+
+    /**
+     * Returns the cached preview for {@param key} and takes a reference on it, or null if the
+     * preview is not in memory. The reference must be returned through {@link #release}.
+     */
+    public synchronized Entry acquire(WidgetCacheKey key) {
+        Entry entry = mEntries.get(key);
+        if (entry != null) {
+            entry.refCount++;
+            mHitCount++;
+        } else {
+            mMissCount++;
+        }
+        return entry;
+    }
+
+    /**
+     * Returns whether the preview for {@param key} is in memory, without counting a lookup.
+     */
+    public synchronized boolean contains(WidgetCacheKey key) {
+        return mEntries.containsKey(key);
+    }
+
+    /**
+     * Takes an additional reference on an entry already held by the caller.
+     */
+    public synchronized void acquire(Entry entry) {
+        entry.refCount++;
+    }
+
+    /**
+     * Adds a newly loaded preview to the cache, replacing any previous preview for the same
+     * key. The returned entry holds one reference for the caller.
+     */
+    public synchronized Entry put(WidgetCacheKey key, Bitmap bitmap) {
+        Entry entry = new Entry(key, bitmap);
+        entry.refCount = 1;
+        entry.cached = true;
+        Entry previous = mEntries.put(key, entry);
+        if (previous != null) {
+            uncache(previous);
+        }
+        mSizeBytes += entry.byteCount;
+        trimToSize(mMaxSizeBytes);
+        return entry;
+    }
+
+    /**
+     * Returns a reference taken by {@link #acquire} or {@link #put}.
+     */
+    public synchronized void release(Entry entry) {
+        entry.refCount--;
+        if (entry.refCount == 0 && !entry.cached) {
+            mPool.put(entry.bitmap);
+        }
+    }
+
+    /**
+     * Removes all the previews for the provided package and user.
+     */
+    public synchronized void removePackage(String packageName, UserHandle user) {
+        Iterator<Entry> itr = mEntries.values().iterator();
+        while (itr.hasNext()) {
+            Entry entry = itr.next();
+            if (entry.key.componentName.getPackageName().equals(packageName)
+                    && entry.key.user.equals(user)) {
+                itr.remove();
+                uncache(entry);
+            }
+        }
+    }
+
+    /**
+     * Shrinks the cache in response to {@link ComponentCallbacks2#onTrimMemory(int)}.
+     */
+    public synchronized void onTrimMemory(int level) {
+        mTrimCount++;
+        if (level >= ComponentCallbacks2.TRIM_MEMORY_UI_HIDDEN
+                || level == ComponentCallbacks2.TRIM_MEMORY_RUNNING_CRITICAL) {
+            // The widget tray is not visible, previews will be reloaded from the DB.
+            trimToSize(0);
+            mPool.clear();
+        } else if (level == ComponentCallbacks2.TRIM_MEMORY_RUNNING_LOW) {
+            trimToSize(mMaxSizeBytes / 2);
+        }
+    }
+
+    /**
+     * Evicts the least recently used entries until the cache fits in {@param maxSizeBytes}.
+     */
+    private void trimToSize(long maxSizeBytes) {
+        Iterator<Entry> itr = mEntries.values().iterator();
+        while (mSizeBytes > maxSizeBytes && itr.hasNext()) {
+            Entry entry = itr.next();
+            itr.remove();
+            uncache(entry);
+            mEvictionCount++;
+        }
+    }
+
+    private void uncache(Entry entry) {
+        entry.cached = false;
+        mSizeBytes -= entry.byteCount;
+        if (entry.refCount == 0) {
+            mPool.put(entry.bitmap);
+        }
+    }
+
+    public synchronized void dump(String prefix, PrintWriter writer) {
+        int lookups = mHitCount + mMissCount;
+        int inUse = 0;
+        for (Entry entry : mEntries.values()) {
+            if (entry.refCount > 0) {
+                inUse++;
+            }
+        }
+        writer.println(prefix + "WidgetPreviewLoader memory:"
+                + " entries=" + mEntries.size()
+                + " inUse=" + inUse
+                + " size=" + mSizeBytes + "/" + mMaxSizeBytes + " bytes");
+        writer.println(prefix + "  hits=" + mHitCount
+                + " misses=" + mMissCount
+                + " hitRate=" + (lookups == 0 ? 0 : (100 * mHitCount / lookups)) + "%"
+                + " evictions=" + mEvictionCount
+                + " trims=" + mTrimCount);
+        mPool.dump(prefix + "  pool: ", writer);
+    }
+}
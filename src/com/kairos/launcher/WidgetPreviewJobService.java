@@ -0,0 +1,128 @@
+/*
+ * Copyright (C) 2017 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.kairos.launcher;
+
+import android.app.job.JobInfo;
+import android.app.job.JobParameters;
+import android.app.job.JobScheduler;
+import android.app.job.JobService;
+import android.content.ComponentName;
+import android.content.Context;
+import android.content.Intent;
+import android.content.IntentFilter;
+import android.os.BatteryManager;
+import android.os.CancellationSignal;
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.Process;
+import android.util.Log;
+
+/**--------------------------------------------------------------
+ * TEAM KAIROS :: DEV CARLOS :: CLASS SYNOPSIS
+ * Copyright (c) 2017 KAIROS
+ *
+ * Generates the widget previews pending in the {@link WidgetPreviewLoader} while the launcher
+ * is in the background, so that the widget tray doesn't show blank cells the first time it is
+ * opened after a package is installed or updated. The job only runs when the battery is not
+ * low (when charging before O), generates a limited batch when not plugged in, and is
+ * cancelled as soon as the launcher comes to the foreground.
+ ----------------------------------------------------------------*/
+public class WidgetPreviewJobService extends JobService {
+
+    private static final String TAG = "WidgetPreviewJob";
+    private static final boolean DEBUG = false;
+
+    // Number of previews generated per run on battery, the job is rescheduled for the rest.
+    private static final int PREVIEWS_PER_RUN_ON_BATTERY = 20;
+
+    // Delay before the job runs, so that it doesn't compete with the launcher being hidden.
+    private static final long START_DELAY_MS = 5000;
+
+    private HandlerThread mWorkerThread;
+    private Handler mWorkerHandler;
+    private CancellationSignal mCancellationSignal;
+
+    public static void schedule(Context context) {
+        JobInfo.Builder builder = new JobInfo.Builder(Utilities.WIDGET_PREVIEW_JOB_ID,
+                new ComponentName(context, WidgetPreviewJobService.class))
+                .setMinimumLatency(START_DELAY_MS);
+        if (Utilities.isAtLeastO()) {
+            builder.setRequiresBatteryNotLow(true);
+        } else {
+            builder.setRequiresCharging(true);
+        }
+        getJobScheduler(context).schedule(builder.build());
+    }
+
+    public static void cancel(Context context) {
+        getJobScheduler(context).cancel(Utilities.WIDGET_PREVIEW_JOB_ID);
+    }
+
+    private static JobScheduler getJobScheduler(Context context) {
+        return (JobScheduler) context.getSystemService(Context.JOB_SCHEDULER_SERVICE);
+    }
+
+    @Override
+    public void onCreate() {
+        super.onCreate();
+        mWorkerThread = new HandlerThread(TAG, Process.THREAD_PRIORITY_BACKGROUND);
+        mWorkerThread.start();
+        mWorkerHandler = new Handler(mWorkerThread.getLooper());
+    }
+
+    @Override
+    public void onDestroy() {
+        super.onDestroy();
+        mWorkerThread.quit();
+    }
+
+    @Override
+    public boolean onStartJob(final JobParameters jobParameters) {
+        if (DEBUG) Log.d(TAG, "onStartJob");
+        final CancellationSignal signal = new CancellationSignal();
+        mCancellationSignal = signal;
+        final int maxPreviews = isPluggedIn() ? Integer.MAX_VALUE : PREVIEWS_PER_RUN_ON_BATTERY;
+        mWorkerHandler.post(new Runnable() {
+            @Override
+            public void run() {
+                boolean done = LauncherAppState.getInstance(WidgetPreviewJobService.this)
+                        .getWidgetCache().generatePendingPreviews(signal, maxPreviews);
+                if (!signal.isCanceled()) {
+                    jobFinished(jobParameters, !done /* needsReschedule */);
+                }
+                if (DEBUG) Log.d(TAG, "job finished, done=" + done);
+            }
+        });
+        return true;
+    }
+
+    @Override
+    public boolean onStopJob(JobParameters jobParameters) {
+        if (DEBUG) Log.d(TAG, "onStopJob");
+        if (mCancellationSignal != null) {
+            mCancellationSignal.cancel();
+            mCancellationSignal = null;
+        }
+        mWorkerHandler.removeCallbacksAndMessages(null);
+        return true;
+    }
+
+    private boolean isPluggedIn() {
+        Intent battery = registerReceiver(null, new IntentFilter(Intent.ACTION_BATTERY_CHANGED));
+        return battery != null && battery.getIntExtra(BatteryManager.EXTRA_PLUGGED, 0) != 0;
+    }
+}
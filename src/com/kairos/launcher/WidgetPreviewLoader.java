@@ -25,6 +25,7 @@ import android.os.AsyncTask;
 import android.os.Build;
 import android.os.CancellationSignal;
 import android.os.Handler;
+import android.os.SystemClock;
 import android.os.UserHandle;
 import android.support.annotation.Nullable;
 import android.support.v4.graphics.ColorUtils;
@@ -37,6 +38,7 @@ import com.kairos.launcher.compat.UserManagerCompat;
 import com.kairos.launcher.graphics.LauncherIcons;
 import com.kairos.launcher.graphics.ShadowGenerator;
 import com.kairos.launcher.model.WidgetItem;
+import com.kairos.launcher.util.BitmapPool;
 import com.kairos.launcher.util.ComponentKey;
 import com.kairos.launcher.util.PackageUserKey;
 import com.kairos.launcher.util.Preconditions;
@@ -44,12 +46,13 @@ import com.kairos.launcher.util.SQLiteCacheHelper;
 import com.kairos.launcher.util.Thunk;
 import com.kairos.launcher.widget.WidgetCell;
 
+import java.io.PrintWriter;
 import java.util.ArrayList;
-import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
-import java.util.Set;
-import java.util.WeakHashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
 import java.util.concurrent.Callable;
 import java.util.concurrent.ExecutionException;
 
@@ -65,16 +68,42 @@ public class WidgetPreviewLoader {
     private static final String TAG = "WidgetPreviewLoader";
     private static final boolean DEBUG = false;
 
+    // Fraction of the heap which can be used by bitmaps waiting to be reused.
+    private static final int POOL_HEAP_FRACTION = 64;
+
     private final HashMap<String, long[]> mPackageVersions = new HashMap<>();
 
     /**
-     * Weak reference objects, do not prevent their referents from being made finalizable,
-     * finalized, and then reclaimed.
-     * Note: synchronized block used for this variable is expensive and the block should always
-     * be posted to a background thread.
+     * Bitmaps which are not shown nor cached anymore, and can be reused to decode or generate
+     * other previews.
      */
-    @Thunk final Set<Bitmap> mUnusedBitmaps =
-            Collections.newSetFromMap(new WeakHashMap<Bitmap, Boolean>());
+    @Thunk final BitmapPool mBitmapPool =
+            new BitmapPool(Runtime.getRuntime().maxMemory() / POOL_HEAP_FRACTION);
+    @Thunk final WidgetPreviewCache mPreviewCache = new WidgetPreviewCache(mBitmapPool);
+    @Thunk final WidgetPreviewScheduler mScheduler = new WidgetPreviewScheduler();
+
+    /**
+     * Loads started by {@link #prefetchPreviews} which were not requested by a cell yet.
+     * Only accessed on the UI thread.
+     */
+    @Thunk final HashMap<WidgetCacheKey, PreviewLoadTask> mPrefetchTasks = new HashMap<>();
+    private final HashSet<WidgetCacheKey> mPrefetchWindow = new HashSet<>();
+
+    /**
+     * Widgets whose previews are generated ahead of time by {@link WidgetPreviewJobService}.
+     * Also guards {@link #mLauncherVisible}.
+     */
+    private final HashMap<ComponentKey, WidgetItem> mPendingGeneration = new HashMap<>();
+    private boolean mLauncherVisible;
+    private int mGeneratedCount;
+
+    // Time to first preview of the widget tray, in ms. Only accessed on the UI thread.
+    private long mTrayShownTime;
+    private long mLastTimeToFirstPreview = -1;
+    private long mMaxTimeToFirstPreview;
+    private long mTotalTimeToFirstPreview;
+    private int mTimeToFirstPreviewCount;
+    private int mPrefetchCount;
 
     private final Context mContext;
     private final IconCache mIconCache;
@@ -95,8 +124,8 @@ public class WidgetPreviewLoader {
     }
 
     /**
-     * Generates the widget preview on {@link AsyncTask#THREAD_POOL_EXECUTOR}. Must be
-     * called on UI thread
+     * Applies the widget preview right away if it is in memory, or generates it with the
+     * priority of a visible cell. Must be called on UI thread
      *
      * @return a request id which can be used to cancel the request.
      */
@@ -105,15 +134,109 @@ public class WidgetPreviewLoader {
         String size = previewWidth + "x" + previewHeight;
         WidgetCacheKey key = new WidgetCacheKey(item.componentName, item.user, size);
 
-        PreviewLoadTask task = new PreviewLoadTask(key, item, previewWidth, previewHeight, caller,
-                animate);
-        task.executeOnExecutor(Utilities.THREAD_POOL_EXECUTOR);
-
         CancellationSignal signal = new CancellationSignal();
+        WidgetPreviewCache.Entry cached = mPreviewCache.acquire(key);
+        if (cached != null) {
+            caller.applyPreview(cached.bitmap, animate);
+            onPreviewApplied();
+            signal.setOnCancelListener(new CachedPreviewRequest(cached));
+            return signal;
+        }
+
+        PreviewLoadTask task = mPrefetchTasks.remove(key);
+        if (task != null) {
+            // The preview is already being prefetched, hand it to the cell once loaded.
+            task.setCaller(caller, animate);
+            mScheduler.promote(task.mRequest);
+        } else {
+            task = new PreviewLoadTask(key, item, previewWidth, previewHeight,
+                    BaseActivity.fromContext(caller.getContext()), caller, animate);
+            task.mRequest = mScheduler.schedule(task, WidgetPreviewScheduler.PRIORITY_VISIBLE);
+        }
         signal.setOnCancelListener(task);
         return signal;
     }
 
+    /**
+     * Loads the previews of {@param items} into memory ahead of their cells being bound, after
+     * the previews of the visible cells. Prefetches of a previous call which are not part of
+     * {@param items} are cancelled. Must be called on UI thread
+     */
+    public void prefetchPreviews(BaseActivity activity, List<WidgetItem> items,
+            int previewWidth, int previewHeight) {
+        String size = previewWidth + "x" + previewHeight;
+        mPrefetchWindow.clear();
+        for (WidgetItem item : items) {
+            mPrefetchWindow.add(new WidgetCacheKey(item.componentName, item.user, size));
+        }
+
+        Iterator<Map.Entry<WidgetCacheKey, PreviewLoadTask>> itr =
+                mPrefetchTasks.entrySet().iterator();
+        while (itr.hasNext()) {
+            Map.Entry<WidgetCacheKey, PreviewLoadTask> e = itr.next();
+            if (!mPrefetchWindow.contains(e.getKey())) {
+                e.getValue().onCancel();
+                itr.remove();
+            }
+        }
+
+        for (WidgetItem item : items) {
+            WidgetCacheKey key = new WidgetCacheKey(item.componentName, item.user, size);
+            if (mPrefetchTasks.containsKey(key) || mPreviewCache.contains(key)) {
+                continue;
+            }
+            PreviewLoadTask task = new PreviewLoadTask(key, item, previewWidth, previewHeight,
+                    activity, null /* caller */, false /* animate */);
+            mPrefetchTasks.put(key, task);
+            mPrefetchCount++;
+            task.mRequest = mScheduler.schedule(task, WidgetPreviewScheduler.PRIORITY_PREFETCH);
+        }
+    }
+
+    /**
+     * Starts measuring the time until the first preview is shown in the widget tray.
+     */
+    public void onTrayShown() {
+        mTrayShownTime = SystemClock.uptimeMillis();
+    }
+
+    @Thunk void onPreviewApplied() {
+        if (mTrayShownTime == 0) {
+            return;
+        }
+        long time = SystemClock.uptimeMillis() - mTrayShownTime;
+        mTrayShownTime = 0;
+        mLastTimeToFirstPreview = time;
+        mMaxTimeToFirstPreview = Math.max(mMaxTimeToFirstPreview, time);
+        mTotalTimeToFirstPreview += time;
+        mTimeToFirstPreviewCount++;
+        if (DEBUG) {
+            Log.d(TAG, "Time to first preview: " + time + "ms");
+        }
+    }
+
+    /**
+     * Releases in-memory previews in response to {@link Launcher#onTrimMemory(int)}. Previews
+     * which are still shown are released once their cell is recycled.
+     */
+    public void onTrimMemory(int level) {
+        mPreviewCache.onTrimMemory(level);
+    }
+
+    public void dump(String prefix, PrintWriter writer) {
+        mPreviewCache.dump(prefix, writer);
+        mScheduler.dump(prefix + "  scheduler: prefetched=" + mPrefetchCount + " ", writer);
+        writer.println(prefix + "  timeToFirstPreview: last=" + mLastTimeToFirstPreview + "ms"
+                + " avg=" + (mTimeToFirstPreviewCount == 0 ? 0
+                        : mTotalTimeToFirstPreview / mTimeToFirstPreviewCount) + "ms"
+                + " max=" + mMaxTimeToFirstPreview + "ms"
+                + " count=" + mTimeToFirstPreviewCount);
+        synchronized (mPendingGeneration) {
+            writer.println(prefix + "  generation: pending=" + mPendingGeneration.size()
+                    + " generated=" + mGeneratedCount);
+        }
+    }
+
     /**
      * The DB holds the generated previews for various components. Previews can also have different
      * sizes (landscape vs portrait).
@@ -169,6 +292,7 @@ public class WidgetPreviewLoader {
         synchronized(mPackageVersions) {
             mPackageVersions.remove(packageName);
         }
+        mPreviewCache.removePackage(packageName, user);
 
         mDb.delete(
                 CacheDb.COLUMN_PACKAGE + " = ? AND " + CacheDb.COLUMN_USER + " = ?",
@@ -255,6 +379,141 @@ public class WidgetPreviewLoader {
         }
     }
 
+    /**
+     * Queues the previews of {@param items} to be generated and persisted in the background, so
+     * that they are ready when the tray is first opened. The previews already in the DB are
+     * skipped when the job runs.
+     */
+    public void schedulePreviewGeneration(ArrayList<WidgetItem> items) {
+        synchronized (mPendingGeneration) {
+            for (WidgetItem item : items) {
+                mPendingGeneration.put(item, item);
+            }
+            if (!mPendingGeneration.isEmpty() && !mLauncherVisible) {
+                WidgetPreviewJobService.schedule(mContext);
+            }
+        }
+    }
+
+    /**
+     * Pauses the background generation while the launcher is in the foreground, so that it
+     * doesn't compete with the UI.
+     */
+    public void setLauncherVisible(boolean visible) {
+        synchronized (mPendingGeneration) {
+            mLauncherVisible = visible;
+            if (mPendingGeneration.isEmpty()) {
+                return;
+            }
+            if (visible) {
+                WidgetPreviewJobService.cancel(mContext);
+            } else {
+                WidgetPreviewJobService.schedule(mContext);
+            }
+        }
+    }
+
+    /**
+     * Generates and persists the pending previews which are not in the DB yet, for the tray
+     * preview sizes of both orientations. Called by {@link WidgetPreviewJobService}.
+     *
+     * @param maxPreviews the maximum number of previews to generate in this call
+     * @return true if all the pending previews have been generated
+     */
+    public boolean generatePendingPreviews(CancellationSignal signal, int maxPreviews) {
+        ArrayList<WidgetItem> items;
+        synchronized (mPendingGeneration) {
+            items = new ArrayList<>(mPendingGeneration.values());
+        }
+        InvariantDeviceProfile idp = LauncherAppState.getIDP(mContext);
+        DeviceProfile[] profiles = new DeviceProfile[] {idp.portraitProfile, idp.landscapeProfile};
+        HashSet<WidgetCacheKey> stored = getStoredPreviews();
+
+        int generated = 0;
+        for (WidgetItem item : items) {
+            boolean done = true;
+            boolean persistable = item.activityInfo == null || item.activityInfo.isPersistable();
+            for (int i = 0; persistable && i < profiles.length; i++) {
+                if (signal.isCanceled()) {
+                    return false;
+                }
+                int size = WidgetCell.getPresetPreviewSize(profiles[i]);
+                WidgetCacheKey key = new WidgetCacheKey(item.componentName, item.user,
+                        size + "x" + size);
+                if (stored.contains(key)) {
+                    continue;
+                }
+                if (generated >= maxPreviews) {
+                    done = false;
+                    break;
+                }
+                generateAndStore(profiles[i], item, key, size);
+                stored.add(key);
+                generated++;
+            }
+            if (done) {
+                synchronized (mPendingGeneration) {
+                    // The widget may have been updated again since this pass started.
+                    if (mPendingGeneration.get(item) == item) {
+                        mPendingGeneration.remove(item);
+                    }
+                }
+            }
+        }
+        synchronized (mPendingGeneration) {
+            mGeneratedCount += generated;
+            return mPendingGeneration.isEmpty();
+        }
+    }
+
+    private void generateAndStore(DeviceProfile dp, WidgetItem item, WidgetCacheKey key,
+            int size) {
+        // Same as the preview load tasks, read the version before generating the preview.
+        long[] versions = getPackageVersion(key.componentName.getPackageName());
+        Bitmap recycle = mBitmapPool.get(size, size);
+        Bitmap preview = null;
+        try {
+            preview = generatePreview(mContext, dp, item, recycle, size, size);
+            writeToDb(key, versions, preview);
+        } catch (RuntimeException e) {
+            Log.w(TAG, "Unable to generate preview for " + key.componentName, e);
+        } finally {
+            mBitmapPool.put(preview);
+            if (recycle != preview) {
+                // The preview was generated in another bitmap
+                mBitmapPool.put(recycle);
+            }
+        }
+    }
+
+    /**
+     * Returns the keys of all the previews in the DB.
+     */
+    private HashSet<WidgetCacheKey> getStoredPreviews() {
+        HashSet<WidgetCacheKey> keys = new HashSet<>();
+        Cursor c = null;
+        try {
+            c = mDb.query(
+                    new String[]{CacheDb.COLUMN_COMPONENT, CacheDb.COLUMN_USER,
+                            CacheDb.COLUMN_SIZE},
+                    null, null);
+            while (c.moveToNext()) {
+                ComponentName cn = ComponentName.unflattenFromString(c.getString(0));
+                UserHandle user = mUserManager.getUserForSerialNumber(c.getLong(1));
+                if (cn != null && user != null) {
+                    keys.add(new WidgetCacheKey(cn, user, c.getString(2)));
+                }
+            }
+        } catch (SQLException e) {
+            Log.w(TAG, "Error reading previews from DB", e);
+        } finally {
+            if (c != null) {
+                c.close();
+            }
+        }
+        return keys;
+    }
+
     /**
      * Reads the preview bitmap from the DB or null if the preview is not in the DB.
      */
@@ -278,6 +537,8 @@ public class WidgetPreviewLoader {
                 byte[] blob = cursor.getBlob(0);
                 BitmapFactory.Options opts = new BitmapFactory.Options();
                 opts.inBitmap = recycle;
+                // Keep the result reusable by the pool, even if recycle can't be used.
+                opts.inMutable = true;
                 try {
                     if (!loadTask.isCancelled()) {
                         return BitmapFactory.decodeByteArray(blob, 0, blob.length, opts);
@@ -296,13 +557,13 @@ public class WidgetPreviewLoader {
         return null;
     }
 
-    private Bitmap generatePreview(BaseActivity launcher, WidgetItem item, Bitmap recycle,
-            int previewWidth, int previewHeight) {
+    private Bitmap generatePreview(Context context, DeviceProfile dp, WidgetItem item,
+            Bitmap recycle, int previewWidth, int previewHeight) {
         if (item.widgetInfo != null) {
-            return generateWidgetPreview(launcher, item.widgetInfo,
+            return generateWidgetPreview(context, dp, item.widgetInfo,
                     previewWidth, recycle, null);
         } else {
-            return generateShortcutPreview(launcher, item.activityInfo,
+            return generateShortcutPreview(context, dp, item.activityInfo,
                     previewWidth, previewHeight, recycle);
         }
     }
@@ -320,6 +581,13 @@ public class WidgetPreviewLoader {
      */
     public Bitmap generateWidgetPreview(BaseActivity launcher, LauncherAppWidgetProviderInfo info,
             int maxPreviewWidth, Bitmap preview, int[] preScaledWidthOut) {
+        return generateWidgetPreview(launcher, launcher.getDeviceProfile(), info,
+                maxPreviewWidth, preview, preScaledWidthOut);
+    }
+
+    private Bitmap generateWidgetPreview(Context context, DeviceProfile dp,
+            LauncherAppWidgetProviderInfo info, int maxPreviewWidth, Bitmap preview,
+            int[] preScaledWidthOut) {
         // Load the preview image if possible
         if (maxPreviewWidth < 0) maxPreviewWidth = Integer.MAX_VALUE;
 
@@ -352,7 +620,6 @@ public class WidgetPreviewLoader {
             previewWidth = drawable.getIntrinsicWidth();
             previewHeight = drawable.getIntrinsicHeight();
         } else {
-            DeviceProfile dp = launcher.getDeviceProfile();
             int tileSize = Math.min(dp.cellWidthPx, dp.cellHeightPx);
             previewWidth = tileSize * spanX;
             previewHeight = tileSize * spanY;
@@ -420,9 +687,9 @@ public class WidgetPreviewLoader {
 
             // Draw icon in the center.
             try {
-                Drawable icon = info.getIcon(launcher, mIconCache);
+                Drawable icon = info.getIcon(context, mIconCache);
                 if (icon != null) {
-                    int appIconSize = launcher.getDeviceProfile().iconSizePx;
+                    int appIconSize = dp.iconSizePx;
                     int iconSize = (int) Math.min(appIconSize * scale,
                             Math.min(boxRect.width(), boxRect.height()));
 
@@ -462,10 +729,10 @@ public class WidgetPreviewLoader {
         return bounds;
     }
 
-    private Bitmap generateShortcutPreview(BaseActivity launcher, ShortcutConfigActivityInfo info,
-            int maxWidth, int maxHeight, Bitmap preview) {
-        int iconSize = launcher.getDeviceProfile().iconSizePx;
-        int padding = launcher.getResources()
+    private Bitmap generateShortcutPreview(Context context, DeviceProfile dp,
+            ShortcutConfigActivityInfo info, int maxWidth, int maxHeight, Bitmap preview) {
+        int iconSize = dp.iconSizePx;
+        int padding = context.getResources()
                 .getDimensionPixelSize(R.dimen.widget_preview_shortcut_padding);
 
         int size = iconSize + 2 * padding;
@@ -543,144 +810,156 @@ public class WidgetPreviewLoader {
         private final WidgetItem mInfo;
         private final int mPreviewHeight;
         private final int mPreviewWidth;
-        private final WidgetCell mCaller;
-        private final boolean mAnimatePreviewIn;
         private final BaseActivity mActivity;
+        // Null while the preview is only prefetched
+        private WidgetCell mCaller;
+        private boolean mAnimatePreviewIn;
         @Thunk long[] mVersions;
-        @Thunk Bitmap mBitmapToRecycle;
+        @Thunk WidgetPreviewCache.Entry mEntry;
+        @Thunk WidgetPreviewScheduler.Request mRequest;
 
         PreviewLoadTask(WidgetCacheKey key, WidgetItem info, int previewWidth,
-                int previewHeight, WidgetCell caller, boolean animate) {
+                int previewHeight, BaseActivity activity, @Nullable WidgetCell caller,
+                boolean animate) {
             mKey = key;
             mInfo = info;
             mPreviewHeight = previewHeight;
             mPreviewWidth = previewWidth;
+            mActivity = activity;
             mCaller = caller;
             mAnimatePreviewIn = animate;
-            mActivity = BaseActivity.fromContext(mCaller.getContext());
             if (DEBUG) {
                 Log.d(TAG, String.format("%s, %s, %d, %d",
                         mKey, mInfo, mPreviewHeight, mPreviewWidth));
             }
         }
 
+        void setCaller(WidgetCell caller, boolean animate) {
+            mCaller = caller;
+            mAnimatePreviewIn = animate;
+        }
+
         @Override
         protected Bitmap doInBackground(Void... params) {
-            Bitmap unusedBitmap = null;
-
             // If already cancelled before this gets to run in the background, then return early
             if (isCancelled()) {
                 return null;
             }
-            synchronized (mUnusedBitmaps) {
-                // Check if we can re-use a bitmap
-                for (Bitmap candidate : mUnusedBitmaps) {
-                    if (candidate != null && candidate.isMutable() &&
-                            candidate.getWidth() == mPreviewWidth &&
-                            candidate.getHeight() == mPreviewHeight) {
-                        unusedBitmap = candidate;
-                        mUnusedBitmaps.remove(unusedBitmap);
-                        break;
-                    }
-                }
-            }
-
-            // creating a bitmap is expensive. Do not do this inside synchronized block.
-            if (unusedBitmap == null) {
-                unusedBitmap = Bitmap.createBitmap(mPreviewWidth, mPreviewHeight, Config.ARGB_8888);
-            }
+            // creating a bitmap is expensive, reuse one from an evicted preview if possible.
+            Bitmap unusedBitmap = mBitmapPool.get(mPreviewWidth, mPreviewHeight);
             // If cancelled now, don't bother reading the preview from the DB
             if (isCancelled()) {
                 return unusedBitmap;
             }
-            Bitmap preview = readFromDb(mKey, unusedBitmap, this);
-            // Only consider generating the preview if we have not cancelled the task already
-            if (!isCancelled() && preview == null) {
-                // Fetch the version info before we generate the preview, so that, in-case the
-                // app was updated while we are generating the preview, we use the old version info,
-                // which would gets re-written next time.
-                boolean persistable = mInfo.activityInfo == null
-                        || mInfo.activityInfo.isPersistable();
-                mVersions = persistable ? getPackageVersion(mKey.componentName.getPackageName())
-                        : null;
-
-                // it's not in the db... we need to generate it
-                preview = generatePreview(mActivity, mInfo, unusedBitmap, mPreviewWidth, mPreviewHeight);
+            Bitmap preview = null;
+            try {
+                preview = readFromDb(mKey, unusedBitmap, this);
+                // Only consider generating the preview if we have not cancelled the task already
+                if (!isCancelled() && preview == null) {
+                    // Fetch the version info before we generate the preview, so that, in-case
+                    // the app was updated while we are generating the preview, we use the old
+                    // version info, which would gets re-written next time.
+                    boolean persistable = mInfo.activityInfo == null
+                            || mInfo.activityInfo.isPersistable();
+                    mVersions = persistable
+                            ? getPackageVersion(mKey.componentName.getPackageName()) : null;
+
+                    // it's not in the db... we need to generate it
+                    preview = generatePreview(mActivity, mActivity.getDeviceProfile(), mInfo,
+                            unusedBitmap, mPreviewWidth, mPreviewHeight);
+                }
+                return preview;
+            } finally {
+                if (preview != unusedBitmap) {
+                    // The preview is in another bitmap, or there is none
+                    mBitmapPool.put(unusedBitmap);
+                }
             }
-            return preview;
         }
 
         @Override
-        protected void onPostExecute(final Bitmap preview) {
-            mCaller.applyPreview(preview, mAnimatePreviewIn);
+        protected void onPostExecute(Bitmap preview) {
+            if (mPrefetchTasks.get(mKey) == this) {
+                mPrefetchTasks.remove(mKey);
+            }
+            if (preview == null) {
+                return;
+            }
+            // The preview is now owned by the memory cache, this request holds a reference on it
+            // until the cell is recycled.
+            final WidgetPreviewCache.Entry entry = mPreviewCache.put(mKey, preview);
 
             // Write the generated preview to the DB in the worker thread
             if (mVersions != null) {
+                // Keep the bitmap from being reused while it is being written. This reference is
+                // taken before the one of a prefetch is released below.
+                mPreviewCache.acquire(entry);
                 mWorkerHandler.post(new Runnable() {
                     @Override
                     public void run() {
-                        if (!isCancelled()) {
-                            // If we are still using this preview, then write it to the DB and then
-                            // let the normal clear mechanism recycle the bitmap
-                            writeToDb(mKey, mVersions, preview);
-                            mBitmapToRecycle = preview;
-                        } else {
-                            // If we've already cancelled, then skip writing the bitmap to the DB
-                            // and manually add the bitmap back to the recycled set
-                            synchronized (mUnusedBitmaps) {
-                                mUnusedBitmaps.add(preview);
-                            }
-                        }
+                        writeToDb(mKey, mVersions, entry.bitmap);
+                        mPreviewCache.release(entry);
                     }
                 });
+            }
+
+            if (mCaller != null) {
+                mEntry = entry;
+                mCaller.applyPreview(preview, mAnimatePreviewIn);
+                onPreviewApplied();
             } else {
-                // If we don't need to write to disk, then ensure the preview gets recycled by
-                // the normal clear mechanism
-                mBitmapToRecycle = preview;
+                // Prefetched, only keep the preview in memory.
+                mPreviewCache.release(entry);
             }
         }
 
         @Override
-        protected void onCancelled(final Bitmap preview) {
-            // If we've cancelled while the task is running, then can return the bitmap to the
-            // recycled set immediately. Otherwise, it will be recycled after the preview is written
-            // to disk.
-            if (preview != null) {
-                mWorkerHandler.post(new Runnable() {
-                    @Override
-                    public void run() {
-                        synchronized (mUnusedBitmaps) {
-                            mUnusedBitmaps.add(preview);
-                        }
-                    }
-                });
+        protected void onCancelled(Bitmap preview) {
+            if (mPrefetchTasks.get(mKey) == this) {
+                mPrefetchTasks.remove(mKey);
             }
+            // If we've cancelled while the task is running, the preview was never shown and
+            // can be reused right away.
+            mBitmapPool.put(preview);
         }
 
         @Override
         public void onCancel() {
             cancel(true);
+            if (mRequest != null) {
+                mScheduler.drop(mRequest);
+            }
 
             // This only handles the case where the PreviewLoadTask is cancelled after the task has
-            // successfully completed (including having written to disk when necessary).  In the
-            // other cases where it is cancelled while the task is running, it will be cleaned up
-            // in the tasks's onCancelled() call, and if cancelled while the task is writing to
-            // disk, it will be cancelled in the task's onPostExecute() call.
-            if (mBitmapToRecycle != null) {
-                mWorkerHandler.post(new Runnable() {
-                    @Override
-                    public void run() {
-                        synchronized (mUnusedBitmaps) {
-                            mUnusedBitmaps.add(mBitmapToRecycle);
-                        }
-                        mBitmapToRecycle = null;
-                    }
-                });
+            // successfully completed. If it is cancelled while running, the bitmap is returned to
+            // the pool in the task's onCancelled() call.
+            if (mEntry != null) {
+                mPreviewCache.release(mEntry);
+                mEntry = null;
+            }
+        }
+    }
+
+    /**
+     * Request served from {@link #mPreviewCache}, which releases the preview once cancelled.
+     */
+    private class CachedPreviewRequest implements CancellationSignal.OnCancelListener {
+        private WidgetPreviewCache.Entry mEntry;
+
+        CachedPreviewRequest(WidgetPreviewCache.Entry entry) {
+            mEntry = entry;
+        }
+
+        @Override
+        public void onCancel() {
+            if (mEntry != null) {
+                mPreviewCache.release(mEntry);
+                mEntry = null;
             }
         }
     }
 
-    private static final class WidgetCacheKey extends ComponentKey {
+    static final class WidgetCacheKey extends ComponentKey {
 
         @Thunk final String size;
 
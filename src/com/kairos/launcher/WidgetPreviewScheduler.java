@@ -0,0 +1,140 @@
+/*
+ * Copyright (C) 2017 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.kairos.launcher;
+
+import android.os.AsyncTask;
+
+import java.io.PrintWriter;
+import java.util.concurrent.Executor;
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**--------------------------------------------------------------
+ * TEAM KAIROS :: DEV CARLOS :: CLASS SYNOPSIS
+ * Copyright (c) 2017 KAIROS
+ *
+ * Runs the preview loads of the {@link WidgetPreviewLoader} by priority rather than in
+ * submission order. Previews of visible cells go first, the most recently bound first, as
+ * older cells are likely to have been scrolled away during a fling. Prefetches come after,
+ * closest rows first. Requests which are cancelled before they start are dropped from the
+ * queue instead of being run as no-ops.
+ *
+ * Must be used from the UI thread.
+ ----------------------------------------------------------------*/
+class WidgetPreviewScheduler {
+
+    static final int PRIORITY_VISIBLE = 0;
+    static final int PRIORITY_PREFETCH = 1;
+
+    // Leave a core to the UI thread, which is busy binding cells during a fling.
+    private static final int POOL_SIZE =
+            Math.max(2, Runtime.getRuntime().availableProcessors() - 1);
+    private static final int KEEP_ALIVE = 1;
+
+    private final ThreadPoolExecutor mExecutor = new ThreadPoolExecutor(
+            POOL_SIZE, POOL_SIZE, KEEP_ALIVE, TimeUnit.SECONDS,
+            new PriorityBlockingQueue<Runnable>());
+
+    private int mSequence;
+
+    private int mScheduledCount;
+    private int mPromotedCount;
+    private int mDroppedCount;
+
+    WidgetPreviewScheduler() {
+        mExecutor.allowCoreThreadTimeOut(true);
+    }
+
+    /**
+     * Executes {@param task} with the given priority.
+     */
+    public Request schedule(AsyncTask<Void, ?, ?> task, int priority) {
+        Request request = new Request(priority, ++mSequence);
+        mScheduledCount++;
+        task.executeOnExecutor(request);
+        return request;
+    }
+
+    /**
+     * Moves a request which has not started yet ahead of the other visible requests.
+     */
+    public void promote(Request request) {
+        if (request.priority == PRIORITY_VISIBLE || !mExecutor.remove(request)) {
+            return;
+        }
+        request.priority = PRIORITY_VISIBLE;
+        request.sequence = ++mSequence;
+        mPromotedCount++;
+        mExecutor.execute(request);
+    }
+
+    /**
+     * Removes a request from the queue, if it has not started yet. Must be called after its
+     * task has been cancelled.
+     */
+    public void drop(Request request) {
+        if (mExecutor.remove(request)) {
+            mDroppedCount++;
+        }
+    }
+
+    public void dump(String prefix, PrintWriter writer) {
+        writer.println(prefix + "scheduled=" + mScheduledCount
+                + " promoted=" + mPromotedCount
+                + " dropped=" + mDroppedCount
+                + " queued=" + mExecutor.getQueue().size());
+    }
+
+    /**
+     * Queue entry wrapping the runnable of an {@link AsyncTask}. It is passed as the executor
+     * of the task, so that the priority of the task is known when it is queued.
+     */
+    final class Request implements Executor, Runnable, Comparable<Request> {
+        int priority;
+        int sequence;
+        private Runnable mTarget;
+
+        Request(int priority, int sequence) {
+            this.priority = priority;
+            this.sequence = sequence;
+        }
+
+        @Override
+        public void execute(Runnable target) {
+            mTarget = target;
+            mExecutor.execute(this);
+        }
+
+        @Override
+        public void run() {
+            mTarget.run();
+        }
+
+        @Override
+        public int compareTo(Request other) {
+            if (priority != other.priority) {
+                return priority < other.priority ? -1 : 1;
+            }
+            if (priority == PRIORITY_VISIBLE) {
+                // Most recent first
+                return other.sequence - sequence;
+            }
+            return sequence - other.sequence;
+        }
+    }
+}
@@ -0,0 +1,172 @@
+/*
+ * Copyright (C) 2017 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.kairos.launcher;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.util.AtomicFile;
+import android.util.Log;
+
+import com.kairos.launcher.util.LongArrayMap;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.List;
+
+/**--------------------------------------------------------------
+ * TEAM KAIROS :: DEV CARLOS :: CLASS SYNOPSIS
+ * Copyright (c) 2017 KAIROS
+ *
+ * Icons of the first page and hotseat of a {@link WorkspaceSnapshot}, stored as fixed size tiles
+ * of raw ARGB_8888 pixels. The file is memory-mapped on restore and each tile is copied in a
+ * bitmap, so that the first page can be bound without decoding any icon.
+ *
+ * The atlas is only valid for the snapshot it was written for. The pixels use the memory layout
+ * of the device, so the file is not backed up.
+ ----------------------------------------------------------------*/
+class WorkspaceIconAtlas {
+
+    private static final String TAG = "WorkspaceIconAtlas";
+
+    private static final String FILE_NAME = "workspace.atlas";
+    private static final int MAGIC = 0x4b574941;
+    private static final int VERSION = 1;
+
+    // Screen whose icons are in the atlas, along with the hotseat icons.
+    public final long screenId;
+    public final LongArrayMap<Bitmap> icons;
+
+    private WorkspaceIconAtlas(long screenId, LongArrayMap<Bitmap> icons) {
+        this.screenId = screenId;
+        this.icons = icons;
+    }
+
+    /**
+     * Returns true if {@param icon} can be stored in an atlas of {@param tileSize} tiles.
+     */
+    public static boolean canStore(Bitmap icon, int tileSize) {
+        return icon != null && icon.getConfig() == Bitmap.Config.ARGB_8888
+                && icon.getWidth() == tileSize && icon.getHeight() == tileSize;
+    }
+
+    /**
+     * Writes the icons of {@param items}, which must all pass {@link #canStore}. This should be
+     * called on a background thread.
+     */
+    public static void write(Context context, long snapshotId, long screenId, int tileSize,
+            List<ShortcutInfo> items) {
+        AtomicFile file = getFile(context);
+        FileOutputStream fos = null;
+        try {
+            fos = file.startWrite();
+            DataOutputStream out = new DataOutputStream(new BufferedOutputStream(fos));
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeLong(snapshotId);
+            out.writeInt(tileSize);
+            out.writeLong(screenId);
+            out.writeInt(items.size());
+            for (ShortcutInfo info : items) {
+                out.writeLong(info.id);
+            }
+
+            byte[] tile = new byte[tileSize * tileSize * 4];
+            for (ShortcutInfo info : items) {
+                if (info.iconBitmap.getByteCount() != tile.length) {
+                    throw new IOException("Unexpected icon layout for " + info);
+                }
+                info.iconBitmap.copyPixelsToBuffer(ByteBuffer.wrap(tile));
+                out.write(tile);
+            }
+            out.flush();
+            file.finishWrite(fos);
+        } catch (IOException e) {
+            Log.w(TAG, "Unable to write icon atlas", e);
+            if (fos != null) {
+                file.failWrite(fos);
+            }
+            delete(context);
+        }
+    }
+
+    /**
+     * Maps the atlas written for the snapshot {@param snapshotId} and slices it in bitmaps.
+     * @return null if there is no valid atlas for this snapshot.
+     */
+    public static WorkspaceIconAtlas read(Context context, long snapshotId, int tileSize) {
+        AtomicFile file = getFile(context);
+        if (!file.getBaseFile().exists()) {
+            return null;
+        }
+        FileInputStream in = null;
+        try {
+            in = file.openRead();
+            FileChannel channel = in.getChannel();
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            if (buffer.getInt() != MAGIC || buffer.getInt() != VERSION
+                    || buffer.getLong() != snapshotId || buffer.getInt() != tileSize) {
+                return null;
+            }
+            long screenId = buffer.getLong();
+            long[] ids = new long[buffer.getInt()];
+            for (int i = 0; i < ids.length; i++) {
+                ids[i] = buffer.getLong();
+            }
+
+            int tileBytes = tileSize * tileSize * 4;
+            if (buffer.remaining() != (long) ids.length * tileBytes) {
+                return null;
+            }
+            LongArrayMap<Bitmap> icons = new LongArrayMap<>();
+            int offset = buffer.position();
+            for (long id : ids) {
+                Bitmap icon = Bitmap.createBitmap(tileSize, tileSize, Bitmap.Config.ARGB_8888);
+                if (icon.getByteCount() != tileBytes) {
+                    return null;
+                }
+                ByteBuffer tile = buffer.duplicate();
+                tile.limit(offset + tileBytes);
+                tile.position(offset);
+                icon.copyPixelsFromBuffer(tile);
+                icons.put(id, icon);
+                offset += tileBytes;
+            }
+            return new WorkspaceIconAtlas(screenId, icons);
+        } catch (IOException | BufferUnderflowException e) {
+            Log.w(TAG, "Unable to read icon atlas", e);
+            return null;
+        } finally {
+            Utilities.closeSilently(in);
+        }
+    }
+
+    public static void delete(Context context) {
+        getFile(context).delete();
+    }
+
+    private static AtomicFile getFile(Context context) {
+        return new AtomicFile(new File(context.getNoBackupFilesDir(), FILE_NAME));
+    }
+}
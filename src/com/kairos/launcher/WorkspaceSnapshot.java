@@ -0,0 +1,596 @@
+/*
+ * Copyright (C) 2017 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.kairos.launcher;
+
+import android.content.ComponentName;
+import android.content.ContentResolver;
+import android.content.Context;
+import android.content.Intent;
+import android.content.pm.PackageManager;
+import android.content.pm.PackageManager.NameNotFoundException;
+import android.database.Cursor;
+import android.graphics.Bitmap;
+import android.net.Uri;
+import android.os.Process;
+import android.os.UserHandle;
+import android.util.AtomicFile;
+import android.util.Log;
+import android.util.LongSparseArray;
+
+import com.kairos.launcher.compat.UserManagerCompat;
+import com.kairos.launcher.folder.Folder;
+import com.kairos.launcher.graphics.IconBlobCodec;
+import com.kairos.launcher.model.BgDataModel;
+import com.kairos.launcher.util.LongArrayMap;
+import com.kairos.launcher.util.ParallelRunner;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.net.URISyntaxException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Locale;
+
+/**--------------------------------------------------------------
+ * TEAM KAIROS :: DEV CARLOS :: CLASS SYNOPSIS
+ * Copyright (c) 2017 KAIROS
+ *
+ * Binary image of the workspace part of the {@link BgDataModel}: screens, items, folders and
+ * widgets, along with the icons of the shortcuts. It is written once the workspace has been
+ * loaded, and restored on the next start so that the workspace can be bound before the
+ * favorites are loaded. The loader then compares the loaded model with the snapshot, and only
+ * binds the workspace again if they differ. The icons of the first page and hotseat are also
+ * written in a {@link WorkspaceIconAtlas}, which is restored without any decode.
+ *
+ * A snapshot is discarded if the launcher DB, the grid, the locale or the packages of its
+ * items changed since it was written. Snapshots are only written for a model in a steady
+ * state, i.e. without disabled, promise or restoring items.
+ ----------------------------------------------------------------*/
+class WorkspaceSnapshot {
+
+    private static final String TAG = "WorkspaceSnapshot";
+
+    private static final String FILE_NAME = "workspace.snapshot";
+    private static final int MAGIC = 0x4b57534e;
+    private static final int VERSION = 2;
+
+    private static final int MIN_ICONS_PER_THREAD = 8;
+
+    // Identifies the snapshot in its icon atlas.
+    private final long mId;
+    private final String mValidationKey;
+    // Screens and items without their icons. Two models with the same description bind to the
+    // same workspace.
+    private final byte[] mDescription;
+    private final LongArrayMap<ItemInfo> mItems;
+    private long mAtlasScreenId = ItemInfo.NO_ID;
+
+    private WorkspaceSnapshot(long id, String validationKey, byte[] description,
+            LongArrayMap<ItemInfo> items) {
+        mId = id;
+        mValidationKey = validationKey;
+        mDescription = description;
+        mItems = items;
+    }
+
+    public int getItemCount() {
+        return mItems.size();
+    }
+
+    /**
+     * Returns the screen whose icons are in the persisted atlas of this snapshot, or
+     * {@link ItemInfo#NO_ID} if there is no atlas.
+     */
+    public long getAtlasScreenId() {
+        return mAtlasScreenId;
+    }
+
+    /**
+     * Returns true if both snapshots contain the same screens and items.
+     */
+    public boolean hasSameItems(WorkspaceSnapshot other) {
+        return other != null && Arrays.equals(mDescription, other.mDescription);
+    }
+
+    /**
+     * Replaces the items of {@param dataModel} by the instances of this snapshot. Must only be
+     * called if {@param dataModel} was loaded with the same items, see {@link #hasSameItems},
+     * so that the model uses the instances which were bound from the snapshot.
+     */
+    public void adoptItems(BgDataModel dataModel) {
+        synchronized (dataModel) {
+            for (int i = 0; i < mItems.size(); i++) {
+                dataModel.itemsIdMap.put(mItems.keyAt(i), mItems.valueAt(i));
+            }
+            for (int i = 0; i < dataModel.workspaceItems.size(); i++) {
+                dataModel.workspaceItems.set(i, mItems.get(dataModel.workspaceItems.get(i).id));
+            }
+            for (int i = 0; i < dataModel.appWidgets.size(); i++) {
+                dataModel.appWidgets.set(i,
+                        (LauncherAppWidgetInfo) mItems.get(dataModel.appWidgets.get(i).id));
+            }
+            for (int i = 0; i < dataModel.folders.size(); i++) {
+                dataModel.folders.setValueAt(i,
+                        (FolderInfo) mItems.get(dataModel.folders.keyAt(i)));
+            }
+        }
+    }
+
+    /**
+     * Captures the current workspace of {@param dataModel}.
+     * @return null if the model is not in a state which can be persisted.
+     */
+    public static WorkspaceSnapshot capture(Context context, BgDataModel dataModel) {
+        UserManagerCompat userManager = UserManagerCompat.getInstance(context);
+        String validationKey = getValidationKey(context);
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        LongArrayMap<ItemInfo> items = new LongArrayMap<>();
+        try {
+            synchronized (dataModel) {
+                out.writeInt(dataModel.workspaceScreens.size());
+                for (long screenId : dataModel.workspaceScreens) {
+                    out.writeLong(screenId);
+                }
+                out.writeInt(dataModel.itemsIdMap.size());
+                for (ItemInfo info : dataModel.itemsIdMap) {
+                    if (!writeItem(out, info, userManager.getSerialNumberForUser(info.user))) {
+                        return null;
+                    }
+                    items.put(info.id, info);
+                }
+            }
+            out.close();
+        } catch (IOException e) {
+            return null;
+        }
+        return new WorkspaceSnapshot(System.currentTimeMillis(), validationKey,
+                bytes.toByteArray(), items);
+    }
+
+    private static boolean writeItem(DataOutputStream out, ItemInfo info, long userSerial)
+            throws IOException {
+        out.writeLong(info.id);
+        out.writeInt(info.itemType);
+        out.writeLong(info.container);
+        out.writeLong(info.screenId);
+        out.writeInt(info.cellX);
+        out.writeInt(info.cellY);
+        out.writeInt(info.spanX);
+        out.writeInt(info.spanY);
+        out.writeInt(info.minSpanX);
+        out.writeInt(info.minSpanY);
+        out.writeInt(info.rank);
+        out.writeLong(userSerial);
+        writeString(out, info.title);
+        writeString(out, info.contentDescription);
+
+        switch (info.itemType) {
+            case LauncherSettings.Favorites.ITEM_TYPE_APPLICATION:
+            case LauncherSettings.Favorites.ITEM_TYPE_SHORTCUT:
+            case LauncherSettings.Favorites.ITEM_TYPE_DEEP_SHORTCUT: {
+                if (!(info instanceof ShortcutInfo)) {
+                    return false;
+                }
+                ShortcutInfo si = (ShortcutInfo) info;
+                if (si.status != 0 || si.isDisabled != ShortcutInfo.DEFAULT) {
+                    // Transient state, which is recomputed by the loader.
+                    return false;
+                }
+                writeString(out, si.intent == null ? null : si.intent.toUri(0));
+                writeString(out, si.iconResource == null ? null : si.iconResource.packageName);
+                writeString(out, si.iconResource == null ? null : si.iconResource.resourceName);
+                return true;
+            }
+            case LauncherSettings.Favorites.ITEM_TYPE_FOLDER:
+                if (!(info instanceof FolderInfo)) {
+                    return false;
+                }
+                out.writeInt(((FolderInfo) info).options);
+                return true;
+            case LauncherSettings.Favorites.ITEM_TYPE_APPWIDGET:
+            case LauncherSettings.Favorites.ITEM_TYPE_CUSTOM_APPWIDGET: {
+                if (!(info instanceof LauncherAppWidgetInfo)) {
+                    return false;
+                }
+                LauncherAppWidgetInfo widget = (LauncherAppWidgetInfo) info;
+                if (widget.restoreStatus != LauncherAppWidgetInfo.RESTORE_COMPLETED
+                        || widget.bindOptions != null || widget.providerName == null) {
+                    return false;
+                }
+                out.writeInt(widget.appWidgetId);
+                out.writeUTF(widget.providerName.flattenToString());
+                return true;
+            }
+            default:
+                return false;
+        }
+    }
+
+    private static void writeString(DataOutputStream out, CharSequence value) throws IOException {
+        out.writeBoolean(value != null);
+        if (value != null) {
+            out.writeUTF(value.toString());
+        }
+    }
+
+    /**
+     * Persists this snapshot along with the icons of its items. This should be called on a
+     * background thread.
+     */
+    public void write(Context context) {
+        AtomicFile file = getFile(context);
+        FileOutputStream fos = null;
+        try {
+            ArrayList<String> packages = new ArrayList<>(getPackages(context));
+            ArrayList<ShortcutInfo> shortcuts = new ArrayList<>();
+            for (ItemInfo info : mItems) {
+                if (info instanceof ShortcutInfo && ((ShortcutInfo) info).iconBitmap != null) {
+                    shortcuts.add((ShortcutInfo) info);
+                }
+            }
+
+            fos = file.startWrite();
+            DataOutputStream out = new DataOutputStream(new BufferedOutputStream(fos));
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeLong(mId);
+            out.writeUTF(mValidationKey);
+
+            PackageManager pm = context.getPackageManager();
+            out.writeInt(packages.size());
+            for (String packageName : packages) {
+                out.writeUTF(packageName);
+                out.writeLong(pm.getPackageInfo(packageName, 0).lastUpdateTime);
+            }
+
+            out.writeInt(mDescription.length);
+            out.write(mDescription);
+
+            out.writeInt(shortcuts.size());
+            for (ShortcutInfo info : shortcuts) {
+                byte[] icon = IconBlobCodec.encode(info.iconBitmap);
+                if (icon == null) {
+                    throw new IOException("Unable to compress icon of " + info);
+                }
+                out.writeLong(info.id);
+                out.writeBoolean(info.usingLowResIcon);
+                out.writeInt(icon.length);
+                out.write(icon);
+            }
+            out.flush();
+            file.finishWrite(fos);
+        } catch (IOException | NameNotFoundException e) {
+            Log.w(TAG, "Unable to write workspace snapshot", e);
+            if (fos != null) {
+                file.failWrite(fos);
+            }
+            delete(context);
+        }
+    }
+
+    /**
+     * Persists the icons of the hotseat and of the screen {@param screenId}, including the
+     * content of their folders, in the icon atlas of this snapshot. This should be called on a
+     * background thread, once the snapshot is written.
+     */
+    public void writeIconAtlas(Context context, long screenId) {
+        LongArrayMap<ItemInfo> containers = new LongArrayMap<>();
+        for (ItemInfo info : mItems) {
+            if (isOnScreenOrHotseat(info, screenId) && info instanceof FolderInfo) {
+                containers.put(info.id, info);
+            }
+        }
+        int tileSize = LauncherAppState.getIDP(context).iconBitmapSize;
+        ArrayList<ShortcutInfo> shortcuts = new ArrayList<>();
+        for (ItemInfo info : mItems) {
+            boolean inAtlas = isOnScreenOrHotseat(info, screenId)
+                    || containers.get(info.container) != null;
+            if (!inAtlas || !(info instanceof ShortcutInfo)) {
+                continue;
+            }
+            ShortcutInfo si = (ShortcutInfo) info;
+            if (!si.usingLowResIcon && WorkspaceIconAtlas.canStore(si.iconBitmap, tileSize)) {
+                shortcuts.add(si);
+            }
+        }
+        WorkspaceIconAtlas.write(context, mId, screenId, tileSize, shortcuts);
+        mAtlasScreenId = screenId;
+    }
+
+    private static boolean isOnScreenOrHotseat(ItemInfo info, long screenId) {
+        return info.container == LauncherSettings.Favorites.CONTAINER_HOTSEAT
+                || (info.container == LauncherSettings.Favorites.CONTAINER_DESKTOP
+                        && info.screenId == screenId);
+    }
+
+    /**
+     * Returns the packages of the items of the primary user, whose updates invalidate the
+     * snapshot. Items of other profiles are only checked when the loader reconciles.
+     */
+    private HashSet<String> getPackages(Context context) {
+        HashSet<String> packages = new HashSet<>();
+        packages.add(context.getPackageName());
+        UserHandle myUser = Process.myUserHandle();
+        for (ItemInfo info : mItems) {
+            if (!myUser.equals(info.user)) {
+                continue;
+            }
+            ComponentName cn = info instanceof LauncherAppWidgetInfo
+                    ? ((LauncherAppWidgetInfo) info).providerName : info.getTargetComponent();
+            if (cn != null) {
+                packages.add(cn.getPackageName());
+            }
+            if (info instanceof ShortcutInfo && ((ShortcutInfo) info).iconResource != null) {
+                packages.add(((ShortcutInfo) info).iconResource.packageName);
+            }
+        }
+        return packages;
+    }
+
+    /**
+     * Reads the persisted snapshot and, if it is still valid, replaces the content of
+     * {@param dataModel} by its items.
+     * @return null if there was no valid snapshot, in which case the model is not modified.
+     */
+    public static WorkspaceSnapshot restore(Context context, BgDataModel dataModel) {
+        AtomicFile file = getFile(context);
+        PackageManager pm = context.getPackageManager();
+        if (!file.getBaseFile().exists() || pm.isSafeMode()) {
+            return null;
+        }
+        try {
+            DataInputStream in = new DataInputStream(new ByteArrayInputStream(file.readFully()));
+            if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+                return null;
+            }
+            long id = in.readLong();
+            String validationKey = in.readUTF();
+            if (!validationKey.equals(getValidationKey(context))) {
+                return null;
+            }
+
+            int packageCount = in.readInt();
+            for (int i = 0; i < packageCount; i++) {
+                String packageName = in.readUTF();
+                long lastUpdateTime = in.readLong();
+                if (pm.getPackageInfo(packageName, 0).lastUpdateTime != lastUpdateTime) {
+                    return null;
+                }
+            }
+
+            byte[] description = new byte[in.readInt()];
+            in.readFully(description);
+            ArrayList<Long> screens = new ArrayList<>();
+            LongArrayMap<ItemInfo> items = readItems(context, description, screens);
+            if (items == null) {
+                return null;
+            }
+
+            // The icons in the atlas are used as is, only the other ones need to be decoded.
+            WorkspaceIconAtlas atlas = WorkspaceIconAtlas.read(context, id,
+                    LauncherAppState.getIDP(context).iconBitmapSize);
+            int iconCount = in.readInt();
+            final ArrayList<ShortcutInfo> shortcuts = new ArrayList<>(iconCount);
+            final ArrayList<byte[]> icons = new ArrayList<>(iconCount);
+            for (int i = 0; i < iconCount; i++) {
+                ItemInfo info = items.get(in.readLong());
+                if (!(info instanceof ShortcutInfo)) {
+                    return null;
+                }
+                ShortcutInfo si = (ShortcutInfo) info;
+                si.usingLowResIcon = in.readBoolean();
+                int iconSize = in.readInt();
+                Bitmap icon = atlas == null ? null : atlas.icons.get(si.id);
+                if (icon != null) {
+                    si.iconBitmap = icon;
+                    in.skipBytes(iconSize);
+                } else {
+                    byte[] data = new byte[iconSize];
+                    in.readFully(data);
+                    shortcuts.add(si);
+                    icons.add(data);
+                }
+            }
+            ParallelRunner.run(Utilities.THREAD_POOL_EXECUTOR, shortcuts.size(),
+                    MIN_ICONS_PER_THREAD, ParallelRunner.getCpuBoundParallelism(),
+                    new ParallelRunner.RangeTask() {
+                        @Override
+                        public void run(int start, int end) {
+                            for (int i = start; i < end; i++) {
+                                shortcuts.get(i).iconBitmap =
+                                        IconBlobCodec.decode(icons.get(i), null);
+                            }
+                        }
+                    });
+            for (ShortcutInfo info : shortcuts) {
+                if (info.iconBitmap == null) {
+                    return null;
+                }
+            }
+
+            synchronized (dataModel) {
+                dataModel.clear();
+                dataModel.workspaceScreens.addAll(screens);
+                // Register the folders first, so that their content is added to these instances.
+                for (ItemInfo info : items) {
+                    if (info instanceof FolderInfo) {
+                        dataModel.folders.put(info.id, (FolderInfo) info);
+                    }
+                }
+                for (ItemInfo info : items) {
+                    dataModel.addItem(context, info, false);
+                }
+                for (FolderInfo folder : dataModel.folders) {
+                    Collections.sort(folder.contents, Folder.ITEM_POS_COMPARATOR);
+                }
+            }
+            WorkspaceSnapshot snapshot = new WorkspaceSnapshot(id, validationKey, description,
+                    items);
+            if (atlas != null) {
+                snapshot.mAtlasScreenId = atlas.screenId;
+            }
+            return snapshot;
+        } catch (IOException | URISyntaxException | NameNotFoundException e) {
+            Log.w(TAG, "Unable to restore workspace snapshot", e);
+            delete(context);
+            return null;
+        } catch (InterruptedException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Reads the screens and items written by {@link #capture}.
+     * @return null if an item belongs to a user which is not available anymore.
+     */
+    private static LongArrayMap<ItemInfo> readItems(Context context, byte[] description,
+            ArrayList<Long> outScreens) throws IOException, URISyntaxException {
+        UserManagerCompat userManager = UserManagerCompat.getInstance(context);
+        LongSparseArray<UserHandle> users = new LongSparseArray<>();
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(description));
+
+        int screenCount = in.readInt();
+        for (int i = 0; i < screenCount; i++) {
+            outScreens.add(in.readLong());
+        }
+
+        LongArrayMap<ItemInfo> items = new LongArrayMap<>();
+        int itemCount = in.readInt();
+        for (int i = 0; i < itemCount; i++) {
+            long id = in.readLong();
+            int itemType = in.readInt();
+            ItemInfo info;
+            switch (itemType) {
+                case LauncherSettings.Favorites.ITEM_TYPE_APPLICATION:
+                case LauncherSettings.Favorites.ITEM_TYPE_SHORTCUT:
+                case LauncherSettings.Favorites.ITEM_TYPE_DEEP_SHORTCUT:
+                    info = new ShortcutInfo();
+                    break;
+                case LauncherSettings.Favorites.ITEM_TYPE_FOLDER:
+                    info = new FolderInfo();
+                    break;
+                case LauncherSettings.Favorites.ITEM_TYPE_APPWIDGET:
+                case LauncherSettings.Favorites.ITEM_TYPE_CUSTOM_APPWIDGET:
+                    info = new LauncherAppWidgetInfo();
+                    break;
+                default:
+                    throw new IOException("Unknown item type " + itemType);
+            }
+            info.id = id;
+            info.itemType = itemType;
+            info.container = in.readLong();
+            info.screenId = in.readLong();
+            info.cellX = in.readInt();
+            info.cellY = in.readInt();
+            info.spanX = in.readInt();
+            info.spanY = in.readInt();
+            info.minSpanX = in.readInt();
+            info.minSpanY = in.readInt();
+            info.rank = in.readInt();
+
+            long userSerial = in.readLong();
+            UserHandle user = users.get(userSerial);
+            if (user == null) {
+                user = userManager.getUserForSerialNumber(userSerial);
+                if (user == null || userManager.isQuietModeEnabled(user)
+                        || !userManager.isUserUnlocked(user)) {
+                    // The items of this user would be disabled.
+                    return null;
+                }
+                users.put(userSerial, user);
+            }
+            info.user = user;
+            info.title = readString(in);
+            info.contentDescription = readString(in);
+
+            if (info instanceof ShortcutInfo) {
+                ShortcutInfo si = (ShortcutInfo) info;
+                String intent = readString(in);
+                si.intent = intent == null ? null : Intent.parseUri(intent, 0);
+                String iconPackage = readString(in);
+                String iconResource = readString(in);
+                if (iconPackage != null) {
+                    si.iconResource = new Intent.ShortcutIconResource();
+                    si.iconResource.packageName = iconPackage;
+                    si.iconResource.resourceName = iconResource;
+                }
+            } else if (info instanceof FolderInfo) {
+                ((FolderInfo) info).options = in.readInt();
+            } else {
+                LauncherAppWidgetInfo widget = (LauncherAppWidgetInfo) info;
+                widget.appWidgetId = in.readInt();
+                widget.providerName = ComponentName.unflattenFromString(in.readUTF());
+            }
+            items.put(id, info);
+        }
+        return items;
+    }
+
+    private static String readString(DataInputStream in) throws IOException {
+        return in.readBoolean() ? in.readUTF() : null;
+    }
+
+    public static void delete(Context context) {
+        getFile(context).delete();
+        WorkspaceIconAtlas.delete(context);
+    }
+
+    private static AtomicFile getFile(Context context) {
+        return new AtomicFile(new File(context.getNoBackupFilesDir(), FILE_NAME));
+    }
+
+    /**
+     * Returns a key which changes whenever the workspace needs to be loaded again: when the
+     * locale, the grid or the content of the launcher DB changes.
+     */
+    private static String getValidationKey(Context context) {
+        InvariantDeviceProfile idp = LauncherAppState.getIDP(context);
+        ContentResolver resolver = context.getContentResolver();
+        return Locale.getDefault().toString()
+                + ";" + idp.numRows + "x" + idp.numColumns + "x" + idp.numHotseatIcons
+                + ";" + getTableSignature(resolver, LauncherSettings.Favorites.CONTENT_URI)
+                + ";" + getTableSignature(resolver, LauncherSettings.WorkspaceScreens.CONTENT_URI);
+    }
+
+    /**
+     * Returns a cheap signature of the rows of a launcher table. All the writes of the
+     * {@link LauncherProvider} update the modified time of the rows, or their count.
+     */
+    private static String getTableSignature(ContentResolver resolver, Uri uri) {
+        Cursor c = resolver.query(uri, new String[] {
+                "COUNT(*)",
+                "MAX(" + LauncherSettings.ChangeLogColumns._ID + ")",
+                "SUM(" + LauncherSettings.ChangeLogColumns.MODIFIED + ")"}, null, null, null);
+        if (c == null) {
+            return "";
+        }
+        try {
+            return c.moveToNext() ? c.getLong(0) + "/" + c.getLong(1) + "/" + c.getLong(2) : "";
+        } finally {
+            c.close();
+        }
+    }
+}
@@ -0,0 +1,101 @@
+/*
+ * Copyright (C) 2017 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.kairos.launcher.allapps;
+
+import android.support.v7.util.DiffUtil;
+import android.text.TextUtils;
+
+import com.kairos.launcher.AppInfo;
+import com.kairos.launcher.allapps.AlphabeticalAppsList.AdapterItem;
+
+import java.util.List;
+
+/**--------------------------------------------------------------
+ * TEAM KAIROS :: DEV CARLOS :: CLASS SYNOPSIS
+ * Copyright (c) 2017 KAIROS
+ *
+ * Compares two lists of all apps {@link AdapterItem}s, so that only the rows which changed are
+ * rebound. Apps are the same item when they are the same component, and their content changed
+ * when the {@link AppInfo} was replaced, or when the title, icon or disabled state it had when
+ * the item was created changed, as the model updates some apps in place. Items showing the search state (empty search, market
+ * search and discovery loading) are always rebound, as their content is not in the item.
+ *
+ * The lists must not be modified while the diff is computed.
+ ----------------------------------------------------------------*/
+class AdapterItemDiffCallback extends DiffUtil.Callback {
+
+    private static final int VIEW_TYPE_MASK_SEARCH_STATE =
+            AllAppsGridAdapter.VIEW_TYPE_EMPTY_SEARCH
+            | AllAppsGridAdapter.VIEW_TYPE_SEARCH_MARKET
+            | AllAppsGridAdapter.VIEW_TYPE_APPS_LOADING_DIVIDER;
+
+    private final List<AdapterItem> mOldItems;
+    private final List<AdapterItem> mNewItems;
+
+    AdapterItemDiffCallback(List<AdapterItem> oldItems, List<AdapterItem> newItems) {
+        mOldItems = oldItems;
+        mNewItems = newItems;
+    }
+
+    @Override
+    public int getOldListSize() {
+        return mOldItems.size();
+    }
+
+    @Override
+    public int getNewListSize() {
+        return mNewItems.size();
+    }
+
+    @Override
+    public boolean areItemsTheSame(int oldItemPosition, int newItemPosition) {
+        AdapterItem oldItem = mOldItems.get(oldItemPosition);
+        AdapterItem newItem = mNewItems.get(newItemPosition);
+        if (oldItem.viewType != newItem.viewType) {
+            return false;
+        }
+        if (oldItem.appInfo == null || newItem.appInfo == null) {
+            // There is at most one item of each of the other types.
+            return oldItem.appInfo == newItem.appInfo;
+        }
+        return isSameComponent(oldItem.appInfo, newItem.appInfo);
+    }
+
+    @Override
+    public boolean areContentsTheSame(int oldItemPosition, int newItemPosition) {
+        AdapterItem oldItem = mOldItems.get(oldItemPosition);
+        AdapterItem newItem = mNewItems.get(newItemPosition);
+        if ((newItem.viewType & VIEW_TYPE_MASK_SEARCH_STATE) != 0) {
+            return false;
+        }
+        return oldItem.appInfo == newItem.appInfo
+                && TextUtils.equals(oldItem.boundTitle, newItem.boundTitle)
+                && oldItem.boundIcon == newItem.boundIcon
+                && oldItem.boundDisabled == newItem.boundDisabled;
+    }
+
+    private static boolean isSameComponent(AppInfo a, AppInfo b) {
+        if (a == b) {
+            return true;
+        }
+        if (a.componentName == null || b.componentName == null) {
+            return false;
+        }
+        return a.componentName.equals(b.componentName)
+                && (a.user == null ? b.user == null : a.user.equals(b.user));
+    }
+}
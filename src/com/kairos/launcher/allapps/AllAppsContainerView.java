@@ -59,6 +59,7 @@ import com.kairos.launcher.util.ComponentKey;
 import com.kairos.launcher.util.PackageUserKey;
 import com.kairos.launcher.userevent.nano.LauncherLogProto;
 
+import java.io.PrintWriter;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Set;
@@ -144,6 +145,7 @@ public class AllAppsContainerView extends BaseContainerView implements DragSourc
      */
     public void setApps(List<AppInfo> apps) {
         mApps.setApps(apps);
+        mSearchBarController.onAppsUpdated();
     }
 
     /**
@@ -151,7 +153,7 @@ public class AllAppsContainerView extends BaseContainerView implements DragSourc
      */
     public void addApps(List<AppInfo> apps) {
         mApps.addApps(apps);
-        mSearchBarController.refreshSearchResult();
+        mSearchBarController.onAppsUpdated();
     }
 
     /**
@@ -159,7 +161,7 @@ public class AllAppsContainerView extends BaseContainerView implements DragSourc
      */
     public void updateApps(List<AppInfo> apps) {
         mApps.updateApps(apps);
-        mSearchBarController.refreshSearchResult();
+        mSearchBarController.onAppsUpdated();
     }
 
     /**
@@ -167,7 +169,7 @@ public class AllAppsContainerView extends BaseContainerView implements DragSourc
      */
     public void removeApps(List<AppInfo> apps) {
         mApps.removeApps(apps);
-        mSearchBarController.refreshSearchResult();
+        mSearchBarController.onAppsUpdated();
     }
 
     public void setSearchBarVisible(boolean visible) {
@@ -190,6 +192,13 @@ public class AllAppsContainerView extends BaseContainerView implements DragSourc
         mAdapter.setSearchController(mSearchBarController);
     }
 
+    public void dump(String prefix, PrintWriter writer) {
+        mApps.dump(prefix, writer);
+        if (mSearchBarController != null) {
+            mSearchBarController.dump(prefix, writer);
+        }
+    }
+
     /**
      * Scrolls this list view to the top.
      */
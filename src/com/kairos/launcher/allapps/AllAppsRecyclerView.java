@@ -273,10 +273,32 @@ public class AllAppsRecyclerView extends BaseRecyclerView {
     @Override
     public void setAdapter(Adapter adapter) {
         super.setAdapter(adapter);
+        // The cached positions are invalidated by the range events dispatched for diffed updates
+        // as well as by full updates.
         adapter.registerAdapterDataObserver(new RecyclerView.AdapterDataObserver() {
             public void onChanged() {
                 mCachedScrollPositions.clear();
             }
+
+            @Override
+            public void onItemRangeChanged(int positionStart, int itemCount) {
+                mCachedScrollPositions.clear();
+            }
+
+            @Override
+            public void onItemRangeInserted(int positionStart, int itemCount) {
+                mCachedScrollPositions.clear();
+            }
+
+            @Override
+            public void onItemRangeRemoved(int positionStart, int itemCount) {
+                mCachedScrollPositions.clear();
+            }
+
+            @Override
+            public void onItemRangeMoved(int fromPosition, int toPosition, int itemCount) {
+                mCachedScrollPositions.clear();
+            }
         });
         mFastScrollHelper.onSetAdapter((AllAppsGridAdapter) adapter);
     }
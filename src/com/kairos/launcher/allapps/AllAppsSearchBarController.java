@@ -38,6 +38,7 @@ import com.kairos.launcher.discovery.AppDiscoveryItem;
 import com.kairos.launcher.discovery.AppDiscoveryUpdateState;
 import com.kairos.launcher.util.ComponentKey;
 
+import java.io.PrintWriter;
 import java.util.ArrayList;
 
 
@@ -119,6 +120,14 @@ public abstract class AllAppsSearchBarController
         }
     }
 
+    /**
+     * Called when the list of apps, or the title of an app, changed.
+     */
+    protected void onAppsUpdated() {
+        mSearchAlgorithm.invalidateIndex();
+        refreshSearchResult();
+    }
+
     protected void refreshSearchResult() {
         if (TextUtils.isEmpty(mQuery)) {
             return;
@@ -128,6 +137,10 @@ public abstract class AllAppsSearchBarController
         mSearchAlgorithm.doSearch(mQuery, mCb);
     }
 
+    public void dump(String prefix, PrintWriter writer) {
+        mSearchAlgorithm.dump(prefix, writer);
+    }
+
     @Override
     public boolean onEditorAction(TextView v, int actionId, KeyEvent event) {
         // Skip if it's not the right action
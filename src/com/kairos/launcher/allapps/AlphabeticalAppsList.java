@@ -16,21 +16,26 @@
 package com.kairos.launcher.allapps;
 
 import android.content.Context;
+import android.graphics.Bitmap;
 import android.os.Process;
 import android.support.annotation.NonNull;
 import android.support.annotation.Nullable;
+import android.support.v7.util.DiffUtil;
 import android.util.Log;
 
 import com.kairos.launcher.AppInfo;
 import com.kairos.launcher.Launcher;
-import com.kairos.launcher.compat.AlphabeticIndexCompat;
+import com.kairos.launcher.MainThreadExecutor;
+import com.kairos.launcher.Utilities;
 import com.kairos.launcher.config.ProviderConfig;
 import com.kairos.launcher.discovery.AppDiscoveryAppInfo;
 import com.kairos.launcher.discovery.AppDiscoveryItem;
 import com.kairos.launcher.discovery.AppDiscoveryUpdateState;
 import com.kairos.launcher.util.ComponentKey;
 import com.kairos.launcher.util.LabelComparator;
+import com.kairos.launcher.util.TitleSortKeys;
 
+import java.io.PrintWriter;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashMap;
@@ -98,6 +103,11 @@ public class AlphabeticalAppsList {
         public int rowAppIndex;
         // The associated AppInfo for the app
         public AppInfo appInfo = null;
+        // The values of appInfo shown by the item when it was created, as the AppInfo can be
+        // updated in place
+        public CharSequence boundTitle;
+        public Bitmap boundIcon;
+        public int boundDisabled;
         // The index of this app not including sections
         public int appIndex = -1;
 
@@ -114,7 +124,7 @@ public class AlphabeticalAppsList {
             item.viewType = AllAppsGridAdapter.VIEW_TYPE_ICON;
             item.position = pos;
             item.sectionName = sectionName;
-            item.appInfo = appInfo;
+            item.setAppInfo(appInfo);
             item.appIndex = appIndex;
             return item;
         }
@@ -125,11 +135,18 @@ public class AlphabeticalAppsList {
             item.viewType = AllAppsGridAdapter.VIEW_TYPE_DISCOVERY_ITEM;
             item.position = pos;
             item.sectionName = sectionName;
-            item.appInfo = appInfo;
+            item.setAppInfo(appInfo);
             item.appIndex = appIndex;
             return item;
         }
 
+        private void setAppInfo(AppInfo info) {
+            appInfo = info;
+            boundTitle = info.title;
+            boundIcon = info.iconBitmap;
+            boundDisabled = info.isDisabled;
+        }
+
         public static AdapterItem asEmptySearch(int pos) {
             AdapterItem item = new AdapterItem();
             item.viewType = AllAppsGridAdapter.VIEW_TYPE_EMPTY_SEARCH;
@@ -179,31 +196,39 @@ public class AlphabeticalAppsList {
     private final List<AppInfo> mApps = new ArrayList<>();
     private final HashMap<ComponentKey, AppInfo> mComponentToAppMap = new HashMap<>();
 
-    // The set of filtered apps with the current filter
-    private final List<AppInfo> mFilteredApps = new ArrayList<>();
-    // The current set of adapter items
-    private final ArrayList<AdapterItem> mAdapterItems = new ArrayList<>();
+    // The set of filtered apps with the current filter, the predicted apps and the adapter items
+    // are always those shown by the adapter. Once shown, these lists are not modified anymore and
+    // are replaced together, as the adapter items may be read by a diff in the background.
+    private List<AppInfo> mFilteredApps = new ArrayList<>();
+    // The set of adapter items shown by the adapter
+    private List<AdapterItem> mAdapterItems = new ArrayList<>();
     // The set of sections that we allow fast-scrolling to (includes non-merged sections)
-    private final List<FastScrollSectionInfo> mFastScrollerSections = new ArrayList<>();
+    private List<FastScrollSectionInfo> mFastScrollerSections = new ArrayList<>();
     // The set of predicted app component names
     private final List<ComponentKey> mPredictedAppComponents = new ArrayList<>();
     // The set of predicted apps resolved from the component names and the current set of apps
-    private final List<AppInfo> mPredictedApps = new ArrayList<>();
+    private List<AppInfo> mPredictedApps = new ArrayList<>();
     private final List<AppDiscoveryAppInfo> mDiscoveredApps = new ArrayList<>();
 
     // The of ordered component names as a result of a search query
     private ArrayList<ComponentKey> mSearchResults;
-    private HashMap<CharSequence, String> mCachedSectionNames = new HashMap<>();
     private AllAppsGridAdapter mAdapter;
-    private AlphabeticIndexCompat mIndexer;
+    private TitleSortKeys mSortKeys;
     private AppInfoComparator mAppNameComparator;
     private int mNumAppsPerRow;
     private int mNumPredictedAppsPerRow;
     private int mNumAppRowsInAdapter;
 
+    private final MainThreadExecutor mMainThreadExecutor = new MainThreadExecutor();
+    // Incremented by every update of the adapter items, a diff is only applied if it matches.
+    private int mUpdateGeneration;
+    private int mFullUpdateCount;
+    private int mDiffUpdateCount;
+    private int mDroppedDiffCount;
+
     public AlphabeticalAppsList(Context context) {
         mLauncher = Launcher.getLauncher(context);
-        mIndexer = new AlphabeticIndexCompat(context);
+        mSortKeys = TitleSortKeys.getInstance(context);
         mAppNameComparator = new AppInfoComparator(context);
     }
 
@@ -214,7 +239,8 @@ public class AlphabeticalAppsList {
         mNumAppsPerRow = numAppsPerRow;
         mNumPredictedAppsPerRow = numPredictedAppsPerRow;
 
-        updateAdapterItems();
+        // The rows change, rebind everything.
+        updateAdapterItems(true /* fullUpdate */);
     }
 
     /**
@@ -309,6 +335,10 @@ public class AlphabeticalAppsList {
      * of applications, we should merge the results only in onAppsUpdated() which is idempotent.
      */
     public void setPredictedApps(List<ComponentKey> apps) {
+        if (mPredictedAppComponents.equals(apps)) {
+            // Nothing changed, avoid sorting the apps again
+            return;
+        }
         mPredictedAppComponents.clear();
         mPredictedAppComponents.addAll(apps);
         onAppsUpdated();
@@ -353,9 +383,13 @@ public class AlphabeticalAppsList {
      * Updates internals when the set of apps are updated.
      */
     private void onAppsUpdated() {
-        // Sort the list of apps
+        // Sort the list of apps, most of them already have their key from the icon cache
+        mSortKeys = TitleSortKeys.getInstance(mLauncher);
         mApps.clear();
         mApps.addAll(mComponentToAppMap.values());
+        for (AppInfo info : mApps) {
+            mSortKeys.getSortKey(info);
+        }
         Collections.sort(mApps, mAppNameComparator);
 
         // As a special case for some languages (currently only Simplified Chinese), we may need to
@@ -367,8 +401,7 @@ public class AlphabeticalAppsList {
             // ensure that the sections are ordered when we iterate over it later
             TreeMap<String, ArrayList<AppInfo>> sectionMap = new TreeMap<>(new LabelComparator());
             for (AppInfo info : mApps) {
-                // Add the section to the cache
-                String sectionName = getAndUpdateCachedSectionName(info.title);
+                String sectionName = getSectionName(info);
 
                 // Add it to the mapping
                 ArrayList<AppInfo> sectionApps = sectionMap.get(sectionName);
@@ -384,12 +417,6 @@ public class AlphabeticalAppsList {
             for (Map.Entry<String, ArrayList<AppInfo>> entry : sectionMap.entrySet()) {
                 mApps.addAll(entry.getValue());
             }
-        } else {
-            // Just compute the section headers for use below
-            for (AppInfo info : mApps) {
-                // Add the section to the cache
-                getAndUpdateCachedSectionName(info.title);
-            }
         }
 
         // Recompose the set of adapter items from the current set of apps
@@ -398,29 +425,85 @@ public class AlphabeticalAppsList {
 
     /**
      * Updates the set of filtered apps with the current filter.  At this point, we expect
-     * mCachedSectionNames to have been calculated for the set of all apps in mApps.
+     * the sort keys to have been calculated for the set of all apps in mApps.
      */
     private void updateAdapterItems() {
-        refillAdapterItems();
-        refreshRecyclerView();
+        updateAdapterItems(false /* fullUpdate */);
     }
 
-    private void refreshRecyclerView() {
-        if (mAdapter != null) {
-            mAdapter.notifyDataSetChanged();
+    /**
+     * Recomputes the adapter items. Unless {@param fullUpdate} is set, the changes are diffed in
+     * the background and the new items are only shown once the adapter can be notified of the
+     * rows which were inserted, removed, moved or changed. Newer updates supersede a diff in
+     * progress, which is always computed from the items currently shown.
+     */
+    private void updateAdapterItems(boolean fullUpdate) {
+        final ArrayList<AdapterItem> items = new ArrayList<>();
+        final ArrayList<FastScrollSectionInfo> sections = new ArrayList<>();
+        final ArrayList<AppInfo> filteredApps = new ArrayList<>();
+        final ArrayList<AppInfo> predictedApps = new ArrayList<>();
+        final int numAppRows = refillAdapterItems(items, sections, filteredApps, predictedApps);
+        final int generation = ++mUpdateGeneration;
+
+        if (fullUpdate || mAdapter == null || mAdapterItems.isEmpty()) {
+            setAdapterItems(items, sections, filteredApps, predictedApps, numAppRows);
+            if (mAdapter != null) {
+                mFullUpdateCount++;
+                mAdapter.notifyDataSetChanged();
+            }
+            return;
         }
+
+        final List<AdapterItem> oldItems = mAdapterItems;
+        Utilities.THREAD_POOL_EXECUTOR.execute(new Runnable() {
+            @Override
+            public void run() {
+                final DiffUtil.DiffResult diff = DiffUtil.calculateDiff(
+                        new AdapterItemDiffCallback(oldItems, items), true /* detectMoves */);
+                mMainThreadExecutor.execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        if (generation != mUpdateGeneration) {
+                            mDroppedDiffCount++;
+                            return;
+                        }
+                        setAdapterItems(items, sections, filteredApps, predictedApps,
+                                numAppRows);
+                        mDiffUpdateCount++;
+                        diff.dispatchUpdatesTo(mAdapter);
+                    }
+                });
+            }
+        });
     }
 
-    private void refillAdapterItems() {
+    private void setAdapterItems(List<AdapterItem> items, List<FastScrollSectionInfo> sections,
+            List<AppInfo> filteredApps, List<AppInfo> predictedApps, int numAppRows) {
+        mAdapterItems = items;
+        mFastScrollerSections = sections;
+        mFilteredApps = filteredApps;
+        mPredictedApps = predictedApps;
+        mNumAppRowsInAdapter = numAppRows;
+    }
+
+    public void dump(String prefix, PrintWriter writer) {
+        writer.println(prefix + "AlphabeticalAppsList: items=" + mAdapterItems.size()
+                + " fullUpdates=" + mFullUpdateCount
+                + " diffUpdates=" + mDiffUpdateCount
+                + " droppedDiffs=" + mDroppedDiffCount);
+    }
+
+    /**
+     * Fills {@param items}, {@param sections}, {@param filteredApps} and {@param predictedApps}
+     * for the current apps and filter, and returns the number of app rows.
+     */
+    private int refillAdapterItems(List<AdapterItem> items, List<FastScrollSectionInfo> sections,
+            List<AppInfo> filteredApps, List<AppInfo> predictedApps) {
         String lastSectionName = null;
         FastScrollSectionInfo lastFastScrollerSectionInfo = null;
         int position = 0;
         int appIndex = 0;
-
-        // Prepare to update the list of sections, filtered apps, etc.
-        mFilteredApps.clear();
-        mFastScrollerSections.clear();
-        mAdapterItems.clear();
+        int numAppRows = mNumAppRowsInAdapter;
 
         if (DEBUG_PREDICTIONS) {
             if (mPredictedAppComponents.isEmpty() && !mApps.isEmpty()) {
@@ -436,56 +519,55 @@ public class AlphabeticalAppsList {
         }
 
         // Add the search divider
-        mAdapterItems.add(AdapterItem.asSearchDivider(position++));
+        items.add(AdapterItem.asSearchDivider(position++));
 
         // Process the predicted app components
-        mPredictedApps.clear();
         if (mPredictedAppComponents != null && !mPredictedAppComponents.isEmpty() && !hasFilter()) {
             for (ComponentKey ck : mPredictedAppComponents) {
                 AppInfo info = mComponentToAppMap.get(ck);
                 if (info != null) {
-                    mPredictedApps.add(info);
+                    predictedApps.add(info);
                 } else {
                     if (ProviderConfig.IS_DOGFOOD_BUILD) {
                         Log.e(TAG, "Predicted app not found: " + ck);
                     }
                 }
                 // Stop at the number of predicted apps
-                if (mPredictedApps.size() == mNumPredictedAppsPerRow) {
+                if (predictedApps.size() == mNumPredictedAppsPerRow) {
                     break;
                 }
             }
 
-            if (!mPredictedApps.isEmpty()) {
+            if (!predictedApps.isEmpty()) {
                 // Add a section for the predictions
                 lastFastScrollerSectionInfo = new FastScrollSectionInfo("");
-                mFastScrollerSections.add(lastFastScrollerSectionInfo);
+                sections.add(lastFastScrollerSectionInfo);
 
                 // Add the predicted app items
-                for (AppInfo info : mPredictedApps) {
+                for (AppInfo info : predictedApps) {
                     AdapterItem appItem = AdapterItem.asPredictedApp(position++, "", info,
                             appIndex++);
                     if (lastFastScrollerSectionInfo.fastScrollToItem == null) {
                         lastFastScrollerSectionInfo.fastScrollToItem = appItem;
                     }
-                    mAdapterItems.add(appItem);
-                    mFilteredApps.add(info);
+                    items.add(appItem);
+                    filteredApps.add(info);
                 }
 
-                mAdapterItems.add(AdapterItem.asPredictionDivider(position++));
+                items.add(AdapterItem.asPredictionDivider(position++));
             }
         }
 
         // Recreate the filtered and sectioned apps (for convenience for the grid layout) from the
         // ordered set of sections
         for (AppInfo info : getFiltersAppInfos()) {
-            String sectionName = getAndUpdateCachedSectionName(info.title);
+            String sectionName = getSectionName(info);
 
             // Create a new section if the section names do not match
             if (!sectionName.equals(lastSectionName)) {
                 lastSectionName = sectionName;
                 lastFastScrollerSectionInfo = new FastScrollSectionInfo(sectionName);
-                mFastScrollerSections.add(lastFastScrollerSectionInfo);
+                sections.add(lastFastScrollerSectionInfo);
             }
 
             // Create an app item
@@ -493,13 +575,13 @@ public class AlphabeticalAppsList {
             if (lastFastScrollerSectionInfo.fastScrollToItem == null) {
                 lastFastScrollerSectionInfo.fastScrollToItem = appItem;
             }
-            mAdapterItems.add(appItem);
-            mFilteredApps.add(info);
+            items.add(appItem);
+            filteredApps.add(info);
         }
 
         if (hasFilter()) {
             if (isAppDiscoveryRunning() || mDiscoveredApps.size() > 0) {
-                mAdapterItems.add(AdapterItem.asLoadingDivider(position++));
+                items.add(AdapterItem.asLoadingDivider(position++));
                 // Append all app discovery results
                 for (int i = 0; i < mDiscoveredApps.size(); i++) {
                     AppDiscoveryAppInfo appDiscoveryAppInfo = mDiscoveredApps.get(i);
@@ -509,20 +591,20 @@ public class AlphabeticalAppsList {
                     }
                     AdapterItem item = AdapterItem.asDiscoveryItem(position++,
                             "", appDiscoveryAppInfo, appIndex++);
-                    mAdapterItems.add(item);
+                    items.add(item);
                 }
 
                 if (!isAppDiscoveryRunning()) {
-                    mAdapterItems.add(AdapterItem.asMarketSearch(position++));
+                    items.add(AdapterItem.asMarketSearch(position++));
                 }
             } else {
                 // Append the search market item
-                if (hasNoFilteredResults()) {
-                    mAdapterItems.add(AdapterItem.asEmptySearch(position++));
+                if (filteredApps.isEmpty()) {
+                    items.add(AdapterItem.asEmptySearch(position++));
                 } else {
-                    mAdapterItems.add(AdapterItem.asMarketDivider(position++));
+                    items.add(AdapterItem.asMarketDivider(position++));
                 }
-                mAdapterItems.add(AdapterItem.asMarketSearch(position++));
+                items.add(AdapterItem.asMarketSearch(position++));
             }
         }
 
@@ -532,7 +614,7 @@ public class AlphabeticalAppsList {
             int numAppsInSection = 0;
             int numAppsInRow = 0;
             int rowIndex = -1;
-            for (AdapterItem item : mAdapterItems) {
+            for (AdapterItem item : items) {
                 item.rowIndex = 0;
                 if (AllAppsGridAdapter.isDividerViewType(item.viewType)) {
                     numAppsInSection = 0;
@@ -547,13 +629,13 @@ public class AlphabeticalAppsList {
                     numAppsInRow++;
                 }
             }
-            mNumAppRowsInAdapter = rowIndex + 1;
+            numAppRows = rowIndex + 1;
 
             // Pre-calculate all the fast scroller fractions
             switch (mFastScrollDistributionMode) {
                 case FAST_SCROLL_FRACTION_DISTRIBUTE_BY_ROWS_FRACTION:
-                    float rowFraction = 1f / mNumAppRowsInAdapter;
-                    for (FastScrollSectionInfo info : mFastScrollerSections) {
+                    float rowFraction = 1f / numAppRows;
+                    for (FastScrollSectionInfo info : sections) {
                         AdapterItem item = info.fastScrollToItem;
                         if (!AllAppsGridAdapter.isIconViewType(item.viewType)) {
                             info.touchFraction = 0f;
@@ -565,9 +647,9 @@ public class AlphabeticalAppsList {
                     }
                     break;
                 case FAST_SCROLL_FRACTION_DISTRIBUTE_BY_NUM_SECTIONS:
-                    float perSectionTouchFraction = 1f / mFastScrollerSections.size();
+                    float perSectionTouchFraction = 1f / sections.size();
                     float cumulativeTouchFraction = 0f;
-                    for (FastScrollSectionInfo info : mFastScrollerSections) {
+                    for (FastScrollSectionInfo info : sections) {
                         AdapterItem item = info.fastScrollToItem;
                         if (!AllAppsGridAdapter.isIconViewType(item.viewType)) {
                             info.touchFraction = 0f;
@@ -579,6 +661,7 @@ public class AlphabeticalAppsList {
                     break;
             }
         }
+        return numAppRows;
     }
 
     public boolean isAppDiscoveryRunning() {
@@ -604,6 +687,7 @@ public class AlphabeticalAppsList {
             for (int i = 0; i < mDiscoveredApps.size(); i++) {
                 AppDiscoveryAppInfo discoveryAppInfo = mDiscoveredApps.get(i);
                 if (discoveryAppInfo.isRecent) {
+                    mSortKeys.getSortKey(discoveryAppInfo);
                     result.add(discoveryAppInfo);
                 }
             }
@@ -613,16 +697,11 @@ public class AlphabeticalAppsList {
     }
 
     /**
-     * Returns the cached section name for the given title, recomputing and updating the cache if
-     * the title has no cached section name.
+     * Returns the section name of the given app, computing its sort key if it has none for its
+     * current title.
      */
-    private String getAndUpdateCachedSectionName(CharSequence title) {
-        String sectionName = mCachedSectionNames.get(title);
-        if (sectionName == null) {
-            sectionName = mIndexer.computeSectionName(title);
-            mCachedSectionNames.put(title, sectionName);
-        }
-        return sectionName;
+    private String getSectionName(AppInfo info) {
+        return mSortKeys.getSortKey(info).sectionName;
     }
 
 }
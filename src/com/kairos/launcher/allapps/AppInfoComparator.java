@@ -22,6 +22,7 @@ import android.os.UserHandle;
 import com.kairos.launcher.AppInfo;
 import com.kairos.launcher.compat.UserManagerCompat;
 import com.kairos.launcher.util.LabelComparator;
+import com.kairos.launcher.util.TitleSortKeys;
 
 import java.util.Comparator;
 
@@ -46,8 +47,14 @@ public class AppInfoComparator implements Comparator<AppInfo> {
 
     @Override
     public int compare(AppInfo a, AppInfo b) {
-        // Order by the title in the current locale
-        int result = mLabelComparator.compare(a.title.toString(), b.title.toString());
+        // Order by the title in the current locale, the sort keys follow the same order as the
+        // label comparator but only need a byte compare
+        int result;
+        if (a.sortKey != null && b.sortKey != null && a.sortKey.locale.equals(b.sortKey.locale)) {
+            result = TitleSortKeys.compare(a.sortKey.collationKey, b.sortKey.collationKey);
+        } else {
+            result = mLabelComparator.compare(a.title.toString(), b.title.toString());
+        }
         if (result != 0) {
             return result;
         }
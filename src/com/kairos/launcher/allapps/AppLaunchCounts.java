@@ -0,0 +1,96 @@
+/*
+ * Copyright (C) 2017 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.kairos.launcher.allapps;
+
+import android.content.ComponentName;
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.os.UserHandle;
+
+import com.kairos.launcher.LauncherFiles;
+import com.kairos.launcher.compat.UserManagerCompat;
+import com.kairos.launcher.util.ComponentKey;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**--------------------------------------------------------------
+ * TEAM KAIROS :: DEV CARLOS :: CLASS SYNOPSIS
+ * Copyright (c) 2017 KAIROS
+ *
+ * Number of times each app was launched from the launcher, used to rank the all apps search
+ * results. Counts are kept in memory and written through to their own preference file, keyed
+ * by [flattenedComponentString#userSerial].
+ *
+ * This class is thread safe.
+ ----------------------------------------------------------------*/
+public class AppLaunchCounts {
+
+    private final SharedPreferences mPrefs;
+    private final UserManagerCompat mUserManager;
+    private final HashMap<ComponentKey, Integer> mCounts = new HashMap<>();
+
+    private boolean mLoaded;
+
+    public AppLaunchCounts(Context context) {
+        mPrefs = context.getSharedPreferences(
+                LauncherFiles.APP_LAUNCH_COUNTS_PREFERENCES_KEY, Context.MODE_PRIVATE);
+        mUserManager = UserManagerCompat.getInstance(context);
+    }
+
+    public synchronized int getLaunchCount(ComponentKey key) {
+        loadIfNeeded();
+        Integer count = mCounts.get(key);
+        return count == null ? 0 : count;
+    }
+
+    public synchronized void onAppLaunched(ComponentName componentName, UserHandle user) {
+        loadIfNeeded();
+        ComponentKey key = new ComponentKey(componentName, user);
+        Integer count = mCounts.get(key);
+        int newCount = count == null ? 1 : count + 1;
+        mCounts.put(key, newCount);
+        mPrefs.edit().putInt(componentName.flattenToString() + "#"
+                + mUserManager.getSerialNumberForUser(user), newCount).apply();
+    }
+
+    private void loadIfNeeded() {
+        if (mLoaded) {
+            return;
+        }
+        mLoaded = true;
+        for (Map.Entry<String, ?> entry : mPrefs.getAll().entrySet()) {
+            String encoded = entry.getKey();
+            int userDelimiterIndex = encoded.indexOf('#');
+            if (userDelimiterIndex == -1 || !(entry.getValue() instanceof Integer)) {
+                continue;
+            }
+            ComponentName cn = ComponentName.unflattenFromString(
+                    encoded.substring(0, userDelimiterIndex));
+            UserHandle user;
+            try {
+                user = mUserManager.getUserForSerialNumber(
+                        Long.parseLong(encoded.substring(userDelimiterIndex + 1)));
+            } catch (NumberFormatException e) {
+                continue;
+            }
+            if (cn != null && user != null) {
+                mCounts.put(new ComponentKey(cn, user), (Integer) entry.getValue());
+            }
+        }
+    }
+}
@@ -0,0 +1,454 @@
+/*
+ * Copyright (C) 2017 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.kairos.launcher.allapps;
+
+import android.content.ComponentName;
+import android.content.Context;
+import android.os.Handler;
+import android.os.UserHandle;
+import android.text.format.DateUtils;
+import android.util.AtomicFile;
+import android.util.Log;
+
+import com.kairos.launcher.LauncherModel;
+import com.kairos.launcher.compat.UserManagerCompat;
+import com.kairos.launcher.util.ComponentKey;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Calendar;
+
+/**--------------------------------------------------------------
+ * TEAM KAIROS :: DEV CARLOS :: CLASS SYNOPSIS
+ * Copyright (c) 2017 KAIROS
+ *
+ * Predicts the apps shown at the top of all apps from the apps launched by the user. Each app
+ * has a score per time of day bucket: a launch adds to the score of its bucket, and less to the
+ * neighbouring ones, and the scores decay with a half life of {@link #HALF_LIFE_MS}.
+ *
+ * Instead of decaying all the scores, launches add a weight which grows with time, so that a
+ * launch only changes the scores of the launched app. As scores never decrease, the top apps
+ * of each bucket are kept up to date on every launch without looking at the other apps, and
+ * reading the predictions is a copy of the top apps of the current bucket.
+ *
+ * Scores are kept in primitive arrays indexed by an open addressing table keyed on the hash of
+ * the component, and are written to a file in the background shortly after a launch.
+ *
+ * This class is thread safe.
+ ----------------------------------------------------------------*/
+public class AppPredictionEngine {
+
+    private static final String TAG = "AppPredictionEngine";
+
+    private static final String FILE_NAME = "app_predictions";
+    private static final int MAGIC = 0x4b415050;
+    private static final int VERSION = 1;
+
+    static final int NUM_BUCKETS = 6;
+    private static final int HOURS_PER_BUCKET = 24 / NUM_BUCKETS;
+    // Weight of a launch in the buckets at a distance of 0, 1, 2 and 3 buckets from its bucket.
+    private static final float[] BUCKET_WEIGHTS = {1f, 0.5f, 0.25f, 0.25f};
+
+    static final long HALF_LIFE_MS = 7 * DateUtils.DAY_IN_MILLIS;
+    // Scores are rescaled before the weight of a launch gets large enough to lose precision.
+    private static final float MAX_LAUNCH_WEIGHT = 1 << 20;
+    // Apps whose scores are all below this after a rescale are forgotten, this is about
+    // ten half lives without a launch.
+    private static final float MIN_SCORE = 1f / (1 << 10);
+
+    // Number of top apps tracked per bucket, more than the predictions row to leave room for
+    // apps which were uninstalled or are disabled.
+    static final int MAX_PREDICTIONS = 12;
+
+    private static final int INITIAL_CAPACITY = 64;
+    private static final long SAVE_DELAY_MS = 10 * DateUtils.SECOND_IN_MILLIS;
+
+    private final AtomicFile mFile;
+    private final UserManagerCompat mUserManager;
+    private final Handler mWorkerHandler;
+
+    // Open addressing table, slot i is empty if mKeys[i] is null. The capacity is a power of 2.
+    private int[] mHashes;
+    private ComponentKey[] mKeys;
+    // Score of slot i in bucket b at [i * NUM_BUCKETS + b], relative to mEpoch.
+    private float[] mScores;
+    private int mSize;
+    // Time at which a launch has a weight of 1.
+    private long mEpoch;
+
+    // Slots of the top apps of bucket b, by decreasing score, at [b * MAX_PREDICTIONS + i].
+    private final int[] mTopSlots = new int[NUM_BUCKETS * MAX_PREDICTIONS];
+    private final int[] mTopCounts = new int[NUM_BUCKETS];
+
+    private boolean mLoaded;
+    private boolean mSavePending;
+
+    private int mLaunchCount;
+    private int mRescaleCount;
+    private int mSaveCount;
+
+    private final Runnable mSaveRunnable = new Runnable() {
+        @Override
+        public void run() {
+            save();
+        }
+    };
+
+    public AppPredictionEngine(Context context) {
+        this(new File(context.getNoBackupFilesDir(), FILE_NAME),
+                UserManagerCompat.getInstance(context));
+    }
+
+    AppPredictionEngine(File file, UserManagerCompat userManager) {
+        mFile = new AtomicFile(file);
+        mUserManager = userManager;
+        mWorkerHandler = new Handler(LauncherModel.getWorkerLooper());
+        clear();
+    }
+
+    /**
+     * Loads the persisted state in the background, so that it is ready on the first launch.
+     */
+    public void preload() {
+        mWorkerHandler.post(new Runnable() {
+            @Override
+            public void run() {
+                synchronized (AppPredictionEngine.this) {
+                    loadIfNeeded();
+                }
+            }
+        });
+    }
+
+    /**
+     * Records the launch on the worker thread, which loads the persisted state first if needed.
+     */
+    public void onAppLaunched(ComponentName componentName, UserHandle user) {
+        final ComponentKey key = new ComponentKey(componentName, user);
+        final long now = System.currentTimeMillis();
+        final int bucket = getCurrentBucket();
+        mWorkerHandler.post(new Runnable() {
+            @Override
+            public void run() {
+                onAppLaunched(key, now, bucket);
+            }
+        });
+    }
+
+    synchronized void onAppLaunched(ComponentKey key, long now, int bucket) {
+        loadIfNeeded();
+        mLaunchCount++;
+        if (mSize == 0) {
+            mEpoch = now;
+        }
+        float weight = getLaunchWeight(now);
+        if (weight > MAX_LAUNCH_WEIGHT) {
+            rescale(now);
+            weight = getLaunchWeight(now);
+        }
+
+        int slot = getOrAddSlot(key);
+        for (int b = 0; b < NUM_BUCKETS; b++) {
+            int distance = Math.abs(b - bucket);
+            distance = Math.min(distance, NUM_BUCKETS - distance);
+            mScores[slot * NUM_BUCKETS + b] += weight * BUCKET_WEIGHTS[distance];
+            updateTop(slot, b);
+        }
+        scheduleSave();
+    }
+
+    /**
+     * Returns the predicted apps for the current time of day, best first. This is empty until
+     * the persisted state has been loaded by {@link #preload()}, the file is never read on the
+     * calling thread.
+     */
+    public ArrayList<ComponentKey> getPredictedApps() {
+        synchronized (this) {
+            if (!mLoaded) {
+                return new ArrayList<>();
+            }
+        }
+        return getPredictedApps(getCurrentBucket());
+    }
+
+    synchronized ArrayList<ComponentKey> getPredictedApps(int bucket) {
+        loadIfNeeded();
+        int base = bucket * MAX_PREDICTIONS;
+        int count = mTopCounts[bucket];
+        ArrayList<ComponentKey> result = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            result.add(mKeys[mTopSlots[base + i]]);
+        }
+        return result;
+    }
+
+    private static int getCurrentBucket() {
+        return Calendar.getInstance().get(Calendar.HOUR_OF_DAY) / HOURS_PER_BUCKET;
+    }
+
+    private float getLaunchWeight(long now) {
+        // Launches are never weighted less than the epoch, in case the clock goes back.
+        return (float) Math.pow(2, Math.max(0, now - mEpoch) / (double) HALF_LIFE_MS);
+    }
+
+    /**
+     * Moves the epoch to {@param now}, dropping the apps whose scores decayed below
+     * {@link #MIN_SCORE}.
+     */
+    private void rescale(long now) {
+        mRescaleCount++;
+        float scale = 1 / getLaunchWeight(now);
+        int[] oldHashes = mHashes;
+        ComponentKey[] oldKeys = mKeys;
+        float[] oldScores = mScores;
+        allocate(oldKeys.length);
+        mEpoch = now;
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldKeys[i] == null) {
+                continue;
+            }
+            boolean keep = false;
+            for (int b = 0; b < NUM_BUCKETS; b++) {
+                oldScores[i * NUM_BUCKETS + b] *= scale;
+                keep |= oldScores[i * NUM_BUCKETS + b] >= MIN_SCORE;
+            }
+            if (keep) {
+                int slot = addSlot(oldHashes[i], oldKeys[i]);
+                System.arraycopy(oldScores, i * NUM_BUCKETS, mScores, slot * NUM_BUCKETS,
+                        NUM_BUCKETS);
+            }
+        }
+        rebuildTop();
+    }
+
+    private int getOrAddSlot(ComponentKey key) {
+        int hash = key.hashCode();
+        int mask = mKeys.length - 1;
+        for (int slot = hash & mask; ; slot = (slot + 1) & mask) {
+            if (mKeys[slot] == null) {
+                break;
+            }
+            if (mHashes[slot] == hash && mKeys[slot].equals(key)) {
+                return slot;
+            }
+        }
+
+        if ((mSize + 1) * 4 > mKeys.length * 3) {
+            grow();
+        }
+        return addSlot(hash, key);
+    }
+
+    /**
+     * Adds {@param key}, which must not be in the table yet.
+     */
+    private int addSlot(int hash, ComponentKey key) {
+        int mask = mKeys.length - 1;
+        int slot = hash & mask;
+        while (mKeys[slot] != null) {
+            slot = (slot + 1) & mask;
+        }
+        mHashes[slot] = hash;
+        mKeys[slot] = key;
+        mSize++;
+        return slot;
+    }
+
+    private void grow() {
+        int[] oldHashes = mHashes;
+        ComponentKey[] oldKeys = mKeys;
+        float[] oldScores = mScores;
+        allocate(oldKeys.length * 2);
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldKeys[i] != null) {
+                int slot = addSlot(oldHashes[i], oldKeys[i]);
+                System.arraycopy(oldScores, i * NUM_BUCKETS, mScores, slot * NUM_BUCKETS,
+                        NUM_BUCKETS);
+            }
+        }
+        rebuildTop();
+    }
+
+    private void allocate(int capacity) {
+        mHashes = new int[capacity];
+        mKeys = new ComponentKey[capacity];
+        mScores = new float[capacity * NUM_BUCKETS];
+        mSize = 0;
+    }
+
+    private void clear() {
+        allocate(INITIAL_CAPACITY);
+        mEpoch = 0;
+        Arrays.fill(mTopCounts, 0);
+    }
+
+    /**
+     * Updates the top apps of {@param bucket} after the score of {@param slot} increased.
+     */
+    private void updateTop(int slot, int bucket) {
+        int base = bucket * MAX_PREDICTIONS;
+        int count = mTopCounts[bucket];
+        float score = mScores[slot * NUM_BUCKETS + bucket];
+
+        int pos = count;
+        for (int i = 0; i < count; i++) {
+            if (mTopSlots[base + i] == slot) {
+                pos = i;
+                break;
+            }
+        }
+        if (pos == count) {
+            if (count < MAX_PREDICTIONS) {
+                mTopCounts[bucket] = count + 1;
+            } else if (score <= getScore(mTopSlots[base + count - 1], bucket)) {
+                return;
+            } else {
+                // Take the place of the last app
+                pos = count - 1;
+            }
+        }
+        while (pos > 0 && getScore(mTopSlots[base + pos - 1], bucket) < score) {
+            mTopSlots[base + pos] = mTopSlots[base + pos - 1];
+            pos--;
+        }
+        mTopSlots[base + pos] = slot;
+    }
+
+    private void rebuildTop() {
+        Arrays.fill(mTopCounts, 0);
+        for (int slot = 0; slot < mKeys.length; slot++) {
+            if (mKeys[slot] != null) {
+                for (int b = 0; b < NUM_BUCKETS; b++) {
+                    updateTop(slot, b);
+                }
+            }
+        }
+    }
+
+    private float getScore(int slot, int bucket) {
+        return mScores[slot * NUM_BUCKETS + bucket];
+    }
+
+    private void scheduleSave() {
+        if (!mSavePending) {
+            mSavePending = true;
+            mWorkerHandler.postDelayed(mSaveRunnable, SAVE_DELAY_MS);
+        }
+    }
+
+    /**
+     * Writes the current state to the file, the encoding is done under the lock but not the
+     * file write.
+     */
+    void save() {
+        byte[] data;
+        synchronized (this) {
+            mSavePending = false;
+            mSaveCount++;
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream(64 + mSize * 96);
+            try {
+                DataOutputStream out = new DataOutputStream(bytes);
+                out.writeInt(MAGIC);
+                out.writeInt(VERSION);
+                out.writeInt(NUM_BUCKETS);
+                out.writeLong(mEpoch);
+                out.writeInt(mSize);
+                for (int slot = 0; slot < mKeys.length; slot++) {
+                    if (mKeys[slot] == null) {
+                        continue;
+                    }
+                    out.writeUTF(mKeys[slot].componentName.flattenToString());
+                    out.writeLong(mUserManager.getSerialNumberForUser(mKeys[slot].user));
+                    for (int b = 0; b < NUM_BUCKETS; b++) {
+                        out.writeFloat(getScore(slot, b));
+                    }
+                }
+                out.flush();
+            } catch (IOException e) {
+                // Not expected when writing to memory
+                Log.w(TAG, "Unable to encode predictions", e);
+                return;
+            }
+            data = bytes.toByteArray();
+        }
+
+        FileOutputStream fos = null;
+        try {
+            fos = mFile.startWrite();
+            fos.write(data);
+            mFile.finishWrite(fos);
+        } catch (IOException e) {
+            Log.w(TAG, "Unable to write predictions", e);
+            if (fos != null) {
+                mFile.failWrite(fos);
+            }
+        }
+    }
+
+    private void loadIfNeeded() {
+        if (mLoaded) {
+            return;
+        }
+        mLoaded = true;
+        if (!mFile.getBaseFile().exists()) {
+            return;
+        }
+        try {
+            DataInputStream in = new DataInputStream(new ByteArrayInputStream(mFile.readFully()));
+            if (in.readInt() != MAGIC || in.readInt() != VERSION
+                    || in.readInt() != NUM_BUCKETS) {
+                return;
+            }
+            mEpoch = in.readLong();
+            int count = in.readInt();
+            for (int i = 0; i < count; i++) {
+                ComponentName cn = ComponentName.unflattenFromString(in.readUTF());
+                UserHandle user = mUserManager.getUserForSerialNumber(in.readLong());
+                float[] scores = new float[NUM_BUCKETS];
+                for (int b = 0; b < NUM_BUCKETS; b++) {
+                    scores[b] = in.readFloat();
+                }
+                if (cn == null || user == null) {
+                    continue;
+                }
+                int slot = getOrAddSlot(new ComponentKey(cn, user));
+                System.arraycopy(scores, 0, mScores, slot * NUM_BUCKETS, NUM_BUCKETS);
+            }
+            rebuildTop();
+        } catch (IOException e) {
+            Log.w(TAG, "Unable to read predictions", e);
+            clear();
+        }
+    }
+
+    public synchronized void dump(String prefix, PrintWriter writer) {
+        writer.println(prefix + "AppPredictionEngine:"
+                + " apps=" + mSize
+                + " capacity=" + mKeys.length
+                + " launches=" + mLaunchCount
+                + " rescales=" + mRescaleCount
+                + " saves=" + mSaveCount);
+    }
+}
@@ -0,0 +1,198 @@
+/*
+ * Copyright (C) 2017 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.kairos.launcher.allapps;
+
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.Looper;
+import android.os.Process;
+import android.os.SystemClock;
+import android.support.annotation.VisibleForTesting;
+
+import com.kairos.launcher.util.ComponentKey;
+import com.kairos.launcher.util.Preconditions;
+
+import java.io.PrintWriter;
+import java.util.ArrayList;
+
+/**--------------------------------------------------------------
+ * TEAM KAIROS :: DEV CARLOS :: CLASS SYNOPSIS
+ * Copyright (c) 2017 KAIROS
+ *
+ * Runs the queries of a {@link DefaultAppSearchAlgorithm} on a background thread. At most one
+ * query starts per {@link #COALESCE_WINDOW_MS}: a query typed while another one is waiting to
+ * start replaces it. Every new query supersedes the previous ones, whose results are dropped
+ * if they arrive later, so that the callback only ever sees the results of the current query.
+ *
+ * Must be used from the UI thread.
+ ----------------------------------------------------------------*/
+class AppSearchExecutor {
+
+    static final long COALESCE_WINDOW_MS = 50;
+
+    private static HandlerThread sWorkerThread;
+
+    private final DefaultAppSearchAlgorithm mAlgorithm;
+    private final Handler mWorkerHandler;
+    private final Handler mResultHandler;
+
+    // Incremented by every new query and by cancel(), a query is current while it matches.
+    private volatile int mGeneration;
+
+    private Query mPendingQuery;
+    private long mLastStartTime;
+
+    private int mRequestedCount;
+    private int mCoalescedCount;
+    private int mSupersededCount;
+    private int mDeliveredCount;
+    private long mLastLatencyMs;
+    private long mTotalLatencyMs;
+    private long mMaxLatencyMs;
+    private long mLastSearchMs;
+    private long mMaxSearchMs;
+
+    AppSearchExecutor(DefaultAppSearchAlgorithm algorithm, Handler resultHandler) {
+        mAlgorithm = algorithm;
+        mWorkerHandler = new Handler(getWorkerLooper());
+        mResultHandler = resultHandler;
+    }
+
+    private static synchronized Looper getWorkerLooper() {
+        if (sWorkerThread == null) {
+            sWorkerThread = new HandlerThread("all-apps-search", Process.THREAD_PRIORITY_DEFAULT);
+            sWorkerThread.start();
+        }
+        return sWorkerThread.getLooper();
+    }
+
+    /**
+     * Searches {@param query} in the background and posts the result to {@param callback}
+     * unless another query is executed, or the executor is cancelled, before it is delivered.
+     */
+    public void execute(String query, AllAppsSearchBarController.Callbacks callback) {
+        Preconditions.assertUIThread();
+        long now = SystemClock.uptimeMillis();
+        mRequestedCount++;
+
+        long startTime;
+        if (mPendingQuery != null && !mPendingQuery.started) {
+            // Take the place of the query which has not started yet
+            mWorkerHandler.removeCallbacks(mPendingQuery);
+            mCoalescedCount++;
+            startTime = mPendingQuery.startTime;
+        } else {
+            startTime = Math.max(now, mLastStartTime + COALESCE_WINDOW_MS);
+        }
+
+        mPendingQuery = new Query(query, callback, ++mGeneration, now, startTime);
+        mLastStartTime = startTime;
+        mWorkerHandler.postAtTime(mPendingQuery, startTime);
+    }
+
+    /**
+     * Drops the pending query and any result not delivered yet.
+     */
+    public void cancel() {
+        Preconditions.assertUIThread();
+        mGeneration++;
+        if (mPendingQuery != null) {
+            mWorkerHandler.removeCallbacks(mPendingQuery);
+            mPendingQuery = null;
+        }
+    }
+
+    /**
+     * Runs {@param r} on the search thread once the queries executed so far have run, or would
+     * have run if they were cancelled.
+     */
+    @VisibleForTesting
+    void runAfterQueries(Runnable r) {
+        Preconditions.assertUIThread();
+        mWorkerHandler.postAtTime(r, Math.max(SystemClock.uptimeMillis(), mLastStartTime));
+    }
+
+    public void dump(String prefix, PrintWriter writer) {
+        writer.println(prefix + "AppSearchExecutor:"
+                + " requested=" + mRequestedCount
+                + " coalesced=" + mCoalescedCount
+                + " superseded=" + mSupersededCount
+                + " delivered=" + mDeliveredCount);
+        writer.println(prefix + "  latencyMs last=" + mLastLatencyMs
+                + " avg=" + (mDeliveredCount == 0 ? 0 : mTotalLatencyMs / mDeliveredCount)
+                + " max=" + mMaxLatencyMs
+                + " searchMs last=" + mLastSearchMs
+                + " max=" + mMaxSearchMs);
+    }
+
+    private class Query implements Runnable {
+        final String query;
+        final AllAppsSearchBarController.Callbacks callback;
+        final int generation;
+        final long requestTime;
+        final long startTime;
+
+        volatile boolean started;
+
+        Query(String query, AllAppsSearchBarController.Callbacks callback, int generation,
+                long requestTime, long startTime) {
+            this.query = query;
+            this.callback = callback;
+            this.generation = generation;
+            this.requestTime = requestTime;
+            this.startTime = startTime;
+        }
+
+        @Override
+        public void run() {
+            started = true;
+            if (generation != mGeneration) {
+                return;
+            }
+            long searchStart = SystemClock.uptimeMillis();
+            final ArrayList<ComponentKey> result = mAlgorithm.getTitleMatchResult(query);
+            final long searchMs = SystemClock.uptimeMillis() - searchStart;
+            if (generation != mGeneration) {
+                return;
+            }
+            mResultHandler.post(new Runnable() {
+                @Override
+                public void run() {
+                    deliver(Query.this, result, searchMs);
+                }
+            });
+        }
+    }
+
+    private void deliver(Query query, ArrayList<ComponentKey> result, long searchMs) {
+        if (query.generation != mGeneration) {
+            mSupersededCount++;
+            return;
+        }
+        if (mPendingQuery == query) {
+            mPendingQuery = null;
+        }
+        long latencyMs = SystemClock.uptimeMillis() - query.requestTime;
+        mDeliveredCount++;
+        mLastLatencyMs = latencyMs;
+        mTotalLatencyMs += latencyMs;
+        mMaxLatencyMs = Math.max(mMaxLatencyMs, latencyMs);
+        mLastSearchMs = searchMs;
+        mMaxSearchMs = Math.max(mMaxSearchMs, searchMs);
+        query.callback.onSearchResult(query.query, result);
+    }
+}
@@ -0,0 +1,417 @@
+/*
+ * Copyright (C) 2017 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.kairos.launcher.allapps;
+
+import android.support.annotation.Nullable;
+
+import com.kairos.launcher.AppInfo;
+import com.kairos.launcher.util.ComponentKey;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+
+/**--------------------------------------------------------------
+ * TEAM KAIROS :: DEV CARLOS :: CLASS SYNOPSIS
+ * Copyright (c) 2017 KAIROS
+ *
+ * Prefix index over the titles of a list of apps. Each title is split at its word breaks once,
+ * when the index is built, and every break yields a token running from the break to the end
+ * of the title. Tokens are sorted, so that the tokens starting with a query form a single
+ * range which is found with two binary searches. When the query grows by typing, the range of
+ * the previous query is narrowed instead of searching the whole index again.
+ *
+ * Results are ranked by the word at which the title matches, then by the number of launches
+ * of the app, then in the order of the indexed list.
+ *
+ * An optional second tier finds the remaining apps whose title has a word starting with the
+ * query within a small edit distance, comparing keys computed by {@link SearchKeyNormalizer}
+ * so that accents and the script of the title don't matter. It is ranked after the first tier
+ * and stops after {@link #FUZZY_TIME_BUDGET_NS}, keeping what it found so far.
+ *
+ * This class is thread safe.
+ ----------------------------------------------------------------*/
+class AppSearchIndex {
+
+    private static final int MAX_RANK = 0x7F;
+    private static final int MAX_LAUNCH_COUNT = 0xFFFFFF;
+
+    // Half a frame at 60fps, the rest is left to binding the results.
+    static final long FUZZY_TIME_BUDGET_NS = 8000000;
+    // The clock is only read once every this many apps.
+    private static final int FUZZY_CLOCK_INTERVAL = 16;
+    // Minimum query length for each allowed edit, shorter queries only match on their keys.
+    private static final int FUZZY_ONE_EDIT_LENGTH = 3;
+    private static final int FUZZY_TWO_EDITS_LENGTH = 6;
+
+    private final ComponentKey[] mKeys;
+    private final String[] mTitles;
+
+    // Tokens in sorted order, as parallel arrays: app index, start offset in the lower case
+    // title and index of the word break in the title.
+    private final int[] mTokenApps;
+    private final int[] mTokenStarts;
+    private final int[] mTokenRanks;
+
+    @Nullable private final AppLaunchCounts mLaunchCounts;
+
+    // Best rank of each app while collecting the results of a query, -1 if it did not match.
+    private final int[] mBestRanks;
+
+    private String mLastQuery;
+    private int mLastStart;
+    private int mLastEnd;
+
+    // Fuzzy tier, null when disabled: lower case normalized title and its word starts.
+    @Nullable private final String[] mFuzzyKeys;
+    @Nullable private final int[][] mFuzzyWordStarts;
+    private int[] mDistanceRow0 = new int[0];
+    private int[] mDistanceRow1 = new int[0];
+    private int[] mDistanceRow2 = new int[0];
+    private int mFuzzyTimeoutCount;
+
+    AppSearchIndex(List<AppInfo> apps, DefaultAppSearchAlgorithm breaker,
+            @Nullable AppLaunchCounts launchCounts) {
+        this(apps, breaker, launchCounts, false);
+    }
+
+    AppSearchIndex(List<AppInfo> apps, DefaultAppSearchAlgorithm breaker,
+            @Nullable AppLaunchCounts launchCounts, boolean fuzzy) {
+        int count = apps.size();
+        mKeys = new ComponentKey[count];
+        mTitles = new String[count];
+        mLaunchCounts = launchCounts;
+        mBestRanks = new int[count];
+        Arrays.fill(mBestRanks, -1);
+
+        mFuzzyKeys = fuzzy ? new String[count] : null;
+        mFuzzyWordStarts = fuzzy ? new int[count][] : null;
+
+        ArrayList<int[]> tokens = new ArrayList<>(count * 2);
+        for (int i = 0; i < count; i++) {
+            AppInfo info = apps.get(i);
+            mKeys[i] = info.toComponentKey();
+            String title = info.title == null ? "" : info.title.toString();
+            mTitles[i] = toLowerCase(title);
+            addTokens(i, title, breaker, tokens);
+            if (fuzzy) {
+                String key = SearchKeyNormalizer.normalize(title);
+                mFuzzyKeys[i] = toLowerCase(key);
+                mFuzzyWordStarts[i] = getWordStarts(key, breaker);
+            }
+        }
+
+        int[][] sorted = tokens.toArray(new int[tokens.size()][]);
+        Arrays.sort(sorted, new Comparator<int[]>() {
+            @Override
+            public int compare(int[] lhs, int[] rhs) {
+                String left = mTitles[lhs[0]];
+                String right = mTitles[rhs[0]];
+                int leftLength = left.length() - lhs[1];
+                int rightLength = right.length() - rhs[1];
+                int length = Math.min(leftLength, rightLength);
+                for (int i = 0; i < length; i++) {
+                    char l = left.charAt(lhs[1] + i);
+                    char r = right.charAt(rhs[1] + i);
+                    if (l != r) {
+                        return l - r;
+                    }
+                }
+                return leftLength != rightLength ? leftLength - rightLength : lhs[0] - rhs[0];
+            }
+        });
+        mTokenApps = new int[sorted.length];
+        mTokenStarts = new int[sorted.length];
+        mTokenRanks = new int[sorted.length];
+        for (int i = 0; i < sorted.length; i++) {
+            mTokenApps[i] = sorted[i][0];
+            mTokenStarts[i] = sorted[i][1];
+            mTokenRanks[i] = sorted[i][2];
+        }
+    }
+
+    /**
+     * Adds a token for every word break in {@param title}, using the same breaks as
+     * {@link DefaultAppSearchAlgorithm#matches}.
+     */
+    private static void addTokens(int app, String title, DefaultAppSearchAlgorithm breaker,
+            ArrayList<int[]> out) {
+        int titleLength = title.length();
+        if (titleLength == 0) {
+            return;
+        }
+        int rank = 0;
+        int lastType;
+        int thisType = Character.UNASSIGNED;
+        int nextType = Character.getType(title.codePointAt(0));
+        for (int i = 0; i < titleLength; i++) {
+            lastType = thisType;
+            thisType = nextType;
+            nextType = i < (titleLength - 1) ?
+                    Character.getType(title.codePointAt(i + 1)) : Character.UNASSIGNED;
+            if (breaker.isBreak(thisType, lastType, nextType)) {
+                out.add(new int[] {app, i, Math.min(rank++, MAX_RANK)});
+            }
+        }
+    }
+
+    private static int[] getWordStarts(String key, DefaultAppSearchAlgorithm breaker) {
+        ArrayList<int[]> tokens = new ArrayList<>();
+        addTokens(0, key, breaker, tokens);
+        int[] starts = new int[tokens.size()];
+        for (int i = 0; i < starts.length; i++) {
+            starts[i] = tokens.get(i)[1];
+        }
+        return starts;
+    }
+
+    /**
+     * Lower cases {@param s} one char at a time, so that offsets are the same as in the
+     * original string.
+     */
+    static String toLowerCase(String s) {
+        char[] chars = s.toCharArray();
+        for (int i = 0; i < chars.length; i++) {
+            chars[i] = Character.toLowerCase(chars[i]);
+        }
+        return new String(chars);
+    }
+
+    public int getAppCount() {
+        return mKeys.length;
+    }
+
+    public int getTokenCount() {
+        return mTokenApps.length;
+    }
+
+    /**
+     * Returns the number of fuzzy searches which ran out of time.
+     */
+    public synchronized int getFuzzyTimeoutCount() {
+        return mFuzzyTimeoutCount;
+    }
+
+    /**
+     * Returns the apps which have a word starting with {@param query}, ranked.
+     */
+    public synchronized ArrayList<ComponentKey> search(String query) {
+        ArrayList<ComponentKey> result = new ArrayList<>();
+        String lowerQuery = toLowerCase(query);
+        if (lowerQuery.isEmpty()) {
+            mLastQuery = null;
+            return result;
+        }
+
+        int from = 0;
+        int to = mTokenApps.length;
+        if (mLastQuery != null && lowerQuery.startsWith(mLastQuery)) {
+            // The tokens matching a longer query are a subset of the previous range.
+            from = mLastStart;
+            to = mLastEnd;
+        }
+        int start = findFirst(lowerQuery, from, to, false);
+        int end = findFirst(lowerQuery, start, to, true);
+        mLastQuery = lowerQuery;
+        mLastStart = start;
+        mLastEnd = end;
+
+        // Keep the best word of each matching app
+        int[] matches = new int[Math.min(end - start, mKeys.length)];
+        int matchCount = 0;
+        for (int i = start; i < end; i++) {
+            int app = mTokenApps[i];
+            int rank = mTokenRanks[i];
+            if (mBestRanks[app] < 0) {
+                matches[matchCount++] = app;
+                mBestRanks[app] = rank;
+            } else if (rank < mBestRanks[app]) {
+                mBestRanks[app] = rank;
+            }
+        }
+
+        // Sort on a packed key: rank, then launches descending, then position in the list.
+        long[] sortKeys = new long[matchCount];
+        for (int i = 0; i < matchCount; i++) {
+            int app = matches[i];
+            sortKeys[i] = ((long) mBestRanks[app] << 56)
+                    | ((long) (MAX_LAUNCH_COUNT - getLaunchCount(app)) << 32)
+                    | app;
+        }
+        Arrays.sort(sortKeys);
+
+        result.ensureCapacity(matchCount);
+        for (long sortKey : sortKeys) {
+            result.add(mKeys[(int) sortKey]);
+        }
+
+        if (mFuzzyKeys != null) {
+            // Apps matched above still have their best rank set, and are skipped.
+            searchFuzzy(toLowerCase(SearchKeyNormalizer.normalize(query)), result);
+        }
+        for (int i = 0; i < matchCount; i++) {
+            mBestRanks[matches[i]] = -1;
+        }
+        return result;
+    }
+
+    private int getLaunchCount(int app) {
+        return mLaunchCounts == null ? 0
+                : Math.min(mLaunchCounts.getLaunchCount(mKeys[app]), MAX_LAUNCH_COUNT);
+    }
+
+    /**
+     * Appends the apps which match {@param key} in the fuzzy tier to {@param result}, ranked by
+     * edit distance, then like the first tier.
+     */
+    private void searchFuzzy(String key, ArrayList<ComponentKey> result) {
+        int maxDistance = key.length() >= FUZZY_TWO_EDITS_LENGTH ? 2
+                : key.length() >= FUZZY_ONE_EDIT_LENGTH ? 1 : 0;
+        long deadline = System.nanoTime() + FUZZY_TIME_BUDGET_NS;
+
+        long[] sortKeys = new long[8];
+        int matchCount = 0;
+        for (int app = 0; app < mFuzzyKeys.length; app++) {
+            if (app % FUZZY_CLOCK_INTERVAL == 0 && app > 0 && System.nanoTime() > deadline) {
+                mFuzzyTimeoutCount++;
+                break;
+            }
+            if (mBestRanks[app] >= 0) {
+                continue;
+            }
+            int[] wordStarts = mFuzzyWordStarts[app];
+            int bestDistance = maxDistance + 1;
+            int bestRank = 0;
+            for (int rank = 0; rank < wordStarts.length && bestDistance > 0; rank++) {
+                int distance = getPrefixDistance(key, mFuzzyKeys[app], wordStarts[rank],
+                        bestDistance - 1);
+                if (distance < bestDistance) {
+                    bestDistance = distance;
+                    bestRank = rank;
+                }
+            }
+            if (bestDistance > maxDistance) {
+                continue;
+            }
+            if (matchCount == sortKeys.length) {
+                sortKeys = Arrays.copyOf(sortKeys, matchCount * 2);
+            }
+            // Distance, rank, launches descending and position in the list.
+            sortKeys[matchCount++] = ((long) bestDistance << 60)
+                    | ((long) Math.min(bestRank, MAX_RANK) << 52)
+                    | ((long) (MAX_LAUNCH_COUNT - getLaunchCount(app)) << 24)
+                    | app;
+        }
+        Arrays.sort(sortKeys, 0, matchCount);
+
+        result.ensureCapacity(result.size() + matchCount);
+        for (int i = 0; i < matchCount; i++) {
+            result.add(mKeys[(int) (sortKeys[i] & 0xFFFFFF)]);
+        }
+    }
+
+    /**
+     * Returns the smallest edit distance between {@param query} and a prefix of
+     * {@param text} starting at {@param start}, counting transpositions as one edit, or
+     * {@param maxDistance} + 1 if it is larger than {@param maxDistance}.
+     */
+    private int getPrefixDistance(String query, String text, int start, int maxDistance) {
+        int queryLength = query.length();
+        int textLength = Math.min(text.length() - start, queryLength + maxDistance);
+        if (textLength < queryLength - maxDistance) {
+            return maxDistance + 1;
+        }
+        if (mDistanceRow0.length <= textLength) {
+            mDistanceRow0 = new int[textLength + 1];
+            mDistanceRow1 = new int[textLength + 1];
+            mDistanceRow2 = new int[textLength + 1];
+        }
+        // Rows for the previous two query chars and the current one.
+        int[] before = mDistanceRow0;
+        int[] previous = mDistanceRow1;
+        int[] current = mDistanceRow2;
+        for (int j = 0; j <= textLength; j++) {
+            previous[j] = j;
+        }
+        for (int i = 1; i <= queryLength; i++) {
+            char q = query.charAt(i - 1);
+            current[0] = i;
+            int rowMin = i;
+            for (int j = 1; j <= textLength; j++) {
+                char t = text.charAt(start + j - 1);
+                int distance = Math.min(previous[j - 1] + (q == t ? 0 : 1),
+                        Math.min(previous[j], current[j - 1]) + 1);
+                if (i > 1 && j > 1 && q == text.charAt(start + j - 2)
+                        && query.charAt(i - 2) == t) {
+                    distance = Math.min(distance, before[j - 2] + 1);
+                }
+                current[j] = distance;
+                rowMin = Math.min(rowMin, distance);
+            }
+            if (rowMin > maxDistance) {
+                return maxDistance + 1;
+            }
+            int[] recycled = before;
+            before = previous;
+            previous = current;
+            current = recycled;
+        }
+        int best = maxDistance + 1;
+        for (int j = 0; j <= textLength; j++) {
+            best = Math.min(best, previous[j]);
+        }
+        return best;
+    }
+
+    /**
+     * Returns the first token in [from, to) which starts with {@param query}, or which is after
+     * all the tokens starting with {@param query} if {@param after} is true.
+     */
+    private int findFirst(String query, int from, int to, boolean after) {
+        int low = from;
+        int high = to;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            int cmp = compareToken(mid, query);
+            if (cmp < 0 || (after && cmp == 0)) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * Compares a token with {@param query}, returning 0 if the token starts with the query.
+     */
+    private int compareToken(int token, String query) {
+        String title = mTitles[mTokenApps[token]];
+        int offset = mTokenStarts[token];
+        int tokenLength = title.length() - offset;
+        int length = Math.min(tokenLength, query.length());
+        for (int i = 0; i < length; i++) {
+            char c = title.charAt(offset + i);
+            char q = query.charAt(i);
+            if (c != q) {
+                return c - q;
+            }
+        }
+        return tokenLength < query.length() ? -1 : 0;
+    }
+}
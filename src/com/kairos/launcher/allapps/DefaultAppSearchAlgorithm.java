@@ -16,10 +16,13 @@
 package com.kairos.launcher.allapps;
 
 import android.os.Handler;
+import android.support.annotation.Nullable;
+import android.support.annotation.VisibleForTesting;
 
 import com.kairos.launcher.AppInfo;
 import com.kairos.launcher.util.ComponentKey;
 
+import java.io.PrintWriter;
 import java.util.ArrayList;
 import java.util.List;
 
@@ -27,50 +30,116 @@ import java.util.List;
 /**--------------------------------------------------------------
  * TEAM KAIROS :: DEV Daniel :: CLASS SYNOPSIS
  * Copyright (c) 2017 KAIROS
- * The default search implementation
-
+ * The default search implementation. Queries are answered in the background from an
+ * {@link AppSearchIndex} built on the first search after the list of apps changed.
  ----------------------------------------------------------------*/
 public class DefaultAppSearchAlgorithm {
 
     private final List<AppInfo> mApps;
+    @Nullable private final AppLaunchCounts mLaunchCounts;
     protected final Handler mResultHandler;
+    private final AppSearchExecutor mExecutor;
+
+    // The index is built on the search thread, from a copy of the apps taken on the UI thread.
+    // The list of apps is only read on the UI thread, mIndexApps is set while mIndex is null.
+    private AppSearchIndex mIndex;
+    private List<AppInfo> mIndexApps;
+    private int mIndexVersion;
+    private boolean mFuzzyMatchingEnabled;
 
     public DefaultAppSearchAlgorithm(List<AppInfo> apps) {
+        this(apps, null);
+    }
+
+    public DefaultAppSearchAlgorithm(List<AppInfo> apps, @Nullable AppLaunchCounts launchCounts) {
         mApps = apps;
+        mLaunchCounts = launchCounts;
         mResultHandler = new Handler();
+        mExecutor = new AppSearchExecutor(this, mResultHandler);
+        mIndexApps = new ArrayList<>(mApps);
+    }
+
+    /**
+     * Discards the search index, to be called on the UI thread when the list of apps or their
+     * titles changed. The index is rebuilt from a copy of the apps taken now.
+     */
+    public synchronized void invalidateIndex() {
+        mIndex = null;
+        mIndexApps = new ArrayList<>(mApps);
+        mIndexVersion++;
+    }
+
+    /**
+     * Enables the second search tier, which also returns the apps matching the query within a
+     * small edit distance, or once accents are removed and the title is romanized.
+     */
+    public synchronized void setFuzzyMatchingEnabled(boolean enabled) {
+        if (mFuzzyMatchingEnabled != enabled) {
+            mFuzzyMatchingEnabled = enabled;
+            invalidateIndex();
+        }
+    }
+
+    AppSearchIndex getIndex() {
+        List<AppInfo> apps;
+        int version;
+        boolean fuzzy;
+        synchronized (this) {
+            if (mIndex != null) {
+                return mIndex;
+            }
+            apps = mIndexApps;
+            version = mIndexVersion;
+            fuzzy = mFuzzyMatchingEnabled;
+        }
+        AppSearchIndex index = new AppSearchIndex(apps, this, mLaunchCounts, fuzzy);
+        synchronized (this) {
+            if (version == mIndexVersion) {
+                mIndex = index;
+                mIndexApps = null;
+            }
+        }
+        return index;
     }
 
     public void cancel(boolean interruptActiveRequests) {
         if (interruptActiveRequests) {
+            mExecutor.cancel();
             mResultHandler.removeCallbacksAndMessages(null);
         }
     }
 
+    /**
+     * Searches {@param query} on a background thread. Only the results of the last query are
+     * posted to {@param callback}, see {@link AppSearchExecutor}.
+     */
     public void doSearch(final String query,
             final AllAppsSearchBarController.Callbacks callback) {
-        final ArrayList<ComponentKey> result = getTitleMatchResult(query);
-        mResultHandler.post(new Runnable() {
+        mExecutor.execute(query, callback);
+    }
 
-            @Override
-            public void run() {
-                callback.onSearchResult(query, result);
-            }
-        });
+    /**
+     * Runs {@param r} on the search thread after the searches requested so far.
+     */
+    @VisibleForTesting
+    void runAfterSearches(Runnable r) {
+        mExecutor.runAfterQueries(r);
+    }
+
+    public void dump(String prefix, PrintWriter writer) {
+        mExecutor.dump(prefix, writer);
     }
 
     protected ArrayList<ComponentKey> getTitleMatchResult(String query) {
-        // Do an intersection of the words in the query and each title, and filter out all the
-        // apps that don't match all of the words in the query.
-        final String queryTextLower = query.toLowerCase();
-        final ArrayList<ComponentKey> result = new ArrayList<>();
-        for (AppInfo info : mApps) {
-            if (matches(info, queryTextLower)) {
-                result.add(info.toComponentKey());
-            }
-        }
-        return result;
+        // Find the apps with a word starting with the query, using the same word breaks as
+        // matches(AppInfo, String).
+        return getIndex().search(query);
     }
 
+    /**
+     * Returns whether a word of the title of {@param info} starts with {@param query}. This is
+     * the reference for the matching done by the {@link AppSearchIndex}.
+     */
     protected boolean matches(AppInfo info, String query) {
         int queryLength = query.length();
 
@@ -15,6 +15,9 @@
  */
 package com.kairos.launcher.allapps;
 
+import com.kairos.launcher.LauncherAppState;
+import com.kairos.launcher.config.FeatureFlags;
+
 
 /**--------------------------------------------------------------
  * TEAM KAIROS :: DEV Daniel :: CLASS SYNOPSIS
@@ -25,6 +28,9 @@ package com.kairos.launcher.allapps;
 public class DefaultAppSearchController extends AllAppsSearchBarController {
 
     public DefaultAppSearchAlgorithm onInitializeSearch() {
-        return new DefaultAppSearchAlgorithm(mApps.getApps());
+        DefaultAppSearchAlgorithm algorithm = new DefaultAppSearchAlgorithm(mApps.getApps(),
+                LauncherAppState.getInstance(mLauncher).getLaunchCounts());
+        algorithm.setFuzzyMatchingEnabled(FeatureFlags.LAUNCHER3_FUZZY_APP_SEARCH);
+        return algorithm;
     }
 }
@@ -0,0 +1,102 @@
+/*
+ * Copyright (C) 2017 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.kairos.launcher.allapps;
+
+import java.text.Normalizer;
+
+/**--------------------------------------------------------------
+ * TEAM KAIROS :: DEV CARLOS :: CLASS SYNOPSIS
+ * Copyright (c) 2017 KAIROS
+ *
+ * Computes the keys used by the fuzzy tier of the {@link AppSearchIndex}, so that a title can
+ * be found by typing it without accents, or in Latin script. Titles are decomposed (NFKD),
+ * which also folds compatibility forms like full width letters, combining marks are dropped
+ * and Cyrillic and Greek letters are romanized. Other scripts are kept as they are.
+ *
+ * The case of the title is preserved, so that word breaks can be computed on the key.
+ ----------------------------------------------------------------*/
+final class SearchKeyNormalizer {
+
+    private static final char CYRILLIC_LOWER_A = '\u0430';
+    private static final char CYRILLIC_LOWER_YA = '\u044f';
+    private static final String[] CYRILLIC = {
+            "a", "b", "v", "g", "d", "e", "zh", "z", "i", "y", "k", "l", "m", "n", "o", "p",
+            "r", "s", "t", "u", "f", "kh", "ts", "ch", "sh", "shch", "", "y", "", "e", "yu", "ya"
+    };
+
+    private static final char GREEK_LOWER_ALPHA = '\u03b1';
+    private static final char GREEK_LOWER_OMEGA = '\u03c9';
+    private static final String[] GREEK = {
+            "a", "v", "g", "d", "e", "z", "i", "th", "i", "k", "l", "m", "n", "x", "o", "p",
+            "r", "s", "s", "t", "y", "f", "ch", "ps", "o"
+    };
+
+    // Offset between the upper and lower case letters of the tables above.
+    private static final int UPPER_CASE_OFFSET = 0x20;
+
+    private SearchKeyNormalizer() { }
+
+    /**
+     * Returns the search key of {@param text}, in the same case as the text.
+     */
+    static String normalize(String text) {
+        String decomposed = Normalizer.normalize(text, Normalizer.Form.NFKD);
+        StringBuilder key = null;
+        int length = decomposed.length();
+        for (int i = 0; i < length; i++) {
+            char c = decomposed.charAt(i);
+            String replacement = romanize(c);
+            boolean isMark = Character.getType(c) == Character.NON_SPACING_MARK;
+            if (key == null) {
+                if (replacement == null && !isMark) {
+                    continue;
+                }
+                // First change, copy what was skipped so far
+                key = new StringBuilder(length + 8);
+                key.append(decomposed, 0, i);
+            }
+            if (replacement != null) {
+                key.append(replacement);
+            } else if (!isMark) {
+                key.append(c);
+            }
+        }
+        return key == null ? decomposed : key.toString();
+    }
+
+    private static String romanize(char c) {
+        if (c >= CYRILLIC_LOWER_A && c <= CYRILLIC_LOWER_YA) {
+            return CYRILLIC[c - CYRILLIC_LOWER_A];
+        }
+        if (c >= CYRILLIC_LOWER_A - UPPER_CASE_OFFSET
+                && c <= CYRILLIC_LOWER_YA - UPPER_CASE_OFFSET) {
+            return capitalize(CYRILLIC[c - CYRILLIC_LOWER_A + UPPER_CASE_OFFSET]);
+        }
+        if (c >= GREEK_LOWER_ALPHA && c <= GREEK_LOWER_OMEGA) {
+            return GREEK[c - GREEK_LOWER_ALPHA];
+        }
+        if (c >= GREEK_LOWER_ALPHA - UPPER_CASE_OFFSET && c <= GREEK_LOWER_OMEGA - UPPER_CASE_OFFSET
+                && c != '\u03a2' /* unassigned, there is no upper case final sigma */) {
+            return capitalize(GREEK[c - GREEK_LOWER_ALPHA + UPPER_CASE_OFFSET]);
+        }
+        return null;
+    }
+
+    private static String capitalize(String s) {
+        return s.isEmpty() ? s : Character.toUpperCase(s.charAt(0)) + s.substring(1);
+    }
+}
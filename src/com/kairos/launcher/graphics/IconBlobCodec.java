@@ -0,0 +1,191 @@
+/*
+ * Copyright (C) 2017 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.kairos.launcher.graphics;
+
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.util.Log;
+
+import com.kairos.launcher.Utilities;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**--------------------------------------------------------------
+ * TEAM KAIROS :: DEV CARLOS :: CLASS SYNOPSIS
+ * Copyright (c) 2017 KAIROS
+ *
+ * Encodes icon bitmaps for the icon DB. The first byte of a blob is its format:
+ * - {@link #FORMAT_PNG}: a PNG, used for the bitmap configs which can't be stored raw.
+ * - {@link #FORMAT_RAW_DEFLATE}: the raw pixel memory of the bitmap, deflated. Decoding only
+ *   inflates the pixels and copies them in the bitmap, which is much cheaper than a PNG decode.
+ *   The pixels use the memory layout of the device, so these blobs must not leave the device.
+ ----------------------------------------------------------------*/
+public class IconBlobCodec {
+
+    private static final String TAG = "IconBlobCodec";
+
+    public static final byte FORMAT_PNG = 0;
+    public static final byte FORMAT_RAW_DEFLATE = 1;
+
+    private static final byte CONFIG_ARGB_8888 = 0;
+    private static final byte CONFIG_RGB_565 = 1;
+
+    private static final int FLAG_HAS_ALPHA = 1;
+    private static final int FLAG_PREMULTIPLIED = 1 << 1;
+
+    // format, config, flags, width, height, raw size
+    private static final int RAW_HEADER_SIZE = 3 + 4 * 3;
+
+    /**
+     * Returns the encoded {@param bitmap}, or null if it can't be encoded.
+     */
+    public static byte[] encode(Bitmap bitmap) {
+        if (bitmap == null) {
+            return null;
+        }
+        byte config;
+        if (bitmap.getConfig() == Bitmap.Config.ARGB_8888) {
+            config = CONFIG_ARGB_8888;
+        } else if (bitmap.getConfig() == Bitmap.Config.RGB_565) {
+            config = CONFIG_RGB_565;
+        } else {
+            return encodePng(bitmap);
+        }
+
+        byte[] raw = new byte[bitmap.getByteCount()];
+        bitmap.copyPixelsToBuffer(ByteBuffer.wrap(raw));
+
+        Deflater deflater = new Deflater();
+        ByteArrayOutputStream out = new ByteArrayOutputStream(raw.length / 4 + RAW_HEADER_SIZE);
+        try {
+            ByteBuffer header = ByteBuffer.allocate(RAW_HEADER_SIZE);
+            header.put(FORMAT_RAW_DEFLATE)
+                    .put(config)
+                    .put((byte) ((bitmap.hasAlpha() ? FLAG_HAS_ALPHA : 0)
+                            | (bitmap.isPremultiplied() ? FLAG_PREMULTIPLIED : 0)))
+                    .putInt(bitmap.getWidth())
+                    .putInt(bitmap.getHeight())
+                    .putInt(raw.length);
+            out.write(header.array(), 0, RAW_HEADER_SIZE);
+
+            deflater.setInput(raw);
+            deflater.finish();
+            byte[] buffer = new byte[8192];
+            while (!deflater.finished()) {
+                int count = deflater.deflate(buffer);
+                out.write(buffer, 0, count);
+            }
+        } finally {
+            deflater.end();
+        }
+        return out.toByteArray();
+    }
+
+    private static byte[] encodePng(Bitmap bitmap) {
+        byte[] png = Utilities.flattenBitmap(bitmap);
+        if (png == null) {
+            return null;
+        }
+        byte[] data = new byte[png.length + 1];
+        data[0] = FORMAT_PNG;
+        System.arraycopy(png, 0, data, 1, png.length);
+        return data;
+    }
+
+    /**
+     * Decodes a blob created by {@link #encode}.
+     * @param options used when the blob is a PNG, raw blobs are always decoded with the config
+     *                they were encoded with.
+     * @return the bitmap, or null if the blob is corrupt.
+     */
+    public static Bitmap decode(byte[] data, BitmapFactory.Options options) {
+        if (data == null || data.length == 0) {
+            return null;
+        }
+        try {
+            switch (data[0]) {
+                case FORMAT_PNG:
+                    return BitmapFactory.decodeByteArray(data, 1, data.length - 1, options);
+                case FORMAT_RAW_DEFLATE:
+                    return decodeRaw(data);
+                default:
+                    return null;
+            }
+        } catch (Exception e) {
+            Log.d(TAG, "Error decoding icon", e);
+            return null;
+        }
+    }
+
+    private static Bitmap decodeRaw(byte[] data) throws DataFormatException {
+        ByteBuffer header = ByteBuffer.wrap(data, 1, RAW_HEADER_SIZE - 1);
+        Bitmap.Config config = header.get() == CONFIG_RGB_565
+                ? Bitmap.Config.RGB_565 : Bitmap.Config.ARGB_8888;
+        int flags = header.get();
+        int width = header.getInt();
+        int height = header.getInt();
+        int rawSize = header.getInt();
+
+        Bitmap bitmap = Bitmap.createBitmap(width, height, config);
+        if (bitmap.getByteCount() != rawSize) {
+            // The blob was created with a different memory layout.
+            return null;
+        }
+        byte[] raw = new byte[rawSize];
+        Inflater inflater = new Inflater();
+        try {
+            inflater.setInput(data, RAW_HEADER_SIZE, data.length - RAW_HEADER_SIZE);
+            int offset = 0;
+            while (offset < rawSize) {
+                int count = inflater.inflate(raw, offset, rawSize - offset);
+                if (count == 0 && (inflater.finished() || inflater.needsInput())) {
+                    // Truncated blob
+                    return null;
+                }
+                offset += count;
+            }
+        } finally {
+            inflater.end();
+        }
+
+        if (config == Bitmap.Config.ARGB_8888) {
+            bitmap.setPremultiplied((flags & FLAG_PREMULTIPLIED) != 0);
+        }
+        bitmap.copyPixelsFromBuffer(ByteBuffer.wrap(raw));
+        bitmap.setHasAlpha((flags & FLAG_HAS_ALPHA) != 0);
+        return bitmap;
+    }
+
+    /**
+     * Returns the content hash of an encoded blob, used as its key in the icon DB.
+     */
+    public static long hash(byte[] data) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-1").digest(data);
+            return ByteBuffer.wrap(digest).getLong();
+        } catch (NoSuchAlgorithmException e) {
+            // SHA-1 is always available.
+            throw new RuntimeException(e);
+        }
+    }
+}
@@ -16,6 +16,7 @@
 
 package com.kairos.launcher.graphics;
 
+import android.content.ComponentCallbacks2;
 import android.content.ComponentName;
 import android.content.Context;
 import android.content.Intent;
@@ -38,6 +39,7 @@ import android.os.UserHandle;
 
 import com.kairos.launcher.AppInfo;
 import com.kairos.launcher.IconCache;
+import com.kairos.launcher.InvariantDeviceProfile;
 import com.kairos.launcher.LauncherAppState;
 import com.kairos.launcher.Utilities;
 import com.kairos.launcher.config.FeatureFlags;
@@ -53,27 +55,122 @@ import com.kairos.launcher.shortcuts.ShortcutInfoCompat;
  ----------------------------------------------------------------*/
 public class LauncherIcons {
 
-    private static final Rect sOldBounds = new Rect();
-    private static final Canvas sCanvas = new Canvas();
+    // Max number of idle instances kept in the pool, each one can hold large buffers so only as
+    // many are kept as threads render icons concurrently.
+    private static final int MAX_POOL_SIZE = IconCache.RENDER_PARALLELISM;
 
-    static {
-        sCanvas.setDrawFilter(new PaintFlagsDrawFilter(Paint.DITHER_FLAG,
+    private static final Object sPoolSync = new Object();
+    // Idle instances, guarded by {@link #sPoolSync}
+    private static LauncherIcons sPool;
+    private static int sPoolSize;
+
+    /**
+     * Returns an icon factory which can be used by the calling thread until {@link #recycle()}
+     * is called. Instances own all their scratch objects, so that different threads can
+     * generate icons concurrently.
+     */
+    public static LauncherIcons obtain(Context context) {
+        synchronized (sPoolSync) {
+            if (sPool != null) {
+                LauncherIcons icons = sPool;
+                sPool = icons.mNext;
+                icons.mNext = null;
+                sPoolSize--;
+                return icons;
+            }
+        }
+        return new LauncherIcons(context);
+    }
+
+    private final Context mContext;
+    private final int mIconBitmapSize;
+    private final int mFillResIconDpi;
+
+    private final Rect mOldBounds = new Rect();
+    private final Canvas mCanvas = new Canvas();
+    private final Paint mBadgePaint = new Paint(Paint.FILTER_BITMAP_FLAG);
+
+    // Created lazily as they hold large buffers.
+    private IconNormalizer mNormalizer;
+    private ShadowGenerator mShadowGenerator;
+
+    private LauncherIcons mNext;
+
+    private LauncherIcons(Context context) {
+        mContext = context.getApplicationContext();
+        InvariantDeviceProfile idp = LauncherAppState.getIDP(context);
+        mIconBitmapSize = idp.iconBitmapSize;
+        mFillResIconDpi = idp.fillResIconDpi;
+        mCanvas.setDrawFilter(new PaintFlagsDrawFilter(Paint.DITHER_FLAG,
                 Paint.FILTER_BITMAP_FLAG));
     }
 
+    /**
+     * Releases the idle instances in response to {@link ComponentCallbacks2#onTrimMemory(int)}, the
+     * instances in use are pooled again once recycled.
+     */
+    public static void onTrimMemory(int level) {
+        if (level >= ComponentCallbacks2.TRIM_MEMORY_UI_HIDDEN
+                || level == ComponentCallbacks2.TRIM_MEMORY_RUNNING_LOW
+                || level == ComponentCallbacks2.TRIM_MEMORY_RUNNING_CRITICAL) {
+            synchronized (sPoolSync) {
+                sPool = null;
+                sPoolSize = 0;
+            }
+        }
+    }
+
+    /**
+     * Returns this object to the pool. It should not be used by the caller afterwards.
+     */
+    public void recycle() {
+        synchronized (sPoolSync) {
+            if (sPoolSize < MAX_POOL_SIZE) {
+                mNext = sPool;
+                sPool = this;
+                sPoolSize++;
+            }
+        }
+    }
+
+    private IconNormalizer getNormalizer() {
+        if (mNormalizer == null) {
+            mNormalizer = new IconNormalizer(mContext);
+        }
+        return mNormalizer;
+    }
+
+    private ShadowGenerator getShadowGenerator() {
+        if (mShadowGenerator == null) {
+            mShadowGenerator = new ShadowGenerator(mContext);
+        }
+        return mShadowGenerator;
+    }
+
     /**
      * Returns a bitmap suitable for the all apps view. If the package or the resource do not
      * exist, it returns null.
      */
     public static Bitmap createIconBitmap(ShortcutIconResource iconRes, Context context) {
-        PackageManager packageManager = context.getPackageManager();
+        LauncherIcons li = obtain(context);
+        try {
+            return li.createIconBitmap(iconRes);
+        } finally {
+            li.recycle();
+        }
+    }
+
+    /**
+     * @see #createIconBitmap(ShortcutIconResource, Context)
+     */
+    public Bitmap createIconBitmap(ShortcutIconResource iconRes) {
+        PackageManager packageManager = mContext.getPackageManager();
         // the resource
         try {
             Resources resources = packageManager.getResourcesForApplication(iconRes.packageName);
             if (resources != null) {
                 final int id = resources.getIdentifier(iconRes.resourceName, null, null);
-                return createIconBitmap(resources.getDrawableForDensity(
-                        id, LauncherAppState.getIDP(context).fillResIconDpi), context);
+                return createIconBitmap(resources.getDrawableForDensity(id, mFillResIconDpi));
             }
         } catch (Exception e) {
             // Icon not found.
@@ -85,11 +182,22 @@ public class LauncherIcons {
      * Returns a bitmap which is of the appropriate size to be displayed as an icon
      */
     public static Bitmap createIconBitmap(Bitmap icon, Context context) {
-        final int iconBitmapSize = LauncherAppState.getIDP(context).iconBitmapSize;
-        if (iconBitmapSize == icon.getWidth() && iconBitmapSize == icon.getHeight()) {
+        LauncherIcons li = obtain(context);
+        try {
+            return li.createIconBitmap(icon);
+        } finally {
+            li.recycle();
+        }
+    }
+
+    /**
+     * @see #createIconBitmap(Bitmap, Context)
+     */
+    public Bitmap createIconBitmap(Bitmap icon) {
+        if (mIconBitmapSize == icon.getWidth() && mIconBitmapSize == icon.getHeight()) {
             return icon;
         }
-        return createIconBitmap(new BitmapDrawable(context.getResources(), icon), context);
+        return createIconBitmap(new BitmapDrawable(mContext.getResources(), icon));
     }
 
     /**
@@ -98,20 +206,31 @@ public class LauncherIcons {
      */
     public static Bitmap createBadgedIconBitmap(
             Drawable icon, UserHandle user, Context context, int iconAppTargetSdk) {
+        LauncherIcons li = obtain(context);
+        try {
+            return li.createBadgedIconBitmap(icon, user, iconAppTargetSdk);
+        } finally {
+            li.recycle();
+        }
+    }
 
+    /**
+     * @see #createBadgedIconBitmap(Drawable, UserHandle, Context, int)
+     */
+    public Bitmap createBadgedIconBitmap(Drawable icon, UserHandle user, int iconAppTargetSdk) {
         IconNormalizer normalizer;
         float scale = 1f;
         if (!FeatureFlags.LAUNCHER3_DISABLE_ICON_NORMALIZATION) {
-            normalizer = IconNormalizer.getInstance(context);
+            normalizer = getNormalizer();
             if (Utilities.isAtLeastO() && iconAppTargetSdk >= Build.VERSION_CODES.O) {
                 boolean[] outShape = new boolean[1];
                 AdaptiveIconDrawable dr = (AdaptiveIconDrawable)
-                        context.getDrawable(com.kairos.launcher.R.drawable.adaptive_icon_drawable_wrapper).mutate();
+                        mContext.getDrawable(com.kairos.launcher.R.drawable.adaptive_icon_drawable_wrapper).mutate();
                 dr.setBounds(0, 0, 1, 1);
                 scale = normalizer.getScale(icon, null, dr.getIconMask(), outShape);
                 if (FeatureFlags.LEGACY_ICON_TREATMENT &&
                         !outShape[0]){
-                    Drawable wrappedIcon = wrapToAdaptiveIconDrawable(context, icon, scale);
+                    Drawable wrappedIcon = wrapToAdaptiveIconDrawable(mContext, icon, scale);
                     if (wrappedIcon != icon) {
                         icon = wrappedIcon;
                         scale = normalizer.getScale(icon, null, null, null);
@@ -121,26 +240,38 @@ public class LauncherIcons {
                 scale = normalizer.getScale(icon, null, null, null);
             }
         }
-        Bitmap bitmap = createIconBitmap(icon, context, scale);
+        Bitmap bitmap = createIconBitmap(icon, scale);
         if (FeatureFlags.ADAPTIVE_ICON_SHADOW && Utilities.isAtLeastO() &&
                 icon instanceof AdaptiveIconDrawable) {
-            bitmap = ShadowGenerator.getInstance(context).recreateIcon(bitmap);
+            bitmap = getShadowGenerator().recreateIcon(bitmap);
         }
-        return badgeIconForUser(bitmap, user, context);
+        return badgeIconForUser(bitmap, user);
     }
 
     /**
      * Badges the provided icon with the user badge if required.
      */
     public static Bitmap badgeIconForUser(Bitmap icon, UserHandle user, Context context) {
+        LauncherIcons li = obtain(context);
+        try {
+            return li.badgeIconForUser(icon, user);
+        } finally {
+            li.recycle();
+        }
+    }
+
+    /**
+     * @see #badgeIconForUser(Bitmap, UserHandle, Context)
+     */
+    public Bitmap badgeIconForUser(Bitmap icon, UserHandle user) {
         if (user != null && !Process.myUserHandle().equals(user)) {
             BitmapDrawable drawable = new FixedSizeBitmapDrawable(icon);
-            Drawable badged = context.getPackageManager().getUserBadgedIcon(
+            Drawable badged = mContext.getPackageManager().getUserBadgedIcon(
                     drawable, user);
             if (badged instanceof BitmapDrawable) {
                 return ((BitmapDrawable) badged).getBitmap();
             } else {
-                return createIconBitmap(badged, context);
+                return createIconBitmap(badged);
             }
         } else {
             return icon;
@@ -152,20 +283,32 @@ public class LauncherIcons {
      * normalized with other icons and has enough spacing to add shadow.
      */
     public static Bitmap createScaledBitmapWithoutShadow(Drawable icon, Context context, int iconAppTargetSdk) {
+        LauncherIcons li = obtain(context);
+        try {
+            return li.createScaledBitmapWithoutShadow(icon, iconAppTargetSdk);
+        } finally {
+            li.recycle();
+        }
+    }
+
+    /**
+     * @see #createScaledBitmapWithoutShadow(Drawable, Context, int)
+     */
+    public Bitmap createScaledBitmapWithoutShadow(Drawable icon, int iconAppTargetSdk) {
         RectF iconBounds = new RectF();
         IconNormalizer normalizer;
         float scale = 1f;
         if (!FeatureFlags.LAUNCHER3_DISABLE_ICON_NORMALIZATION) {
-            normalizer = IconNormalizer.getInstance(context);
+            normalizer = getNormalizer();
             if (Utilities.isAtLeastO() && iconAppTargetSdk >= Build.VERSION_CODES.O) {
                 boolean[] outShape = new boolean[1];
                 AdaptiveIconDrawable dr = (AdaptiveIconDrawable)
-                        context.getDrawable(com.kairos.launcher.R.drawable.adaptive_icon_drawable_wrapper).mutate();
+                        mContext.getDrawable(com.kairos.launcher.R.drawable.adaptive_icon_drawable_wrapper).mutate();
                 dr.setBounds(0, 0, 1, 1);
                 scale = normalizer.getScale(icon, iconBounds, dr.getIconMask(), outShape);
                 if (Utilities.isAtLeastO() && FeatureFlags.LEGACY_ICON_TREATMENT &&
                         !outShape[0]) {
-                    Drawable wrappedIcon = wrapToAdaptiveIconDrawable(context, icon, scale);
+                    Drawable wrappedIcon = wrapToAdaptiveIconDrawable(mContext, icon, scale);
                     if (wrappedIcon != icon) {
                         icon = wrappedIcon;
                         scale = normalizer.getScale(icon, iconBounds, null, null);
@@ -177,7 +320,7 @@ public class LauncherIcons {
 
         }
         scale = Math.min(scale, ShadowGenerator.getScaleForBounds(iconBounds));
-        return createIconBitmap(icon, context, scale);
+        return createIconBitmap(icon, scale);
     }
 
     /**
@@ -185,22 +328,44 @@ public class LauncherIcons {
      * {@link #createScaledBitmapWithoutShadow(Drawable, Context, int)}
      */
     public static Bitmap addShadowToIcon(Bitmap icon, Context context) {
-        return ShadowGenerator.getInstance(context).recreateIcon(icon);
+        LauncherIcons li = obtain(context);
+        try {
+            return li.addShadowToIcon(icon);
+        } finally {
+            li.recycle();
+        }
+    }
+
+    /**
+     * @see #addShadowToIcon(Bitmap, Context)
+     */
+    public Bitmap addShadowToIcon(Bitmap icon) {
+        return getShadowGenerator().recreateIcon(icon);
     }
 
     /**
      * Adds the {@param badge} on top of {@param srcTgt} using the badge dimensions.
      */
     public static Bitmap badgeWithBitmap(Bitmap srcTgt, Bitmap badge, Context context) {
-        int badgeSize = context.getResources().getDimensionPixelSize(com.kairos.launcher.R.dimen.profile_badge_size);
-        synchronized (sCanvas) {
-            sCanvas.setBitmap(srcTgt);
-            sCanvas.drawBitmap(badge, new Rect(0, 0, badge.getWidth(), badge.getHeight()),
-                    new Rect(srcTgt.getWidth() - badgeSize,
-                            srcTgt.getHeight() - badgeSize, srcTgt.getWidth(), srcTgt.getHeight()),
-                    new Paint(Paint.FILTER_BITMAP_FLAG));
-            sCanvas.setBitmap(null);
+        LauncherIcons li = obtain(context);
+        try {
+            return li.badgeWithBitmap(srcTgt, badge);
+        } finally {
+            li.recycle();
         }
+    }
+
+    /**
+     * @see #badgeWithBitmap(Bitmap, Bitmap, Context)
+     */
+    public Bitmap badgeWithBitmap(Bitmap srcTgt, Bitmap badge) {
+        int badgeSize = mContext.getResources().getDimensionPixelSize(com.kairos.launcher.R.dimen.profile_badge_size);
+        mCanvas.setBitmap(srcTgt);
+        mCanvas.drawBitmap(badge, new Rect(0, 0, badge.getWidth(), badge.getHeight()),
+                new Rect(srcTgt.getWidth() - badgeSize,
+                        srcTgt.getHeight() - badgeSize, srcTgt.getWidth(), srcTgt.getHeight()),
+                mBadgePaint);
+        mCanvas.setBitmap(null);
         return srcTgt;
     }
 
@@ -208,15 +373,27 @@ public class LauncherIcons {
      * Returns a bitmap suitable for the all apps view.
      */
     public static Bitmap createIconBitmap(Drawable icon, Context context) {
+        LauncherIcons li = obtain(context);
+        try {
+            return li.createIconBitmap(icon);
+        } finally {
+            li.recycle();
+        }
+    }
+
+    /**
+     * @see #createIconBitmap(Drawable, Context)
+     */
+    public Bitmap createIconBitmap(Drawable icon) {
         float scale = 1f;
         if (FeatureFlags.ADAPTIVE_ICON_SHADOW && Utilities.isAtLeastO() &&
                 icon instanceof AdaptiveIconDrawable) {
             scale = ShadowGenerator.getScaleForBounds(new RectF(0, 0, 0, 0));
         }
-        Bitmap bitmap =  createIconBitmap(icon, context, scale);
+        Bitmap bitmap =  createIconBitmap(icon, scale);
         if (FeatureFlags.ADAPTIVE_ICON_SHADOW && Utilities.isAtLeastO() &&
                 icon instanceof AdaptiveIconDrawable) {
-            bitmap = ShadowGenerator.getInstance(context).recreateIcon(bitmap);
+            bitmap = getShadowGenerator().recreateIcon(bitmap);
         }
         return bitmap;
     }
@@ -225,65 +402,74 @@ public class LauncherIcons {
      * @param scale the scale to apply before drawing {@param icon} on the canvas
      */
     public static Bitmap createIconBitmap(Drawable icon, Context context, float scale) {
-        synchronized (sCanvas) {
-            final int iconBitmapSize = LauncherAppState.getIDP(context).iconBitmapSize;
-            int width = iconBitmapSize;
-            int height = iconBitmapSize;
-
-            if (icon instanceof PaintDrawable) {
-                PaintDrawable painter = (PaintDrawable) icon;
-                painter.setIntrinsicWidth(width);
-                painter.setIntrinsicHeight(height);
-            } else if (icon instanceof BitmapDrawable) {
-                // Ensure the bitmap has a density.
-                BitmapDrawable bitmapDrawable = (BitmapDrawable) icon;
-                Bitmap bitmap = bitmapDrawable.getBitmap();
-                if (bitmap != null && bitmap.getDensity() == Bitmap.DENSITY_NONE) {
-                    bitmapDrawable.setTargetDensity(context.getResources().getDisplayMetrics());
-                }
-            }
+        LauncherIcons li = obtain(context);
+        try {
+            return li.createIconBitmap(icon, scale);
+        } finally {
+            li.recycle();
+        }
+    }
 
-            int sourceWidth = icon.getIntrinsicWidth();
-            int sourceHeight = icon.getIntrinsicHeight();
-            if (sourceWidth > 0 && sourceHeight > 0) {
-                // Scale the icon proportionally to the icon dimensions
-                final float ratio = (float) sourceWidth / sourceHeight;
-                if (sourceWidth > sourceHeight) {
-                    height = (int) (width / ratio);
-                } else if (sourceHeight > sourceWidth) {
-                    width = (int) (height * ratio);
-                }
-            }
-            // no intrinsic size --> use default size
-            int textureWidth = iconBitmapSize;
-            int textureHeight = iconBitmapSize;
-
-            Bitmap bitmap = Bitmap.createBitmap(textureWidth, textureHeight,
-                    Bitmap.Config.ARGB_8888);
-            final Canvas canvas = sCanvas;
-            canvas.setBitmap(bitmap);
-
-            final int left = (textureWidth-width) / 2;
-            final int top = (textureHeight-height) / 2;
-
-            sOldBounds.set(icon.getBounds());
-            if (Utilities.isAtLeastO() && icon instanceof AdaptiveIconDrawable) {
-                int offset = Math.max((int)(ShadowGenerator.BLUR_FACTOR * iconBitmapSize),
-                        Math.min(left, top));
-                int size = Math.max(width, height);
-                icon.setBounds(offset, offset, size, size);
-            } else {
-                icon.setBounds(left, top, left+width, top+height);
+    /**
+     * @see #createIconBitmap(Drawable, Context, float)
+     */
+    public Bitmap createIconBitmap(Drawable icon, float scale) {
+        int width = mIconBitmapSize;
+        int height = mIconBitmapSize;
+
+        if (icon instanceof PaintDrawable) {
+            PaintDrawable painter = (PaintDrawable) icon;
+            painter.setIntrinsicWidth(width);
+            painter.setIntrinsicHeight(height);
+        } else if (icon instanceof BitmapDrawable) {
+            // Ensure the bitmap has a density.
+            BitmapDrawable bitmapDrawable = (BitmapDrawable) icon;
+            Bitmap bitmap = bitmapDrawable.getBitmap();
+            if (bitmap != null && bitmap.getDensity() == Bitmap.DENSITY_NONE) {
+                bitmapDrawable.setTargetDensity(mContext.getResources().getDisplayMetrics());
             }
-            canvas.save(Canvas.MATRIX_SAVE_FLAG);
-            canvas.scale(scale, scale, textureWidth / 2, textureHeight / 2);
-            icon.draw(canvas);
-            canvas.restore();
-            icon.setBounds(sOldBounds);
-            canvas.setBitmap(null);
+        }
 
-            return bitmap;
+        int sourceWidth = icon.getIntrinsicWidth();
+        int sourceHeight = icon.getIntrinsicHeight();
+        if (sourceWidth > 0 && sourceHeight > 0) {
+            // Scale the icon proportionally to the icon dimensions
+            final float ratio = (float) sourceWidth / sourceHeight;
+            if (sourceWidth > sourceHeight) {
+                height = (int) (width / ratio);
+            } else if (sourceHeight > sourceWidth) {
+                width = (int) (height * ratio);
+            }
+        }
+        // no intrinsic size --> use default size
+        int textureWidth = mIconBitmapSize;
+        int textureHeight = mIconBitmapSize;
+
+        Bitmap bitmap = Bitmap.createBitmap(textureWidth, textureHeight,
+                Bitmap.Config.ARGB_8888);
+        final Canvas canvas = mCanvas;
+        canvas.setBitmap(bitmap);
+
+        final int left = (textureWidth-width) / 2;
+        final int top = (textureHeight-height) / 2;
+
+        mOldBounds.set(icon.getBounds());
+        if (Utilities.isAtLeastO() && icon instanceof AdaptiveIconDrawable) {
+            int offset = Math.max((int)(ShadowGenerator.BLUR_FACTOR * mIconBitmapSize),
+                    Math.min(left, top));
+            int size = Math.max(width, height);
+            icon.setBounds(offset, offset, size, size);
+        } else {
+            icon.setBounds(left, top, left+width, top+height);
         }
+        canvas.save(Canvas.MATRIX_SAVE_FLAG);
+        canvas.scale(scale, scale, textureWidth / 2, textureHeight / 2);
+        icon.draw(canvas);
+        canvas.restore();
+        icon.setBounds(mOldBounds);
+        canvas.setBitmap(null);
+
+        return bitmap;
     }
 
     /**
@@ -317,20 +503,30 @@ public class LauncherIcons {
 
     public static Bitmap createShortcutIcon(ShortcutInfoCompat shortcutInfo, Context context,
             boolean badged) {
-        LauncherAppState app = LauncherAppState.getInstance(context);
-        Drawable unbadgedDrawable = DeepShortcutManager.getInstance(context)
-                .getShortcutIconDrawable(shortcutInfo,
-                        app.getInvariantDeviceProfile().fillResIconDpi);
+        LauncherIcons li = obtain(context);
+        try {
+            return li.createShortcutIcon(shortcutInfo, badged);
+        } finally {
+            li.recycle();
+        }
+    }
+
+    /**
+     * @see #createShortcutIcon(ShortcutInfoCompat, Context, boolean)
+     */
+    public Bitmap createShortcutIcon(ShortcutInfoCompat shortcutInfo, boolean badged) {
+        LauncherAppState app = LauncherAppState.getInstance(mContext);
+        Drawable unbadgedDrawable = DeepShortcutManager.getInstance(mContext)
+                .getShortcutIconDrawable(shortcutInfo, mFillResIconDpi);
         IconCache cache = app.getIconCache();
         Bitmap unbadgedBitmap = unbadgedDrawable == null
                 ? cache.getDefaultIcon(Process.myUserHandle())
-                : LauncherIcons.createScaledBitmapWithoutShadow(unbadgedDrawable, context,
-                Build.VERSION_CODES.O);
+                : createScaledBitmapWithoutShadow(unbadgedDrawable, Build.VERSION_CODES.O);
 
         if (!badged) {
             return unbadgedBitmap;
         }
-        unbadgedBitmap = LauncherIcons.addShadowToIcon(unbadgedBitmap, context);
+        unbadgedBitmap = addShadowToIcon(unbadgedBitmap);
 
         final Bitmap badgeBitmap;
         ComponentName cn = shortcutInfo.getActivity();
@@ -349,7 +545,7 @@ public class LauncherIcons {
             cache.getTitleAndIconForApp(pkgInfo, false);
             badgeBitmap = pkgInfo.iconBitmap;
         }
-        return badgeWithBitmap(unbadgedBitmap, badgeBitmap, context);
+        return badgeWithBitmap(unbadgedBitmap, badgeBitmap);
     }
 
     /**
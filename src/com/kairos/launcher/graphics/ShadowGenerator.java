@@ -46,17 +46,17 @@ public class ShadowGenerator {
 
     public static final int AMBIENT_SHADOW_ALPHA = 30;
 
-    private static final Object LOCK = new Object();
-    // Singleton object guarded by {@link #LOCK}
-    private static ShadowGenerator sShadowGenerator;
-
     private final int mIconSize;
 
     private final Canvas mCanvas;
     private final Paint mBlurPaint;
     private final Paint mDrawPaint;
 
-    private ShadowGenerator(Context context) {
+    /**
+     * Instances are not thread safe. Use one per thread, as done by
+     * {@link LauncherIcons#obtain(Context)}.
+     */
+    ShadowGenerator(Context context) {
         mIconSize = LauncherAppState.getIDP(context).iconBitmapSize;
         mCanvas = new Canvas();
         mBlurPaint = new Paint(Paint.ANTI_ALIAS_FLAG | Paint.FILTER_BITMAP_FLAG);
@@ -64,7 +64,8 @@ public class ShadowGenerator {
         mDrawPaint = new Paint(Paint.ANTI_ALIAS_FLAG | Paint.FILTER_BITMAP_FLAG);
     }
 
-    public synchronized Bitmap recreateIcon(Bitmap icon) {
+    public Bitmap recreateIcon(Bitmap icon) {
+        Preconditions.assertNonUiThread();
         int[] offset = new int[2];
         Bitmap shadow = icon.extractAlpha(mBlurPaint, offset);
         Bitmap result = Bitmap.createBitmap(mIconSize, mIconSize, Config.ARGB_8888);
@@ -126,16 +127,6 @@ public class ShadowGenerator {
         return result;
     }
 
-    public static ShadowGenerator getInstance(Context context) {
-        Preconditions.assertNonUiThread();
-        synchronized (LOCK) {
-            if (sShadowGenerator == null) {
-                sShadowGenerator = new ShadowGenerator(context);
-            }
-        }
-        return sShadowGenerator;
-    }
-
     /**
      * Returns the minimum amount by which an icon with {@param bounds} should be scaled
      * so that the shadows do not get clipped.
@@ -11,6 +11,7 @@ import android.content.pm.PackageManager;
 import android.database.Cursor;
 import android.graphics.Point;
 import android.net.Uri;
+import android.support.annotation.VisibleForTesting;
 import android.text.TextUtils;
 import android.util.Log;
 
@@ -29,9 +30,12 @@ import com.kairos.launcher.compat.PackageInstallerCompat;
 import com.kairos.launcher.config.FeatureFlags;
 import com.kairos.launcher.util.GridOccupancy;
 import com.kairos.launcher.util.LongArrayMap;
+import com.kairos.launcher.util.ParallelRunner;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
+import java.util.Comparator;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Locale;
@@ -114,25 +118,29 @@ public class GridSizeMigrationTask {
     }
 
     /**
-     * Applied all the pending DB operations
+     * Applied all the pending DB operations, in a single batch so that they are committed in one
+     * transaction.
      * @return true if any DB operation was commited.
      */
     private boolean applyOperations() throws Exception {
-        // Update items
-        if (!mUpdateOperations.isEmpty()) {
-            mContext.getContentResolver().applyBatch(LauncherProvider.AUTHORITY, mUpdateOperations);
-        }
+        boolean dbChanged = !mUpdateOperations.isEmpty() || !mEntryToRemove.isEmpty();
 
+        // Remove items after updating the others
         if (!mEntryToRemove.isEmpty()) {
             if (DEBUG) {
                 Log.d(TAG, "Removing items: " + TextUtils.join(", ", mEntryToRemove));
             }
-            mContext.getContentResolver().delete(LauncherSettings.Favorites.CONTENT_URI,
-                    Utilities.createDbSelectionQuery(
-                            LauncherSettings.Favorites._ID, mEntryToRemove), null);
+            mUpdateOperations.add(ContentProviderOperation
+                    .newDelete(LauncherSettings.Favorites.CONTENT_URI)
+                    .withSelection(Utilities.createDbSelectionQuery(
+                            LauncherSettings.Favorites._ID, mEntryToRemove), null)
+                    .build());
         }
 
-        return !mUpdateOperations.isEmpty() || !mEntryToRemove.isEmpty();
+        if (dbChanged) {
+            mContext.getContentResolver().applyBatch(LauncherProvider.AUTHORITY, mUpdateOperations);
+        }
+        return dbChanged;
     }
 
     /**
@@ -195,12 +203,7 @@ public class GridSizeMigrationTask {
             throw new Exception("Unable to get workspace screens");
         }
 
-        for (long screenId : allScreens) {
-            if (DEBUG) {
-                Log.d(TAG, "Migrating " + screenId);
-            }
-            migrateScreen(screenId);
-        }
+        migrateScreens(allScreens);
 
         if (!mCarryOver.isEmpty()) {
             LongArrayMap<DbEntry> itemMap = new LongArrayMap<>();
@@ -214,7 +217,7 @@ public class GridSizeMigrationTask {
                 // At every iteration, make sure that at least one item is removed from
                 // {@link #mCarryOver}, to prevent an infinite loop. If no item could be removed,
                 // break the loop and abort migration by throwing an exception.
-                OptimalPlacementSolution placement = new OptimalPlacementSolution(
+                OptimalPlacementSolution placement = new OptimalPlacementSolution(mTrgX, mTrgY,
                         new GridOccupancy(mTrgX, mTrgY), deepCopy(mCarryOver), 0, true);
                 placement.find();
                 if (placement.finalPlacedItems.size() > 0) {
@@ -253,21 +256,61 @@ public class GridSizeMigrationTask {
     }
 
     /**
-     * Migrate a particular screen id.
-     * Strategy:
+     * Migrate the provided screens, in order.
+     * Strategy for each screen:
      *   1) For all possible combinations of row and column, pick the one which causes the least
-     *      data loss: {@link #tryRemove(int, int, int, ArrayList, float[])}
+     *      data loss: {@link #tryRemove(int, int, int, ArrayList, int, long, float[], int[])}
      *   2) Maintain a list of all lost items before this screen, and add any new item lost from
      *      this screen to that list as well.
      *   3) If all those items from the above list can be placed on this screen, place them
      *      (otherwise they are placed on a new screen).
+     * Step 1) is done by {@link #solveScreen(ScreenMigration)}, independently for each screen,
+     * and steps 2) and 3) by {@link #applyScreen(ScreenMigration)}, in screen order.
      */
-    protected void migrateScreen(long screenId) {
+    protected void migrateScreens(ArrayList<Long> screenIds) throws InterruptedException {
+        final ArrayList<ScreenMigration> screens = new ArrayList<>(screenIds.size());
+        for (long screenId : screenIds) {
+            screens.add(loadScreen(screenId));
+        }
+
+        // The rows and columns to remove only depend on the items of each screen, so they are
+        // found concurrently. The items which don't fit are then carried over in screen order.
+        ParallelRunner.run(Utilities.THREAD_POOL_EXECUTOR, screens.size(), 1,
+                ParallelRunner.getCpuBoundParallelism(), new ParallelRunner.RangeTask() {
+                    @Override
+                    public void run(int start, int end) {
+                        for (int i = start; i < end; i++) {
+                            solveScreen(screens.get(i));
+                        }
+                    }
+                });
+
+        for (ScreenMigration screen : screens) {
+            if (DEBUG) {
+                Log.d(TAG, "Migrating " + screen.screenId);
+            }
+            applyScreen(screen);
+        }
+    }
+
+    private ScreenMigration loadScreen(long screenId) {
         // If we are migrating the first screen, do not touch the first row.
         int startY = (FeatureFlags.QSB_ON_FIRST_SCREEN && screenId == Workspace.FIRST_SCREEN_ID)
                 ? 1 : 0;
+        return new ScreenMigration(screenId, startY, loadWorkspaceEntries(screenId));
+    }
 
-        ArrayList<DbEntry> items = loadWorkspaceEntries(screenId);
+    /**
+     * Finds the row and column to remove from a screen. Only reads the screen and the grid sizes,
+     * so that screens can be solved concurrently.
+     *
+     * All the searches of the screen share one budget of {@link OptimalPlacementSolution#MAX_NODES}
+     * nodes, split evenly between the searches left so that the part a search doesn't use goes to
+     * the next ones. The result only depends on the screen, not on the load of the device.
+     */
+    private void solveScreen(ScreenMigration screen) {
+        final int startY = screen.startY;
+        final ArrayList<DbEntry> items = screen.items;
 
         int removedCol = Integer.MAX_VALUE;
         int removedRow = Integer.MAX_VALUE;
@@ -280,8 +323,14 @@ public class GridSizeMigrationTask {
         float removeWt = Float.MAX_VALUE;
         float moveWt = Float.MAX_VALUE;
         float[] outLoss = new float[2];
+        int[] outNodesExplored = new int[1];
         ArrayList<DbEntry> finalItems = null;
 
+        int searchesLeft = (mShouldRemoveX ? mSrcX : 1)
+                * (mShouldRemoveY ? Math.max(1, mSrcY - startY) : 1);
+        int nodesLeft = OptimalPlacementSolution.MAX_NODES;
+        long deadline = System.nanoTime() + OptimalPlacementSolution.MAX_SEARCH_TIME_NS;
+
         // Try removing all possible combinations
         for (int x = 0; x < mSrcX; x++) {
             // Try removing the rows first from bottom. This keeps the workspace
@@ -289,7 +338,11 @@ public class GridSizeMigrationTask {
             for (int y = mSrcY - 1; y >= startY; y--) {
                 // Use a deep copy when trying out a particular combination as it can change
                 // the underlying object.
-                ArrayList<DbEntry> itemsOnScreen = tryRemove(x, y, startY, deepCopy(items), outLoss);
+                int nodesExplored = outNodesExplored[0];
+                ArrayList<DbEntry> itemsOnScreen = tryRemove(x, y, startY, deepCopy(items),
+                        nodesLeft / Math.max(1, searchesLeft), deadline, outLoss, outNodesExplored);
+                nodesLeft = Math.max(0, nodesLeft - (outNodesExplored[0] - nodesExplored));
+                searchesLeft--;
 
                 if ((outLoss[0] < removeWt) || ((outLoss[0] == removeWt) && (outLoss[1] < moveWt))) {
                     removeWt = outLoss[0];
@@ -310,13 +363,30 @@ public class GridSizeMigrationTask {
             }
         }
 
+        screen.removedCol = removedCol;
+        screen.removedRow = removedRow;
+        screen.removeWt = removeWt;
+        screen.finalItems = finalItems;
+        screen.nodesExplored = outNodesExplored[0];
+    }
+
+    /**
+     * Adds the updates of a solved screen, and places the items carried over from the previous
+     * screens on it if possible. Screens must be applied in order.
+     */
+    private void applyScreen(ScreenMigration screen) {
+        final long screenId = screen.screenId;
+        final int startY = screen.startY;
+        final ArrayList<DbEntry> finalItems = screen.finalItems;
+        int nodesExplored = screen.nodesExplored;
+
         if (DEBUG) {
             Log.d(TAG, String.format("Removing row %d, column %d on screen %d",
-                    removedRow, removedCol, screenId));
+                    screen.removedRow, screen.removedCol, screenId));
         }
 
         LongArrayMap<DbEntry> itemMap = new LongArrayMap<>();
-        for (DbEntry e : deepCopy(items)) {
+        for (DbEntry e : deepCopy(screen.items)) {
             itemMap.put(e.id, e);
         }
 
@@ -335,7 +405,7 @@ public class GridSizeMigrationTask {
             mCarryOver.add(item);
         }
 
-        if (!mCarryOver.isEmpty() && removeWt == 0) {
+        if (!mCarryOver.isEmpty() && screen.removeWt == 0) {
             // No new items were removed in this step. Try placing all the items on this screen.
             GridOccupancy occupied = new GridOccupancy(mTrgX, mTrgY);
             occupied.markCells(0, 0, mTrgX, startY, true);
@@ -343,9 +413,10 @@ public class GridSizeMigrationTask {
                 occupied.markCells(item, true);
             }
 
-            OptimalPlacementSolution placement = new OptimalPlacementSolution(occupied,
-                    deepCopy(mCarryOver), startY, true);
+            OptimalPlacementSolution placement = new OptimalPlacementSolution(mTrgX, mTrgY,
+                    occupied, deepCopy(mCarryOver), startY, true);
             placement.find();
+            nodesExplored += placement.nodesExplored;
             if (placement.lowestWeightLoss == 0) {
                 // All items got placed
 
@@ -357,6 +428,11 @@ public class GridSizeMigrationTask {
                 mCarryOver.clear();
             }
         }
+
+        if (DEBUG) {
+            Log.d(TAG, String.format(Locale.ENGLISH, "Explored %d placements on screen %d",
+                    nodesExplored, screenId));
+        }
     }
 
     /**
@@ -373,11 +449,15 @@ public class GridSizeMigrationTask {
     /**
      * Tries the remove the provided row and column.
      * @param items all the items on the screen under operation
+     * @param maxNodes the number of nodes the placement search can explore
+     * @param deadline the {@link System#nanoTime()} after which the placement search stops
      * @param outLoss array of size 2. The first entry is filled with weight loss, and the second
      * with the overall item movement.
+     * @param outNodesExplored array of size 1, incremented by the number of placements explored.
      */
     private ArrayList<DbEntry> tryRemove(int col, int row, int startY,
-            ArrayList<DbEntry> items, float[] outLoss) {
+            ArrayList<DbEntry> items, int maxNodes, long deadline, float[] outLoss,
+            int[] outNodesExplored) {
         GridOccupancy occupied = new GridOccupancy(mTrgX, mTrgY);
         occupied.markCells(0, 0, mTrgX, startY, true);
 
@@ -402,17 +482,64 @@ public class GridSizeMigrationTask {
         }
 
         OptimalPlacementSolution placement =
-                new OptimalPlacementSolution(occupied, removedItems, startY);
+                new OptimalPlacementSolution(mTrgX, mTrgY, occupied, removedItems, startY);
+        placement.maxNodes = maxNodes;
+        placement.maxSearchTimeNs = deadline - System.nanoTime();
         placement.find();
+        outNodesExplored[0] += placement.nodesExplored;
         finalItems.addAll(placement.finalPlacedItems);
         outLoss[0] = placement.lowestWeightLoss;
         outLoss[1] = placement.lowestMoveCost;
         return finalItems;
     }
 
-    private class OptimalPlacementSolution {
+    /**
+     * A screen being migrated, and the result of {@link #solveScreen(ScreenMigration)}.
+     */
+    private static class ScreenMigration {
+        final long screenId;
+        final int startY;
+        final ArrayList<DbEntry> items;
+
+        int removedCol, removedRow;
+        float removeWt;
+        ArrayList<DbEntry> finalItems;
+        int nodesExplored;
+
+        ScreenMigration(long screenId, int startY, ArrayList<DbEntry> items) {
+            this.screenId = screenId;
+            this.startY = startY;
+            this.items = items;
+        }
+    }
+
+    /**
+     * Finds the placement of a set of items on a partially occupied grid, which minimizes the
+     * weight of the items which could not be placed, and then their movement.
+     *
+     * The search is a branch and bound: branches which can't do better than the best placement
+     * found so far are cut using a lower bound of the weight they will lose, and states already
+     * reached with a lower cost are not explored again. If the search still exceeds its budget,
+     * the remaining items are placed greedily.
+     */
+    static class OptimalPlacementSolution {
+        // Budget of the search, as a number of explored nodes so that the placement doesn't
+        // depend on the speed or the load of the device.
+        static final int MAX_NODES = 100000;
+        // Safety limit on the search time, only reached if the node budget takes far longer than
+        // expected.
+        static final long MAX_SEARCH_TIME_NS = 2000 * 1000000L;
+        // Number of nodes explored between two checks of the search time
+        private static final int TIME_CHECK_INTERVAL = 1024;
+        // Max number of occupancy states remembered
+        private static final int MAX_VISITED_STATES = 20000;
+        // Relative margin by which a bound must exceed the best loss to cut a branch, so that
+        // float rounding never cuts a branch which could be better.
+        private static final float BOUND_MARGIN = 1e-4f;
+
         private final ArrayList<DbEntry> itemsToPlace;
         private final GridOccupancy occupied;
+        private final int mTrgX, mTrgY;
 
         // If set to true, item movement are not considered in move cost, leading to a more
         // linear placement.
@@ -425,13 +552,34 @@ public class GridSizeMigrationTask {
         float lowestMoveCost = Float.MAX_VALUE;
         ArrayList<DbEntry> finalPlacedItems;
 
-        public OptimalPlacementSolution(
+        // Number of placements explored by the last search, and whether it ran out of budget.
+        int nodesExplored;
+        boolean budgetExceeded;
+
+        int maxNodes = MAX_NODES;
+        long maxSearchTimeNs = MAX_SEARCH_TIME_NS;
+        // Disabled by tests to compare with the exhaustive search
+        @VisibleForTesting boolean pruningEnabled = true;
+
+        private long mStartTime;
+        // Indices of the items by increasing weight per cell, and whether they fit in the grid,
+        // used to compute the lower bound.
+        private int[] mDensityOrder;
+        private boolean[] mFits;
+        // For each index, the lowest weight loss and move cost with which each occupancy was
+        // reached.
+        private ArrayList<HashMap<GridOccupancy, float[]>> mVisitedStates;
+        private int mVisitedStateCount;
+
+        public OptimalPlacementSolution(int trgX, int trgY,
                 GridOccupancy occupied, ArrayList<DbEntry> itemsToPlace, int startY) {
-            this(occupied, itemsToPlace, startY, false);
+            this(trgX, trgY, occupied, itemsToPlace, startY, false);
         }
 
-        public OptimalPlacementSolution(GridOccupancy occupied, ArrayList<DbEntry> itemsToPlace,
-                int startY, boolean ignoreMove) {
+        public OptimalPlacementSolution(int trgX, int trgY, GridOccupancy occupied,
+                ArrayList<DbEntry> itemsToPlace, int startY, boolean ignoreMove) {
+            mTrgX = trgX;
+            mTrgY = trgY;
             this.occupied = occupied;
             this.itemsToPlace = itemsToPlace;
             this.ignoreMove = ignoreMove;
@@ -442,7 +590,41 @@ public class GridSizeMigrationTask {
         }
 
         public void find() {
+            nodesExplored = 0;
+            budgetExceeded = false;
+            mStartTime = System.nanoTime();
+
+            final int count = itemsToPlace.size();
+            Integer[] order = new Integer[count];
+            for (int i = 0; i < count; i++) {
+                order[i] = i;
+            }
+            Arrays.sort(order, new Comparator<Integer>() {
+                @Override
+                public int compare(Integer a, Integer b) {
+                    DbEntry itemA = itemsToPlace.get(a);
+                    DbEntry itemB = itemsToPlace.get(b);
+                    return Float.compare(itemA.weight / getMinArea(itemA),
+                            itemB.weight / getMinArea(itemB));
+                }
+            });
+            mDensityOrder = new int[count];
+            for (int i = 0; i < count; i++) {
+                mDensityOrder[i] = order[i];
+            }
+            mFits = new boolean[count];
+            mVisitedStates = new ArrayList<>(count);
+            for (int i = 0; i < count; i++) {
+                mVisitedStates.add(new HashMap<GridOccupancy, float[]>());
+            }
+            mVisitedStateCount = 0;
+
             find(0, 0, 0, new ArrayList<DbEntry>());
+
+            if (budgetExceeded) {
+                Log.w(TAG, "Placement search stopped after " + nodesExplored
+                        + " nodes, remaining items were placed greedily");
+            }
         }
 
         /**
@@ -454,7 +636,9 @@ public class GridSizeMigrationTask {
          */
         public void find(int index, float weightLoss, float moveCost,
                 ArrayList<DbEntry> itemsPlaced) {
-            if ((weightLoss >= lowestWeightLoss) ||
+            if (budgetExceeded) {
+                return;
+            } else if ((weightLoss >= lowestWeightLoss) ||
                     ((weightLoss == lowestWeightLoss) && (moveCost >= lowestMoveCost))) {
                 // Abort, as we already have a better solution.
                 return;
@@ -469,6 +653,18 @@ public class GridSizeMigrationTask {
                 return;
             }
 
+            nodesExplored++;
+            if (nodesExplored > maxNodes || (nodesExplored % TIME_CHECK_INTERVAL == 0
+                    && System.nanoTime() - mStartTime > maxSearchTimeNs)) {
+                budgetExceeded = true;
+                placeGreedily(index, weightLoss, moveCost, itemsPlaced);
+                return;
+            }
+            if (pruningEnabled && (isBoundedOut(index, weightLoss)
+                    || isDominated(index, weightLoss, moveCost))) {
+                return;
+            }
+
             DbEntry me = itemsToPlace.get(index);
             int myX = me.cellX;
             int myY = me.cellY;
@@ -556,15 +752,14 @@ public class GridSizeMigrationTask {
                 int newX = Integer.MAX_VALUE, newY = Integer.MAX_VALUE;
 
                 for (int y = startY; y < mTrgY; y++) {
-                    for (int x = 0; x < mTrgX; x++) {
-                        if (!occupied.cells[x][y]) {
-                            int dist = ignoreMove ? 0 :
-                                ((me.cellX - x) * (me.cellX - x) + (me.cellY - y) * (me.cellY - y));
-                            if (dist < newDistance) {
-                                newX = x;
-                                newY = y;
-                                newDistance = dist;
-                            }
+                    for (int x = occupied.nextVacantCell(0, y, 1, 1); x >= 0;
+                            x = occupied.nextVacantCell(x + 1, y, 1, 1)) {
+                        int dist = ignoreMove ? 0 :
+                            ((me.cellX - x) * (me.cellX - x) + (me.cellY - y) * (me.cellY - y));
+                        if (dist < newDistance) {
+                            newX = x;
+                            newY = y;
+                            newDistance = dist;
                         }
                     }
                 }
@@ -607,6 +802,206 @@ public class GridSizeMigrationTask {
                 }
             }
         }
+
+        /**
+         * Returns whether the items from {@param index} are sure to lose more weight than the
+         * best placement found so far.
+         */
+        private boolean isBoundedOut(int index, float weightLoss) {
+            if (lowestWeightLoss == Float.MAX_VALUE) {
+                return false;
+            }
+            float bound = weightLoss + getWeightLossLowerBound(index);
+            return bound > lowestWeightLoss + BOUND_MARGIN * Math.max(1, lowestWeightLoss);
+        }
+
+        /**
+         * Returns a lower bound of the weight which will be lost from {@param index}: the widgets
+         * which don't fit in any vacant region even when resized, and the lightest part of the
+         * others which exceeds the number of vacant cells. As the search ends at the first 1x1
+         * item which can't be placed, only the widgets up to the next 1x1 item, and that item,
+         * are counted.
+         */
+        private float getWeightLossLowerBound(int index) {
+            final int count = itemsToPlace.size();
+            int vacantCells = mTrgX * (mTrgY - startY)
+                    - occupied.countOccupied(0, startY, mTrgX, mTrgY - startY);
+            float bound = 0;
+            int requiredCells = 0;
+            int end = index;
+            for (; end < count; end++) {
+                DbEntry item = itemsToPlace.get(end);
+                boolean isWidget = item.spanX > 1 || item.spanY > 1;
+                mFits[end] = fitsInVacantRegion(getMinSpanX(item), getMinSpanY(item), vacantCells);
+                if (mFits[end]) {
+                    requiredCells += getMinArea(item);
+                } else {
+                    bound += item.weight;
+                }
+                if (!isWidget) {
+                    break;
+                }
+            }
+
+            // Dropping fractions of items, the lightest per cell first, is never worse than
+            // dropping whole items.
+            int excess = requiredCells - vacantCells;
+            for (int k = 0; k < count && excess > 0; k++) {
+                int i = mDensityOrder[k];
+                if (i < index || i > end || !mFits[i]) {
+                    continue;
+                }
+                DbEntry item = itemsToPlace.get(i);
+                int area = getMinArea(item);
+                int dropped = Math.min(area, excess);
+                bound += item.weight * dropped / area;
+                excess -= dropped;
+            }
+            return bound;
+        }
+
+        private boolean fitsInVacantRegion(int spanX, int spanY, int vacantCells) {
+            if (spanX * spanY > vacantCells) {
+                return false;
+            } else if (spanX == 1 && spanY == 1) {
+                return true;
+            }
+            for (int y = startY; y + spanY <= mTrgY; y++) {
+                if (occupied.nextVacantCell(0, y, spanX, spanY) >= 0) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        /**
+         * Returns whether the current occupancy was already reached for {@param index} with a
+         * lower or equal weight loss and move cost, in which case no completion of this state
+         * can be better than one already tried.
+         */
+        private boolean isDominated(int index, float weightLoss, float moveCost) {
+            HashMap<GridOccupancy, float[]> states = mVisitedStates.get(index);
+            float[] cost = states.get(occupied);
+            if (cost != null) {
+                if (cost[0] <= weightLoss && cost[1] <= moveCost) {
+                    return true;
+                }
+                cost[0] = weightLoss;
+                cost[1] = moveCost;
+            } else if (mVisitedStateCount < MAX_VISITED_STATES) {
+                GridOccupancy state = new GridOccupancy(mTrgX, mTrgY);
+                occupied.copyTo(state);
+                states.put(state, new float[] {weightLoss, moveCost});
+                mVisitedStateCount++;
+            }
+            return false;
+        }
+
+        /**
+         * Completes the placement from {@param index} without backtracking: each item is placed
+         * at the vacant position nearest to its current one, resized if needed, or dropped.
+         */
+        private void placeGreedily(int index, float weightLoss, float moveCost,
+                ArrayList<DbEntry> itemsPlaced) {
+            ArrayList<DbEntry> placed = deepCopy(itemsPlaced);
+            int firstPlaced = placed.size();
+            int[] position = new int[2];
+            for (int i = index; i < itemsToPlace.size(); i++) {
+                DbEntry item = itemsToPlace.get(i).copy();
+                int resizeCost = findGreedyPosition(item, position);
+                if (resizeCost < 0) {
+                    weightLoss += item.weight;
+                    continue;
+                }
+                if (!ignoreMove) {
+                    if (position[0] != item.cellX) {
+                        moveCost++;
+                    }
+                    if (position[1] != item.cellY) {
+                        moveCost++;
+                    }
+                }
+                moveCost += resizeCost;
+                item.cellX = position[0];
+                item.cellY = position[1];
+                occupied.markCells(item, true);
+                placed.add(item);
+            }
+            for (int i = firstPlaced; i < placed.size(); i++) {
+                occupied.markCells(placed.get(i), false);
+            }
+
+            if ((weightLoss < lowestWeightLoss) ||
+                    ((weightLoss == lowestWeightLoss) && (moveCost < lowestMoveCost))) {
+                lowestWeightLoss = weightLoss;
+                lowestMoveCost = moveCost;
+                finalPlacedItems = placed;
+            }
+        }
+
+        /**
+         * Finds the vacant position nearest to {@param item}, trying its smaller sizes if it
+         * doesn't fit, like the search does, and resizes the item.
+         * @return the move cost of the resize, or -1 if the item doesn't fit.
+         */
+        private int findGreedyPosition(DbEntry item, int[] outPosition) {
+            int spanX = item.spanX;
+            int spanY = item.spanY;
+            boolean isWidget = spanX > 1 || spanY > 1;
+            boolean resizeX = isWidget && spanX > item.minSpanX;
+            boolean resizeY = isWidget && spanY > item.minSpanY;
+            if (findNearestVacantRegion(item, spanX, spanY, outPosition)) {
+                return 0;
+            } else if (resizeX && findNearestVacantRegion(item, spanX - 1, spanY, outPosition)) {
+                item.spanX--;
+                return 1;
+            } else if (resizeY && findNearestVacantRegion(item, spanX, spanY - 1, outPosition)) {
+                item.spanY--;
+                return 1;
+            } else if (resizeX && resizeY
+                    && findNearestVacantRegion(item, spanX - 1, spanY - 1, outPosition)) {
+                item.spanX--;
+                item.spanY--;
+                return 2;
+            }
+            return -1;
+        }
+
+        private boolean findNearestVacantRegion(DbEntry item, int spanX, int spanY,
+                int[] outPosition) {
+            int bestDistance = Integer.MAX_VALUE;
+            for (int y = startY; y + spanY <= mTrgY; y++) {
+                for (int x = occupied.nextVacantCell(0, y, spanX, spanY); x >= 0;
+                        x = occupied.nextVacantCell(x + 1, y, spanX, spanY)) {
+                    int dist = ignoreMove ? 0 : ((item.cellX - x) * (item.cellX - x)
+                            + (item.cellY - y) * (item.cellY - y));
+                    if (dist < bestDistance) {
+                        outPosition[0] = x;
+                        outPosition[1] = y;
+                        bestDistance = dist;
+                    }
+                }
+            }
+            return bestDistance != Integer.MAX_VALUE;
+        }
+
+        /**
+         * Returns the smallest size the search can give to {@param item}, widgets can be shrunk
+         * by one cell in each direction.
+         */
+        private static int getMinSpanX(DbEntry item) {
+            boolean isWidget = item.spanX > 1 || item.spanY > 1;
+            return isWidget && item.spanX > item.minSpanX ? item.spanX - 1 : item.spanX;
+        }
+
+        private static int getMinSpanY(DbEntry item) {
+            boolean isWidget = item.spanX > 1 || item.spanY > 1;
+            return isWidget && item.spanY > item.minSpanY ? item.spanY - 1 : item.spanY;
+        }
+
+        private static int getMinArea(DbEntry item) {
+            return getMinSpanX(item) * getMinSpanY(item);
+        }
     }
 
     private ArrayList<DbEntry> loadHotseatEntries() {
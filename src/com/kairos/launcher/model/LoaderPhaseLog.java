@@ -0,0 +1,148 @@
+/*
+ * Copyright (C) 2017 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.kairos.launcher.model;
+
+import android.os.SystemClock;
+
+import java.io.PrintWriter;
+
+/**--------------------------------------------------------------
+ * TEAM KAIROS :: DEV CARLOS :: CLASS SYNOPSIS
+ * Copyright (c) 2017 KAIROS
+ *
+ * Keeps the timings of the last loader phases in a fixed size ring buffer, so that slow
+ * loads can be diagnosed from a dumpsys without enabling the loader debug logs.
+ ----------------------------------------------------------------*/
+public class LoaderPhaseLog {
+
+    private static final int MAX_RECORDS = 64;
+
+    private static final int STATE_RUNNING = 0;
+    private static final int STATE_DONE = 1;
+    private static final int STATE_CANCELLED = 2;
+    private static final int STATE_FAILED = 3;
+
+    /**
+     * A single phase of a loader run. A phase must be started and ended on the same thread, as
+     * the CPU time is measured for the calling thread.
+     */
+    public static class Phase {
+        private final LoaderPhaseLog mLog;
+        final int runId;
+        final String name;
+        final String threadName;
+        final long startTime;
+        private final long mStartCpuTime;
+
+        long wallTime;
+        long cpuTime;
+        int itemCount = -1;
+        int state = STATE_RUNNING;
+
+        Phase(LoaderPhaseLog log, int runId, String name) {
+            mLog = log;
+            this.runId = runId;
+            this.name = name;
+            threadName = Thread.currentThread().getName();
+            startTime = SystemClock.uptimeMillis();
+            mStartCpuTime = SystemClock.currentThreadTimeMillis();
+        }
+
+        public void setItemCount(int count) {
+            itemCount = count;
+        }
+
+        /**
+         * Marks the phase as successfully completed.
+         */
+        public void done() {
+            end(STATE_DONE);
+        }
+
+        /**
+         * Marks the phase as cancelled, unless it was already completed.
+         */
+        public void cancel() {
+            end(STATE_CANCELLED);
+        }
+
+        /**
+         * Marks the phase as failed, unless it was already completed or cancelled. Meant to be
+         * called from a finally block.
+         */
+        public void end() {
+            end(STATE_FAILED);
+        }
+
+        private void end(int endState) {
+            if (state != STATE_RUNNING) {
+                return;
+            }
+            wallTime = SystemClock.uptimeMillis() - startTime;
+            cpuTime = SystemClock.currentThreadTimeMillis() - mStartCpuTime;
+            state = endState;
+            mLog.add(this);
+        }
+    }
+
+    private final Phase[] mRecords = new Phase[MAX_RECORDS];
+    private int mNextIndex;
+    private int mRunCount;
+
+    /**
+     * Returns the id to use for the phases of a new loader run.
+     */
+    public synchronized int startRun() {
+        return ++mRunCount;
+    }
+
+    public Phase begin(int runId, String name) {
+        return new Phase(this, runId, name);
+    }
+
+    synchronized void add(Phase phase) {
+        mRecords[mNextIndex] = phase;
+        mNextIndex = (mNextIndex + 1) % MAX_RECORDS;
+    }
+
+    public synchronized void dump(String prefix, PrintWriter writer) {
+        writer.println(prefix + "Loader phases: runs=" + mRunCount);
+        for (int i = 0; i < MAX_RECORDS; i++) {
+            Phase p = mRecords[(mNextIndex + i) % MAX_RECORDS];
+            if (p == null) {
+                continue;
+            }
+            writer.println(prefix + "  run=" + p.runId
+                    + " " + p.name
+                    + " [" + stateToString(p.state) + "]"
+                    + " thread=" + p.threadName
+                    + " start=" + p.startTime
+                    + " wall=" + p.wallTime + "ms"
+                    + " cpu=" + p.cpuTime + "ms"
+                    + (p.itemCount >= 0 ? " items=" + p.itemCount : ""));
+        }
+    }
+
+    private static String stateToString(int state) {
+        switch (state) {
+            case STATE_DONE: return "done";
+            case STATE_CANCELLED: return "cancelled";
+            case STATE_FAILED: return "failed";
+            default: return "running";
+        }
+    }
+}
@@ -87,6 +87,8 @@ public class PackageUpdatedTask extends ExtendedModelTask {
 
         final String[] packages = mPackages;
         final int N = packages.length;
+        // Record the change, so that the next icon validation checks these packages.
+        iconCache.onPackagesChanged(packages, mUser);
         FlagOp flagOp = FlagOp.NO_OP;
         final HashSet<String> packageSet = new HashSet<>(Arrays.asList(packages));
         ItemInfoMatcher matcher = ItemInfoMatcher.ofPackages(packageSet, mUser);
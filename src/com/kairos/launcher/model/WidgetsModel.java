@@ -7,6 +7,7 @@ import android.content.pm.PackageManager;
 import android.os.Process;
 import android.os.UserHandle;
 import android.support.annotation.Nullable;
+import android.text.TextUtils;
 import android.util.Log;
 
 import com.kairos.launcher.AppFilter;
@@ -26,6 +27,7 @@ import com.kairos.launcher.util.Preconditions;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.Iterator;
+import java.util.Map;
 
 /**--------------------------------------------------------------
  * TEAM KAIROS :: DEV BA :: CLASS SYNOPSIS
@@ -59,14 +61,44 @@ public class WidgetsModel {
         return mWidgetsList.isEmpty();
     }
 
+    /**
+     * Widgets and shortcuts returned by the system, see {@link #queryWidgetsAndShortcuts}.
+     */
+    public static class QueryResult {
+        public final ArrayList<WidgetItem> items = new ArrayList<>();
+        // False if the system could not return the complete list.
+        boolean complete;
+    }
+
     /**
      * @param packageUser If null, all widgets and shortcuts are updated and returned, otherwise
      *                    only widgets and shortcuts associated with the package/user are.
      */
     public ArrayList<WidgetItem> update(Context context, @Nullable PackageUserKey packageUser) {
         Preconditions.assertWorkerThread();
+        return update(context, packageUser, queryWidgetsAndShortcuts(context, packageUser));
+    }
 
-        final ArrayList<WidgetItem> widgetsAndShortcuts = new ArrayList<>();
+    /**
+     * Same as {@link #update(Context, PackageUserKey)}, using the result of an earlier call to
+     * {@link #queryWidgetsAndShortcuts} with the same {@param packageUser}.
+     */
+    public ArrayList<WidgetItem> update(Context context, @Nullable PackageUserKey packageUser,
+            QueryResult result) {
+        Preconditions.assertWorkerThread();
+        if (result.complete) {
+            setWidgetsAndShortcuts(result.items, context, packageUser);
+        }
+        return result.items;
+    }
+
+    /**
+     * Queries the system for the widgets and shortcuts associated with {@param packageUser}, or
+     * all of them if null. This does not modify the model and can be called on any thread.
+     */
+    public static QueryResult queryWidgetsAndShortcuts(Context context,
+            @Nullable PackageUserKey packageUser) {
+        QueryResult result = new QueryResult();
         try {
             PackageManager pm = context.getPackageManager();
             InvariantDeviceProfile idp = LauncherAppState.getIDP(context);
@@ -74,16 +106,16 @@ public class WidgetsModel {
             // Widgets
             AppWidgetManagerCompat widgetManager = AppWidgetManagerCompat.getInstance(context);
             for (AppWidgetProviderInfo widgetInfo : widgetManager.getAllProviders(packageUser)) {
-                widgetsAndShortcuts.add(new WidgetItem(LauncherAppWidgetProviderInfo
+                result.items.add(new WidgetItem(LauncherAppWidgetProviderInfo
                         .fromProviderInfo(context, widgetInfo), pm, idp));
             }
 
             // Shortcuts
             for (ShortcutConfigActivityInfo info : LauncherAppsCompat.getInstance(context)
                     .getCustomShortcutActivityList(packageUser)) {
-                widgetsAndShortcuts.add(new WidgetItem(info));
+                result.items.add(new WidgetItem(info));
             }
-            setWidgetsAndShortcuts(widgetsAndShortcuts, context, packageUser);
+            result.complete = true;
         } catch (Exception e) {
             if (!ProviderConfig.IS_DOGFOOD_BUILD && Utilities.isBinderSizeError(e)) {
                 // the returned value may be incomplete and will not be refreshed until the next
@@ -94,44 +126,52 @@ public class WidgetsModel {
                 throw e;
             }
         }
-        return widgetsAndShortcuts;
+        return result;
     }
 
+    /**
+     * Updates the model with {@param rawWidgetsShortcuts}. A package whose widgets did not
+     * change keeps its {@link PackageItemInfo}, so that the UI can skip rebinding its row by
+     * comparing the keys of the bound map. Packages updated on their own always get a new key,
+     * as their previews may have changed.
+     */
     private void setWidgetsAndShortcuts(ArrayList<WidgetItem> rawWidgetsShortcuts,
             Context context, @Nullable PackageUserKey packageUser) {
         if (DEBUG) {
             Log.d(TAG, "addWidgetsAndShortcuts, widgetsShortcuts#=" + rawWidgetsShortcuts.size());
         }
 
-        // Temporary list for {@link PackageItemInfos} to avoid having to go through
-        // {@link mPackageItemInfos} to locate the key to be used for {@link #mWidgetsList}
-        HashMap<String, PackageItemInfo> tmpPackageItemInfos = new HashMap<>();
-
-        // clear the lists.
-        if (packageUser == null) {
-            mWidgetsList.clear();
-        } else {
-            // Only clear the widgets for the given package/user.
-            PackageItemInfo packageItem = null;
-            for (PackageItemInfo item : mWidgetsList.keySet()) {
-                if (item.packageName.equals(packageUser.mPackageName)) {
-                    packageItem = item;
-                    break;
-                }
+        // Remove the packages being updated, they are added back below.
+        HashMap<String, PackageItemInfo> oldPackageItems = new HashMap<>();
+        HashMap<String, ArrayList<WidgetItem>> oldWidgets = new HashMap<>();
+        Iterator<Map.Entry<PackageItemInfo, ArrayList<WidgetItem>>> entryIterator =
+                mWidgetsList.entrySet().iterator();
+        while (entryIterator.hasNext()) {
+            Map.Entry<PackageItemInfo, ArrayList<WidgetItem>> entry = entryIterator.next();
+            String packageName = entry.getKey().packageName;
+            if (packageUser == null || packageName.equals(packageUser.mPackageName)) {
+                oldPackageItems.put(packageName, entry.getKey());
+                oldWidgets.put(packageName, entry.getValue());
+                entryIterator.remove();
             }
+        }
+
+        // New widgets per package, along with the user of the package entry.
+        HashMap<String, ArrayList<WidgetItem>> newWidgets = new HashMap<>();
+        HashMap<String, UserHandle> packageUsers = new HashMap<>();
+        if (packageUser != null) {
+            PackageItemInfo packageItem = oldPackageItems.get(packageUser.mPackageName);
             if (packageItem != null) {
-                // We want to preserve the user that was on the packageItem previously,
-                // so add it to tmpPackageItemInfos here to avoid creating a new entry.
-                tmpPackageItemInfos.put(packageItem.packageName, packageItem);
-
-                Iterator<WidgetItem> widgetItemIterator = mWidgetsList.get(packageItem).iterator();
-                while (widgetItemIterator.hasNext()) {
-                    WidgetItem nextWidget = widgetItemIterator.next();
-                    if (nextWidget.componentName.getPackageName().equals(packageUser.mPackageName)
-                            && nextWidget.user.equals(packageUser.mUser)) {
-                        widgetItemIterator.remove();
+                // Keep the widgets of the package for the other users, and preserve the user
+                // that was on the packageItem previously.
+                ArrayList<WidgetItem> widgets = new ArrayList<>();
+                for (WidgetItem item : oldWidgets.get(packageUser.mPackageName)) {
+                    if (!item.user.equals(packageUser.mUser)) {
+                        widgets.add(item);
                     }
                 }
+                newWidgets.put(packageItem.packageName, widgets);
+                packageUsers.put(packageItem.packageName, packageItem.user);
             }
         }
 
@@ -163,21 +203,60 @@ public class WidgetsModel {
             }
 
             String packageName = item.componentName.getPackageName();
-            PackageItemInfo pInfo = tmpPackageItemInfos.get(packageName);
-            if (pInfo == null) {
-                pInfo = new PackageItemInfo(packageName);
-                pInfo.user = item.user;
-                tmpPackageItemInfos.put(packageName,  pInfo);
-            } else if (!myUser.equals(pInfo.user)) {
+            ArrayList<WidgetItem> widgets = newWidgets.get(packageName);
+            if (widgets == null) {
+                widgets = new ArrayList<>();
+                newWidgets.put(packageName, widgets);
+                packageUsers.put(packageName, item.user);
+            } else if (!myUser.equals(packageUsers.get(packageName))) {
                 // Keep updating the user, until we get the primary user.
-                pInfo.user = item.user;
+                packageUsers.put(packageName, item.user);
             }
-            mWidgetsList.addToList(pInfo, item);
+            widgets.add(item);
         }
 
         // Update each package entry
-        for (PackageItemInfo p : tmpPackageItemInfos.values()) {
-            mIconCache.getTitleAndIconForApp(p, true /* userLowResIcon */);
+        for (Map.Entry<String, ArrayList<WidgetItem>> entry : newWidgets.entrySet()) {
+            String packageName = entry.getKey();
+            ArrayList<WidgetItem> widgets = entry.getValue();
+            if (widgets.isEmpty()) {
+                continue;
+            }
+            PackageItemInfo pInfo = new PackageItemInfo(packageName);
+            pInfo.user = packageUsers.get(packageName);
+            mIconCache.getTitleAndIconForApp(pInfo, true /* userLowResIcon */);
+
+            PackageItemInfo oldInfo = oldPackageItems.get(packageName);
+            if (packageUser == null && oldInfo != null && oldInfo.user.equals(pInfo.user)
+                    && TextUtils.equals(oldInfo.title, pInfo.title)
+                    && isSameWidgets(oldWidgets.get(packageName), widgets)) {
+                pInfo = oldInfo;
+            }
+            mWidgetsList.put(pInfo, widgets);
+        }
+    }
+
+    /**
+     * Returns true if both lists contain the same widgets, regardless of their order.
+     */
+    private static boolean isSameWidgets(ArrayList<WidgetItem> oldList,
+            ArrayList<WidgetItem> newList) {
+        if (oldList.size() != newList.size()) {
+            return false;
+        }
+        for (WidgetItem newItem : newList) {
+            boolean found = false;
+            for (WidgetItem oldItem : oldList) {
+                if (oldItem.equals(newItem) && TextUtils.equals(oldItem.label, newItem.label)
+                        && oldItem.spanX == newItem.spanX && oldItem.spanY == newItem.spanY) {
+                    found = true;
+                    break;
+                }
+            }
+            if (!found) {
+                return false;
+            }
         }
+        return true;
     }
-}
\ No newline at end of file
+}
@@ -81,8 +81,10 @@ public class LossyScreenMigrationTask extends GridSizeMigrationTask {
         return result;
     }
 
-    public void migrateScreen0() {
-        migrateScreen(Workspace.FIRST_SCREEN_ID);
+    public void migrateScreen0() throws InterruptedException {
+        ArrayList<Long> screenIds = new ArrayList<>();
+        screenIds.add(Workspace.FIRST_SCREEN_ID);
+        migrateScreens(screenIds);
 
         ContentValues tempValues = new ContentValues();
         for (DbEntry update : mUpdates) {
@@ -0,0 +1,142 @@
+/*
+ * Copyright (C) 2017 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.kairos.launcher.util;
+
+import android.graphics.Bitmap;
+import android.graphics.Bitmap.Config;
+import android.util.SparseArray;
+
+import java.io.PrintWriter;
+import java.util.ArrayList;
+
+/**--------------------------------------------------------------
+ * TEAM KAIROS :: DEV CARLOS :: CLASS SYNOPSIS
+ * Copyright (c) 2017 KAIROS
+ *
+ * Pool of mutable ARGB_8888 bitmaps which can be reconfigured or used as
+ * {@link android.graphics.BitmapFactory.Options#inBitmap}. Bitmaps are bucketed by the
+ * power of two of their allocation size, so that a request only looks at the bucket of its
+ * own size class and at the one above it. The total size of the pooled bitmaps is bounded.
+ *
+ * This class is thread safe.
+ ----------------------------------------------------------------*/
+public class BitmapPool {
+
+    private final SparseArray<ArrayList<Bitmap>> mBuckets = new SparseArray<>();
+    private final long mMaxSizeBytes;
+
+    private long mSizeBytes;
+
+    private int mReuseCount;
+    private int mAllocationCount;
+    private int mDropCount;
+
+    public BitmapPool(long maxSizeBytes) {
+        mMaxSizeBytes = maxSizeBytes;
+    }
+
+    /**
+     * Returns a mutable bitmap of the given size, reusing a pooled bitmap when one with a large
+     * enough allocation is available. The content of the returned bitmap is undefined.
+     */
+    public Bitmap get(int width, int height) {
+        Bitmap bitmap = take(width * height * 4);
+        if (bitmap != null) {
+            if (bitmap.getWidth() != width || bitmap.getHeight() != height
+                    || bitmap.getConfig() != Config.ARGB_8888) {
+                bitmap.reconfigure(width, height, Config.ARGB_8888);
+            }
+            return bitmap;
+        }
+        synchronized (this) {
+            mAllocationCount++;
+        }
+        return Bitmap.createBitmap(width, height, Config.ARGB_8888);
+    }
+
+    private synchronized Bitmap take(int byteCount) {
+        int sizeClass = sizeClassOf(byteCount);
+        // Bitmaps in the same class may be smaller than the request, and need to be checked.
+        Bitmap bitmap = removeFromBucket(sizeClass, byteCount);
+        if (bitmap == null) {
+            // Any bitmap in the next class is large enough, and at most 4 times the request.
+            bitmap = removeFromBucket(sizeClass + 1, byteCount);
+        }
+        if (bitmap != null) {
+            mSizeBytes -= bitmap.getAllocationByteCount();
+            mReuseCount++;
+        }
+        return bitmap;
+    }
+
+    private Bitmap removeFromBucket(int sizeClass, int byteCount) {
+        ArrayList<Bitmap> bucket = mBuckets.get(sizeClass);
+        if (bucket == null) {
+            return null;
+        }
+        for (int i = bucket.size() - 1; i >= 0; i--) {
+            if (bucket.get(i).getAllocationByteCount() >= byteCount) {
+                return bucket.remove(i);
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Returns {@param bitmap} to the pool. The bitmap must not be used by the caller anymore.
+     * Bitmaps which can't be reused, or which don't fit in the pool, are left to the GC.
+     */
+    public synchronized void put(Bitmap bitmap) {
+        if (bitmap == null || bitmap.isRecycled() || !bitmap.isMutable()) {
+            return;
+        }
+        int byteCount = bitmap.getAllocationByteCount();
+        if (mSizeBytes + byteCount > mMaxSizeBytes) {
+            mDropCount++;
+            return;
+        }
+        int sizeClass = sizeClassOf(byteCount);
+        ArrayList<Bitmap> bucket = mBuckets.get(sizeClass);
+        if (bucket == null) {
+            bucket = new ArrayList<>();
+            mBuckets.put(sizeClass, bucket);
+        }
+        bucket.add(bitmap);
+        mSizeBytes += byteCount;
+    }
+
+    public synchronized void clear() {
+        mBuckets.clear();
+        mSizeBytes = 0;
+    }
+
+    /**
+     * Returns the power of two such that 2^class <= byteCount < 2^(class + 1).
+     */
+    private static int sizeClassOf(int byteCount) {
+        return 31 - Integer.numberOfLeadingZeros(Math.max(byteCount, 1));
+    }
+
+    public synchronized void dump(String prefix, PrintWriter writer) {
+        int requests = mReuseCount + mAllocationCount;
+        writer.println(prefix + "size=" + mSizeBytes + "/" + mMaxSizeBytes + " bytes"
+                + " reused=" + mReuseCount
+                + " allocated=" + mAllocationCount
+                + " reuseRate=" + (requests == 0 ? 0 : (100 * mReuseCount / requests)) + "%"
+                + " dropped=" + mDropCount);
+    }
+}
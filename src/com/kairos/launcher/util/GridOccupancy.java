@@ -4,20 +4,61 @@ import android.graphics.Rect;
 
 import com.kairos.launcher.ItemInfo;
 
+import java.util.Arrays;
+
 /**
  * Utility object to manage the occupancy in a grid.
+ *
+ * The occupancy is packed in bit masks, each row of the grid using one long per 64 columns, so
+ * that the cells of a span are tested a row at a time instead of a cell at a time.
  */
 public class GridOccupancy {
 
+    private static final int BITS_PER_WORD = 64;
+    private static final int WORD_SHIFT = 6;
+
     private final int mCountX;
     private final int mCountY;
+    private final int mWordsPerRow;
+
+    // Bit x % 64 of word (y * mWordsPerRow + x / 64) is set if the cell (x, y) is occupied.
+    private final long[] mRows;
 
-    public final boolean[][] cells;
+    // Incremented on every change of the occupancy
+    private int mGeneration;
 
     public GridOccupancy(int countX, int countY) {
         mCountX = countX;
         mCountY = countY;
-        cells = new boolean[countX][countY];
+        mWordsPerRow = (countX + BITS_PER_WORD - 1) >>> WORD_SHIFT;
+        mRows = new long[mWordsPerRow * countY];
+    }
+
+    public int getCountX() {
+        return mCountX;
+    }
+
+    public int getCountY() {
+        return mCountY;
+    }
+
+    /**
+     * Returns a number which changes whenever the occupancy is modified, so that results
+     * computed from it can be reused as long as it is the same.
+     */
+    public int getGeneration() {
+        return mGeneration;
+    }
+
+    /**
+     * Returns whether the cell (x, y) is occupied, the cell must be in the grid.
+     */
+    public boolean isOccupied(int x, int y) {
+        if (x < 0 || y < 0 || x >= mCountX || y >= mCountY) {
+            throw new IndexOutOfBoundsException(
+                    "Cell " + x + "," + y + " is outside of " + mCountX + "x" + mCountY);
+        }
+        return (mRows[y * mWordsPerRow + (x >>> WORD_SHIFT)] & (1L << x)) != 0;
     }
 
     /**
@@ -31,29 +72,50 @@ public class GridOccupancy {
      */
     public boolean findVacantCell(int[] vacantOut, int spanX, int spanY) {
         for (int y = 0; (y + spanY) <= mCountY; y++) {
-            for (int x = 0; (x + spanX) <= mCountX; x++) {
-                boolean available = !cells[x][y];
-                out:
-                for (int i = x; i < x + spanX; i++) {
-                    for (int j = y; j < y + spanY; j++) {
-                        available = available && !cells[i][j];
-                        if (!available) break out;
-                    }
-                }
-                if (available) {
-                    vacantOut[0] = x;
-                    vacantOut[1] = y;
-                    return true;
-                }
+            int x = nextVacantCell(0, y, spanX, spanY);
+            if (x >= 0) {
+                vacantOut[0] = x;
+                vacantOut[1] = y;
+                return true;
             }
         }
         return false;
     }
 
+    /**
+     * Enumerates the vacant regions of a row: returns the first x, not lower than {@param x}, for
+     * which the region (x, y, spanX, spanY) is in the grid and vacant, or -1 if there is none.
+     */
+    public int nextVacantCell(int x, int y, int spanX, int spanY) {
+        if (x < 0 || y < 0 || spanX <= 0 || spanY <= 0 || y + spanY > mCountY) {
+            return -1;
+        }
+        while (x + spanX <= mCountX) {
+            // Find the last occupied column of the region, all the regions starting at or before
+            // it are occupied as well.
+            int lastOccupied = -1;
+            for (int j = y; j < y + spanY; j++) {
+                lastOccupied = Math.max(lastOccupied, lastSetBit(j * mWordsPerRow, x, spanX));
+            }
+            if (lastOccupied < 0) {
+                return x;
+            }
+            x = lastOccupied + 1;
+        }
+        return -1;
+    }
+
     public void copyTo(GridOccupancy dest) {
-        for (int i = 0; i < mCountX; i++) {
-            for (int j = 0; j < mCountY; j++) {
-                dest.cells[i][j] = cells[i][j];
+        dest.mGeneration++;
+        if (dest.mWordsPerRow == mWordsPerRow && dest.mCountX == mCountX
+                && dest.mCountY >= mCountY) {
+            System.arraycopy(mRows, 0, dest.mRows, 0, mRows.length);
+            return;
+        }
+        for (int y = 0; y < mCountY; y++) {
+            for (int x = 0; x < mCountX; x += BITS_PER_WORD) {
+                int n = Math.min(BITS_PER_WORD, mCountX - x);
+                dest.writeBits(y * dest.mWordsPerRow, x, n, readBits(y * mWordsPerRow, x, n));
             }
         }
     }
@@ -64,9 +126,38 @@ public class GridOccupancy {
         if (x < 0 || y < 0 || x2 >= mCountX || y2 >= mCountY) {
             return false;
         }
-        for (int i = x; i <= x2; i++) {
-            for (int j = y; j <= y2; j++) {
-                if (cells[i][j]) {
+        for (int j = y; j <= y2; j++) {
+            if (lastSetBit(j * mWordsPerRow, x, spanX) >= 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Returns whether the region at (x, y) of the size of {@param mask} is in the grid, and vacant
+     * in all the cells occupied in the mask.
+     */
+    public boolean isRegionVacant(int x, int y, GridOccupancy mask) {
+        return isRegionVacant(x, y, mask, mask.mCountX, mask.mCountY);
+    }
+
+    /**
+     * Same as {@link #isRegionVacant(int, int, GridOccupancy)}, using only the top left
+     * {@param spanX} x {@param spanY} cells of {@param mask}, so that a mask can be reused for
+     * regions of different sizes.
+     */
+    public boolean isRegionVacant(int x, int y, GridOccupancy mask, int spanX, int spanY) {
+        if (x < 0 || y < 0 || x + spanX > mCountX || y + spanY > mCountY
+                || spanX > mask.mCountX || spanY > mask.mCountY) {
+            return false;
+        }
+        for (int j = 0; j < spanY; j++) {
+            int rowStart = (y + j) * mWordsPerRow;
+            int maskRowStart = j * mask.mWordsPerRow;
+            for (int i = 0; i < spanX; i += BITS_PER_WORD) {
+                int n = Math.min(BITS_PER_WORD, spanX - i);
+                if ((readBits(rowStart, x + i, n) & mask.readBits(maskRowStart, i, n)) != 0) {
                     return false;
                 }
             }
@@ -74,11 +165,37 @@ public class GridOccupancy {
         return true;
     }
 
+    /**
+     * Returns the number of occupied cells in the region (x, y, spanX, spanY), which must be in
+     * the grid.
+     */
+    public int countOccupied(int x, int y, int spanX, int spanY) {
+        int count = 0;
+        for (int j = y; j < y + spanY; j++) {
+            for (int i = x; i < x + spanX; i += BITS_PER_WORD) {
+                int n = Math.min(BITS_PER_WORD, x + spanX - i);
+                count += Long.bitCount(readBits(j * mWordsPerRow, i, n));
+            }
+        }
+        return count;
+    }
+
     public void markCells(int cellX, int cellY, int spanX, int spanY, boolean value) {
         if (cellX < 0 || cellY < 0) return;
-        for (int x = cellX; x < cellX + spanX && x < mCountX; x++) {
-            for (int y = cellY; y < cellY + spanY && y < mCountY; y++) {
-                cells[x][y] = value;
+        mGeneration++;
+        int endX = Math.min(cellX + spanX, mCountX);
+        int endY = Math.min(cellY + spanY, mCountY);
+        for (int y = cellY; y < endY; y++) {
+            for (int x = cellX; x < endX; ) {
+                int n = Math.min(endX - x, BITS_PER_WORD - (x & (BITS_PER_WORD - 1)));
+                int word = y * mWordsPerRow + (x >>> WORD_SHIFT);
+                long mask = lowBits(n) << x;
+                if (value) {
+                    mRows[word] |= mask;
+                } else {
+                    mRows[word] &= ~mask;
+                }
+                x += n;
             }
         }
     }
@@ -96,6 +213,72 @@ public class GridOccupancy {
     }
 
     public void clear() {
-        markCells(0, 0, mCountX, mCountY, false);
+        mGeneration++;
+        Arrays.fill(mRows, 0);
+    }
+
+    /**
+     * Two grids are equal if they have the same size and the same occupied cells.
+     */
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof GridOccupancy)) {
+            return false;
+        }
+        GridOccupancy other = (GridOccupancy) o;
+        return mCountX == other.mCountX && mCountY == other.mCountY
+                && Arrays.equals(mRows, other.mRows);
+    }
+
+    @Override
+    public int hashCode() {
+        return 31 * (31 * mCountX + mCountY) + Arrays.hashCode(mRows);
+    }
+
+    /**
+     * Returns the last occupied column in [x, x + n) of the row starting at {@param rowStart},
+     * or -1 if they are all vacant.
+     */
+    private int lastSetBit(int rowStart, int x, int n) {
+        for (int end = x + n; end > x; ) {
+            int count = Math.min(BITS_PER_WORD, end - x);
+            long bits = readBits(rowStart, end - count, count);
+            if (bits != 0) {
+                return end - count + BITS_PER_WORD - 1 - Long.numberOfLeadingZeros(bits);
+            }
+            end -= count;
+        }
+        return -1;
+    }
+
+    /**
+     * Returns the {@param n} bits, at most 64, of the columns starting at {@param x}.
+     */
+    private long readBits(int rowStart, int x, int n) {
+        int word = rowStart + (x >>> WORD_SHIFT);
+        int shift = x & (BITS_PER_WORD - 1);
+        long bits = mRows[word] >>> shift;
+        if (shift != 0 && shift + n > BITS_PER_WORD) {
+            bits |= mRows[word + 1] << (BITS_PER_WORD - shift);
+        }
+        return bits & lowBits(n);
+    }
+
+    private void writeBits(int rowStart, int x, int n, long bits) {
+        for (int i = 0; i < n; i++) {
+            int word = rowStart + ((x + i) >>> WORD_SHIFT);
+            if ((bits & (1L << i)) != 0) {
+                mRows[word] |= 1L << (x + i);
+            } else {
+                mRows[word] &= ~(1L << (x + i));
+            }
+        }
+    }
+
+    private static long lowBits(int n) {
+        return n >= BITS_PER_WORD ? -1L : (1L << n) - 1;
     }
 }
@@ -0,0 +1,109 @@
+/*
+ * Copyright (C) 2017 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.kairos.launcher.util;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**--------------------------------------------------------------
+ * TEAM KAIROS :: DEV CARLOS :: CLASS SYNOPSIS
+ * Copyright (c) 2017 KAIROS
+ *
+ * Utility to split work over a range of indices between an {@link Executor} and the calling
+ * thread, and wait for all of it to complete.
+ ----------------------------------------------------------------*/
+public class ParallelRunner {
+
+    /**
+     * Work done on a contiguous range of indices.
+     */
+    public interface RangeTask {
+
+        /**
+         * Processes the indices [{@param start}, {@param end}). Called on an arbitrary thread,
+         * ranges never overlap.
+         */
+        void run(int start, int end);
+    }
+
+    /**
+     * Splits [0, {@param count}) into at most {@param maxSlices} slices of at least
+     * {@param minPerSlice} indices. All but one slice are executed on {@param executor}, the last
+     * one is executed on the calling thread. Returns once every slice is complete.
+     *
+     * An exception thrown by any slice is rethrown on the calling thread, once every slice is
+     * complete, instead of reaching the uncaught exception handler of the executor's thread.
+     */
+    public static void run(Executor executor, int count, int minPerSlice, int maxSlices,
+            final RangeTask task) throws InterruptedException {
+        if (count <= 0) {
+            return;
+        }
+        int sliceCount = Math.max(1, Math.min(maxSlices, count / Math.max(1, minPerSlice)));
+        if (sliceCount == 1) {
+            task.run(0, count);
+            return;
+        }
+
+        int sliceSize = (count + sliceCount - 1) / sliceCount;
+        final CountDownLatch latch = new CountDownLatch(sliceCount - 1);
+        final AtomicReference<Throwable> failure = new AtomicReference<>();
+        int start = 0;
+        for (int slice = 0; slice < sliceCount - 1; slice++) {
+            final int sliceStart = start;
+            final int sliceEnd = Math.min(start + sliceSize, count);
+            executor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        task.run(sliceStart, sliceEnd);
+                    } catch (Throwable t) {
+                        failure.compareAndSet(null, t);
+                    } finally {
+                        latch.countDown();
+                    }
+                }
+            });
+            start = sliceEnd;
+        }
+        try {
+            if (start < count) {
+                task.run(start, count);
+            }
+        } catch (Throwable t) {
+            failure.compareAndSet(null, t);
+        }
+        latch.await();
+
+        Throwable t = failure.get();
+        if (t instanceof RuntimeException) {
+            throw (RuntimeException) t;
+        } else if (t instanceof Error) {
+            throw (Error) t;
+        } else if (t != null) {
+            throw new RuntimeException(t);
+        }
+    }
+
+    /**
+     * Returns the number of threads worth using for CPU bound work, leaving one core for the UI.
+     */
+    public static int getCpuBoundParallelism() {
+        return Math.max(1, Runtime.getRuntime().availableProcessors() - 1);
+    }
+}
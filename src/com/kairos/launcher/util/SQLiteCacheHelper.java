@@ -31,15 +31,22 @@ public abstract class SQLiteCacheHelper {
             Utilities.isPropertyEnabled(LogConfig.MEMORY_ONLY_ICON_CACHE);
 
     private final String mTableName;
+    private final String[] mExtraTableNames;
     private final MySQLiteOpenHelper mOpenHelper;
 
     private boolean mIgnoreWrites;
 
-    public SQLiteCacheHelper(Context context, String name, int version, String tableName) {
+    /**
+     * @param extraTableNames additional tables created by {@link #onCreateTable}, which are
+     *                        dropped along with the main table when the DB is reset.
+     */
+    public SQLiteCacheHelper(Context context, String name, int version, String tableName,
+            String... extraTableNames) {
         if (NO_ICON_CACHE) {
             name = null;
         }
         mTableName = tableName;
+        mExtraTableNames = extraTableNames;
         mOpenHelper = new MySQLiteOpenHelper(context, name, version);
 
         mIgnoreWrites = false;
@@ -49,11 +56,18 @@ public abstract class SQLiteCacheHelper {
      * @see SQLiteDatabase#delete(String, String, String[])
      */
     public void delete(String whereClause, String[] whereArgs) {
+        delete(mTableName, whereClause, whereArgs);
+    }
+
+    /**
+     * @see SQLiteDatabase#delete(String, String, String[])
+     */
+    public void delete(String tableName, String whereClause, String[] whereArgs) {
         if (mIgnoreWrites) {
             return;
         }
         try {
-            mOpenHelper.getWritableDatabase().delete(mTableName, whereClause, whereArgs);
+            mOpenHelper.getWritableDatabase().delete(tableName, whereClause, whereArgs);
         } catch (SQLiteFullException e) {
             onDiskFull(e);
         } catch (SQLiteException e) {
@@ -78,6 +92,37 @@ public abstract class SQLiteCacheHelper {
         }
     }
 
+    /**
+     * Writes done in a single transaction by {@link #runInTransaction}.
+     */
+    protected interface Transaction {
+        void run(SQLiteDatabase db);
+    }
+
+    /**
+     * Runs {@param transaction} in a single transaction, so that other writes never see part
+     * of it. Nothing is written if it fails.
+     */
+    protected void runInTransaction(Transaction transaction) {
+        if (mIgnoreWrites) {
+            return;
+        }
+        try {
+            SQLiteDatabase db = mOpenHelper.getWritableDatabase();
+            db.beginTransaction();
+            try {
+                transaction.run(db);
+                db.setTransactionSuccessful();
+            } finally {
+                db.endTransaction();
+            }
+        } catch (SQLiteFullException e) {
+            onDiskFull(e);
+        } catch (SQLiteException e) {
+            Log.d(TAG, "Ignoring sqlite exception", e);
+        }
+    }
+
     private void onDiskFull(SQLiteFullException e) {
         Log.e(TAG, "Disk full, all write operations will be ignored", e);
         mIgnoreWrites = true;
@@ -91,12 +136,28 @@ public abstract class SQLiteCacheHelper {
                 mTableName, columns, selection, selectionArgs, null, null, null);
     }
 
+    /**
+     * @see SQLiteDatabase#rawQuery(String, String[])
+     */
+    public Cursor rawQuery(String sql, String[] selectionArgs) {
+        return mOpenHelper.getReadableDatabase().rawQuery(sql, selectionArgs);
+    }
+
     public void clear() {
         mOpenHelper.clearDB(mOpenHelper.getWritableDatabase());
     }
 
     protected abstract void onCreateTable(SQLiteDatabase db);
 
+    /**
+     * Called when the DB version changes, to migrate the existing data instead of dropping it.
+     * This is called in the upgrade transaction.
+     * @return true if the data was migrated, false to reset the DB.
+     */
+    protected boolean onUpgradeTable(SQLiteDatabase db, int oldVersion, int newVersion) {
+        return false;
+    }
+
     /**
      * A private inner class to prevent direct DB access.
      */
@@ -113,7 +174,7 @@ public abstract class SQLiteCacheHelper {
 
         @Override
         public void onUpgrade(SQLiteDatabase db, int oldVersion, int newVersion) {
-            if (oldVersion != newVersion) {
+            if (oldVersion != newVersion && !onUpgradeTable(db, oldVersion, newVersion)) {
                 clearDB(db);
             }
         }
@@ -127,6 +188,9 @@ public abstract class SQLiteCacheHelper {
 
         private void clearDB(SQLiteDatabase db) {
             db.execSQL("DROP TABLE IF EXISTS " + mTableName);
+            for (String tableName : mExtraTableNames) {
+                db.execSQL("DROP TABLE IF EXISTS " + tableName);
+            }
             onCreate(db);
         }
     }
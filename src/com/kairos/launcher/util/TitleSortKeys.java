@@ -0,0 +1,158 @@
+/*
+ * Copyright (C) 2017 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.kairos.launcher.util;
+
+import android.content.Context;
+
+import com.kairos.launcher.AppInfo;
+import com.kairos.launcher.Utilities;
+import com.kairos.launcher.compat.AlphabeticIndexCompat;
+
+import java.text.Collator;
+import java.util.Locale;
+
+/**--------------------------------------------------------------
+ * TEAM KAIROS :: DEV CARLOS :: CLASS SYNOPSIS
+ * Copyright (c) 2017 KAIROS
+ *
+ * Computes the collation key and the section of app titles in the current locale, so that the
+ * apps can be sorted with a byte compare and their section is computed once per title instead
+ * of once per list. The keys order the titles like {@link LabelComparator}.
+ *
+ * Keys are only valid for the locale they were computed in, a new instance is returned by
+ * {@link #getInstance(Context)} when the locale changes.
+ ----------------------------------------------------------------*/
+public class TitleSortKeys {
+
+    // First byte of the keys of titles starting with a letter or a digit, which come first.
+    private static final byte LETTER_OR_DIGIT_PREFIX = 0;
+    private static final byte OTHER_PREFIX = 1;
+
+    private static TitleSortKeys sInstance;
+
+    private final Locale mLocale;
+    private final String mLocaleState;
+    private final Collator mCollator;
+    private final AlphabeticIndexCompat mIndexer;
+
+    private int mComputedCount;
+
+    /**
+     * Returns the instance for the current locale.
+     */
+    public static synchronized TitleSortKeys getInstance(Context context) {
+        Locale locale = Locale.getDefault();
+        if (sInstance == null || !sInstance.mLocale.equals(locale)) {
+            sInstance = new TitleSortKeys(context.getApplicationContext(), locale);
+        }
+        return sInstance;
+    }
+
+    private TitleSortKeys(Context context, Locale locale) {
+        mLocale = locale;
+        mLocaleState = locale.toString();
+        mCollator = Collator.getInstance(locale);
+        mIndexer = new AlphabeticIndexCompat(context);
+    }
+
+    /**
+     * Computes the key of {@param title}.
+     */
+    public synchronized SortKey getSortKey(CharSequence title) {
+        String s = title == null ? "" : Utilities.trim(title);
+        mComputedCount++;
+
+        byte[] collationKey = mCollator.getCollationKey(s).toByteArray();
+        byte[] key = new byte[collationKey.length + 1];
+        key[0] = s.length() > 0 && Character.isLetterOrDigit(s.codePointAt(0))
+                ? LETTER_OR_DIGIT_PREFIX : OTHER_PREFIX;
+        System.arraycopy(collationKey, 0, key, 1, collationKey.length);
+        return new SortKey(s, mLocaleState, key, mIndexer.computeSectionName(s));
+    }
+
+    /**
+     * Returns the key of {@param info}, computing it if it is missing or was computed for another
+     * title or locale.
+     */
+    public SortKey getSortKey(AppInfo info) {
+        if (!isValid(info.sortKey, info.title)) {
+            info.sortKey = getSortKey(info.title);
+        }
+        return info.sortKey;
+    }
+
+    /**
+     * Returns whether {@param key} is the key of the trimmed {@param title} in the current locale.
+     */
+    public boolean isValid(SortKey key, CharSequence title) {
+        return key != null && key.locale.equals(mLocaleState)
+                && key.title.contentEquals(title == null ? "" : title);
+    }
+
+    /**
+     * Returns the string identifying the locale of the keys computed by this instance.
+     */
+    public String getLocaleState() {
+        return mLocaleState;
+    }
+
+    public synchronized int getComputedCount() {
+        return mComputedCount;
+    }
+
+    /**
+     * Compares two keys as unsigned bytes.
+     */
+    public static int compare(byte[] a, byte[] b) {
+        int length = Math.min(a.length, b.length);
+        for (int i = 0; i < length; i++) {
+            int diff = (a[i] & 0xFF) - (b[i] & 0xFF);
+            if (diff != 0) {
+                return diff;
+            }
+        }
+        return a.length - b.length;
+    }
+
+    /**
+     * The sort key and section of a title, immutable.
+     */
+    public static final class SortKey {
+        public final String title;
+        public final String locale;
+        public final byte[] collationKey;
+        public final String sectionName;
+
+        public SortKey(String title, String locale, byte[] collationKey, String sectionName) {
+            this.title = title;
+            this.locale = locale;
+            this.collationKey = collationKey;
+            this.sectionName = sectionName;
+        }
+
+        /**
+         * Returns the key stored with the given values, or null if any of them is missing.
+         */
+        public static SortKey restore(String title, String locale, byte[] collationKey,
+                String sectionName) {
+            if (title == null || locale == null || collationKey == null || sectionName == null) {
+                return null;
+            }
+            return new SortKey(Utilities.trim(title), locale, collationKey, sectionName);
+        }
+    }
+}
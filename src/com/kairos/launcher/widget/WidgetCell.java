@@ -98,9 +98,20 @@ public class WidgetCell extends LinearLayout implements OnLayoutChangeListener {
     }
 
     private void setContainerWidth() {
-        DeviceProfile profile = mActivity.getDeviceProfile();
-        mCellSize = (int) (profile.cellWidthPx * WIDTH_SCALE);
-        mPresetPreviewSize = (int) (mCellSize * PREVIEW_SCALE);
+        mCellSize = getCellSize(mActivity.getDeviceProfile());
+        mPresetPreviewSize = getPresetPreviewSize(mActivity.getDeviceProfile());
+    }
+
+    private static int getCellSize(DeviceProfile profile) {
+        return (int) (profile.cellWidthPx * WIDTH_SCALE);
+    }
+
+    /**
+     * Returns the size of the previews requested by the cells, which can be used to load
+     * previews before their cells are bound.
+     */
+    public static int getPresetPreviewSize(DeviceProfile profile) {
+        return (int) (getCellSize(profile) * PREVIEW_SCALE);
     }
 
     @Override
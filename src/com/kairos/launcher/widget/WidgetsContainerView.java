@@ -31,6 +31,7 @@ import com.kairos.launcher.DragSource;
 import com.kairos.launcher.DropTarget.DragObject;
 import com.kairos.launcher.ItemInfo;
 import com.kairos.launcher.Launcher;
+import com.kairos.launcher.LauncherAppState;
 import com.kairos.launcher.R;
 import com.kairos.launcher.Utilities;
 import com.kairos.launcher.dragndrop.DragOptions;
@@ -102,6 +103,13 @@ public class WidgetsContainerView extends BaseContainerView
         mRecyclerView.scrollToPosition(0);
     }
 
+    /**
+     * Called when the tray is about to be shown.
+     */
+    public void onTrayShown() {
+        LauncherAppState.getInstance(getContext()).getWidgetCache().onTrayShown();
+    }
+
     //
     // Touch related handling.
     //
@@ -235,7 +243,6 @@ public class WidgetsContainerView extends BaseContainerView
      */
     public void setWidgets(MultiHashMap<PackageItemInfo, WidgetItem> model) {
         mAdapter.setWidgets(model);
-        mAdapter.notifyDataSetChanged();
 
         View loader = getContentView().findViewById(R.id.loader);
         if (loader != null) {
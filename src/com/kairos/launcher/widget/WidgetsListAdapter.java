@@ -18,11 +18,13 @@ package com.kairos.launcher.widget;
 import android.content.Context;
 import android.support.v7.widget.RecyclerView;
 import android.support.v7.widget.RecyclerView.Adapter;
+import android.text.TextUtils;
 import android.util.Log;
 import android.view.LayoutInflater;
 import android.view.View;
 import android.view.ViewGroup;
 
+import com.kairos.launcher.BaseActivity;
 import com.kairos.launcher.LauncherAppState;
 import com.kairos.launcher.WidgetPreviewLoader;
 import com.kairos.launcher.compat.AlphabeticIndexCompat;
@@ -35,6 +37,8 @@ import com.kairos.launcher.util.PackageUserKey;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
@@ -60,14 +64,21 @@ public class WidgetsListAdapter extends Adapter<WidgetsRowViewHolder> {
     private static final String TAG = "WidgetsListAdapter";
     private static final boolean DEBUG = false;
 
+    // Number of rows whose previews are loaded ahead of the scroll.
+    private static final int PREFETCH_ROW_COUNT = 3;
+
     private final WidgetPreviewLoader mWidgetPreviewLoader;
     private final LayoutInflater mLayoutInflater;
+    private final BaseActivity mActivity;
+    private final ArrayList<WidgetItem> mPrefetchItems = new ArrayList<>();
 
     private final View.OnClickListener mIconClickListener;
     private final View.OnLongClickListener mIconLongClickListener;
 
     private final ArrayList<WidgetListRowEntry> mEntries = new ArrayList<>();
     private final AlphabeticIndexCompat mIndexer;
+    private final WidgetItemComparator mWidgetComparator = new WidgetItemComparator();
+    private final WidgetListRowEntryComparator mRowComparator = new WidgetListRowEntryComparator();
 
     private final int mIndent;
 
@@ -75,6 +86,7 @@ public class WidgetsListAdapter extends Adapter<WidgetsRowViewHolder> {
             View.OnLongClickListener iconLongClickListener,
             Context context) {
         mLayoutInflater = LayoutInflater.from(context);
+        mActivity = BaseActivity.fromContext(context);
         mWidgetPreviewLoader = LauncherAppState.getInstance(context).getWidgetCache();
 
         mIndexer = new AlphabeticIndexCompat(context);
@@ -84,18 +96,65 @@ public class WidgetsListAdapter extends Adapter<WidgetsRowViewHolder> {
         mIndent = context.getResources().getDimensionPixelSize(com.kairos.launcher.R.dimen.widget_section_indent);
     }
 
+    /**
+     * Binds {@param widgets}. Rows whose {@link PackageItemInfo} is the same as the one already
+     * bound are kept as is, see {@link com.kairos.launcher.model.WidgetsModel}. Only the rows
+     * which were added, removed or changed are sorted and notified.
+     */
     public void setWidgets(MultiHashMap<PackageItemInfo, WidgetItem> widgets) {
-        mEntries.clear();
-        WidgetItemComparator widgetComparator = new WidgetItemComparator();
+        if (mEntries.isEmpty()) {
+            for (Map.Entry<PackageItemInfo, ArrayList<WidgetItem>> entry : widgets.entrySet()) {
+                mEntries.add(createRow(entry.getKey(), entry.getValue()));
+            }
+            Collections.sort(mEntries, mRowComparator);
+            notifyDataSetChanged();
+            return;
+        }
+
+        HashMap<String, PackageItemInfo> packages = new HashMap<>(widgets.size());
+        for (PackageItemInfo pkgItem : widgets.keySet()) {
+            packages.put(pkgItem.packageName, pkgItem);
+        }
+
+        // Removed and changed rows
+        HashSet<String> boundPackages = new HashSet<>();
+        for (int i = mEntries.size() - 1; i >= 0; i--) {
+            WidgetListRowEntry row = mEntries.get(i);
+            PackageItemInfo pkgItem = packages.get(row.pkgItem.packageName);
+            if (pkgItem == row.pkgItem) {
+                boundPackages.add(pkgItem.packageName);
+            } else if (pkgItem != null
+                    && TextUtils.equals(pkgItem.title, row.pkgItem.title)) {
+                // Same position, only the content of the row changed.
+                mEntries.set(i, createRow(pkgItem, widgets.get(pkgItem)));
+                notifyItemChanged(i);
+                boundPackages.add(pkgItem.packageName);
+            } else {
+                mEntries.remove(i);
+                notifyItemRemoved(i);
+            }
+        }
 
+        // Inserted rows, and changed rows which moved
         for (Map.Entry<PackageItemInfo, ArrayList<WidgetItem>> entry : widgets.entrySet()) {
-            WidgetListRowEntry row = new WidgetListRowEntry(entry.getKey(), entry.getValue());
-            row.titleSectionName = mIndexer.computeSectionName(row.pkgItem.title);
-            Collections.sort(row.widgets, widgetComparator);
-            mEntries.add(row);
+            if (boundPackages.contains(entry.getKey().packageName)) {
+                continue;
+            }
+            WidgetListRowEntry row = createRow(entry.getKey(), entry.getValue());
+            int pos = Collections.binarySearch(mEntries, row, mRowComparator);
+            if (pos < 0) {
+                pos = -pos - 1;
+            }
+            mEntries.add(pos, row);
+            notifyItemInserted(pos);
         }
+    }
 
-        Collections.sort(mEntries, new WidgetListRowEntryComparator());
+    private WidgetListRowEntry createRow(PackageItemInfo pkgItem, ArrayList<WidgetItem> widgets) {
+        WidgetListRowEntry row = new WidgetListRowEntry(pkgItem, widgets);
+        row.titleSectionName = mIndexer.computeSectionName(row.pkgItem.title);
+        Collections.sort(row.widgets, mWidgetComparator);
+        return row;
     }
 
     @Override
@@ -127,6 +186,23 @@ public class WidgetsListAdapter extends Adapter<WidgetsRowViewHolder> {
         return null;
     }
 
+    /**
+     * Loads the previews of the rows following {@param edgePos}, the last row visible in the
+     * scroll {@param direction}.
+     */
+    public void prefetchRows(int edgePos, int direction) {
+        mPrefetchItems.clear();
+        for (int i = 1; i <= PREFETCH_ROW_COUNT; i++) {
+            int pos = edgePos + i * direction;
+            if (pos < 0 || pos >= mEntries.size()) {
+                break;
+            }
+            mPrefetchItems.addAll(mEntries.get(pos).widgets);
+        }
+        int size = WidgetCell.getPresetPreviewSize(mActivity.getDeviceProfile());
+        mWidgetPreviewLoader.prefetchPreviews(mActivity, mPrefetchItems, size, size);
+    }
+
     @Override
     public void onBindViewHolder(WidgetsRowViewHolder holder, int pos) {
         WidgetListRowEntry entry = mEntries.get(pos);
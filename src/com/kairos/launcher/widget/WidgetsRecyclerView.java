@@ -31,6 +31,10 @@ public class WidgetsRecyclerView extends BaseRecyclerView {
     private static final String TAG = "WidgetsRecyclerView";
     private WidgetsListAdapter mAdapter;
 
+    // Last row from which previews were prefetched, along with the scroll direction.
+    private int mPrefetchEdgePos = NO_POSITION;
+    private int mPrefetchDirection;
+
     public WidgetsRecyclerView(Context context) {
         this(context, null);
     }
@@ -68,6 +72,25 @@ public class WidgetsRecyclerView extends BaseRecyclerView {
         mAdapter = (WidgetsListAdapter) adapter;
     }
 
+    @Override
+    public void onScrolled(int dx, int dy) {
+        super.onScrolled(dx, dy);
+        if (dy == 0 || isModelNotReady()) {
+            return;
+        }
+        LinearLayoutManager layoutManager = (LinearLayoutManager) getLayoutManager();
+        int direction = dy > 0 ? 1 : -1;
+        int edgePos = direction > 0 ? layoutManager.findLastVisibleItemPosition()
+                : layoutManager.findFirstVisibleItemPosition();
+        if (edgePos == NO_POSITION
+                || (edgePos == mPrefetchEdgePos && direction == mPrefetchDirection)) {
+            return;
+        }
+        mPrefetchEdgePos = edgePos;
+        mPrefetchDirection = direction;
+        mAdapter.prefetchRows(edgePos, direction);
+    }
+
     /**
      * Maps the touch (from 0..1) to the adapter position that should be visible.
      */
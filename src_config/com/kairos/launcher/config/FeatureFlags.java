@@ -33,6 +33,12 @@ public final class FeatureFlags {
     public static boolean LAUNCHER3_DIRECT_SCROLL = true;
     // When enabled while all-apps open, the soft input will be set to adjust resize .
     public static boolean LAUNCHER3_UPDATE_SOFT_INPUT_MODE = false;
+    // When enabled all-apps search also returns apps matching with typos, without accents or
+    // in Latin script, after the exact matches.
+    public static boolean LAUNCHER3_FUZZY_APP_SEARCH = false;
+    // When enabled the predicted apps row of all-apps is filled from the launch history, unless
+    // the launcher callbacks provide the predictions.
+    public static boolean LAUNCHER3_APP_PREDICTIONS = true;
 
 
     // Feature flag to enable moving the QSB on the 0th screen of the workspace.
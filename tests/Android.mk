@@ -34,3 +34,31 @@ LOCAL_PACKAGE_NAME := Launcher3Tests
 LOCAL_INSTRUMENTATION_FOR := Launcher3
 
 include $(BUILD_PACKAGE)
+
+#
+# Same tests with the benchmarks, which are kept out of Launcher3Tests as they take seconds each
+#
+include $(CLEAR_VARS)
+
+LOCAL_MODULE_TAGS := tests
+LOCAL_STATIC_JAVA_LIBRARIES := \
+	android-support-test \
+	ub-uiautomator \
+	legacy-android-test \
+	mockito-target-minus-junit4
+
+LOCAL_SRC_FILES := $(call all-java-files-under, src) \
+	$(call all-java-files-under, benchmark/src)
+LOCAL_RESOURCE_DIR := $(LOCAL_PATH)/res $(LOCAL_PATH)/benchmark/res
+LOCAL_FULL_LIBS_MANIFEST_FILES := $(LOCAL_PATH)/AndroidManifest-common.xml
+# Installed next to Launcher3Tests, which uses the same manifest
+LOCAL_AAPT_FLAGS += --rename-manifest-package com.android.launcher.benchmarktests
+
+LOCAL_SDK_VERSION := current
+LOCAL_MIN_SDK_VERSION := 21
+
+LOCAL_PACKAGE_NAME := Launcher3BenchmarkTests
+
+LOCAL_INSTRUMENTATION_FOR := Launcher3
+
+include $(BUILD_PACKAGE)
@@ -0,0 +1,76 @@
+/*
+ * Copyright (C) 2017 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.kairos.launcher.allapps;
+
+import android.test.suitebuilder.annotation.LargeTest;
+
+import com.kairos.launcher.AppInfo;
+import com.kairos.launcher.Launcher;
+import com.kairos.launcher.benchmark.AppDataset;
+import com.kairos.launcher.benchmark.Benchmark;
+import com.kairos.launcher.benchmark.BenchmarkTest;
+import com.kairos.launcher.ui.LauncherInstrumentationTestCase;
+import com.kairos.launcher.util.ComponentKey;
+
+import java.util.ArrayList;
+import java.util.concurrent.Callable;
+
+/**
+ * Benchmarks the adapter rebuild of {@link AlphabeticalAppsList}, when the apps are set and
+ * when search results are applied. This needs a running launcher, as the list is bound to it.
+ */
+@LargeTest
+@BenchmarkTest
+public class AlphabeticalAppsListBenchmark extends LauncherInstrumentationTestCase {
+
+    private static final int APPS_PER_ROW = 5;
+
+    public void testAdapterRebuild() throws Exception {
+        final Launcher launcher = startLauncher();
+        for (int size : AppDataset.SIZES) {
+            final ArrayList<AppInfo> apps = AppDataset.generate(size);
+            final ArrayList<ComponentKey> results = new ArrayList<>();
+            for (int i = 0; i < apps.size(); i += 3) {
+                results.add(apps.get(i).toComponentKey());
+            }
+
+            final String suffix = "_" + size;
+            getOnUiThread(new Callable<Void>() {
+                @Override
+                public Void call() throws Exception {
+                    final AlphabeticalAppsList list = new AlphabeticalAppsList(launcher);
+                    list.setNumAppsPerRow(APPS_PER_ROW, APPS_PER_ROW);
+
+                    Benchmark.run("apps_list_set_apps" + suffix, new Benchmark.Body() {
+                        @Override
+                        public void run() {
+                            list.setApps(apps);
+                        }
+                    });
+                    Benchmark.run("apps_list_search_results" + suffix, new Benchmark.Body() {
+                        @Override
+                        public void run() {
+                            list.setOrderedFilter(results);
+                            list.setOrderedFilter(null);
+                        }
+                    });
+                    return null;
+                }
+            });
+        }
+    }
+}
@@ -0,0 +1,113 @@
+/*
+ * Copyright (C) 2017 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.kairos.launcher.allapps;
+
+import android.support.test.InstrumentationRegistry;
+import android.support.test.runner.AndroidJUnit4;
+import android.test.suitebuilder.annotation.LargeTest;
+
+import com.kairos.launcher.AppInfo;
+import com.kairos.launcher.benchmark.AppDataset;
+import com.kairos.launcher.benchmark.Benchmark;
+import com.kairos.launcher.benchmark.BenchmarkTest;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.ArrayList;
+
+/**
+ * Benchmarks {@link DefaultAppSearchAlgorithm#getTitleMatchResult} over the generated datasets.
+ * The search index is built by the first query of each dataset.
+ */
+@LargeTest
+@BenchmarkTest
+@RunWith(AndroidJUnit4.class)
+public class AppSearchBenchmark {
+
+    @Test
+    public void benchmarkTitleMatch() throws Exception {
+        for (int size : AppDataset.SIZES) {
+            final ArrayList<AppInfo> apps = AppDataset.generate(size);
+            final DefaultAppSearchAlgorithm[] algorithm = new DefaultAppSearchAlgorithm[1];
+            // The algorithm posts its results on the thread which created it.
+            InstrumentationRegistry.getInstrumentation().runOnMainSync(new Runnable() {
+                @Override
+                public void run() {
+                    algorithm[0] = new DefaultAppSearchAlgorithm(apps);
+                }
+            });
+
+            for (final String query : AppDataset.getQueries()) {
+                Benchmark.run("search_title_match_" + size + "_" + query.replace(' ', '_'),
+                        new Benchmark.Body() {
+                            @Override
+                            public void run() {
+                                Benchmark.sink = algorithm[0].getTitleMatchResult(query);
+                            }
+                        });
+            }
+        }
+    }
+
+    @Test
+    public void benchmarkFuzzyTitleMatch() throws Exception {
+        for (int size : AppDataset.SIZES) {
+            final ArrayList<AppInfo> apps = AppDataset.generate(size);
+            final DefaultAppSearchAlgorithm[] algorithm = new DefaultAppSearchAlgorithm[1];
+            InstrumentationRegistry.getInstrumentation().runOnMainSync(new Runnable() {
+                @Override
+                public void run() {
+                    algorithm[0] = new DefaultAppSearchAlgorithm(apps);
+                    algorithm[0].setFuzzyMatchingEnabled(true);
+                }
+            });
+
+            for (final String query : AppDataset.getQueries()) {
+                Benchmark.run("search_fuzzy_match_" + size + "_" + query.replace(' ', '_'),
+                        new Benchmark.Body() {
+                            @Override
+                            public void run() {
+                                Benchmark.sink = algorithm[0].getTitleMatchResult(query);
+                            }
+                        });
+            }
+        }
+    }
+
+    @Test
+    public void benchmarkIndexBuild() throws Exception {
+        for (int size : AppDataset.SIZES) {
+            final ArrayList<AppInfo> apps = AppDataset.generate(size);
+            final DefaultAppSearchAlgorithm[] algorithm = new DefaultAppSearchAlgorithm[1];
+            InstrumentationRegistry.getInstrumentation().runOnMainSync(new Runnable() {
+                @Override
+                public void run() {
+                    algorithm[0] = new DefaultAppSearchAlgorithm(apps);
+                }
+            });
+
+            Benchmark.run("search_index_build_" + size, new Benchmark.Body() {
+                @Override
+                public void run() {
+                    algorithm[0].invalidateIndex();
+                    Benchmark.sink = algorithm[0].getIndex();
+                }
+            });
+        }
+    }
+}
@@ -0,0 +1,77 @@
+/*
+ * Copyright (C) 2017 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.kairos.launcher.benchmark;
+
+import android.content.ComponentName;
+import android.os.Process;
+
+import com.kairos.launcher.AppInfo;
+
+import java.util.ArrayList;
+import java.util.Random;
+
+/**
+ * Generates deterministic lists of apps for the benchmarks, with titles made of common words
+ * in varied case, so that the search and section logic go through their usual paths.
+ */
+public class AppDataset {
+
+    public static final int[] SIZES = new int[] {100, 500, 1000, 5000};
+
+    private static final String[] WORDS = new String[] {
+            "mail", "Maps", "photos", "Camera", "music", "Play", "store", "calendar", "Clock",
+            "notes", "Drive", "docs", "sheets", "Weather", "news", "Chat", "phone", "contacts",
+            "files", "Settings", "bank", "wallet", "Fit", "health", "radio", "TV", "video",
+            "games", "2048", "chess", "Translate", "keep", "Voice", "Duo", "office", "pdf",
+            "Écran", "über", "日历", "相机"
+    };
+
+    private static final long SEED = 42;
+
+    /**
+     * Returns {@param count} apps of the current user, with unique components.
+     */
+    public static ArrayList<AppInfo> generate(int count) {
+        Random random = new Random(SEED);
+        ArrayList<AppInfo> apps = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            StringBuilder title = new StringBuilder();
+            int words = 1 + random.nextInt(3);
+            for (int w = 0; w < words; w++) {
+                if (w > 0) {
+                    title.append(random.nextBoolean() ? " " : "");
+                }
+                title.append(WORDS[random.nextInt(WORDS.length)]);
+            }
+
+            AppInfo info = new AppInfo();
+            info.title = title.toString();
+            info.contentDescription = info.title;
+            info.componentName = new ComponentName("com.example.app" + i, "Activity" + i);
+            info.user = Process.myUserHandle();
+            apps.add(info);
+        }
+        return apps;
+    }
+
+    /**
+     * Returns queries of different lengths, which match a varying part of the apps.
+     */
+    public static String[] getQueries() {
+        return new String[] {"m", "ma", "play store", "cam", "2", "zzz"};
+    }
+}
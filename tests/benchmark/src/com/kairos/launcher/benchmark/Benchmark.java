@@ -0,0 +1,92 @@
+/*
+ * Copyright (C) 2017 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.kairos.launcher.benchmark;
+
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Minimal micro-benchmark runner: runs a body for a warm up period, and then times each run
+ * until the measurement period is over. Results are compared with the recorded baselines by
+ * {@link BenchmarkReporter}.
+ */
+public final class Benchmark {
+
+    private static final long WARMUP_NS = TimeUnit.MILLISECONDS.toNanos(300);
+    private static final long MEASURE_NS = TimeUnit.SECONDS.toNanos(1);
+    private static final int MIN_RUNS = 10;
+    private static final int MAX_RUNS = 100000;
+
+    /**
+     * A single run of a benchmark.
+     */
+    public interface Body {
+        void run() throws Exception;
+    }
+
+    public static class Result {
+        public final String name;
+        public final int runs;
+        public final long minNs;
+        public final long medianNs;
+        public final long p90Ns;
+
+        Result(String name, long[] sortedTimes, int runs) {
+            this.name = name;
+            this.runs = runs;
+            minNs = sortedTimes[0];
+            medianNs = sortedTimes[runs / 2];
+            p90Ns = sortedTimes[Math.min(runs - 1, runs * 9 / 10)];
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%s runs=%d min=%dns median=%dns p90=%dns",
+                    name, runs, minNs, medianNs, p90Ns);
+        }
+    }
+
+    // Written by the bodies, so that the runtime can't skip their work.
+    public static volatile Object sink;
+
+    private Benchmark() { }
+
+    /**
+     * Measures {@param body} and reports the result.
+     * @param name unique name of the benchmark, used as the key of its baseline.
+     */
+    public static Result run(String name, Body body) throws Exception {
+        long warmupEnd = System.nanoTime() + WARMUP_NS;
+        do {
+            body.run();
+        } while (System.nanoTime() < warmupEnd);
+
+        long[] times = new long[MAX_RUNS];
+        int runs = 0;
+        long measureEnd = System.nanoTime() + MEASURE_NS;
+        while (runs < MAX_RUNS && (runs < MIN_RUNS || System.nanoTime() < measureEnd)) {
+            long start = System.nanoTime();
+            body.run();
+            times[runs++] = System.nanoTime() - start;
+        }
+        Arrays.sort(times, 0, runs);
+
+        Result result = new Result(name, times, runs);
+        BenchmarkReporter.getInstance().report(result);
+        return result;
+    }
+}
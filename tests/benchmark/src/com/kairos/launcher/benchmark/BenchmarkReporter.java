@@ -0,0 +1,145 @@
+/*
+ * Copyright (C) 2017 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.kairos.launcher.benchmark;
+
+import android.content.Context;
+import android.content.res.Resources;
+import android.os.Build;
+import android.support.test.InstrumentationRegistry;
+import android.util.Log;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.PrintWriter;
+import java.util.HashMap;
+
+import static org.junit.Assert.fail;
+
+/**
+ * Logs the benchmark results, appends them to {@link #RESULTS_FILE} in the external files
+ * directory of the launcher, and compares them with the baselines in
+ * {@code res/raw/benchmark_baselines.txt}. The baselines are grouped in sections, each starting
+ * with a "[<device model>]" line, and only the section of the current device is used, as the
+ * timings of different devices can't be compared.
+ *
+ * A median slower than its baseline by more than {@link #REGRESSION_THRESHOLD} is logged as a
+ * regression. Regressions fail the test if the instrumentation argument
+ * {@code benchmarkStrict} is {@code true}.
+ */
+public class BenchmarkReporter {
+
+    private static final String TAG = "LauncherBenchmark";
+
+    private static final String BASELINES_RESOURCE = "benchmark_baselines";
+    private static final String RESULTS_FILE = "benchmark_results.txt";
+    private static final String ARG_STRICT = "benchmarkStrict";
+
+    private static final float REGRESSION_THRESHOLD = 0.25f;
+
+    private static BenchmarkReporter sInstance;
+
+    private final HashMap<String, Long> mBaselines = new HashMap<>();
+    private final File mResultsFile;
+    private final boolean mStrict;
+
+    public static synchronized BenchmarkReporter getInstance() {
+        if (sInstance == null) {
+            sInstance = new BenchmarkReporter();
+        }
+        return sInstance;
+    }
+
+    private BenchmarkReporter() {
+        loadBaselines(InstrumentationRegistry.getContext());
+        File dir = InstrumentationRegistry.getTargetContext().getExternalFilesDir(null);
+        mResultsFile = dir == null ? null : new File(dir, RESULTS_FILE);
+        mStrict = Boolean.parseBoolean(InstrumentationRegistry.getArguments().getString(ARG_STRICT));
+        writeLine("# " + Build.FINGERPRINT);
+        writeLine("[" + Build.MODEL + "]");
+    }
+
+    /**
+     * Reads the baselines of the current device: one benchmark per line, with its name and
+     * median time in ns.
+     */
+    private void loadBaselines(Context context) {
+        Resources res = context.getResources();
+        int id = res.getIdentifier(BASELINES_RESOURCE, "raw", context.getPackageName());
+        if (id == 0) {
+            return;
+        }
+        try (BufferedReader reader =
+                     new BufferedReader(new InputStreamReader(res.openRawResource(id)))) {
+            String line;
+            boolean currentDevice = false;
+            while ((line = reader.readLine()) != null) {
+                line = line.trim();
+                if (line.startsWith("#") || line.isEmpty()) {
+                    continue;
+                }
+                if (line.startsWith("[") && line.endsWith("]")) {
+                    currentDevice = line.substring(1, line.length() - 1).equals(Build.MODEL);
+                    continue;
+                }
+                if (!currentDevice) {
+                    continue;
+                }
+                String[] parts = line.split("\\s+");
+                mBaselines.put(parts[0], Long.parseLong(parts[1]));
+            }
+        } catch (IOException | RuntimeException e) {
+            Log.e(TAG, "Unable to read the benchmark baselines", e);
+        }
+    }
+
+    public void report(Benchmark.Result result) {
+        Log.i(TAG, result.toString());
+        // Same format as the baselines, so that the file can be used to record new baselines.
+        writeLine(result.name + " " + result.medianNs);
+
+        Long baseline = mBaselines.get(result.name);
+        if (baseline == null) {
+            Log.i(TAG, "No baseline for " + result.name + " on " + Build.MODEL);
+            return;
+        }
+        float change = (result.medianNs - baseline) / (float) baseline;
+        String message = String.format("%s median=%dns baseline=%dns change=%+.1f%%",
+                result.name, result.medianNs, baseline, change * 100);
+        if (change > REGRESSION_THRESHOLD) {
+            Log.w(TAG, "REGRESSION " + message);
+            if (mStrict) {
+                fail("Benchmark regression: " + message);
+            }
+        } else {
+            Log.i(TAG, message);
+        }
+    }
+
+    private void writeLine(String line) {
+        if (mResultsFile == null) {
+            return;
+        }
+        try (PrintWriter writer = new PrintWriter(new FileWriter(mResultsFile, true))) {
+            writer.println(line);
+        } catch (IOException e) {
+            Log.e(TAG, "Unable to write benchmark results", e);
+        }
+    }
+}
@@ -0,0 +1,136 @@
+/*
+ * Copyright (C) 2017 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.kairos.launcher.graphics;
+
+import android.content.Context;
+import android.content.pm.ApplicationInfo;
+import android.graphics.Bitmap;
+import android.graphics.drawable.Drawable;
+import android.os.Build;
+import android.os.Process;
+import android.os.SystemClock;
+import android.support.test.InstrumentationRegistry;
+import android.support.test.runner.AndroidJUnit4;
+import android.test.suitebuilder.annotation.LargeTest;
+import android.util.Log;
+
+import com.kairos.launcher.LauncherAppState;
+import com.kairos.launcher.benchmark.BenchmarkTest;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Measures the icon generation throughput of {@link LauncherIcons} for different thread counts.
+ * Results are logged under {@link #TAG}.
+ */
+@LargeTest
+@BenchmarkTest
+@RunWith(AndroidJUnit4.class)
+public class LauncherIconsBenchmarkTest {
+
+    private static final String TAG = "LauncherIconsBenchmark";
+
+    private static final int ICONS_PER_RUN = 200;
+    private static final int[] THREAD_COUNTS = new int[] {1, 2, 4};
+
+    private Context mContext;
+    private int mIconSize;
+    private List<ApplicationInfo> mApps;
+
+    @Before
+    public void setUp() {
+        mContext = InstrumentationRegistry.getTargetContext();
+        mIconSize = LauncherAppState.getIDP(mContext).iconBitmapSize;
+        mApps = mContext.getPackageManager().getInstalledApplications(0);
+        assertTrue(mApps.size() > 0);
+
+        // Warm up the pool and the resources.
+        renderIcons(1, ICONS_PER_RUN / 4);
+    }
+
+    @Test
+    public void testThroughputPerThreadCount() {
+        for (int threads : THREAD_COUNTS) {
+            long start = SystemClock.elapsedRealtime();
+            int count = renderIcons(threads, ICONS_PER_RUN);
+            long duration = Math.max(1, SystemClock.elapsedRealtime() - start);
+
+            assertEquals(ICONS_PER_RUN, count);
+            Log.d(TAG, String.format("threads=%d icons=%d time=%dms throughput=%.1f icons/s",
+                    threads, count, duration, count * 1000f / duration));
+        }
+    }
+
+    /**
+     * Renders {@param total} icons split across {@param threads} threads, each using its own
+     * {@link LauncherIcons} instance, and returns the number of valid icons generated.
+     */
+    private int renderIcons(final int threads, final int total) {
+        final AtomicInteger next = new AtomicInteger();
+        final AtomicInteger valid = new AtomicInteger();
+        final CountDownLatch latch = new CountDownLatch(threads);
+        final ArrayList<Throwable> errors = new ArrayList<>();
+
+        for (int t = 0; t < threads; t++) {
+            new Thread("icon-bench-" + t) {
+                @Override
+                public void run() {
+                    LauncherIcons li = LauncherIcons.obtain(mContext);
+                    try {
+                        int i;
+                        while ((i = next.getAndIncrement()) < total) {
+                            ApplicationInfo app = mApps.get(i % mApps.size());
+                            Drawable d = app.loadIcon(mContext.getPackageManager());
+                            Bitmap icon = li.createBadgedIconBitmap(d, Process.myUserHandle(),
+                                    Build.VERSION_CODES.O);
+                            if (icon != null && icon.getWidth() == mIconSize) {
+                                valid.incrementAndGet();
+                            }
+                        }
+                    } catch (Throwable e) {
+                        synchronized (errors) {
+                            errors.add(e);
+                        }
+                    } finally {
+                        li.recycle();
+                        latch.countDown();
+                    }
+                }
+            }.start();
+        }
+
+        try {
+            latch.await();
+        } catch (InterruptedException e) {
+            throw new RuntimeException(e);
+        }
+        if (!errors.isEmpty()) {
+            throw new RuntimeException(errors.get(0));
+        }
+        return valid.get();
+    }
+}
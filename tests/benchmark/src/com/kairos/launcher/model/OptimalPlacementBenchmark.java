@@ -0,0 +1,103 @@
+/*
+ * Copyright (C) 2017 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.kairos.launcher.model;
+
+import android.support.test.runner.AndroidJUnit4;
+import android.test.suitebuilder.annotation.LargeTest;
+
+import com.kairos.launcher.LauncherSettings.Favorites;
+import com.kairos.launcher.benchmark.Benchmark;
+import com.kairos.launcher.benchmark.BenchmarkTest;
+import com.kairos.launcher.model.GridSizeMigrationTask.DbEntry;
+import com.kairos.launcher.model.GridSizeMigrationTask.OptimalPlacementSolution;
+import com.kairos.launcher.util.GridOccupancy;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.ArrayList;
+
+/**
+ * Benchmarks {@link OptimalPlacementSolution#find} for the placements done when migrating a
+ * screen to a smaller grid: icons only, and icons along with resizable widgets.
+ */
+@LargeTest
+@BenchmarkTest
+@RunWith(AndroidJUnit4.class)
+public class OptimalPlacementBenchmark {
+
+    @Test
+    public void benchmarkIcons() throws Exception {
+        runPlacement("placement_icons_4x4", 4, 4, 0, 10);
+        runPlacement("placement_icons_5x5", 5, 5, 0, 16);
+    }
+
+    @Test
+    public void benchmarkIconsAndWidgets() throws Exception {
+        runPlacement("placement_widgets_4x4", 4, 4, 2, 6);
+        runPlacement("placement_widgets_5x5", 5, 5, 3, 8);
+    }
+
+    /**
+     * Places {@param widgets} 2x2 widgets and {@param icons} icons, coming from a grid one
+     * column larger, on a grid whose first row is occupied.
+     */
+    private void runPlacement(String name, final int countX, final int countY, int widgets,
+            int icons) throws Exception {
+        final ArrayList<DbEntry> items = new ArrayList<>();
+        for (int i = 0; i < widgets; i++) {
+            DbEntry widget = createEntry(Favorites.ITEM_TYPE_APPWIDGET,
+                    (i * 2) % countX, 1 + (i * 2 / countX) * 2, 2, 2);
+            widget.minSpanX = 1;
+            widget.minSpanY = 1;
+            items.add(widget);
+        }
+        for (int i = 0; i < icons; i++) {
+            items.add(createEntry(Favorites.ITEM_TYPE_APPLICATION,
+                    i % (countX + 1), 1 + i / (countX + 1), 1, 1));
+        }
+
+        Benchmark.run(name, new Benchmark.Body() {
+            @Override
+            public void run() {
+                GridOccupancy occupied = new GridOccupancy(countX, countY);
+                occupied.markCells(0, 0, countX, 1, true);
+                ArrayList<DbEntry> toPlace = new ArrayList<>(items.size());
+                for (DbEntry item : items) {
+                    toPlace.add(item.copy());
+                }
+                OptimalPlacementSolution placement =
+                        new OptimalPlacementSolution(countX, countY, occupied, toPlace, 1);
+                placement.find();
+                Benchmark.sink = placement.finalPlacedItems;
+            }
+        });
+    }
+
+    private static DbEntry createEntry(int type, int x, int y, int spanX, int spanY) {
+        DbEntry entry = new DbEntry();
+        entry.itemType = type;
+        entry.cellX = x;
+        entry.cellY = y;
+        entry.spanX = spanX;
+        entry.spanY = spanY;
+        entry.minSpanX = spanX;
+        entry.minSpanY = spanY;
+        entry.weight = spanX * spanY;
+        return entry;
+    }
+}
@@ -0,0 +1,72 @@
+/*
+ * Copyright (C) 2017 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.kairos.launcher.util;
+
+import android.test.suitebuilder.annotation.LargeTest;
+
+import com.kairos.launcher.CellLayout;
+import com.kairos.launcher.DeviceProfile;
+import com.kairos.launcher.Launcher;
+import com.kairos.launcher.benchmark.Benchmark;
+import com.kairos.launcher.benchmark.BenchmarkTest;
+import com.kairos.launcher.ui.LauncherInstrumentationTestCase;
+
+import java.util.concurrent.Callable;
+
+/**
+ * Benchmarks the focus matrices created by {@link FocusLogic} for the keyboard navigation of
+ * the current workspace page and the hotseat.
+ */
+@LargeTest
+@BenchmarkTest
+public class FocusLogicBenchmark extends LauncherInstrumentationTestCase {
+
+    public void testMatrixCreation() throws Exception {
+        final Launcher launcher = startLauncher();
+        getOnUiThread(new Callable<Void>() {
+            @Override
+            public Void call() throws Exception {
+                final CellLayout page = (CellLayout) launcher.getWorkspace()
+                        .getPageAt(launcher.getWorkspace().getCurrentPage());
+                final CellLayout hotseat = launcher.getHotseat().getLayout();
+                final DeviceProfile dp = launcher.getDeviceProfile();
+
+                Benchmark.run("focus_sparse_matrix", new Benchmark.Body() {
+                    @Override
+                    public void run() {
+                        Benchmark.sink = FocusLogic.createSparseMatrix(page);
+                    }
+                });
+                Benchmark.run("focus_sparse_matrix_hotseat", new Benchmark.Body() {
+                    @Override
+                    public void run() {
+                        Benchmark.sink =
+                                FocusLogic.createSparseMatrixWithHotseat(page, hotseat, dp);
+                    }
+                });
+                Benchmark.run("focus_sparse_matrix_pivot", new Benchmark.Body() {
+                    @Override
+                    public void run() {
+                        Benchmark.sink = FocusLogic.createSparseMatrixWithPivotColumn(
+                                page, page.getCountX(), 0);
+                    }
+                });
+                return null;
+            }
+        });
+    }
+}
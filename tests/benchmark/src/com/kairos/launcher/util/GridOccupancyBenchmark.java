@@ -0,0 +1,137 @@
+/*
+ * Copyright (C) 2017 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.kairos.launcher.util;
+
+import android.support.test.runner.AndroidJUnit4;
+import android.test.suitebuilder.annotation.LargeTest;
+
+import com.kairos.launcher.benchmark.Benchmark;
+import com.kairos.launcher.benchmark.BenchmarkTest;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.Random;
+
+/**
+ * Benchmarks {@link GridOccupancy#findVacantCell} on grids with different fill ratios, and the
+ * span scans done by CellLayout while dragging widgets.
+ */
+@LargeTest
+@BenchmarkTest
+@RunWith(AndroidJUnit4.class)
+public class GridOccupancyBenchmark {
+
+    private static final int[][] GRID_SIZES = new int[][] {{4, 5}, {5, 5}, {6, 8}, {40, 40}};
+    private static final float[] FILL_RATIOS = new float[] {0f, 0.5f, 0.9f};
+    private static final int[][] SPANS = new int[][] {{1, 1}, {2, 2}, {4, 2}};
+    private static final int[][] WIDGET_SPANS = new int[][] {{2, 2}, {4, 2}, {4, 4}};
+
+    @Test
+    public void benchmarkFindVacantCell() throws Exception {
+        final int[] vacant = new int[2];
+        for (int[] size : GRID_SIZES) {
+            for (float fill : FILL_RATIOS) {
+                final GridOccupancy occupancy = createGrid(size[0], size[1], fill);
+                for (final int[] span : SPANS) {
+                    String name = String.format("grid_find_vacant_%dx%d_fill%d_span%dx%d",
+                            size[0], size[1], (int) (fill * 100), span[0], span[1]);
+                    Benchmark.run(name, new Benchmark.Body() {
+                        @Override
+                        public void run() {
+                            Benchmark.sink = occupancy.findVacantCell(vacant, span[0], span[1]);
+                        }
+                    });
+                }
+            }
+        }
+    }
+
+    /**
+     * Enumerates all the vacant positions of a widget, like CellLayout#findNearestArea does for
+     * every drag move.
+     */
+    @Test
+    public void benchmarkWidgetDragScan() throws Exception {
+        for (int[] size : GRID_SIZES) {
+            for (float fill : FILL_RATIOS) {
+                final GridOccupancy occupancy = createGrid(size[0], size[1], fill);
+                for (final int[] span : WIDGET_SPANS) {
+                    String name = String.format("grid_drag_scan_%dx%d_fill%d_span%dx%d",
+                            size[0], size[1], (int) (fill * 100), span[0], span[1]);
+                    Benchmark.run(name, new Benchmark.Body() {
+                        @Override
+                        public void run() {
+                            int count = 0;
+                            for (int y = 0; y + span[1] <= occupancy.getCountY(); y++) {
+                                for (int x = occupancy.nextVacantCell(0, y, span[0], span[1]);
+                                        x >= 0;
+                                        x = occupancy.nextVacantCell(x + 1, y, span[0], span[1])) {
+                                    count++;
+                                }
+                            }
+                            Benchmark.sink = count;
+                        }
+                    });
+                }
+            }
+        }
+    }
+
+    /**
+     * Tests the positions of a block of items being pushed, like
+     * ReorderSolver#pushItemsToTempLocation does.
+     */
+    @Test
+    public void benchmarkBlockScan() throws Exception {
+        for (int[] size : GRID_SIZES) {
+            for (float fill : FILL_RATIOS) {
+                final GridOccupancy occupancy = createGrid(size[0], size[1], fill);
+                for (final int[] span : WIDGET_SPANS) {
+                    final GridOccupancy block = createGrid(span[0], span[1], 0.5f);
+                    String name = String.format("grid_block_scan_%dx%d_fill%d_span%dx%d",
+                            size[0], size[1], (int) (fill * 100), span[0], span[1]);
+                    Benchmark.run(name, new Benchmark.Body() {
+                        @Override
+                        public void run() {
+                            int count = 0;
+                            for (int y = 0; y + span[1] <= occupancy.getCountY(); y++) {
+                                for (int x = 0; x + span[0] <= occupancy.getCountX(); x++) {
+                                    if (occupancy.isRegionVacant(x, y, block)) {
+                                        count++;
+                                    }
+                                }
+                            }
+                            Benchmark.sink = count;
+                        }
+                    });
+                }
+            }
+        }
+    }
+
+    private static GridOccupancy createGrid(int countX, int countY, float fill) {
+        Random random = new Random(countX * 31 + countY);
+        GridOccupancy occupancy = new GridOccupancy(countX, countY);
+        for (int x = 0; x < countX; x++) {
+            for (int y = 0; y < countY; y++) {
+                occupancy.markCells(x, y, 1, 1, random.nextFloat() < fill);
+            }
+        }
+        return occupancy;
+    }
+}
@@ -0,0 +1,120 @@
+/*
+ * Copyright (C) 2017 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.kairos.launcher.util;
+
+import android.support.test.runner.AndroidJUnit4;
+import android.test.suitebuilder.annotation.LargeTest;
+
+import com.kairos.launcher.AppInfo;
+import com.kairos.launcher.benchmark.AppDataset;
+import com.kairos.launcher.benchmark.Benchmark;
+import com.kairos.launcher.benchmark.BenchmarkTest;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.ArrayList;
+
+/**
+ * Benchmarks the {@link LongArrayMap} and {@link MultiHashMap} operations done by the model,
+ * with one entry per app of the generated datasets.
+ */
+@LargeTest
+@BenchmarkTest
+@RunWith(AndroidJUnit4.class)
+public class ModelCollectionsBenchmark {
+
+    @Test
+    public void benchmarkLongArrayMap() throws Exception {
+        for (int size : AppDataset.SIZES) {
+            final ArrayList<AppInfo> apps = AppDataset.generate(size);
+            final LongArrayMap<AppInfo> filled = new LongArrayMap<>();
+            for (int i = 0; i < apps.size(); i++) {
+                filled.put(i, apps.get(i));
+            }
+
+            Benchmark.run("long_array_map_put_" + size, new Benchmark.Body() {
+                @Override
+                public void run() {
+                    // Item ids are not inserted in order when the model binds.
+                    LongArrayMap<AppInfo> map = new LongArrayMap<>();
+                    for (int i = apps.size() - 1; i >= 0; i--) {
+                        map.put(i, apps.get(i));
+                    }
+                    Benchmark.sink = map;
+                }
+            });
+            Benchmark.run("long_array_map_get_" + size, new Benchmark.Body() {
+                @Override
+                public void run() {
+                    int found = 0;
+                    for (int i = 0; i < apps.size(); i++) {
+                        if (filled.containsKey(i * 2)) {
+                            found++;
+                        }
+                    }
+                    Benchmark.sink = found;
+                }
+            });
+            Benchmark.run("long_array_map_iterate_" + size, new Benchmark.Body() {
+                @Override
+                public void run() {
+                    int count = 0;
+                    for (AppInfo info : filled) {
+                        count += info.title.length();
+                    }
+                    Benchmark.sink = count;
+                }
+            });
+            Benchmark.run("long_array_map_clone_" + size, new Benchmark.Body() {
+                @Override
+                public void run() {
+                    Benchmark.sink = filled.clone();
+                }
+            });
+        }
+    }
+
+    @Test
+    public void benchmarkMultiHashMap() throws Exception {
+        for (int size : AppDataset.SIZES) {
+            final ArrayList<AppInfo> apps = AppDataset.generate(size);
+            final MultiHashMap<String, AppInfo> filled = new MultiHashMap<>();
+            for (AppInfo info : apps) {
+                filled.addToList(info.title.toString(), info);
+            }
+
+            Benchmark.run("multi_hash_map_add_" + size, new Benchmark.Body() {
+                @Override
+                public void run() {
+                    // Same usage as the deep shortcut counts, keyed on a shared value.
+                    MultiHashMap<String, AppInfo> map = new MultiHashMap<>();
+                    for (AppInfo info : apps) {
+                        map.addToList(info.title.toString(), info);
+                    }
+                    Benchmark.sink = map;
+                }
+            });
+            Benchmark.run("multi_hash_map_clone_" + size, new Benchmark.Body() {
+                @Override
+                public void run() {
+                    Benchmark.sink = filled.clone();
+                }
+            });
+        }
+    }
+}
@@ -0,0 +1,169 @@
+package com.kairos.launcher;
+
+import android.os.Debug;
+import android.test.suitebuilder.annotation.SmallTest;
+
+import com.kairos.launcher.ReorderSolver.ItemConfiguration;
+import com.kairos.launcher.util.GridOccupancy;
+
+import junit.framework.TestCase;
+
+/**
+ * Unit tests for {@link ReorderSolver}
+ */
+@SmallTest
+public class ReorderSolverTest extends TestCase {
+
+    private static final int COUNT_X = 5;
+    private static final int COUNT_Y = 5;
+
+    // cellX, cellY, spanX, spanY of the items, the first one is dragged
+    private static final int[][] ITEMS = {
+            {0, 0, 1, 1},
+            {1, 1, 1, 1},
+            {2, 1, 2, 2},
+            {0, 3, 1, 1},
+            {4, 4, 1, 1},
+            {1, 4, 2, 1},
+    };
+
+    private ReorderSolver mSolver;
+    private ItemConfiguration mSolution;
+    private GridOccupancy mOccupied;
+    private final int[] mDirection = new int[2];
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        mSolver = new ReorderSolver(COUNT_X, COUNT_Y);
+        mSolution = new ItemConfiguration();
+        mOccupied = new GridOccupancy(COUNT_X, COUNT_Y);
+        for (int i = 1; i < ITEMS.length; i++) {
+            mOccupied.markCells(ITEMS[i][0], ITEMS[i][1], ITEMS[i][2], ITEMS[i][3], true);
+        }
+    }
+
+    public void testPushesItemInDirection() {
+        int[] direction = {1, 0};
+        assertTrue(solve(1, 1, 1, 1, direction));
+
+        // The item and the one to its right are pushed to the right
+        assertEquals(2, mSolution.itemX[1]);
+        assertEquals(3, mSolution.itemX[2]);
+        assertTrue(mSolution.isIntersecting(1));
+        assertFalse(mSolution.isIntersecting(2));
+        // The dragged item is moved to the drop location
+        assertEquals(1, mSolution.itemX[0]);
+        assertEquals(1, mSolution.itemY[0]);
+        // The direction is restored
+        assertEquals(1, direction[0]);
+        assertEquals(0, direction[1]);
+    }
+
+    public void testItemsWhichCannotReorderAreNotMoved() {
+        mSolution.reset(ITEMS.length);
+        for (int i = 0; i < ITEMS.length; i++) {
+            mSolution.setItem(i, ITEMS[i][0], ITEMS[i][1], ITEMS[i][2], ITEMS[i][3], i != 2);
+        }
+        mSolver.setOccupied(mOccupied);
+        assertFalse(mSolver.rearrangementExists(2, 2, 1, 1, new int[] {1, 0}, 0, mSolution));
+        assertEquals(2, mSolution.itemX[2]);
+        assertEquals(1, mSolution.itemY[2]);
+    }
+
+    public void testNoSolutionWhenTheGridIsFull() {
+        mOccupied.markCells(0, 0, COUNT_X, COUNT_Y, true);
+        mSolution.reset(2);
+        mSolution.setItem(0, 0, 0, 1, 1, true);
+        mSolution.setItem(1, 1, 0, COUNT_X - 1, COUNT_Y, true);
+        mOccupied.markCells(0, 0, 1, 1, false);
+        mSolver.setOccupied(mOccupied);
+        assertFalse(mSolver.rearrangementExists(1, 0, 2, 2, new int[] {1, 0}, 0, mSolution));
+    }
+
+    public void testRepeatedSolveIsCached() {
+        int[] direction = {1, 0};
+        assertTrue(solve(1, 1, 1, 1, direction));
+        assertEquals(0, mSolver.getCacheHitCount());
+
+        assertTrue(solve(1, 1, 1, 1, direction));
+        assertEquals(1, mSolver.getCacheHitCount());
+        assertEquals(2, mSolution.itemX[1]);
+        assertEquals(3, mSolution.itemX[2]);
+        assertTrue(mSolution.isIntersecting(1));
+
+        // Another direction is another solution
+        direction[0] = -1;
+        solve(1, 1, 1, 1, direction);
+        assertEquals(1, mSolver.getCacheHitCount());
+    }
+
+    public void testCacheIsInvalidatedByOccupancyChange() {
+        int[] direction = {1, 0};
+        assertTrue(solve(1, 1, 1, 1, direction));
+
+        // The cells to the right of the pushed items are now occupied
+        mOccupied.markCells(4, 1, 1, 2, true);
+        assertTrue(solve(1, 1, 1, 1, direction));
+        assertEquals(0, mSolver.getCacheHitCount());
+        assertEquals(2, mSolver.getCacheMissCount());
+    }
+
+    public void testCacheIsClearedAtTheEndOfTheDrag() {
+        int[] direction = {1, 0};
+        solve(1, 1, 1, 1, direction);
+        mSolver.clearCache();
+        solve(1, 1, 1, 1, direction);
+        assertEquals(0, mSolver.getCacheHitCount());
+    }
+
+    @SuppressWarnings("deprecation")
+    public void testScriptedDragDoesNotAllocate() {
+        // The first drag grows the arrays of the solution and of the solver
+        drag();
+
+        Debug.resetThreadAllocCount();
+        Debug.startAllocCounting();
+        // Once from the cached rearrangements, once solving again
+        int solutions = drag();
+        mSolver.clearCache();
+        solutions += drag();
+        Debug.stopAllocCounting();
+        int allocations = Debug.getThreadAllocCount();
+
+        assertTrue(solutions > 0);
+        assertEquals(0, allocations);
+    }
+
+    /**
+     * Drags the first item over every cell of the grid, back and forth, solving on each cell like
+     * CellLayout does on each drag over. Returns the number of solutions found.
+     */
+    private int drag() {
+        int[] direction = mDirection;
+        int solutions = 0;
+        for (int y = 0; y < COUNT_Y; y++) {
+            for (int i = 0; i < COUNT_X; i++) {
+                int x = y % 2 == 0 ? i : COUNT_X - 1 - i;
+                direction[0] = y % 2 == 0 ? 1 : -1;
+                direction[1] = i == 0 ? 1 : 0;
+                for (int span = 2; span >= 1; span--) {
+                    if (solve(x, y, span, span, direction)) {
+                        solutions++;
+                        break;
+                    }
+                }
+            }
+        }
+        return solutions;
+    }
+
+    private boolean solve(int cellX, int cellY, int spanX, int spanY, int[] direction) {
+        mSolution.reset(ITEMS.length);
+        for (int i = 0; i < ITEMS.length; i++) {
+            mSolution.setItem(i, ITEMS[i][0], ITEMS[i][1], ITEMS[i][2], ITEMS[i][3], true);
+        }
+        mSolver.setOccupied(mOccupied);
+        return mSolver.rearrangementExists(cellX, cellY, spanX, spanY, direction, 0, mSolution);
+    }
+}
@@ -0,0 +1,123 @@
+package com.kairos.launcher.allapps;
+
+import android.content.ComponentName;
+import android.os.Process;
+import android.support.v7.util.DiffUtil;
+import android.support.v7.util.ListUpdateCallback;
+import android.test.suitebuilder.annotation.SmallTest;
+
+import com.kairos.launcher.AppInfo;
+import com.kairos.launcher.ShortcutInfo;
+import com.kairos.launcher.allapps.AlphabeticalAppsList.AdapterItem;
+
+import junit.framework.TestCase;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Unit tests for {@link AdapterItemDiffCallback}
+ */
+@SmallTest
+public class AdapterItemDiffCallbackTest extends TestCase {
+
+    private final ArrayList<String> mEvents = new ArrayList<>();
+
+    public void testInsertApp() {
+        AppInfo a = getInfo("A");
+        AppInfo c = getInfo("C");
+        diff(getItems(a, c), getItems(a, getInfo("B"), c));
+
+        assertEquals(1, mEvents.size());
+        assertEquals("insert 2 1", mEvents.get(0));
+    }
+
+    public void testRemoveApp() {
+        AppInfo a = getInfo("A");
+        AppInfo c = getInfo("C");
+        diff(getItems(a, getInfo("B"), c), getItems(a, c));
+
+        assertEquals(1, mEvents.size());
+        assertEquals("remove 2 1", mEvents.get(0));
+    }
+
+    public void testUpdatedAppIsChanged() {
+        AppInfo a = getInfo("A");
+        diff(getItems(a, getInfo("B")), getItems(a, getInfo("B")));
+
+        assertEquals(1, mEvents.size());
+        assertEquals("change 2 1", mEvents.get(0));
+    }
+
+    public void testAppUpdatedInPlaceIsChanged() {
+        AppInfo a = getInfo("A");
+        AppInfo b = getInfo("B");
+        List<AdapterItem> oldItems = getItems(a, b);
+        b.title = "B2";
+        diff(oldItems, getItems(a, b));
+
+        assertEquals(1, mEvents.size());
+        assertEquals("change 2 1", mEvents.get(0));
+
+        mEvents.clear();
+        oldItems = getItems(a, b);
+        b.isDisabled = ShortcutInfo.FLAG_DISABLED_SUSPENDED;
+        diff(oldItems, getItems(a, b));
+
+        assertEquals(1, mEvents.size());
+        assertEquals("change 2 1", mEvents.get(0));
+    }
+
+    public void testUnchangedAppsAreNotRebound() {
+        AppInfo a = getInfo("A");
+        AppInfo b = getInfo("B");
+        diff(getItems(a, b), getItems(a, b));
+
+        assertTrue(mEvents.isEmpty());
+    }
+
+    private void diff(List<AdapterItem> oldItems, List<AdapterItem> newItems) {
+        DiffUtil.calculateDiff(new AdapterItemDiffCallback(oldItems, newItems), true)
+                .dispatchUpdatesTo(new ListUpdateCallback() {
+                    @Override
+                    public void onInserted(int position, int count) {
+                        mEvents.add("insert " + position + " " + count);
+                    }
+
+                    @Override
+                    public void onRemoved(int position, int count) {
+                        mEvents.add("remove " + position + " " + count);
+                    }
+
+                    @Override
+                    public void onMoved(int fromPosition, int toPosition) {
+                        mEvents.add("move " + fromPosition + " " + toPosition);
+                    }
+
+                    @Override
+                    public void onChanged(int position, int count, Object payload) {
+                        mEvents.add("change " + position + " " + count);
+                    }
+                });
+    }
+
+    /**
+     * Returns the items of a section with the given apps, after the search divider.
+     */
+    private static List<AdapterItem> getItems(AppInfo... apps) {
+        ArrayList<AdapterItem> items = new ArrayList<>();
+        items.add(AdapterItem.asSearchDivider(0));
+        for (AppInfo app : apps) {
+            items.add(AdapterItem.asApp(items.size(), "A", app, items.size() - 1));
+        }
+        return items;
+    }
+
+    private static AppInfo getInfo(String title) {
+        AppInfo info = new AppInfo();
+        info.title = title;
+        info.componentName = new ComponentName("Test", title);
+        info.user = Process.myUserHandle();
+        return info;
+    }
+}
@@ -0,0 +1,119 @@
+package com.kairos.launcher.allapps;
+
+import android.content.ComponentName;
+import android.os.Process;
+import android.test.InstrumentationTestCase;
+import android.test.suitebuilder.annotation.SmallTest;
+
+import com.kairos.launcher.compat.UserManagerCompat;
+import com.kairos.launcher.util.ComponentKey;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+
+/**
+ * Unit tests for {@link AppPredictionEngine}
+ */
+@SmallTest
+public class AppPredictionEngineTest extends InstrumentationTestCase {
+
+    private static final long START_TIME = 1500000000000L;
+
+    private File mFile;
+    private AppPredictionEngine mEngine;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        mFile = new File(getInstrumentation().getTargetContext().getCacheDir(),
+                "app_predictions_test");
+        mFile.delete();
+        mEngine = newEngine();
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        mFile.delete();
+        super.tearDown();
+    }
+
+    public void testMostLaunchedAppFirst() {
+        launch("B", START_TIME, 0);
+        launch("A", START_TIME, 0);
+        launch("A", START_TIME, 0);
+
+        assertEquals(Arrays.asList(key("A"), key("B")), mEngine.getPredictedApps(0));
+    }
+
+    public void testRecentLaunchesOutweighOlderOnes() {
+        for (int i = 0; i < 3; i++) {
+            launch("A", START_TIME, 0);
+        }
+        long later = START_TIME + 2 * AppPredictionEngine.HALF_LIFE_MS;
+        launch("B", later, 0);
+
+        assertEquals(Arrays.asList(key("B"), key("A")), mEngine.getPredictedApps(0));
+    }
+
+    public void testPredictionsDependOnTimeOfDay() {
+        launch("A", START_TIME, 0);
+        launch("A", START_TIME, 0);
+        launch("B", START_TIME, 3);
+        launch("B", START_TIME, 3);
+        launch("B", START_TIME, 3);
+
+        // Launches count less in the other buckets, the further they are
+        assertEquals(key("A"), mEngine.getPredictedApps(0).get(0));
+        assertEquals(key("B"), mEngine.getPredictedApps(3).get(0));
+        assertEquals(key("B"), mEngine.getPredictedApps(2).get(0));
+    }
+
+    public void testKeepsTheTopApps() {
+        int appCount = AppPredictionEngine.MAX_PREDICTIONS + 5;
+        for (int i = 0; i < appCount; i++) {
+            for (int j = 0; j <= i; j++) {
+                launch("App" + i, START_TIME + j, 0);
+            }
+        }
+
+        ArrayList<ComponentKey> expected = new ArrayList<>();
+        for (int i = appCount - 1; expected.size() < AppPredictionEngine.MAX_PREDICTIONS; i--) {
+            expected.add(key("App" + i));
+        }
+        assertEquals(expected, mEngine.getPredictedApps(0));
+    }
+
+    public void testForgetsAppsNotLaunchedForLong() {
+        launch("A", START_TIME, 0);
+        launch("B", START_TIME + 25 * AppPredictionEngine.HALF_LIFE_MS, 0);
+
+        assertEquals(Arrays.asList(key("B")), mEngine.getPredictedApps(0));
+    }
+
+    public void testPredictionsArePersisted() {
+        launch("A", START_TIME, 1);
+        launch("B", START_TIME, 1);
+        launch("B", START_TIME, 1);
+        mEngine.save();
+
+        AppPredictionEngine restored = newEngine();
+        for (int b = 0; b < AppPredictionEngine.NUM_BUCKETS; b++) {
+            assertEquals(mEngine.getPredictedApps(b), restored.getPredictedApps(b));
+        }
+        assertEquals(Arrays.asList(key("B"), key("A")), restored.getPredictedApps(1));
+    }
+
+    private AppPredictionEngine newEngine() {
+        return new AppPredictionEngine(mFile,
+                UserManagerCompat.getInstance(getInstrumentation().getTargetContext()));
+    }
+
+    private void launch(String className, long time, int bucket) {
+        mEngine.onAppLaunched(key(className), time, bucket);
+    }
+
+    private static ComponentKey key(String className) {
+        return new ComponentKey(new ComponentName("com.test", className), Process.myUserHandle());
+    }
+}
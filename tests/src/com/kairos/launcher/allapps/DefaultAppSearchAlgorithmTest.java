@@ -16,12 +16,19 @@
 package com.kairos.launcher.allapps;
 
 import android.content.ComponentName;
+import android.graphics.Rect;
+import android.os.Process;
 import android.test.InstrumentationTestCase;
 
 import com.kairos.launcher.AppInfo;
+import com.kairos.launcher.discovery.AppDiscoveryItem;
+import com.kairos.launcher.discovery.AppDiscoveryUpdateState;
+import com.kairos.launcher.util.ComponentKey;
 
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
 
 /**
  * Unit tests for {@link DefaultAppSearchAlgorithm}
@@ -77,10 +84,207 @@ public class DefaultAppSearchAlgorithmTest extends InstrumentationTestCase {
         assertFalse(mAlgorithm.matches(getInfo("电子邮件"), "邮件"));
     }
 
+    public void testTitleMatchResultAgreesWithMatches() {
+        String[] titles = {"white cow", "whiteCow", "whiteCOW", "whitecowCOW", "white2cow",
+                "whitecow", "whitEcow", "whit ecowcow", "cats&dogs", "2+43", "  Q", "elephant",
+                "电子邮件"};
+        for (String title : titles) {
+            mAppsList.add(getInfo(title));
+        }
+        mAlgorithm.invalidateIndex();
+        String[] queries = {"cow", "c", "whitec", "dog", "&", "43", "3", "q", "e", "电", "电子",
+                "子", "white cow", "zebra"};
+        for (String query : queries) {
+            ArrayList<ComponentKey> result = mAlgorithm.getTitleMatchResult(query);
+            for (AppInfo info : mAppsList) {
+                assertEquals(title(info) + " / " + query,
+                        mAlgorithm.matches(info, query.toLowerCase()),
+                        result.contains(info.toComponentKey()));
+            }
+        }
+    }
+
+    public void testTitleMatchResultRankedByWord() {
+        mAppsList.add(getInfo("Alpha Camera"));
+        mAppsList.add(getInfo("Beta Cam Cam"));
+        mAppsList.add(getInfo("Camera"));
+        mAlgorithm.invalidateIndex();
+
+        ArrayList<ComponentKey> result = mAlgorithm.getTitleMatchResult("cam");
+        assertEquals(3, result.size());
+        // Match on the first word goes first, then the list order.
+        assertEquals("Camera", title(result.get(0)));
+        assertEquals("Alpha Camera", title(result.get(1)));
+        assertEquals("Beta Cam Cam", title(result.get(2)));
+    }
+
+    public void testTitleMatchResultNarrowsAndWidens() {
+        mAppsList.add(getInfo("Calculator"));
+        mAppsList.add(getInfo("Calendar"));
+        mAppsList.add(getInfo("Camera"));
+        mAlgorithm.invalidateIndex();
+
+        assertEquals(3, mAlgorithm.getTitleMatchResult("c").size());
+        assertEquals(3, mAlgorithm.getTitleMatchResult("ca").size());
+        assertEquals(2, mAlgorithm.getTitleMatchResult("cal").size());
+        assertEquals(1, mAlgorithm.getTitleMatchResult("calc").size());
+        assertEquals(0, mAlgorithm.getTitleMatchResult("calcx").size());
+        assertEquals(2, mAlgorithm.getTitleMatchResult("cal").size());
+        assertEquals(1, mAlgorithm.getTitleMatchResult("cam").size());
+    }
+
+    public void testInvalidateIndex() {
+        mAppsList.add(getInfo("Calendar"));
+        mAlgorithm.invalidateIndex();
+        assertEquals(1, mAlgorithm.getTitleMatchResult("cal").size());
+
+        // The index is built from the apps when it was invalidated
+        mAppsList.add(getInfo("Calculator"));
+        assertEquals(1, mAlgorithm.getTitleMatchResult("cal").size());
+        mAlgorithm.invalidateIndex();
+        assertEquals(2, mAlgorithm.getTitleMatchResult("cal").size());
+    }
+
+    public void testFuzzyMatchesAfterExactMatches() {
+        mAppsList.add(getInfo("Chamber"));
+        mAppsList.add(getInfo("Camera"));
+        mAppsList.add(getInfo("Notes"));
+        mAlgorithm.setFuzzyMatchingEnabled(true);
+
+        ArrayList<ComponentKey> result = mAlgorithm.getTitleMatchResult("cam");
+        assertEquals(2, result.size());
+        assertEquals("Camera", title(result.get(0)));
+        assertEquals("Chamber", title(result.get(1)));
+
+        mAlgorithm.setFuzzyMatchingEnabled(false);
+        assertEquals(1, mAlgorithm.getTitleMatchResult("cam").size());
+    }
+
+    public void testFuzzyMatchesWithinEditDistance() {
+        mAppsList.add(getInfo("Calendar"));
+        mAlgorithm.setFuzzyMatchingEnabled(true);
+
+        // Substitution, transposition and too many edits
+        assertEquals("Calendar", title(mAlgorithm.getTitleMatchResult("calandar").get(0)));
+        assertEquals("Calendar", title(mAlgorithm.getTitleMatchResult("claendar").get(0)));
+        assertTrue(mAlgorithm.getTitleMatchResult("cxlxndxr").isEmpty());
+        // Short queries don't allow edits
+        assertTrue(mAlgorithm.getTitleMatchResult("cx").isEmpty());
+    }
+
+    public void testFuzzyMatchesNormalizedTitles() {
+        mAppsList.add(getInfo("Café Rio"));
+        mAppsList.add(getInfo("Телеграм"));
+        mAppsList.add(getInfo("Ωmega"));
+        mAlgorithm.setFuzzyMatchingEnabled(true);
+
+        assertEquals("Café Rio", title(mAlgorithm.getTitleMatchResult("cafe").get(0)));
+        assertEquals("Телеграм", title(mAlgorithm.getTitleMatchResult("telegram").get(0)));
+        assertEquals("Ωmega", title(mAlgorithm.getTitleMatchResult("omega").get(0)));
+        assertEquals(1, mAlgorithm.getTitleMatchResult("rio").size());
+    }
+
+    public void testDoSearchOnlyDeliversLatestQuery() throws Exception {
+        mAppsList.add(getInfo("Calculator"));
+        mAppsList.add(getInfo("Calendar"));
+        mAppsList.add(getInfo("Camera"));
+
+        final ArrayList<String> deliveredQueries = new ArrayList<>();
+        final ArrayList<ComponentKey> lastResult = new ArrayList<>();
+        final CountDownLatch searched = new CountDownLatch(1);
+        final AllAppsSearchBarController.Callbacks callbacks = new TestCallbacks() {
+            @Override
+            public void onSearchResult(String query, ArrayList<ComponentKey> apps) {
+                deliveredQueries.add(query);
+                lastResult.clear();
+                lastResult.addAll(apps);
+            }
+        };
+        getInstrumentation().runOnMainSync(new Runnable() {
+            @Override
+            public void run() {
+                mAlgorithm.invalidateIndex();
+                mAlgorithm.doSearch("c", callbacks);
+                mAlgorithm.doSearch("ca", callbacks);
+                mAlgorithm.doSearch("cal", callbacks);
+                mAlgorithm.runAfterSearches(new CountDownRunnable(searched));
+            }
+        });
+        // Every query has run and posted its result, then wait for the results to be delivered
+        assertTrue(searched.await(1, TimeUnit.SECONDS));
+        getInstrumentation().waitForIdleSync();
+
+        assertEquals(1, deliveredQueries.size());
+        assertEquals("cal", deliveredQueries.get(0));
+        assertEquals(2, lastResult.size());
+    }
+
+    public void testCancelDropsPendingResults() throws Exception {
+        mAppsList.add(getInfo("Camera"));
+
+        final ArrayList<String> deliveredQueries = new ArrayList<>();
+        final AllAppsSearchBarController.Callbacks callbacks = new TestCallbacks() {
+            @Override
+            public void onSearchResult(String query, ArrayList<ComponentKey> apps) {
+                deliveredQueries.add(query);
+            }
+        };
+        final CountDownLatch searched = new CountDownLatch(1);
+        getInstrumentation().runOnMainSync(new Runnable() {
+            @Override
+            public void run() {
+                mAlgorithm.invalidateIndex();
+                mAlgorithm.doSearch("cam", callbacks);
+                mAlgorithm.cancel(true);
+                mAlgorithm.runAfterSearches(new CountDownRunnable(searched));
+            }
+        });
+        assertTrue(searched.await(1, TimeUnit.SECONDS));
+        getInstrumentation().waitForIdleSync();
+
+        assertTrue(deliveredQueries.isEmpty());
+    }
+
+    private static class CountDownRunnable implements Runnable {
+
+        private final CountDownLatch mLatch;
+
+        CountDownRunnable(CountDownLatch latch) {
+            mLatch = latch;
+        }
+
+        @Override
+        public void run() {
+            mLatch.countDown();
+        }
+    }
+
+    private static abstract class TestCallbacks implements AllAppsSearchBarController.Callbacks {
+
+        @Override
+        public void onBoundsChanged(Rect newBounds) { }
+
+        @Override
+        public void clearSearchResult() { }
+
+        @Override
+        public void onAppDiscoverySearchUpdate(AppDiscoveryItem app,
+                AppDiscoveryUpdateState state) { }
+    }
+
+    private static String title(AppInfo info) {
+        return info.title.toString();
+    }
+
+    private static String title(ComponentKey key) {
+        return key.componentName.getClassName();
+    }
+
     private AppInfo getInfo(String title) {
         AppInfo info = new AppInfo();
         info.title = title;
         info.componentName = new ComponentName("Test", title);
+        info.user = Process.myUserHandle();
         return info;
     }
 }
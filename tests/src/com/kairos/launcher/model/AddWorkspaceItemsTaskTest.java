@@ -145,7 +145,7 @@ public class AddWorkspaceItemsTaskTest extends BaseModelUpdateTaskTestCase {
 
         for (int x = 0; x < idp.numColumns; x++) {
             for (int y = 0; y < idp.numRows; y++) {
-                if (!occupancy.cells[x][y]) {
+                if (!occupancy.isOccupied(x, y)) {
                     continue;
                 }
 
@@ -189,6 +189,44 @@ public class GridSizeMigrationTaskTest extends ProviderTestCase2<TestLauncherPro
         }});
     }
 
+    public void testWorkspace_items_merged_in_screen_order() throws Exception {
+        // The screens are solved concurrently, the items lost on the first two screens are still
+        // carried over in order to the first screen with enough space.
+        long[][][] ids = createGrid(new int[][][]{{
+                {  0,  0,  0,  1},
+                {  3,  1,  0,  4},
+                { -1, -1, -1, -1},
+                {  5,  2, -1,  6},
+        },{
+                {  0,  0,  0,  1},
+                {  3,  1,  0,  4},
+                { -1, -1, -1, -1},
+                {  5,  2, -1,  6},
+        },{
+                {  0,  0, -1,  1},
+                { -1, -1, -1, -1},
+                { -1, -1, -1, -1},
+                {  3, -1, -1,  4},
+        }});
+
+        new GridSizeMigrationTask(getMockContext(), mIdp, mValidPackages,
+                new Point(4, 4), new Point(3, 3)).migrateWorkspace();
+
+        verifyWorkspace(new long[][][] {{
+                {ids[0][0][0], ids[0][0][1], ids[0][0][3]},
+                {ids[0][1][0], ids[0][1][1], ids[0][1][3]},
+                {ids[0][3][0], ids[0][3][1], ids[0][3][3]},
+        }, {
+                {ids[1][0][0], ids[1][0][1], ids[1][0][3]},
+                {ids[1][1][0], ids[1][1][1], ids[1][1][3]},
+                {ids[1][3][0], ids[1][3][1], ids[1][3][3]},
+        }, {
+                {ids[2][0][0], ids[2][0][1], ids[2][0][3]},
+                {ids[0][0][2], ids[0][1][2], ids[1][0][2]},
+                {ids[2][3][0], ids[1][1][2], ids[2][3][3]},
+        }});
+    }
+
     public void testWorkspace_items_not_merged_in_next_screen() throws Exception {
         // First screen has 2 items that need to be moved, but second screen has only one
         // empty space after migration (top-left corner)
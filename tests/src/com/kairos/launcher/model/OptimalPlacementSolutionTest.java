@@ -0,0 +1,172 @@
+package com.kairos.launcher.model;
+
+import android.test.suitebuilder.annotation.SmallTest;
+
+import com.kairos.launcher.LauncherSettings.Favorites;
+import com.kairos.launcher.model.GridSizeMigrationTask.DbEntry;
+import com.kairos.launcher.model.GridSizeMigrationTask.OptimalPlacementSolution;
+import com.kairos.launcher.util.GridOccupancy;
+
+import junit.framework.TestCase;
+
+import java.util.ArrayList;
+import java.util.Random;
+
+/**
+ * Unit tests for {@link OptimalPlacementSolution}
+ */
+@SmallTest
+public class OptimalPlacementSolutionTest extends TestCase {
+
+    private static final int COUNT_X = 4;
+    private static final int COUNT_Y = 5;
+
+    public void testPruningKeepsTheOptimalPlacement() {
+        Random random = new Random(7);
+        int pruned = 0;
+        int exhaustive = 0;
+        for (int i = 0; i < 100; i++) {
+            int startY = random.nextInt(2);
+            boolean ignoreMove = random.nextInt(4) == 0;
+            GridOccupancy occupied = new GridOccupancy(COUNT_X, COUNT_Y);
+            occupied.markCells(0, 0, COUNT_X, startY, true);
+            for (int j = random.nextInt(4); j > 0; j--) {
+                occupied.markCells(random.nextInt(COUNT_X),
+                        startY + random.nextInt(COUNT_Y - startY), 1, 1, true);
+            }
+            ArrayList<DbEntry> items = randomItems(random);
+
+            OptimalPlacementSolution expected = newSolution(occupied, items, startY, ignoreMove);
+            expected.pruningEnabled = false;
+            expected.maxNodes = Integer.MAX_VALUE;
+            expected.maxSearchTimeNs = Long.MAX_VALUE;
+            expected.find();
+            OptimalPlacementSolution actual = newSolution(occupied, items, startY, ignoreMove);
+            actual.maxNodes = Integer.MAX_VALUE;
+            actual.maxSearchTimeNs = Long.MAX_VALUE;
+            actual.find();
+
+            assertFalse(actual.budgetExceeded);
+            assertEquals(expected.lowestWeightLoss, actual.lowestWeightLoss);
+            assertEquals(expected.lowestMoveCost, actual.lowestMoveCost);
+            assertEquals(expected.finalPlacedItems.size(), actual.finalPlacedItems.size());
+            for (int j = 0; j < expected.finalPlacedItems.size(); j++) {
+                DbEntry e = expected.finalPlacedItems.get(j);
+                DbEntry a = actual.finalPlacedItems.get(j);
+                assertEquals(e.id, a.id);
+                assertTrue(e.columnsSame(a));
+            }
+            exhaustive += expected.nodesExplored;
+            pruned += actual.nodesExplored;
+        }
+        assertTrue(pruned < exhaustive);
+    }
+
+    public void testPlacesGreedilyWhenOverBudget() {
+        Random random = new Random(3);
+        ArrayList<DbEntry> items = new ArrayList<>();
+        for (int i = 0; i < 4; i++) {
+            items.add(newItem(i, Favorites.ITEM_TYPE_APPWIDGET, random.nextInt(COUNT_X),
+                    random.nextInt(COUNT_Y), 2, 2));
+        }
+        for (int i = 4; i < 10; i++) {
+            items.add(newItem(i, Favorites.ITEM_TYPE_APPLICATION, random.nextInt(COUNT_X),
+                    random.nextInt(COUNT_Y), 1, 1));
+        }
+
+        GridOccupancy occupied = new GridOccupancy(COUNT_X, COUNT_Y);
+        OptimalPlacementSolution solution = newSolution(occupied, items, 0, false);
+        solution.maxNodes = 3;
+        solution.find();
+
+        assertTrue(solution.budgetExceeded);
+        assertEquals(solution.maxNodes + 1, solution.nodesExplored);
+        // The search doesn't leave cells marked
+        assertEquals(0, occupied.countOccupied(0, 0, COUNT_X, COUNT_Y));
+
+        // The items are placed in the grid without overlapping
+        float placedWeight = 0;
+        for (DbEntry item : solution.finalPlacedItems) {
+            assertTrue(occupied.isRegionVacant(item.cellX, item.cellY, item.spanX, item.spanY));
+            occupied.markCells(item, true);
+            placedWeight += item.weight;
+        }
+        float totalWeight = 0;
+        for (DbEntry item : items) {
+            totalWeight += item.weight;
+        }
+        assertEquals(totalWeight - placedWeight, solution.lowestWeightLoss, 0.001f);
+    }
+
+    public void testPlacementDependsOnlyOnTheNodeBudget() {
+        Random random = new Random(11);
+        for (int i = 0; i < 20; i++) {
+            ArrayList<DbEntry> items = randomItems(random);
+            OptimalPlacementSolution first =
+                    newSolution(new GridOccupancy(COUNT_X, COUNT_Y), items, 0, false);
+            first.maxNodes = 50;
+            first.find();
+            OptimalPlacementSolution second =
+                    newSolution(new GridOccupancy(COUNT_X, COUNT_Y), items, 0, false);
+            second.maxNodes = 50;
+            second.find();
+
+            assertEquals(first.nodesExplored, second.nodesExplored);
+            assertEquals(first.lowestWeightLoss, second.lowestWeightLoss);
+            assertEquals(first.lowestMoveCost, second.lowestMoveCost);
+            assertEquals(first.finalPlacedItems.size(), second.finalPlacedItems.size());
+            for (int j = 0; j < first.finalPlacedItems.size(); j++) {
+                assertTrue(first.finalPlacedItems.get(j).columnsSame(
+                        second.finalPlacedItems.get(j)));
+            }
+        }
+    }
+
+    private static OptimalPlacementSolution newSolution(GridOccupancy occupied,
+            ArrayList<DbEntry> items, int startY, boolean ignoreMove) {
+        ArrayList<DbEntry> copy = new ArrayList<>(items.size());
+        for (DbEntry item : items) {
+            copy.add(item.copy());
+        }
+        return new OptimalPlacementSolution(COUNT_X, COUNT_Y, occupied, copy, startY,
+                ignoreMove);
+    }
+
+    private static ArrayList<DbEntry> randomItems(Random random) {
+        ArrayList<DbEntry> items = new ArrayList<>();
+        int widgetCount = random.nextInt(4);
+        for (int i = 0; i < widgetCount; i++) {
+            int spanX = 2 + random.nextInt(COUNT_X - 1);
+            int spanY = 1 + random.nextInt(3);
+            DbEntry item = newItem(i, Favorites.ITEM_TYPE_APPWIDGET, random.nextInt(COUNT_X),
+                    random.nextInt(COUNT_Y), spanX, spanY);
+            item.minSpanX = 1 + random.nextInt(spanX);
+            item.minSpanY = 1 + random.nextInt(spanY);
+            item.weight = 2 + random.nextInt(20) / 3f;
+            items.add(item);
+        }
+        int iconCount = random.nextInt(COUNT_X * COUNT_Y / 2);
+        for (int i = widgetCount; i < widgetCount + iconCount; i++) {
+            DbEntry item = newItem(i, Favorites.ITEM_TYPE_APPLICATION, random.nextInt(COUNT_X),
+                    random.nextInt(COUNT_Y), 1, 1);
+            item.weight = 0.8f + random.nextInt(5) * 0.3f;
+            items.add(item);
+        }
+        return items;
+    }
+
+    private static DbEntry newItem(long id, int itemType, int cellX, int cellY,
+            int spanX, int spanY) {
+        DbEntry item = new DbEntry();
+        item.id = id;
+        item.itemType = itemType;
+        item.cellX = cellX;
+        item.cellY = cellY;
+        item.spanX = spanX;
+        item.spanY = spanY;
+        item.minSpanX = spanX;
+        item.minSpanY = spanY;
+        item.weight = itemType == Favorites.ITEM_TYPE_APPWIDGET ? 2 : 0.8f;
+        return item;
+    }
+}
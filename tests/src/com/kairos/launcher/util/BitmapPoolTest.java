@@ -0,0 +1,66 @@
+package com.kairos.launcher.util;
+
+import android.graphics.Bitmap;
+import android.graphics.Bitmap.Config;
+import android.test.suitebuilder.annotation.SmallTest;
+
+import junit.framework.TestCase;
+
+/**
+ * Unit tests for {@link BitmapPool}
+ */
+@SmallTest
+public class BitmapPoolTest extends TestCase {
+
+    public void testReusesSameSize() {
+        BitmapPool pool = new BitmapPool(1 << 20);
+        Bitmap bitmap = Bitmap.createBitmap(60, 60, Config.ARGB_8888);
+        pool.put(bitmap);
+
+        assertSame(bitmap, pool.get(60, 60));
+        // The pool is now empty.
+        assertNotSame(bitmap, pool.get(60, 60));
+    }
+
+    public void testReconfiguresLargerBitmap() {
+        BitmapPool pool = new BitmapPool(1 << 20);
+        Bitmap bitmap = Bitmap.createBitmap(100, 100, Config.ARGB_8888);
+        pool.put(bitmap);
+
+        Bitmap reused = pool.get(80, 60);
+        assertSame(bitmap, reused);
+        assertEquals(80, reused.getWidth());
+        assertEquals(60, reused.getHeight());
+    }
+
+    public void testSkipsSmallerAndMuchLargerBitmaps() {
+        BitmapPool pool = new BitmapPool(1 << 22);
+        Bitmap small = Bitmap.createBitmap(50, 50, Config.ARGB_8888);
+        Bitmap large = Bitmap.createBitmap(400, 400, Config.ARGB_8888);
+        pool.put(small);
+        pool.put(large);
+
+        Bitmap result = pool.get(60, 60);
+        assertNotSame(small, result);
+        assertNotSame(large, result);
+    }
+
+    public void testBoundsPoolSize() {
+        BitmapPool pool = new BitmapPool(60 * 60 * 4);
+        Bitmap first = Bitmap.createBitmap(60, 60, Config.ARGB_8888);
+        Bitmap second = Bitmap.createBitmap(60, 60, Config.ARGB_8888);
+        pool.put(first);
+        pool.put(second);
+
+        assertSame(first, pool.get(60, 60));
+        assertNotSame(second, pool.get(60, 60));
+    }
+
+    public void testIgnoresImmutableBitmaps() {
+        BitmapPool pool = new BitmapPool(1 << 20);
+        Bitmap bitmap = Bitmap.createBitmap(60, 60, Config.ARGB_8888).copy(Config.ARGB_8888, false);
+        pool.put(bitmap);
+
+        assertNotSame(bitmap, pool.get(60, 60));
+    }
+}
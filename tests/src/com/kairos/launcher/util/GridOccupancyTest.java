@@ -4,6 +4,8 @@ import android.test.suitebuilder.annotation.SmallTest;
 
 import junit.framework.TestCase;
 
+import java.util.Random;
+
 /**
  * Unit tests for {@link GridOccupancy}
  */
@@ -46,13 +48,174 @@ public class GridOccupancyTest extends TestCase {
         assertFalse(grid.isRegionVacant(0, 0, 2, 1));
     }
 
+    public void testIsRegionVacantWithMask() {
+        GridOccupancy grid = initGrid(4,
+                1, 1, 1, 0, 0,
+                0, 0, 1, 1, 0,
+                0, 0, 0, 0, 0,
+                1, 1, 0, 0, 0
+        );
+        GridOccupancy mask = initGrid(2,
+                1, 1,
+                0, 1
+        );
+
+        assertTrue(grid.isRegionVacant(2, 2, mask));
+        // Only the vacant cell of the mask is occupied
+        assertTrue(grid.isRegionVacant(1, 2, mask));
+        assertFalse(grid.isRegionVacant(1, 0, mask));
+        // Outside of the grid
+        assertFalse(grid.isRegionVacant(4, 0, mask));
+    }
+
+    public void testIsRegionVacantWithMaskSpan() {
+        GridOccupancy grid = initGrid(4,
+                1, 1, 1, 0, 0,
+                0, 0, 1, 1, 0,
+                0, 0, 0, 0, 0,
+                1, 1, 0, 0, 0
+        );
+        // Only the top left 2x2 cells are used, they match the mask of the test above
+        GridOccupancy mask = initGrid(3,
+                1, 1, 1,
+                0, 1, 1,
+                1, 1, 1
+        );
+
+        assertTrue(grid.isRegionVacant(2, 2, mask, 2, 2));
+        assertTrue(grid.isRegionVacant(1, 2, mask, 2, 2));
+        assertFalse(grid.isRegionVacant(1, 0, mask, 2, 2));
+        assertFalse(grid.isRegionVacant(1, 1, mask, 3, 3));
+        // Larger than the mask
+        assertFalse(grid.isRegionVacant(0, 0, mask, 4, 1));
+    }
+
+    public void testGenerationChangesOnModification() {
+        GridOccupancy grid = new GridOccupancy(4, 4);
+        int generation = grid.getGeneration();
+        grid.isRegionVacant(0, 0, 2, 2);
+        assertEquals(generation, grid.getGeneration());
+
+        grid.markCells(0, 0, 2, 2, true);
+        assertTrue(generation != grid.getGeneration());
+
+        generation = grid.getGeneration();
+        grid.clear();
+        assertTrue(generation != grid.getGeneration());
+
+        GridOccupancy dest = new GridOccupancy(4, 4);
+        generation = dest.getGeneration();
+        grid.copyTo(dest);
+        assertTrue(generation != dest.getGeneration());
+    }
+
+    public void testCountOccupied() {
+        GridOccupancy grid = initGrid(4,
+                1, 1, 1, 0, 0,
+                0, 0, 1, 1, 0,
+                0, 0, 0, 0, 0,
+                1, 1, 0, 0, 0
+        );
+
+        assertEquals(7, grid.countOccupied(0, 0, 5, 4));
+        assertEquals(2, grid.countOccupied(1, 1, 2, 3));
+        assertEquals(0, grid.countOccupied(3, 2, 2, 2));
+    }
+
+    public void testEqualsIgnoresGeneration() {
+        GridOccupancy grid = new GridOccupancy(70, 3);
+        GridOccupancy other = new GridOccupancy(70, 3);
+        grid.markCells(60, 1, 8, 2, true);
+        other.markCells(60, 1, 8, 1, true);
+        assertFalse(grid.equals(other));
+
+        other.markCells(60, 2, 8, 1, true);
+        assertEquals(grid, other);
+        assertEquals(grid.hashCode(), other.hashCode());
+        assertFalse(grid.equals(new GridOccupancy(3, 70)));
+    }
+
+    public void testNextVacantCell() {
+        GridOccupancy grid = initGrid(4,
+                1, 1, 1, 0, 0,
+                0, 0, 1, 1, 0,
+                0, 0, 0, 0, 0,
+                1, 1, 0, 0, 0
+        );
+
+        assertEquals(0, grid.nextVacantCell(0, 1, 2, 2));
+        assertEquals(-1, grid.nextVacantCell(1, 1, 2, 2));
+        assertEquals(2, grid.nextVacantCell(0, 2, 3, 2));
+        assertEquals(3, grid.nextVacantCell(0, 0, 1, 1));
+        assertEquals(-1, grid.nextVacantCell(0, 3, 1, 2));
+    }
+
+    public void testMatchesCellByCellScanOnWideGrids() {
+        Random random = new Random(42);
+        for (int countX : new int[] {5, 63, 64, 65, 130}) {
+            int countY = 7;
+            boolean[][] cells = new boolean[countX][countY];
+            GridOccupancy grid = new GridOccupancy(countX, countY);
+            for (int n = 0; n < countX * countY / 2; n++) {
+                int x = random.nextInt(countX);
+                int y = random.nextInt(countY);
+                int spanX = 1 + random.nextInt(4);
+                int spanY = 1 + random.nextInt(2);
+                boolean value = random.nextInt(3) == 0;
+                grid.markCells(x, y, spanX, spanY, value);
+                for (int i = x; i < Math.min(x + spanX, countX); i++) {
+                    for (int j = y; j < Math.min(y + spanY, countY); j++) {
+                        cells[i][j] = value;
+                    }
+                }
+            }
+
+            GridOccupancy copy = new GridOccupancy(countX, countY);
+            grid.copyTo(copy);
+            for (int x = 0; x < countX; x++) {
+                for (int y = 0; y < countY; y++) {
+                    assertEquals(cells[x][y], grid.isOccupied(x, y));
+                    assertEquals(cells[x][y], copy.isOccupied(x, y));
+                }
+            }
+
+            for (int[] span : new int[][] {{1, 1}, {2, 2}, {3, 1}, {70, 1}}) {
+                for (int y = 0; y < countY; y++) {
+                    int expected = -1;
+                    for (int x = countX - 1; x >= 0; x--) {
+                        boolean vacant = isVacant(cells, x, y, span[0], span[1]);
+                        assertEquals(vacant, grid.isRegionVacant(x, y, span[0], span[1]));
+                        if (vacant) {
+                            expected = x;
+                        }
+                    }
+                    assertEquals(expected, grid.nextVacantCell(0, y, span[0], span[1]));
+                }
+            }
+        }
+    }
+
+    private static boolean isVacant(boolean[][] cells, int x, int y, int spanX, int spanY) {
+        if (x + spanX > cells.length || y + spanY > cells[0].length) {
+            return false;
+        }
+        for (int i = x; i < x + spanX; i++) {
+            for (int j = y; j < y + spanY; j++) {
+                if (cells[i][j]) {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
     private GridOccupancy initGrid(int rows, int... cells) {
         int cols = cells.length / rows;
         int i = 0;
         GridOccupancy grid = new GridOccupancy(cols, rows);
         for (int y = 0; y < rows; y++) {
             for (int x = 0; x < cols; x++) {
-                grid.cells[x][y] = cells[i] != 0;
+                grid.markCells(x, y, 1, 1, cells[i] != 0);
                 i++;
             }
         }
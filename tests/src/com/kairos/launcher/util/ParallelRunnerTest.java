@@ -0,0 +1,65 @@
+package com.kairos.launcher.util;
+
+import android.test.suitebuilder.annotation.SmallTest;
+
+import junit.framework.TestCase;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+/**
+ * Unit tests for {@link ParallelRunner}
+ */
+@SmallTest
+public class ParallelRunnerTest extends TestCase {
+
+    private static final Executor NEW_THREAD_EXECUTOR = new Executor() {
+        @Override
+        public void execute(Runnable command) {
+            new Thread(command).start();
+        }
+    };
+
+    public void testRunsEveryIndexOnce() throws Exception {
+        final AtomicIntegerArray runs = new AtomicIntegerArray(100);
+        ParallelRunner.run(NEW_THREAD_EXECUTOR, runs.length(), 10, 4,
+                new ParallelRunner.RangeTask() {
+                    @Override
+                    public void run(int start, int end) {
+                        for (int i = start; i < end; i++) {
+                            runs.incrementAndGet(i);
+                        }
+                    }
+                });
+
+        for (int i = 0; i < runs.length(); i++) {
+            assertEquals(1, runs.get(i));
+        }
+    }
+
+    public void testExceptionOnTheExecutorIsRethrown() throws Exception {
+        final AtomicIntegerArray runs = new AtomicIntegerArray(4);
+        final IllegalStateException error = new IllegalStateException();
+        try {
+            ParallelRunner.run(NEW_THREAD_EXECUTOR, runs.length(), 1, 4,
+                    new ParallelRunner.RangeTask() {
+                        @Override
+                        public void run(int start, int end) {
+                            runs.incrementAndGet(start);
+                            if (start == 0) {
+                                // The first slice runs on the executor
+                                throw error;
+                            }
+                        }
+                    });
+            fail("The exception of the slice was not rethrown");
+        } catch (IllegalStateException e) {
+            assertSame(error, e);
+        }
+
+        // The other slices still completed
+        for (int i = 0; i < runs.length(); i++) {
+            assertEquals(1, runs.get(i));
+        }
+    }
+}
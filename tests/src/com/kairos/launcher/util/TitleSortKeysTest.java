@@ -0,0 +1,116 @@
+package com.kairos.launcher.util;
+
+import android.content.ComponentName;
+import android.os.Process;
+import android.test.InstrumentationTestCase;
+import android.test.suitebuilder.annotation.SmallTest;
+
+import com.kairos.launcher.AppInfo;
+import com.kairos.launcher.Utilities;
+import com.kairos.launcher.allapps.AppInfoComparator;
+import com.kairos.launcher.compat.AlphabeticIndexCompat;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Unit tests for {@link TitleSortKeys}
+ */
+@SmallTest
+public class TitleSortKeysTest extends InstrumentationTestCase {
+
+    private static final String[] TITLES = {
+            "Zebra", "apple", "Apple", "123", "#hash", "\u00c9clair", "eclair", "", "  Banana", "b"
+    };
+
+    private TitleSortKeys mSortKeys;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        mSortKeys = TitleSortKeys.getInstance(getInstrumentation().getTargetContext());
+    }
+
+    public void testKeysFollowLabelComparator() {
+        LabelComparator comparator = new LabelComparator();
+        for (String a : TITLES) {
+            for (String b : TITLES) {
+                int expected = Integer.signum(
+                        comparator.compare(Utilities.trim(a), Utilities.trim(b)));
+                int actual = Integer.signum(TitleSortKeys.compare(
+                        mSortKeys.getSortKey(a).collationKey,
+                        mSortKeys.getSortKey(b).collationKey));
+                assertEquals(a + " vs " + b, expected, actual);
+            }
+        }
+    }
+
+    public void testCompareIsUnsigned() {
+        byte[] low = {0x10};
+        byte[] high = {(byte) 0x90};
+        assertTrue(TitleSortKeys.compare(low, high) < 0);
+        assertTrue(TitleSortKeys.compare(high, low) > 0);
+        assertTrue(TitleSortKeys.compare(low, new byte[] {0x10, 0}) < 0);
+        assertEquals(0, TitleSortKeys.compare(high, new byte[] {(byte) 0x90}));
+    }
+
+    public void testSectionName() {
+        AlphabeticIndexCompat indexer =
+                new AlphabeticIndexCompat(getInstrumentation().getTargetContext());
+        assertEquals(indexer.computeSectionName("Zebra"),
+                mSortKeys.getSortKey("Zebra").sectionName);
+    }
+
+    public void testAppKeyIsReusedUntilTitleChanges() {
+        AppInfo info = getInfo("Camera");
+        TitleSortKeys.SortKey key = mSortKeys.getSortKey(info);
+        assertSame(key, mSortKeys.getSortKey(info));
+
+        info.title = "Calculator";
+        TitleSortKeys.SortKey updated = mSortKeys.getSortKey(info);
+        assertNotSame(key, updated);
+        assertEquals("Calculator", updated.title);
+    }
+
+    public void testKeyOfOtherLocaleIsInvalid() {
+        TitleSortKeys.SortKey key = mSortKeys.getSortKey("Camera");
+        assertTrue(mSortKeys.isValid(key, "Camera"));
+        assertFalse(mSortKeys.isValid(new TitleSortKeys.SortKey(key.title,
+                key.locale + "_other", key.collationKey, key.sectionName), "Camera"));
+        assertNull(TitleSortKeys.SortKey.restore("Camera", null, key.collationKey, "C"));
+    }
+
+    public void testComparatorOrderWithKeys() {
+        AppInfoComparator comparator =
+                new AppInfoComparator(getInstrumentation().getTargetContext());
+        List<AppInfo> withKeys = new ArrayList<>();
+        List<AppInfo> withoutKeys = new ArrayList<>();
+        for (String title : TITLES) {
+            AppInfo info = getInfo(Utilities.trim(title));
+            mSortKeys.getSortKey(info);
+            withKeys.add(info);
+            withoutKeys.add(getInfo(Utilities.trim(title)));
+        }
+        Collections.sort(withKeys, comparator);
+        Collections.sort(withoutKeys, comparator);
+        assertEquals(Arrays.toString(getTitles(withoutKeys)), Arrays.toString(getTitles(withKeys)));
+    }
+
+    private static String[] getTitles(List<AppInfo> apps) {
+        String[] titles = new String[apps.size()];
+        for (int i = 0; i < titles.length; i++) {
+            titles[i] = apps.get(i).title.toString();
+        }
+        return titles;
+    }
+
+    private static AppInfo getInfo(String title) {
+        AppInfo info = new AppInfo();
+        info.title = title;
+        info.componentName = new ComponentName("Test", title);
+        info.user = Process.myUserHandle();
+        return info;
+    }
+}